@@ -26,10 +26,10 @@ import io.termd.core.function.BiConsumer;
 import io.termd.core.function.Consumer;
 import io.termd.core.io.BinaryDecoder;
 import io.termd.core.io.BinaryEncoder;
+import io.termd.core.io.ByteSink;
 import io.termd.core.tty.TtyConnectionSupport;
 import io.termd.core.tty.TtyEvent;
 import io.termd.core.tty.TtyEventDecoder;
-import io.termd.core.tty.TtyOutputMode;
 import io.termd.core.util.Vector;
 
 /**
@@ -51,6 +51,17 @@ import io.termd.core.util.Vector;
  *   "rows: 50
  * }
  *
+ * A client negotiating the {@link #BINARY_PROTOCOL} sends binary messages instead, the first byte is the opcode
+ * followed by the payload:
+ *
+ * <ul>
+ *   <li>{@link #OP_DATA}: the bytes typed by the user</li>
+ *   <li>{@link #OP_RESIZE}: the columns and the rows as two big endian unsigned shorts</li>
+ *   <li>{@link #OP_PING}: a keep alive answered by an {@link #OP_ACK} message</li>
+ * </ul>
+ *
+ * The output is sent as {@link #OP_DATA} binary messages.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  * @author <a href="mailto:matejonnet@gmail.com">Matej Lazar</a>
  */
@@ -58,6 +69,16 @@ public abstract class HttpTtyConnection extends TtyConnectionSupport {
 
   public static final Vector DEFAULT_SIZE = new Vector(80, 24);
 
+  /**
+   * The websocket subprotocol of the binary messages.
+   */
+  public static final String BINARY_PROTOCOL = "termd.binary";
+
+  public static final byte OP_DATA = 0;
+  public static final byte OP_RESIZE = 1;
+  public static final byte OP_PING = 2;
+  public static final byte OP_ACK = 3;
+
   private Charset charset;
   private Vector size;
   private Consumer<Vector> sizeHandler;
@@ -77,12 +98,18 @@ public abstract class HttpTtyConnection extends TtyConnectionSupport {
     this.size = size;
     this.eventDecoder = new TtyEventDecoder(3, 26, 4);
     this.decoder = new BinaryDecoder(512, charset, eventDecoder);
-    this.stdout = new TtyOutputMode(new BinaryEncoder(charset, new Consumer<byte[]>() {
+    BinaryEncoder encoder = new BinaryEncoder(charset, new ByteSink() {
       @Override
       public void accept(byte[] bytes) {
         write(bytes);
       }
-    }));
+      @Override
+      public void accept(byte[] bytes, int offset, int length) {
+        write(bytes, offset, length);
+      }
+    });
+    encoder.setOnlcr(true);
+    this.stdout = encoder;
   }
 
   @Override
@@ -107,6 +134,21 @@ public abstract class HttpTtyConnection extends TtyConnectionSupport {
 
   protected abstract void write(byte[] buffer);
 
+  /**
+   * Write a slice of a buffer that is only valid for the duration of the call, the default implementation
+   * writes a copy of the slice with {@link #write(byte[])}. An implementation can override this method
+   * to copy the slice directly in its transport buffer.
+   *
+   * @param buffer the buffer
+   * @param offset the offset of the data
+   * @param length the length of the data
+   */
+  protected void write(byte[] buffer, int offset, int length) {
+    byte[] copy = new byte[length];
+    System.arraycopy(buffer, offset, copy, 0, length);
+    write(copy);
+  }
+
   /**
    * Special case to handle tty events.
    *
@@ -117,6 +159,52 @@ public abstract class HttpTtyConnection extends TtyConnectionSupport {
     decoder.write(bytes);
   }
 
+  /**
+   * Decode a slice of the bytes typed by the user, the slice is only used during the call.
+   */
+  public void writeToDecoder(byte[] bytes, int offset, int length) {
+    lastAccessedTime = System.currentTimeMillis();
+    decoder.write(bytes, offset, length);
+  }
+
+  /**
+   * Handle a {@link #BINARY_PROTOCOL} message, the message is only used during the call.
+   *
+   * @param msg the message buffer
+   * @param offset the offset of the message
+   * @param length the length of the message
+   */
+  public void readBinary(byte[] msg, int offset, int length) {
+    if (length == 0) {
+      return;
+    }
+    switch (msg[offset]) {
+      case OP_DATA:
+        writeToDecoder(msg, offset + 1, length - 1);
+        break;
+      case OP_RESIZE:
+        if (length >= 5) {
+          int cols = ((msg[offset + 1] & 0xFF) << 8) | (msg[offset + 2] & 0xFF);
+          int rows = ((msg[offset + 3] & 0xFF) << 8) | (msg[offset + 4] & 0xFF);
+          resize(cols, rows);
+        }
+        break;
+      case OP_PING:
+        lastAccessedTime = System.currentTimeMillis();
+        ack();
+        break;
+      default:
+        // Ignore unknown messages
+        break;
+    }
+  }
+
+  /**
+   * Answer an {@link #OP_PING} message with an {@link #OP_ACK} message, the default implementation does nothing.
+   */
+  protected void ack() {
+  }
+
   public void writeToDecoder(String msg) {
       JSONObject obj;
       String action;
@@ -130,20 +218,12 @@ public abstract class HttpTtyConnection extends TtyConnectionSupport {
       if ("read".equals(action)) {
           lastAccessedTime = System.currentTimeMillis();
           String data = obj.getString("data");
-          decoder.write(data.getBytes()); //write back echo
+          decoder.write(data.getBytes(charset)); //write back echo
       } else if ("resize".equals(action)) {
           try {
               int cols = obj.containsKey("cols") ? obj.getIntValue("cols") : size.x();
               int rows = obj.containsKey("rows") ? obj.getIntValue("rows") : size.y();
-              if (cols > 0 && rows > 0) {
-                  Vector newSize = new Vector(cols, rows);
-                  if (!newSize.equals(size())) {
-                      size = newSize;
-                      if (sizeHandler != null) {
-                          sizeHandler.accept(size);
-                      }
-                  }
-              }
+              resize(cols, rows);
           } catch (Exception e) {
               // Invalid size
               // Log this
@@ -151,6 +231,18 @@ public abstract class HttpTtyConnection extends TtyConnectionSupport {
       }
   }
 
+  private void resize(int cols, int rows) {
+    if (cols > 0 && rows > 0) {
+      Vector newSize = new Vector(cols, rows);
+      if (!newSize.equals(size())) {
+        size = newSize;
+        if (sizeHandler != null) {
+          sizeHandler.accept(size);
+        }
+      }
+    }
+  }
+
   private static Object getOrDefault(Map<String, Object> map, String key, Object defaultValue) {
     return (map.containsKey(key)) ? map.get(key) : defaultValue;
   }
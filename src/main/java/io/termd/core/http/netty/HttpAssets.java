@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.http.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.termd.core.http.HttpTtyConnection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The static assets of an http resource path, each asset is read from the classpath once and kept in memory with
+ * its gzipped variant when the compression is worth it. The responses write duplicates of the cached buffers.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+final class HttpAssets {
+
+  private static final ConcurrentMap<String, HttpAssets> cache = new ConcurrentHashMap<String, HttpAssets>();
+
+  static HttpAssets get(String httpResourcePath) {
+    HttpAssets assets = cache.get(httpResourcePath);
+    if (assets == null) {
+      assets = new HttpAssets(httpResourcePath);
+      HttpAssets prev = cache.putIfAbsent(httpResourcePath, assets);
+      if (prev != null) {
+        assets = prev;
+      }
+    }
+    return assets;
+  }
+
+  static final class Asset {
+
+    final ByteBuf content;
+    final ByteBuf gzipped;
+    final String contentType;
+    final String etag;
+    final String gzippedEtag;
+
+    private Asset(ByteBuf content, ByteBuf gzipped, String contentType, String etag, String gzippedEtag) {
+      this.content = content;
+      this.gzipped = gzipped;
+      this.contentType = contentType;
+      this.etag = etag;
+      this.gzippedEtag = gzippedEtag;
+    }
+  }
+
+  private final String httpResourcePath;
+  private final ConcurrentMap<String, Asset> assets = new ConcurrentHashMap<String, Asset>();
+
+  private HttpAssets(String httpResourcePath) {
+    this.httpResourcePath = httpResourcePath;
+  }
+
+  /**
+   * Lookup an asset, the missing assets are not cached.
+   *
+   * @param path the absolute path of the asset
+   * @return the asset or null when it does not exist
+   */
+  Asset lookup(String path) throws IOException {
+    Asset asset = assets.get(path);
+    if (asset == null) {
+      if (path.contains("..")) {
+        return null;
+      }
+      URL res = HttpTtyConnection.class.getResource(httpResourcePath + path);
+      if (res == null) {
+        return null;
+      }
+      asset = load(path, res);
+      Asset prev = assets.putIfAbsent(path, asset);
+      if (prev != null) {
+        asset = prev;
+      }
+    }
+    return asset;
+  }
+
+  private static Asset load(String path, URL res) throws IOException {
+    byte[] data;
+    InputStream in = res.openStream();
+    try {
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      byte[] tmp = new byte[8192];
+      for (int l = in.read(tmp);l != -1;l = in.read(tmp)) {
+        buffer.write(tmp, 0, l);
+      }
+      data = buffer.toByteArray();
+    } finally {
+      in.close();
+    }
+    ByteArrayOutputStream gzipBuffer = new ByteArrayOutputStream(data.length / 2);
+    GZIPOutputStream gzip = new GZIPOutputStream(gzipBuffer);
+    gzip.write(data);
+    gzip.close();
+    byte[] gzipData = gzipBuffer.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(data, 0, data.length);
+    String tag = Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(data.length);
+    return new Asset(
+        toBuffer(data),
+        // Images and other compressed formats are served as is
+        gzipData.length < data.length * 9 / 10 ? toBuffer(gzipData) : null,
+        contentType(path),
+        "\"" + tag + "\"",
+        // Each content coding has its own validator
+        "\"" + tag + "-gz\"");
+  }
+
+  private static ByteBuf toBuffer(byte[] data) {
+    return Unpooled.unreleasableBuffer(Unpooled.directBuffer(data.length, data.length).writeBytes(data));
+  }
+
+  private static String contentType(String path) {
+    int li = path.lastIndexOf('.');
+    if (li != -1 && li != path.length() - 1) {
+      String ext = path.substring(li + 1);
+      if ("html".equals(ext)) {
+        return "text/html";
+      } else if ("js".equals(ext)) {
+        return "application/javascript";
+      } else if ("css".equals(ext)) {
+        return "text/css";
+      } else if ("png".equals(ext)) {
+        return "image/png";
+      }
+    }
+    return null;
+  }
+}
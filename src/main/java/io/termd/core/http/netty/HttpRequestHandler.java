@@ -16,33 +16,44 @@
 
 package io.termd.core.http.netty;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
-import io.netty.handler.codec.http.DefaultHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpHeaders;
-import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
-import io.netty.handler.codec.http.LastHttpContent;
-import io.termd.core.http.HttpTtyConnection;
 import io.termd.core.util.Logging;
 
-import java.io.InputStream;
 import java.net.URI;
-import java.net.URL;
+import java.net.URISyntaxException;
 
 /**
+ * Serve the static assets of the http resource path from an in memory cache, the assets are sent gzipped to the
+ * clients accepting it and revalidated with their {@code ETag}, the connection is kept alive when the client asks
+ * for it.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
 public class HttpRequestHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
 
+  /**
+   * The html pages are revalidated on each use, the other assets are cached for a day.
+   */
+  private static final String HTML_CACHE_CONTROL = "no-cache";
+  private static final String ASSET_CACHE_CONTROL = "public, max-age=86400";
+
   private final String wsUri;
-  private final String httpResourcePath;
+  private final HttpAssets assets;
 
   public HttpRequestHandler(String wsUri) {
       this(wsUri, "/io/termd/core/http");
@@ -50,64 +61,144 @@ public class HttpRequestHandler extends SimpleChannelInboundHandler<FullHttpRequ
 
   public HttpRequestHandler(String wsUri, String httpResourcePath) {
     this.wsUri = wsUri;
-    this.httpResourcePath = httpResourcePath;
+    this.assets = HttpAssets.get(httpResourcePath);
   }
 
   @Override
   protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
-    if (wsUri.equalsIgnoreCase(request.getUri())) {
+    if (wsUri.equalsIgnoreCase(request.uri())) {
       ctx.fireChannelRead(request.retain());
     } else {
-      if (HttpHeaders.is100ContinueExpected(request)) {
+      if (HttpUtil.is100ContinueExpected(request)) {
         send100Continue(ctx);
       }
 
-      HttpResponse response = new DefaultHttpResponse(request.getProtocolVersion(), HttpResponseStatus.INTERNAL_SERVER_ERROR);
+      FullHttpResponse response;
+      try {
+        response = handle(request);
+      } catch (Exception e) {
+        Logging.logUndeclaredIoError(e);
+        response = new DefaultFullHttpResponse(request.protocolVersion(), HttpResponseStatus.INTERNAL_SERVER_ERROR, Unpooled.EMPTY_BUFFER);
+      }
+      boolean keepAlive = HttpUtil.isKeepAlive(request) && response.status().code() < 500;
+      // The HEAD responses have the length of the asset and the not modified responses have no length
+      if (!response.headers().contains(HttpHeaderNames.CONTENT_LENGTH) && response.status() != HttpResponseStatus.NOT_MODIFIED) {
+        HttpUtil.setContentLength(response, response.content().readableBytes());
+      }
+      HttpUtil.setKeepAlive(response, keepAlive);
+      ChannelFuture future = ctx.writeAndFlush(response);
+      if (!keepAlive) {
+        future.addListener(ChannelFutureListener.CLOSE);
+      }
+    }
+  }
+
+  private FullHttpResponse handle(FullHttpRequest request) throws Exception {
+    HttpVersion version = request.protocolVersion();
+    boolean head = HttpMethod.HEAD.equals(request.method());
+    if (!head && !HttpMethod.GET.equals(request.method())) {
+      FullHttpResponse response = new DefaultFullHttpResponse(version, HttpResponseStatus.METHOD_NOT_ALLOWED, Unpooled.EMPTY_BUFFER);
+      response.headers().set(HttpHeaderNames.ALLOW, "GET, HEAD");
+      return response;
+    }
+    String path;
+    try {
+      path = new URI(request.uri()).getPath();
+    } catch (URISyntaxException e) {
+      return new DefaultFullHttpResponse(version, HttpResponseStatus.BAD_REQUEST, Unpooled.EMPTY_BUFFER);
+    }
+    if ("/".equals(path)) {
+      path = "/index.html";
+    }
+    HttpAssets.Asset asset = path != null ? assets.lookup(path) : null;
+    if (asset == null) {
+      return new DefaultFullHttpResponse(version, HttpResponseStatus.NOT_FOUND, Unpooled.EMPTY_BUFFER);
+    }
+    HttpHeaders requestHeaders = request.headers();
+    boolean gzip = asset.gzipped != null && acceptsGzip(requestHeaders.get(HttpHeaderNames.ACCEPT_ENCODING));
+    String etag = gzip ? asset.gzippedEtag : asset.etag;
+    FullHttpResponse response;
+    if (matches(requestHeaders.get(HttpHeaderNames.IF_NONE_MATCH), etag)) {
+      response = new DefaultFullHttpResponse(version, HttpResponseStatus.NOT_MODIFIED, Unpooled.EMPTY_BUFFER);
+    } else {
+      ByteBuf content = gzip ? asset.gzipped : asset.content;
+      if (head) {
+        response = new DefaultFullHttpResponse(version, HttpResponseStatus.OK, Unpooled.EMPTY_BUFFER);
+        HttpUtil.setContentLength(response, content.readableBytes());
+      } else {
+        response = new DefaultFullHttpResponse(version, HttpResponseStatus.OK, content.retainedDuplicate());
+      }
+      if (gzip) {
+        response.headers().set(HttpHeaderNames.CONTENT_ENCODING, HttpHeaderValues.GZIP);
+      }
+      if (asset.contentType != null) {
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, asset.contentType);
+      }
+    }
+    HttpHeaders headers = response.headers();
+    headers.set(HttpHeaderNames.ETAG, etag);
+    headers.set(HttpHeaderNames.CACHE_CONTROL, "text/html".equals(asset.contentType) ? HTML_CACHE_CONTROL : ASSET_CACHE_CONTROL);
+    if (asset.gzipped != null) {
+      headers.set(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+    }
+    return response;
+  }
 
-      String path = new URI(request.getUri()).getPath();
+  /**
+   * @return true when the {@code If-None-Match} header matches the etag
+   */
+  static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
 
-      if ("/".equals(path)) {
-        path = "/index.html";
+  /**
+   * @return true when the {@code Accept-Encoding} header accepts gzip with a non zero quality, an explicit
+   *         {@code gzip} coding takes precedence over {@code *}
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    Boolean any = null;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] params = coding.split(";");
+      String name = params[0].trim();
+      if (name.equalsIgnoreCase("gzip")) {
+        return accepted(params);
+      } else if (name.equals("*")) {
+        any = accepted(params);
       }
-      URL res = HttpTtyConnection.class.getResource(httpResourcePath + path);
-      try {
-        if (res != null) {
-          DefaultFullHttpResponse fullResp = new DefaultFullHttpResponse(request.getProtocolVersion(), HttpResponseStatus.OK);
-          InputStream in = res.openStream();
-          byte[] tmp = new byte[256];
-          for (int l = 0; l != -1; l = in.read(tmp)) {
-            fullResp.content().writeBytes(tmp, 0, l);
-          }
-          int li = path.lastIndexOf('.');
-          if (li != -1 && li != path.length() - 1) {
-            String ext = path.substring(li + 1, path.length());
-            String contentType;
-            if ("html".equals(ext)) {
-              contentType = "text/html";
-            } else if ("js".equals(ext)) {
-              contentType = "application/javascript";
-            } else if ("css".equals(ext)) {
-                contentType = "text/css";
-            } else {
-              contentType = null;
-            }
-
-            if (contentType != null) {
-              fullResp.headers().set(HttpHeaders.Names.CONTENT_TYPE, contentType);
-            }
-          }
-          response = fullResp;
-        } else {
-          response.setStatus(HttpResponseStatus.NOT_FOUND);
+    }
+    return any != null && any;
+  }
+
+  /**
+   * @return false when the quality of a coding is zero or invalid
+   */
+  private static boolean accepted(String[] params) {
+    for (int i = 1;i < params.length;i++) {
+      String param = params[i].trim();
+      if (param.startsWith("q=")) {
+        try {
+          return Float.parseFloat(param.substring(2)) != 0f;
+        } catch (NumberFormatException ignore) {
+          return false;
         }
-      } catch (Exception e) {
-        e.printStackTrace();
-      } finally {
-        ctx.write(response);
-        ChannelFuture future = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
-        future.addListener(ChannelFutureListener.CLOSE);
       }
     }
+    return true;
   }
 
   private static void send100Continue(ChannelHandlerContext ctx) {
@@ -19,11 +19,8 @@ package io.termd.core.http.netty;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
-import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.util.concurrent.Future;
@@ -31,6 +28,8 @@ import io.netty.util.concurrent.GenericFutureListener;
 import io.netty.util.concurrent.ImmediateEventExecutor;
 import io.termd.core.function.Consumer;
 import io.termd.core.tty.TtyConnection;
+import io.termd.core.tty.netty.NettyTransport;
+import io.termd.core.tty.netty.WriteCoalescing;
 import io.termd.core.util.CompletableFuture;
 import io.termd.core.util.Helper;
 
@@ -44,13 +43,17 @@ public class NettyWebsocketTtyBootstrap {
   private final ChannelGroup channelGroup = new DefaultChannelGroup(ImmediateEventExecutor.INSTANCE);
   private String host;
   private int port;
-  private EventLoopGroup group;
+  private NettyTransport transport;
+  private boolean ownTransport;
   private Channel channel;
   private String httpResourcePath;
+  private WriteCoalescing writeCoalescing;
+  private WebSocketCompression compression;
 
   public NettyWebsocketTtyBootstrap() {
     this.host = "localhost";
     this.port = 8080;
+    this.writeCoalescing = new WriteCoalescing();
   }
 
   public String getHost() {
@@ -80,14 +83,62 @@ public class NettyWebsocketTtyBootstrap {
         return this;
     }
 
+  public WriteCoalescing getWriteCoalescing() {
+    return writeCoalescing;
+  }
+
+  /**
+   * Set the write coalescing of the connections, {@code null} flushes each write immediately.
+   *
+   * @param writeCoalescing the write coalescing
+   * @return this object
+   */
+  public NettyWebsocketTtyBootstrap setWriteCoalescing(WriteCoalescing writeCoalescing) {
+    this.writeCoalescing = writeCoalescing;
+    return this;
+  }
+
+  public NettyTransport getTransport() {
+    return transport;
+  }
+
+  /**
+   * Set the transport of the server, the transport can be shared with other servers and is not shut down when this
+   * server stops. By default the server uses its own transport.
+   *
+   * @param transport the transport
+   * @return this object
+   */
+  public NettyWebsocketTtyBootstrap setTransport(NettyTransport transport) {
+    this.transport = transport;
+    this.ownTransport = false;
+    return this;
+  }
+
+  public WebSocketCompression getCompression() {
+    return compression;
+  }
+
+  /**
+   * Set the permessage-deflate compression of the connections, {@code null} disables the compression.
+   *
+   * @param compression the compression
+   * @return this object
+   */
+  public NettyWebsocketTtyBootstrap setCompression(WebSocketCompression compression) {
+    this.compression = compression;
+    return this;
+  }
+
   public void start(Consumer<TtyConnection> handler, final Consumer<Throwable> doneHandler) {
-    group = new NioEventLoopGroup();
+    if (transport == null) {
+      transport = new NettyTransport();
+      ownTransport = true;
+    }
 
-    ServerBootstrap b = new ServerBootstrap();
-    b.group(group)
-        .channel(NioServerSocketChannel.class)
-        .handler(new LoggingHandler(LogLevel.INFO))
-        .childHandler(new TtyServerInitializer(channelGroup, handler, httpResourcePath));
+    ServerBootstrap b = transport.newServerBootstrap();
+    b.handler(new LoggingHandler(LogLevel.INFO))
+        .childHandler(new TtyServerInitializer(channelGroup, handler, httpResourcePath, writeCoalescing, compression));
 
     final ChannelFuture f = b.bind(host, port);
     f.addListener(new GenericFutureListener<Future<? super Void>>() {
@@ -120,7 +171,11 @@ public class NettyWebsocketTtyBootstrap {
         try {
           doneHandler.accept(future.cause());
         } finally {
-          group.shutdownGracefully();
+          if (ownTransport) {
+            transport.shutdownGracefully();
+            transport = null;
+            ownTransport = false;
+          }
         }
       }
     });
@@ -25,7 +25,9 @@ import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
 import io.netty.handler.stream.ChunkedWriteHandler;
 import io.termd.core.function.Consumer;
+import io.termd.core.http.HttpTtyConnection;
 import io.termd.core.tty.TtyConnection;
+import io.termd.core.tty.netty.WriteCoalescing;
 
 
 /**
@@ -36,6 +38,8 @@ public class TtyServerInitializer extends ChannelInitializer<SocketChannel> {
   private final ChannelGroup group;
   private final Consumer<TtyConnection> handler;
   private String httpResourcePath;
+  private WriteCoalescing writeCoalescing;
+  private WebSocketCompression compression;
 
   public TtyServerInitializer(ChannelGroup group, Consumer<TtyConnection> handler) {
     this(group, handler, null);
@@ -47,9 +51,22 @@ public class TtyServerInitializer extends ChannelInitializer<SocketChannel> {
       this.httpResourcePath = httpResourcePath;
   }
 
+  public TtyServerInitializer(ChannelGroup group, Consumer<TtyConnection> handler, String httpResourcePath, WriteCoalescing writeCoalescing) {
+    this(group, handler, httpResourcePath);
+    this.writeCoalescing = writeCoalescing;
+  }
+
+  public TtyServerInitializer(ChannelGroup group, Consumer<TtyConnection> handler, String httpResourcePath, WriteCoalescing writeCoalescing, WebSocketCompression compression) {
+    this(group, handler, httpResourcePath, writeCoalescing);
+    this.compression = compression;
+  }
+
   @Override
   protected void initChannel(SocketChannel ch) throws Exception {
     ChannelPipeline pipeline = ch.pipeline();
+    if (writeCoalescing != null) {
+      pipeline.addLast(writeCoalescing.newHandler());
+    }
     pipeline.addLast(new HttpServerCodec());
     pipeline.addLast(new ChunkedWriteHandler());
     pipeline.addLast(new HttpObjectAggregator(64 * 1024));
@@ -61,7 +78,10 @@ public class TtyServerInitializer extends ChannelInitializer<SocketChannel> {
         }
 
     pipeline.addLast(httpRequestHandler);
-    pipeline.addLast(new WebSocketServerProtocolHandler("/ws"));
+    if (compression != null) {
+      pipeline.addLast(compression.newHandler());
+    }
+    pipeline.addLast(new WebSocketServerProtocolHandler("/ws", HttpTtyConnection.BINARY_PROTOCOL, compression != null));
     pipeline.addLast(new TtyWebSocketFrameHandler(group, handler, HttpRequestHandler.class));
   }
 }
@@ -21,25 +21,33 @@ import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.group.ChannelGroup;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
 import io.termd.core.function.Consumer;
 import io.termd.core.http.HttpTtyConnection;
 import io.termd.core.tty.TtyConnection;
 
-import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 /**
+ * Bridge the websocket frames to an {@link HttpTtyConnection}, the connection uses the binary messages when the
+ * client negotiates the {@link HttpTtyConnection#BINARY_PROTOCOL} subprotocol and the json text messages otherwise.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
-public class TtyWebSocketFrameHandler extends SimpleChannelInboundHandler<TextWebSocketFrame> {
+public class TtyWebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
+
+  private static final int MAX_INBOUND_CHUNK = 16 * 1024;
 
   private final ChannelGroup group;
   private final Consumer<TtyConnection> handler;
   private ChannelHandlerContext context;
   private HttpTtyConnection conn;
   private Class removingHandlerClass;
+  private boolean binary;
+  private byte[] inbound;
 
   /**
    * Create TtyWebSocketFrameHandler
@@ -62,7 +70,8 @@ public class TtyWebSocketFrameHandler extends SimpleChannelInboundHandler<TextWe
 
   @Override
   public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
-    if (evt == WebSocketServerProtocolHandler.ServerHandshakeStateEvent.HANDSHAKE_COMPLETE) {
+    if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete) {
+      binary = HttpTtyConnection.BINARY_PROTOCOL.equals(((WebSocketServerProtocolHandler.HandshakeComplete) evt).selectedSubprotocol());
       if (removingHandlerClass != null) {
         ctx.pipeline().remove(removingHandlerClass);
       }
@@ -70,27 +79,54 @@ public class TtyWebSocketFrameHandler extends SimpleChannelInboundHandler<TextWe
       conn = new HttpTtyConnection() {
         @Override
         protected void write(byte[] buffer) {
+          write(buffer, 0, buffer.length);
+        }
+
+        @Override
+        protected void write(byte[] buffer, int offset, int length) {
           final ChannelHandlerContext ctx = context;
           if (ctx == null) {
             return;
           }
-          final byte[] copy = Arrays.copyOf(buffer, buffer.length);
+          // only use the pooled allocator on the event loop, it creates a thread local cache in other threads
+          boolean inEventLoop = ctx.executor().inEventLoop();
+          int capacity = binary ? length + 1 : length;
+          final ByteBuf byteBuf = inEventLoop ? ctx.alloc().buffer(capacity, capacity) : Unpooled.buffer(capacity, capacity);
+          if (binary) {
+            byteBuf.writeByte(OP_DATA);
+          }
+          byteBuf.writeBytes(buffer, offset, length);
           Runnable writeTask = new Runnable() {
             @Override
             public void run() {
               if (context != null && ctx.channel().isActive()) {
-                ByteBuf byteBuf = Unpooled.wrappedBuffer(copy);
-                ctx.writeAndFlush(new TextWebSocketFrame(byteBuf));
+                ctx.writeAndFlush(binary ? new BinaryWebSocketFrame(byteBuf) : new TextWebSocketFrame(byteBuf));
+              } else {
+                byteBuf.release();
               }
             }
           };
-          if (ctx.executor().inEventLoop()) {
+          if (inEventLoop) {
             writeTask.run();
           } else {
             ctx.executor().execute(writeTask);
           }
         }
 
+        @Override
+        protected void ack() {
+          ChannelHandlerContext ctx = context;
+          if (ctx != null) {
+            ctx.writeAndFlush(new BinaryWebSocketFrame(ctx.alloc().buffer(1, 1).writeByte(OP_ACK)));
+          }
+        }
+
+        @Override
+        public boolean isWritable() {
+          ChannelHandlerContext ctx = context;
+          return ctx != null && ctx.channel().isWritable();
+        }
+
         @Override
         public void schedule(Runnable task, long delay, TimeUnit unit) {
           if (context != null) {
@@ -132,6 +168,17 @@ public class TtyWebSocketFrameHandler extends SimpleChannelInboundHandler<TextWe
     }
   }
 
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+    if (conn != null) {
+      Consumer<Boolean> writabilityHandler = conn.getWritabilityHandler();
+      if (writabilityHandler != null) {
+        writabilityHandler.accept(ctx.channel().isWritable());
+      }
+    }
+    super.channelWritabilityChanged(ctx);
+  }
+
   @Override
   public void channelInactive(ChannelHandlerContext ctx) throws Exception {
     HttpTtyConnection tmp = conn;
@@ -145,7 +192,25 @@ public class TtyWebSocketFrameHandler extends SimpleChannelInboundHandler<TextWe
     }
   }
 
-  public void channelRead0(ChannelHandlerContext ctx, TextWebSocketFrame msg) throws Exception {
-    conn.writeToDecoder(msg.text());
+  public void channelRead0(ChannelHandlerContext ctx, WebSocketFrame msg) throws Exception {
+    if (msg instanceof TextWebSocketFrame) {
+      conn.writeToDecoder(((TextWebSocketFrame) msg).text());
+    } else if (msg instanceof BinaryWebSocketFrame) {
+      ByteBuf buf = msg.content();
+      int length = buf.readableBytes();
+      if (buf.hasArray()) {
+        conn.readBinary(buf.array(), buf.arrayOffset() + buf.readerIndex(), length);
+      } else if (length <= MAX_INBOUND_CHUNK) {
+        if (inbound == null || inbound.length < length) {
+          inbound = new byte[Math.max(length, 256)];
+        }
+        buf.getBytes(buf.readerIndex(), inbound, 0, length);
+        conn.readBinary(inbound, 0, length);
+      } else {
+        byte[] bytes = new byte[length];
+        buf.getBytes(buf.readerIndex(), bytes);
+        conn.readBinary(bytes, 0, length);
+      }
+    }
   }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.http.netty;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilter;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilterProvider;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+
+/**
+ * Configures the permessage-deflate compression of the websocket messages, the compression is used when the
+ * client offers the extension during the handshake.<p/>
+ *
+ * The messages smaller than the {@link #setThreshold(int) threshold}, like the echo of a keystroke, are sent
+ * uncompressed, the other messages share the compression context of the connection.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class WebSocketCompression {
+
+  private volatile int compressionLevel = 6;
+  private volatile int threshold = 64;
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  /**
+   * Set the zlib level of the compression.
+   *
+   * @param compressionLevel the level from {@code 0} (no compression) to {@code 9} (best compression)
+   * @return this object
+   */
+  public WebSocketCompression setCompressionLevel(int compressionLevel) {
+    if (compressionLevel < 0 || compressionLevel > 9) {
+      throw new IllegalArgumentException("Invalid compression level " + compressionLevel);
+    }
+    this.compressionLevel = compressionLevel;
+    return this;
+  }
+
+  public int getThreshold() {
+    return threshold;
+  }
+
+  /**
+   * Set the size in bytes below which a message is sent uncompressed.
+   *
+   * @param threshold the threshold in bytes
+   * @return this object
+   */
+  public WebSocketCompression setThreshold(int threshold) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("Invalid threshold " + threshold);
+    }
+    this.threshold = threshold;
+    return this;
+  }
+
+  /**
+   * Create the handler for a channel, it must be added to the pipeline after the http codec and before the
+   * websocket protocol handler, the websocket protocol handler must allow the extensions.
+   *
+   * @return the handler
+   */
+  public ChannelHandler newHandler() {
+    return new WebSocketServerExtensionHandler(newHandshaker());
+  }
+
+  PerMessageDeflateServerExtensionHandshaker newHandshaker() {
+    final int threshold = this.threshold;
+    final WebSocketExtensionFilter encoderFilter = new WebSocketExtensionFilter() {
+      @Override
+      public boolean mustSkip(WebSocketFrame frame) {
+        return frame.content().readableBytes() < threshold;
+      }
+    };
+    WebSocketExtensionFilterProvider filterProvider = new WebSocketExtensionFilterProvider() {
+      @Override
+      public WebSocketExtensionFilter encoderFilter() {
+        return encoderFilter;
+      }
+      @Override
+      public WebSocketExtensionFilter decoderFilter() {
+        return WebSocketExtensionFilter.NEVER_SKIP;
+      }
+    };
+    // The JDK deflater only supports the default window, the client window is not constrained
+    return new PerMessageDeflateServerExtensionHandshaker(
+        compressionLevel, false, PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE, false, false, filterProvider);
+  }
+}
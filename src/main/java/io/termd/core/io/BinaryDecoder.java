@@ -21,44 +21,87 @@ import io.termd.core.util.Helper;
 
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
-import java.nio.IntBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 
 /**
+ * Decodes bytes to code points.<p/>
+ *
+ * The decoder works with fixed size buffers allocated once: the input is staged in a byte buffer that also
+ * retains the trailing bytes of an incomplete multibyte sequence between writes, the chars are decoded
+ * in a char buffer and the resulting code points are delivered to a {@link CodePointSink} as slices of
+ * a reusable array. A high surrogate decoded at the end of a chunk is kept until its low surrogate is
+ * decoded, malformed input and unpaired surrogates are replaced by {@code U+FFFD}.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
 public class BinaryDecoder {
 
-  private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+  private static final int REPLACEMENT_CHAR = 0xFFFD;
+  private static final int MIN_BYTE_BUFFER_SIZE = 16;
 
   private CharsetDecoder decoder;
-  private ByteBuffer bBuf;
+  private final ByteBuffer bBuf;
   private final CharBuffer cBuf;
-  private final Consumer<int[]> onChar;
+  private final int[] codePoints;
+  private char highSurrogate;
+  private final CodePointSink onChar;
 
   public BinaryDecoder(Charset charset, Consumer<int[]> onChar) {
     this(2, charset, onChar);
   }
 
-  public BinaryDecoder(int initialSize, Charset charset, Consumer<int[]> onChar) {
+  public BinaryDecoder(int initialSize, Charset charset, final Consumer<int[]> onChar) {
+    this(initialSize, charset, new CodePointSink() {
+      @Override
+      public void accept(int[] codePoints, int offset, int length) {
+        Helper.accept(onChar, codePoints, offset, length);
+      }
+      @Override
+      public void accept(int[] codePoints) {
+        onChar.accept(codePoints);
+      }
+    });
+  }
+
+  public BinaryDecoder(Charset charset, CodePointSink onChar) {
+    this(2, charset, onChar);
+  }
+
+  /**
+   * Create a decoder delivering slices of its internal code point buffer to the sink, the sink must copy
+   * the code points it wants to retain.
+   *
+   * @param initialSize the size of the char buffer, i.e the max number of code points delivered at once
+   * @param charset the charset
+   * @param onChar the sink
+   */
+  public BinaryDecoder(int initialSize, Charset charset, CodePointSink onChar) {
     if (initialSize < 2) {
       throw new IllegalArgumentException("Initial size must be at least 2");
     }
-    decoder = charset.newDecoder();
-    bBuf = EMPTY;
+    decoder = newDecoder(charset);
+    bBuf = ByteBuffer.allocate(Math.max(initialSize, MIN_BYTE_BUFFER_SIZE));
     cBuf = CharBuffer.allocate(initialSize); // We need at least 2
+    codePoints = new int[initialSize + 1];
     this.onChar = onChar;
   }
 
+  private static CharsetDecoder newDecoder(Charset charset) {
+    return charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
   /**
    * Set a new charset on the decoder.
    *
    * @param charset the new charset
    */
   public void setCharset(Charset charset) {
-    decoder = charset.newDecoder();
+    decoder = newDecoder(charset);
   }
 
   public void write(byte[] data) {
@@ -66,75 +109,53 @@ public class BinaryDecoder {
   }
 
   public void write(byte[] data, int start, int len) {
-
-    // Fill the byte buffer
-    int remaining = bBuf.remaining();
-    if (len > remaining) {
-      // Allocate a new buffer
-      ByteBuffer tmp = bBuf;
-      int length = tmp.position() + len;
-      bBuf = ByteBuffer.allocate(length);
-      tmp.flip();
-      bBuf.put(tmp);
+    while (len > 0) {
+      int amount = Math.min(len, bBuf.remaining());
+      bBuf.put(data, start, amount);
+      start += amount;
+      len -= amount;
+      bBuf.flip();
+      drain();
+      bBuf.compact();
     }
-    bBuf.put(data, start, len);
-    bBuf.flip();
+  }
 
-    // Drain the byte buffer
+  /**
+   * Drain the byte buffer, the bytes of an incomplete sequence are left in the buffer.
+   */
+  private void drain() {
     while (true) {
-      IntBuffer iBuf = IntBuffer.allocate(bBuf.remaining());
       CoderResult result = decoder.decode(bBuf, cBuf, false);
       cBuf.flip();
+      int length = 0;
       while (cBuf.hasRemaining()) {
         char c = cBuf.get();
-        if (isSurrogate(c)) {
-          if (Character.isHighSurrogate(c)) {
-            if (cBuf.hasRemaining()) {
-              char low = cBuf.get();
-              if (Character.isLowSurrogate(low)) {
-                int codePoint = Character.toCodePoint(c, low);
-                if (Character.isValidCodePoint(codePoint)) {
-                  iBuf.put(codePoint);
-                } else {
-                  throw new UnsupportedOperationException("Handle me gracefully");
-                }
-              } else {
-                throw new UnsupportedOperationException("Handle me gracefully");
-              }
-            } else {
-              throw new UnsupportedOperationException("Handle me gracefully");
-            }
-          } else {
-            throw new UnsupportedOperationException("Handle me gracefully");
+        if (highSurrogate != 0) {
+          char high = highSurrogate;
+          highSurrogate = 0;
+          if (Character.isLowSurrogate(c)) {
+            codePoints[length++] = Character.toCodePoint(high, c);
+            continue;
           }
-        } else {
-          iBuf.put((int) c);
+          codePoints[length++] = REPLACEMENT_CHAR;
         }
-      }
-      iBuf.flip();
-      int[] codePoints = new int[iBuf.limit()];
-      iBuf.get(codePoints);
-      onChar.accept(codePoints);
-      cBuf.compact();
-      if (result.isOverflow()) {
-        // We still have work to do
-      } else if (result.isUnderflow()) {
-        if (bBuf.hasRemaining()) {
-          // We need more input
-          Helper.noop();
+        if (Character.isHighSurrogate(c)) {
+          // Wait for the low surrogate that may be decoded in the next chunk
+          highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+          codePoints[length++] = REPLACEMENT_CHAR;
         } else {
-          // We are done
-          Helper.noop();
+          codePoints[length++] = c;
         }
+      }
+      cBuf.clear();
+      if (length > 0) {
+        onChar.accept(codePoints, 0, length);
+      }
+      if (!result.isOverflow()) {
+        // Underflow : we need more input
         break;
-      } else {
-        throw new UnsupportedOperationException("Handle me gracefully");
       }
     }
-    bBuf.compact();
-  }
-
-  private static boolean isSurrogate(char ch) {
-    return ch >= '\uD800' && ch < ('\uDFFF' + 1);
   }
 }
@@ -21,18 +21,48 @@ import io.termd.core.function.Consumer;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.Arrays;
 
 /**
+ * Encodes code points to bytes.<p/>
+ *
+ * The code points are encoded in a byte buffer allocated once per encoder, the {@code US-ASCII}, {@code ISO-8859-1}
+ * and {@code UTF-8} charsets are encoded directly from the code points, any other charset uses a {@link CharsetEncoder}
+ * created when the charset is set. A {@link ByteSink} receives slices of the byte buffer, any other consumer receives
+ * a copy it can retain. Large inputs are delivered in several chunks, a chunk never splits the encoding of a code point.<p/>
+ *
+ * When {@link #setOnlcr(boolean) onlcr} is enabled the {@code \n} code points are translated to {@code \r\n} while
+ * encoding, like {@link io.termd.core.tty.TtyOutputMode} does.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
-public class BinaryEncoder implements Consumer<int[]> {
+public class BinaryEncoder implements CodePointSink {
 
-  private volatile Charset charset;
+  private static final int DEFAULT_BUFFER_SIZE = 8192;
+  private static final int MAX_BYTES_PER_CODE_POINT = 4;
+  private static final byte REPLACEMENT_BYTE = '?';
+  private static final Charset US_ASCII = Charset.forName("US-ASCII");
+  private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private volatile Engine engine;
+  private volatile boolean onlcr;
+  private final byte[] buffer;
   final Consumer<byte[]> onByte;
 
   public BinaryEncoder(Charset charset, Consumer<byte[]> onByte) {
-    this.charset = charset;
+    this(DEFAULT_BUFFER_SIZE, charset, onByte);
+  }
+
+  public BinaryEncoder(int bufferSize, Charset charset, Consumer<byte[]> onByte) {
+    if (bufferSize < 16) {
+      throw new IllegalArgumentException("Buffer size must be at least 16");
+    }
+    this.buffer = new byte[bufferSize];
+    this.engine = createEngine(charset);
     this.onByte = onByte;
   }
 
@@ -42,27 +72,190 @@ public class BinaryEncoder implements Consumer<int[]> {
    * @param charset the new charset
    */
   public void setCharset(Charset charset) {
-    this.charset = charset;
+    this.engine = createEngine(charset);
+  }
+
+  public boolean isOnlcr() {
+    return onlcr;
+  }
+
+  /**
+   * Enable or disable the translation of {@code \n} to {@code \r\n}, equivalent to {@code stty onlcr}.
+   *
+   * @param onlcr true to translate
+   */
+  public void setOnlcr(boolean onlcr) {
+    this.onlcr = onlcr;
   }
 
   @Override
   public void accept(int[] codePoints) {
-    final char[] tmp = new char[2];
-    int capacity = 0;
-    for (int codePoint : codePoints) {
-      capacity += Character.charCount(codePoint);
+    accept(codePoints, 0, codePoints.length);
+  }
+
+  @Override
+  public synchronized void accept(int[] codePoints, int offset, int length) {
+    engine.encode(codePoints, offset, offset + length, onlcr);
+  }
+
+  private void flush(int length) {
+    if (length > 0) {
+      if (onByte instanceof ByteSink) {
+        ((ByteSink) onByte).accept(buffer, 0, length);
+      } else {
+        onByte.accept(Arrays.copyOf(buffer, length));
+      }
+    }
+  }
+
+  private Engine createEngine(Charset charset) {
+    if (charset.equals(UTF_8)) {
+      return new Utf8Engine();
+    } else if (charset.equals(US_ASCII)) {
+      return new SingleByteEngine(0x80);
+    } else if (charset.equals(ISO_8859_1)) {
+      return new SingleByteEngine(0x100);
+    } else {
+      return new CharsetEngine(charset);
+    }
+  }
+
+  private abstract static class Engine {
+    abstract void encode(int[] codePoints, int from, int to, boolean onlcr);
+  }
+
+  /**
+   * Encode charsets mapping the code points lower than a limit to a single byte.
+   */
+  private class SingleByteEngine extends Engine {
+
+    private final int limit;
+
+    SingleByteEngine(int limit) {
+      this.limit = limit;
     }
-    CharBuffer charBuf = CharBuffer.allocate(capacity);
-    for (int codePoint : codePoints) {
-      int size = Character.toChars(codePoint, tmp, 0);
-      charBuf.put(tmp, 0, size);
+
+    @Override
+    void encode(int[] codePoints, int from, int to, boolean onlcr) {
+      byte[] buf = buffer;
+      int max = buf.length - 2;
+      int pos = 0;
+      while (from < to) {
+        if (pos > max) {
+          flush(pos);
+          pos = 0;
+        }
+        int cp = codePoints[from++];
+        if (cp == '\n' && onlcr) {
+          buf[pos++] = '\r';
+        }
+        buf[pos++] = cp >= 0 && cp < limit ? (byte) cp : REPLACEMENT_BYTE;
+      }
+      flush(pos);
     }
-    charBuf.flip();
-    ByteBuffer bytesBuf = charset.encode(charBuf);
-    byte[] bytes = bytesBuf.array();
-    if (bytesBuf.limit() < bytesBuf.array().length) {
-      bytes = Arrays.copyOf(bytes, bytesBuf.limit());
+  }
+
+  private class Utf8Engine extends Engine {
+
+    @Override
+    void encode(int[] codePoints, int from, int to, boolean onlcr) {
+      byte[] buf = buffer;
+      int max = buf.length - MAX_BYTES_PER_CODE_POINT;
+      int pos = 0;
+      while (from < to) {
+        if (pos > max) {
+          flush(pos);
+          pos = 0;
+        }
+        int cp = codePoints[from++];
+        if (cp >= 0 && cp < 0x80) {
+          if (cp == '\n' && onlcr) {
+            buf[pos++] = '\r';
+          }
+          buf[pos++] = (byte) cp;
+        } else if (cp >= 0x80 && cp < 0x800) {
+          buf[pos++] = (byte) (0xC0 | (cp >> 6));
+          buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (cp >= 0x800 && cp < 0x10000) {
+          if (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE) {
+            buf[pos++] = REPLACEMENT_BYTE;
+          } else {
+            buf[pos++] = (byte) (0xE0 | (cp >> 12));
+            buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+          }
+        } else if (cp >= 0x10000 && cp <= Character.MAX_CODE_POINT) {
+          buf[pos++] = (byte) (0xF0 | (cp >> 18));
+          buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+          buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+          buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+        } else {
+          buf[pos++] = REPLACEMENT_BYTE;
+        }
+      }
+      flush(pos);
+    }
+  }
+
+  private class CharsetEngine extends Engine {
+
+    private final CharsetEncoder encoder;
+    private final CharBuffer cBuf;
+    private final ByteBuffer bBuf;
+    private final char[] chars = new char[2];
+
+    CharsetEngine(Charset charset) {
+      encoder = charset.newEncoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      cBuf = CharBuffer.allocate(buffer.length / 2);
+      bBuf = ByteBuffer.wrap(buffer);
+    }
+
+    @Override
+    void encode(int[] codePoints, int from, int to, boolean onlcr) {
+      try {
+        while (from < to) {
+          while (from < to && cBuf.remaining() >= 2) {
+            int cp = codePoints[from++];
+            if (cp == '\n' && onlcr) {
+              cBuf.put('\r');
+              cBuf.put('\n');
+            } else if (Character.isValidCodePoint(cp)) {
+              cBuf.put(chars, 0, Character.toChars(cp, chars, 0));
+            } else {
+              cBuf.put('?');
+            }
+          }
+          cBuf.flip();
+          encode(from == to);
+          cBuf.compact();
+        }
+        while (encoder.flush(bBuf).isOverflow()) {
+          drain();
+        }
+        drain();
+      } finally {
+        encoder.reset();
+        cBuf.clear();
+        bBuf.clear();
+      }
+    }
+
+    private void encode(boolean endOfInput) {
+      while (true) {
+        CoderResult result = encoder.encode(cBuf, bBuf, endOfInput);
+        if (result.isOverflow()) {
+          drain();
+        } else {
+          break;
+        }
+      }
+    }
+
+    private void drain() {
+      flush(bBuf.position());
+      bBuf.clear();
     }
-    onByte.accept(bytes);
   }
 }
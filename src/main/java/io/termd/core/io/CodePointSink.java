@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.io;
+
+import io.termd.core.function.Consumer;
+
+/**
+ * A consumer of code points that can receive a slice of a reusable buffer.<p/>
+ *
+ * The array passed to {@link #accept(int[], int, int)} is owned by the caller and is only valid for the
+ * duration of the call, an implementation that needs to retain the code points must copy them. The array
+ * passed to {@link #accept(Object)} is owned by the sink as usual.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public interface CodePointSink extends Consumer<int[]> {
+
+  /**
+   * Consume a slice of code points.
+   *
+   * @param codePoints the code points buffer
+   * @param offset the offset of the first code point
+   * @param length the number of code points
+   */
+  void accept(int[] codePoints, int offset, int length);
+
+}
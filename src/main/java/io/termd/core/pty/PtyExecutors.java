@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 Julien Viet
+ *
+ * Julien Viet licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package io.termd.core.pty;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executors running the {@link PtyMaster} processes, a process occupies a thread of its executor until its
+ * output is consumed and it has exited.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public final class PtyExecutors {
+
+  /**
+   * The max number of pooled threads of the default bounded executor.
+   */
+  public static final int DEFAULT_MAX_THREADS = 128;
+
+  private static Executor defaultExecutor;
+
+  /**
+   * @return true when the JVM supports the virtual threads
+   */
+  public static boolean isVirtualThreadAvailable() {
+    try {
+      Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Create an executor running each process in a new virtual thread.
+   *
+   * @return the executor
+   * @throws UnsupportedOperationException when the virtual threads are not available
+   */
+  public static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (NoSuchMethodException e) {
+      throw new UnsupportedOperationException("Virtual threads are not available");
+    } catch (Exception e) {
+      throw new UnsupportedOperationException("Could not create the virtual thread executor", e);
+    }
+  }
+
+  /**
+   * Create an executor running the processes on a pool of at most {@code maxThreads} daemon threads. A process
+   * holds its thread until it exits, so a process started when all the pool threads are busy runs in a new thread
+   * terminated with the process instead of waiting for a long-running process to exit. The idle threads of the
+   * pool are terminated after one minute.
+   *
+   * @param maxThreads the max number of pooled threads
+   * @return the executor
+   */
+  public static ExecutorService newBoundedExecutor(int maxThreads) {
+    if (maxThreads < 1) {
+      throw new IllegalArgumentException("Invalid max threads " + maxThreads);
+    }
+    final ThreadFactory factory = new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "termd-pty-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+    return new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), factory,
+        new RejectedExecutionHandler() {
+      @Override
+      public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+          throw new RejectedExecutionException("Executor shut down");
+        }
+        // The pool is saturated
+        factory.newThread(r).start();
+      }
+    });
+  }
+
+  /**
+   * @return the executor shared by default, it uses the virtual threads when they are available and otherwise a
+   *         bounded executor pooling {@link #DEFAULT_MAX_THREADS} threads
+   */
+  public static synchronized Executor defaultExecutor() {
+    if (defaultExecutor == null) {
+      defaultExecutor = isVirtualThreadAvailable() ? newVirtualThreadExecutor() : newBoundedExecutor(DEFAULT_MAX_THREADS);
+    }
+    return defaultExecutor;
+  }
+
+  private PtyExecutors() {
+  }
+}
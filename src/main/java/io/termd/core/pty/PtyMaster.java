@@ -20,12 +20,27 @@ import io.termd.core.function.BiConsumer;
 import io.termd.core.function.Consumer;
 import io.termd.core.io.BinaryDecoder;
 import io.termd.core.util.Helper;
+import io.termd.core.util.Logging;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Runs a process and pipes its output to a consumer. The standard error of the process is merged into its standard
+ * output, so a process needs a single thread that reads its output and then waits for its exit. The process runs in
+ * a new thread with {@link #start()} or in a thread of an executor with {@link #start(Executor)}, see
+ * {@link PtyExecutors}, in both cases the process is stopped with {@link #interruptProcess()}.<p/>
+ *
+ * This class still extends {@link Thread} for the existing callers, this is deprecated and will be removed: the
+ * {@link Thread} methods only reflect a process started with {@link #start()}, use {@link #isRunning()} and
+ * {@link #awaitTermination()} instead of {@link #isAlive()} and {@link #join()}.<p/>
+ *
  * todo : integrate with
  * - https://github.com/traff/pty4j
  * - https://github.com/jawi/JPty
@@ -37,14 +52,30 @@ public class PtyMaster extends Thread {
 
   private static final Charset UTF_8 = Charset.forName("UTF-8");
 
-  private int bufferSize = 512;
+  /**
+   * The default size of the buffer reading the process output.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 4096;
+
+  private int bufferSize = DEFAULT_BUFFER_SIZE;
   private final String line;
   private BiConsumer<Status, Status> changeHandler;
   private final Consumer<Void> doneHandler;
   private final Consumer<int[]> stdout;
-  private Status status;
-  private Process process;
+  private volatile Status status;
+  private volatile Process process;
+  private int exitValue = -1;
+  private boolean started;
+  private boolean terminated;
   private boolean interrupted;
+  private boolean paused;
+  private final Object lock = new Object();
+  private final Runnable task = new Runnable() {
+    @Override
+    public void run() {
+      execute();
+    }
+  };
 
   public PtyMaster(String line, Consumer<int[]> stdout, Consumer<Void> doneHandler) {
     this.line = line;
@@ -57,6 +88,12 @@ public class PtyMaster extends Thread {
     return bufferSize;
   }
 
+  /**
+   * Set the size of the buffer reading the process output, it is also the max number of code points delivered at once
+   * to the output consumer.
+   *
+   * @param bufferSize the buffer size
+   */
   public void setBufferSize(int bufferSize) {
     if (bufferSize < 2) {
       throw new IllegalStateException("Buffer size is too small");
@@ -68,97 +105,251 @@ public class PtyMaster extends Thread {
     return changeHandler;
   }
 
+  /**
+   * Set an handler called when the status changes: the process is {@link Status#RUNNING} once started, then
+   * {@link Status#COMPLETED} or {@link Status#FAILED} according to its exit value, {@link Status#INTERRUPTED} when
+   * it was interrupted. A process that cannot be started goes from {@link Status#NEW} to {@link Status#FAILED}.
+   *
+   * @param changeHandler the handler
+   */
   public void setChangeHandler(BiConsumer<Status, Status> changeHandler) {
     this.changeHandler = changeHandler;
   }
 
-  private class Pipe extends Thread {
+  public Process getProcess() {
+    return process;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  /**
+   * @return the exit value of the process or {@code -1} when it has not exited
+   */
+  public int getExitValue() {
+    return exitValue;
+  }
 
-    private final Charset charset = UTF_8; // We suppose the process out/err uses UTF-8
-    private final InputStream in;
-    private final BinaryDecoder decoder = new BinaryDecoder(bufferSize, charset, new Consumer<int[]>() {
-      @Override
-      public void accept(int[] ints) {
-        stdout.accept(ints);
+  public void interruptProcess() {
+    Process process;
+    synchronized (lock) {
+      if (interrupted) {
+        return;
       }
-    });
+      interrupted = true;
+      process = this.process;
+      // Let the paused pipe read the end of the stream
+      lock.notifyAll();
+    }
+    if (process != null) {
+      process.destroy();
+    }
+  }
 
-    public Pipe(InputStream in) {
-      this.in = in;
+  /**
+   * Stop reading the process output, the process blocks when its output pipe is full. This is used when the
+   * consumer of the output does not keep up.
+   */
+  public void pauseOutput() {
+    synchronized (lock) {
+      paused = true;
     }
+  }
 
-    @Override
-    public void run() {
-      byte[] buffer = new byte[512];
-      while (true) {
+  /**
+   * Resume reading the process output.
+   */
+  public void resumeOutput() {
+    synchronized (lock) {
+      paused = false;
+      lock.notifyAll();
+    }
+  }
+
+  public boolean isOutputPaused() {
+    synchronized (lock) {
+      return paused;
+    }
+  }
+
+  private void awaitResumed() throws InterruptedIOException {
+    synchronized (lock) {
+      while (paused && !interrupted) {
         try {
-          int l = in.read(buffer);
-          if (l == -1) {
-            break;
-          }
-          decoder.write(buffer, 0, l);
-        } catch (IOException e) {
-          e.printStackTrace();
-          break; //break endless loop. "IOException: Stream closed" can be thrown when process is destroyed https://bugs.openjdk.java.net/browse/JDK-5101298
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
         }
       }
     }
   }
 
-  public Process getProcess() {
-    return process;
+  /**
+   * Run the process in a new thread.
+   */
+  @Override
+  public synchronized void start() {
+    markStarted();
+    super.start();
   }
 
-  public Status getStatus() {
-    return status;
+  /**
+   * Run the process in a thread of the {@code executor}.
+   *
+   * @param executor the executor
+   */
+  public void start(Executor executor) {
+    markStarted();
+    executor.execute(task);
   }
 
-  public void interruptProcess() {
-    if (!interrupted) {
-      interrupted = true;
-      process.destroy();
+  private void markStarted() {
+    synchronized (lock) {
+      if (started) {
+        throw new IllegalStateException("Already started");
+      }
+      started = true;
     }
   }
 
+  /**
+   * Run the process in the current thread, this is called by the thread started with {@link #start()}.
+   */
   @Override
   public void run() {
-    ProcessBuilder builder = new ProcessBuilder(line.split("\\s+"));
-    try {
-      process = builder.start();
-      setStatus(Status.RUNNING);
-      Pipe stdout = new Pipe(process.getInputStream());
-      Pipe stderr = new Pipe(process.getErrorStream());
-      stdout.start();
-      stderr.start();
-      try {
-        int exitValue = process.waitFor();
-        if (exitValue == 0) {
-          setStatus(Status.COMPLETED);
-        } else {
-          setStatus(Status.FAILED);
+    task.run();
+  }
+
+  /**
+   * @return true when the process was started and has not terminated yet
+   */
+  public boolean isRunning() {
+    synchronized (lock) {
+      return started && !terminated;
+    }
+  }
+
+  /**
+   * Wait until the process has terminated and the done handler was called.
+   *
+   * @throws InterruptedException if the current thread is interrupted while waiting
+   */
+  public void awaitTermination() throws InterruptedException {
+    synchronized (lock) {
+      while (!terminated) {
+        lock.wait();
+      }
+    }
+  }
+
+  /**
+   * Wait until the process has terminated and the done handler was called or the timeout elapses.
+   *
+   * @param timeout the max time to wait
+   * @param unit the unit of the timeout
+   * @return true when the process has terminated, false when the timeout elapsed
+   * @throws InterruptedException if the current thread is interrupted while waiting
+   */
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    synchronized (lock) {
+      while (!terminated) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
         }
-      } catch (InterruptedException e) {
-        setStatus(Status.INTERRUPTED);
-        Thread.currentThread().interrupt();
+        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
       }
-      try {
-        stdout.join();
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
+      return true;
+    }
+  }
+
+  private void execute() {
+    try {
+      runProcess();
+    } finally {
+      synchronized (lock) {
+        terminated = true;
+        lock.notifyAll();
       }
-      try {
-        stderr.join();
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
+    }
+  }
+
+  private void runProcess() {
+    List<String> command = parseCommand(line);
+    if (command.isEmpty()) {
+      setStatus(Status.FAILED);
+      doneHandler.accept(null);
+      return;
+    }
+    ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+    try {
+      Process p = builder.start();
+      boolean destroy;
+      synchronized (lock) {
+        process = p;
+        destroy = interrupted;
+      }
+      if (destroy) {
+        p.destroy();
       }
     } catch (IOException e) {
       stdout.accept(Helper.toCodePoints(e.getMessage() + "\r\n"));
+      setStatus(Status.FAILED);
+      doneHandler.accept(null);
+      return;
+    }
+    setStatus(Status.RUNNING);
+    pipe(process.getInputStream());
+    try {
+      exitValue = process.waitFor();
+      if (isProcessInterrupted()) {
+        setStatus(Status.INTERRUPTED);
+      } else if (exitValue == 0) {
+        setStatus(Status.COMPLETED);
+      } else {
+        setStatus(Status.FAILED);
+      }
+    } catch (InterruptedException e) {
+      process.destroy();
+      setStatus(Status.INTERRUPTED);
+      Thread.currentThread().interrupt();
     }
 
     //
     doneHandler.accept(null);
   }
 
+  /**
+   * Read the process output until the end of the stream.
+   */
+  private void pipe(InputStream in) {
+    BinaryDecoder decoder = new BinaryDecoder(bufferSize, UTF_8, stdout); // We suppose the process output uses UTF-8
+    byte[] buffer = new byte[bufferSize];
+    try {
+      while (true) {
+        awaitResumed();
+        int l = in.read(buffer);
+        if (l == -1) {
+          break;
+        }
+        decoder.write(buffer, 0, l);
+      }
+    } catch (IOException e) {
+      // "IOException: Stream closed" can be thrown when process is destroyed https://bugs.openjdk.java.net/browse/JDK-5101298
+      if (!isProcessInterrupted()) {
+        Logging.logUndeclaredIoError(e);
+      }
+    } finally {
+      try {
+        in.close();
+      } catch (IOException ignore) {
+      }
+    }
+  }
+
   private void setStatus(Status next) {
     Status prev = status;
     status = next;
@@ -166,4 +357,59 @@ public class PtyMaster extends Thread {
       changeHandler.accept(prev, next);
     }
   }
+
+  private boolean isProcessInterrupted() {
+    synchronized (lock) {
+      return interrupted;
+    }
+  }
+
+  /**
+   * Split a command line in arguments separated by whitespace, the single quotes preserve the quoted chars, the double
+   * quotes preserve the quoted chars except the backslash escapes and a backslash escapes the next char otherwise.
+   *
+   * @param line the command line
+   * @return the arguments
+   */
+  static List<String> parseCommand(String line) {
+    List<String> args = new ArrayList<String>();
+    StringBuilder arg = new StringBuilder();
+    boolean inArg = false;
+    char quote = 0;
+    for (int i = 0;i < line.length();i++) {
+      char c = line.charAt(i);
+      if (quote == '\'') {
+        if (c == '\'') {
+          quote = 0;
+        } else {
+          arg.append(c);
+        }
+      } else if (c == '\\' && i + 1 < line.length()) {
+        arg.append(line.charAt(++i));
+        inArg = true;
+      } else if (quote == '"') {
+        if (c == '"') {
+          quote = 0;
+        } else {
+          arg.append(c);
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+        inArg = true;
+      } else if (Character.isWhitespace(c)) {
+        if (inArg) {
+          args.add(arg.toString());
+          arg.setLength(0);
+          inArg = false;
+        }
+      } else {
+        arg.append(c);
+        inArg = true;
+      }
+    }
+    if (inArg) {
+      args.add(arg.toString());
+    }
+    return args;
+  }
 }
@@ -27,6 +27,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.InputStream;
+import java.util.concurrent.Executor;
 
 /**
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
@@ -38,6 +39,7 @@ public class TtyBridge {
   private Consumer<PtyMaster> processListener;
   private Consumer<int[]> processStdoutListener;
   private Consumer<String> processStdinListener;
+  private Executor executor;
 
   public TtyBridge(TtyConnection conn) {
     this.conn = conn;
@@ -70,6 +72,24 @@ public class TtyBridge {
     return this;
   }
 
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Set the executor running the processes, by default the processes run in the {@link PtyExecutors#defaultExecutor()}.
+   * A process holds a thread of the executor until it exits, even when its output is paused, so an executor with
+   * a fixed number of threads and a queue does not start the processes submitted while all its threads run
+   * long-running processes. Such an executor limits the number of concurrent processes.
+   *
+   * @param executor the executor
+   * @return this object
+   */
+  public TtyBridge setExecutor(Executor executor) {
+    this.executor = executor;
+    return this;
+  }
+
   public TtyBridge readline() {
     InputStream inputrc = Keymap.class.getResourceAsStream("inputrc");
     Keymap keymap = new Keymap(inputrc);
@@ -120,6 +140,7 @@ public class TtyBridge {
                   @Override
                   public void accept(Void v) {
                     conn.setEventHandler(null);
+                    conn.setWritabilityHandler(null);
                     conn.execute(new Runnable() {
                       @Override
                       public void run() {
@@ -137,10 +158,25 @@ public class TtyBridge {
           }
         });
 
+        // Stop reading the process output while the connection does not keep up
+        conn.setWritabilityHandler(new Consumer<Boolean>() {
+          @Override
+          public void accept(Boolean writable) {
+            if (writable) {
+              task.resumeOutput();
+            } else {
+              task.pauseOutput();
+            }
+          }
+        });
+        if (!conn.isWritable()) {
+          task.pauseOutput();
+        }
+
         if (processListener != null) {
           processListener.accept(task);
         }
-        task.start();
+        task.start(executor != null ? executor : PtyExecutors.defaultExecutor());
       }
     });
   }
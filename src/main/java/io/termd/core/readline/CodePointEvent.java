@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.readline;
+
+/**
+ * The event of a single code point that is not bound, the events of the basic multilingual plane are interned.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+final class CodePointEvent extends KeyEventSupport {
+
+  // Pages of 256 events allocated on demand, racy initialization is fine as the events are immutable
+  private static final CodePointEvent[][] PAGES = new CodePointEvent[256][];
+
+  static CodePointEvent of(int codePoint) {
+    if (codePoint < 0 || codePoint > 0xFFFF) {
+      return new CodePointEvent(codePoint);
+    }
+    CodePointEvent[] page = PAGES[codePoint >> 8];
+    if (page == null) {
+      page = new CodePointEvent[256];
+      PAGES[codePoint >> 8] = page;
+    }
+    CodePointEvent event = page[codePoint & 0xFF];
+    if (event == null) {
+      event = new CodePointEvent(codePoint);
+      page[codePoint & 0xFF] = event;
+    }
+    return event;
+  }
+
+  private final int codePoint;
+
+  private CodePointEvent(int codePoint) {
+    this.codePoint = codePoint;
+  }
+
+  @Override
+  public int getCodePointAt(int index) throws IndexOutOfBoundsException {
+    if (index != 0) {
+      throw new IndexOutOfBoundsException("Wrong index " + index);
+    }
+    return codePoint;
+  }
+
+  @Override
+  public int length() {
+    return 1;
+  }
+
+  @Override
+  public String toString() {
+    return "key:" + codePoint;
+  }
+}
@@ -141,6 +141,22 @@ public class Completion {
     interaction.resume();
   }
 
+  /**
+   * Display the candidates as they are found, the candidates are added to the returned object from any thread.
+   * The interaction is resumed and the key events are handled by the suggestions until they are ended or
+   * cancelled.
+   *
+   * @return the suggestions
+   */
+  public Suggestions suggestions() {
+    if (!done.compareAndSet(false, true)) {
+      throw new IllegalStateException();
+    }
+    Suggestions suggestions = new Suggestions(interaction);
+    suggestions.start();
+    return suggestions;
+  }
+
   /**
    * End this completion with no modifications.
    */
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.readline;
+
+import io.termd.core.function.Consumer;
+import io.termd.core.function.Supplier;
+import io.termd.core.util.Helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An index of completion candidates built once and shared by the completion handlers of several sessions. The
+ * candidates are kept sorted by code point, the candidates starting with a prefix are a range of the sorted
+ * candidates found with a binary search narrowed one code point at a time and the longest common prefix of the
+ * range is the common prefix of its first and last candidates.<p/>
+ *
+ * The candidates are loaded from the supplier on first use and loaded again after {@link #invalidate()}, the
+ * invalidation handlers are then called, for instance to invalidate the indexes derived from this one. The methods
+ * are thread safe, the candidates returned by the index must not be modified.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class CompletionIndex {
+
+  private static final Comparator<int[]> COMPARATOR = new Comparator<int[]>() {
+    @Override
+    public int compare(int[] a, int[] b) {
+      int len = Math.min(a.length, b.length);
+      for (int i = 0;i < len;i++) {
+        if (a[i] != b[i]) {
+          return a[i] < b[i] ? -1 : 1;
+        }
+      }
+      return a.length - b.length;
+    }
+  };
+
+  /**
+   * Create an index of the candidates.
+   *
+   * @param candidates the candidates
+   * @return the index
+   */
+  public static CompletionIndex create(String... candidates) {
+    List<int[]> list = new ArrayList<int[]>(candidates.length);
+    for (String candidate : candidates) {
+      list.add(Helper.toCodePoints(candidate));
+    }
+    return create(list);
+  }
+
+  /**
+   * Create an index of the candidates.
+   *
+   * @param candidates the candidates
+   * @return the index
+   */
+  public static CompletionIndex create(final Iterable<int[]> candidates) {
+    return new CompletionIndex(new Supplier<Iterable<int[]>>() {
+      @Override
+      public Iterable<int[]> get() {
+        return candidates;
+      }
+    });
+  }
+
+  private final Supplier<? extends Iterable<int[]>> loader;
+  private final List<Consumer<Void>> invalidationHandlers = new CopyOnWriteArrayList<Consumer<Void>>();
+  private volatile int[][] candidates;
+
+  /**
+   * Create an index loading the candidates from a supplier.
+   *
+   * @param loader the supplier of the candidates
+   */
+  public CompletionIndex(Supplier<? extends Iterable<int[]>> loader) {
+    if (loader == null) {
+      throw new NullPointerException("Loader must not be null");
+    }
+    this.loader = loader;
+  }
+
+  /**
+   * Add a handler called when the index is invalidated.
+   *
+   * @param handler the handler
+   * @return this object
+   */
+  public CompletionIndex addInvalidationHandler(Consumer<Void> handler) {
+    invalidationHandlers.add(handler);
+    return this;
+  }
+
+  public CompletionIndex removeInvalidationHandler(Consumer<Void> handler) {
+    invalidationHandlers.remove(handler);
+    return this;
+  }
+
+  /**
+   * Discard the candidates, they are loaded again from the supplier on the next use.
+   */
+  public void invalidate() {
+    synchronized (this) {
+      candidates = null;
+    }
+    for (Consumer<Void> handler : invalidationHandlers) {
+      handler.accept(null);
+    }
+  }
+
+  /**
+   * @return the number of distinct candidates
+   */
+  public int size() {
+    return candidates().length;
+  }
+
+  /**
+   * Find the candidates starting with a prefix.
+   *
+   * @param prefix the prefix
+   * @return the sorted candidates
+   */
+  public List<int[]> find(int[] prefix) {
+    int[][] candidates = candidates();
+    long range = range(candidates, prefix);
+    return Collections.unmodifiableList(Arrays.asList(candidates).subList((int) (range >> 32), (int) range));
+  }
+
+  /**
+   * Find the longest common prefix of the candidates starting with a prefix.
+   *
+   * @param prefix the prefix
+   * @return the longest common prefix or {@code null} when no candidate starts with the prefix
+   */
+  public int[] findLongestCommonPrefix(int[] prefix) {
+    int[][] candidates = candidates();
+    long range = range(candidates, prefix);
+    int from = (int) (range >> 32);
+    int to = (int) range;
+    if (from == to) {
+      return null;
+    }
+    int[] first = candidates[from];
+    int[] last = candidates[to - 1];
+    int len = prefix.length;
+    while (len < first.length && len < last.length && first[len] == last[len]) {
+      len++;
+    }
+    return Arrays.copyOf(first, len);
+  }
+
+  /**
+   * Complete the {@link Completion#prefix() prefix} of a completion with the candidates of this index: a single
+   * candidate is inserted with a terminating space, otherwise the longest common prefix is inserted or the
+   * candidates are suggested when there is nothing to insert.
+   *
+   * @param completion the completion
+   */
+  public void complete(Completion completion) {
+    int[] prefix = completion.prefix();
+    List<int[]> matches = find(prefix);
+    if (matches.isEmpty()) {
+      completion.end();
+    } else if (matches.size() == 1) {
+      int[] match = matches.get(0);
+      completion.complete(Arrays.copyOfRange(match, prefix.length, match.length), true);
+    } else {
+      int[] common = findLongestCommonPrefix(prefix);
+      if (common.length > prefix.length) {
+        completion.complete(Arrays.copyOfRange(common, prefix.length, common.length), false);
+      } else {
+        Suggestions suggestions = completion.suggestions();
+        suggestions.add(matches);
+        suggestions.end();
+      }
+    }
+  }
+
+  private int[][] candidates() {
+    int[][] current = candidates;
+    if (current == null) {
+      synchronized (this) {
+        current = candidates;
+        if (current == null) {
+          candidates = current = load();
+        }
+      }
+    }
+    return current;
+  }
+
+  private int[][] load() {
+    List<int[]> list = new ArrayList<int[]>();
+    for (int[] candidate : loader.get()) {
+      list.add(candidate);
+    }
+    int[][] sorted = list.toArray(new int[list.size()][]);
+    Arrays.sort(sorted, COMPARATOR);
+    int size = 0;
+    for (int[] candidate : sorted) {
+      if (size == 0 || !Arrays.equals(sorted[size - 1], candidate)) {
+        sorted[size++] = candidate;
+      }
+    }
+    return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+  }
+
+  /**
+   * Compute the range of the candidates starting with the prefix, the candidates sharing the first {@code i} code
+   * points of the prefix are a range narrowed with the {@code i}th code point.
+   *
+   * @return the range packed as {@code from << 32 | to}
+   */
+  private static long range(int[][] candidates, int[] prefix) {
+    int from = 0;
+    int to = candidates.length;
+    for (int i = 0;i < prefix.length && from < to;i++) {
+      // The candidates shorter than i + 1 are sorted first
+      int cp = prefix[i];
+      from = bound(candidates, from, to, i, cp, false);
+      to = bound(candidates, from, to, i, cp, true);
+    }
+    return ((long) from << 32) | to;
+  }
+
+  /**
+   * @return the first index of the range whose code point at {@code pos} is greater than or equal to {@code cp},
+   *         or strictly greater when {@code upper} is true, a missing code point is lesser than any code point
+   */
+  private static int bound(int[][] candidates, int from, int to, int pos, int cp, boolean upper) {
+    while (from < to) {
+      int mid = (from + to) >>> 1;
+      int[] candidate = candidates[mid];
+      boolean before = candidate.length <= pos || (upper ? candidate[pos] <= cp : candidate[pos] < cp);
+      if (before) {
+        from = mid + 1;
+      } else {
+        to = mid;
+      }
+    }
+    return from;
+  }
+}
@@ -22,21 +22,51 @@ import java.util.Iterator;
 import java.util.LinkedList;
 
 /**
+ * Decodes the pending code points into key events.<p/>
+ *
+ * The key bindings are compiled in a prefix trie when the queue is created, matching the pending code points walks the
+ * trie and costs the length of the longest bound sequence, not the number of bindings. The pending code points are
+ * stored in a ring buffer and the events of the code points that are not bound are interned.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
 public class EventQueue implements Iterator<KeyEvent> {
 
-  private KeyEvent[] bindings;
+  private static final int[] EMPTY = new int[0];
+
+  private final Node root;
   private final LinkedList<KeyEvent> events = new LinkedList<KeyEvent>();
-  private int[] pending = new int[0];
+  private int[] pending = new int[16];
+  private int head;
+  private int size;
 
   public EventQueue(Keymap keymap) {
-    this.bindings = keymap.bindings.toArray(new KeyEvent[keymap.bindings.size()]);
+    this.root = new Node();
+    for (KeyEvent binding : keymap.bindings) {
+      root.add(binding);
+    }
   }
 
   public EventQueue append(int... codePoints) {
-    pending = Arrays.copyOf(pending, pending.length + codePoints.length);
-    System.arraycopy(codePoints, 0 , pending, pending.length - codePoints.length, codePoints.length);
+    return append(codePoints, 0, codePoints.length);
+  }
+
+  /**
+   * Append a slice of code points, the slice is copied.
+   *
+   * @param codePoints the code points
+   * @param offset the offset of the first code point
+   * @param length the number of code points
+   * @return this object
+   */
+  public EventQueue append(int[] codePoints, int offset, int length) {
+    ensureCapacity(size + length);
+    int mask = pending.length - 1;
+    int tail = (head + size) & mask;
+    int first = Math.min(length, pending.length - tail);
+    System.arraycopy(codePoints, offset, pending, tail, first);
+    System.arraycopy(codePoints, offset + first, pending, 0, length - first);
+    size += length;
     return this;
   }
 
@@ -47,7 +77,7 @@ public class EventQueue implements Iterator<KeyEvent> {
 
   public KeyEvent peek() {
     if (events.isEmpty()) {
-      return match(pending);
+      return match();
     } else {
       return events.peekFirst();
     }
@@ -59,10 +89,12 @@ public class EventQueue implements Iterator<KeyEvent> {
 
   public KeyEvent next() {
     if (events.isEmpty()) {
-      KeyEvent next = match(pending);
+      KeyEvent next = match();
       if (next != null) {
         events.add(next);
-        pending = Arrays.copyOfRange(pending, next.length(), pending.length);
+        int length = next.length();
+        head = (head + length) & (pending.length - 1);
+        size -= length;
       }
     }
     return events.removeFirst();
@@ -70,8 +102,9 @@ public class EventQueue implements Iterator<KeyEvent> {
 
   public int[] clear() {
     events.clear();
-    int[] buffer = pending;
-    pending = new int[0];
+    int[] buffer = toArray();
+    head = 0;
+    size = 0;
     return buffer;
   }
 
@@ -79,60 +112,64 @@ public class EventQueue implements Iterator<KeyEvent> {
    * @return the buffer chars as a read-only int buffer
    */
   public IntBuffer getBuffer() {
-    return IntBuffer.wrap(pending).asReadOnlyBuffer();
+    if (head + size <= pending.length) {
+      return IntBuffer.wrap(pending, head, size).slice().asReadOnlyBuffer();
+    } else {
+      return IntBuffer.wrap(toArray()).asReadOnlyBuffer();
+    }
   }
 
-  private KeyEvent match(int[] buffer) {
-    if (buffer.length > 0) {
+  private int[] toArray() {
+    if (size == 0) {
+      return EMPTY;
+    }
+    int[] array = new int[size];
+    int first = Math.min(size, pending.length - head);
+    System.arraycopy(pending, head, array, 0, first);
+    System.arraycopy(pending, 0, array, first, size - first);
+    return array;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > pending.length) {
+      int length = pending.length;
+      while (length < capacity) {
+        length <<= 1;
+      }
+      int[] array = toArray();
+      pending = new int[length];
+      System.arraycopy(array, 0, pending, 0, array.length);
+      head = 0;
+    }
+  }
+
+  /**
+   * Match the longest binding that is a prefix of the pending code points, when there is none and the pending code
+   * points are the prefix of a binding the match is not possible yet, otherwise the first code point is returned as
+   * an event.
+   *
+   * @return the matched event or null
+   */
+  private KeyEvent match() {
+    if (size > 0) {
+      int mask = pending.length - 1;
       KeyEvent candidate = null;
-      int prefixes = 0;
-      next:
-      for (KeyEvent action : bindings) {
-        if (action.length() > 0) {
-          if (action.length() <= buffer.length) {
-            for (int i = 0;i < action.length();i++) {
-              if (action.getCodePointAt(i) != buffer[i]) {
-                continue next;
-              }
-            }
-            if (candidate != null && candidate.length() > action.length()) {
-              continue next;
-            }
-            candidate = action;
-          } else {
-            for (int i = 0;i < buffer.length;i++) {
-              if (action.getCodePointAt(i) != buffer[i]) {
-                continue next;
-              }
-            }
-            prefixes++;
-          }
+      Node node = root;
+      for (int i = 0;i < size;i++) {
+        node = node.child(pending[(head + i) & mask]);
+        if (node == null) {
+          break;
         }
-      }
-      if (candidate == null) {
-        if (prefixes == 0) {
-          final int c = buffer[0];
-          return new KeyEventSupport() {
-            @Override
-            public int getCodePointAt(int index) throws IndexOutOfBoundsException {
-              if (index != 0) {
-                throw new IndexOutOfBoundsException("Wrong index " + index);
-              }
-              return c;
-            }
-            @Override
-            public int length() {
-              return 1;
-            }
-            @Override
-            public String toString() {
-              return "key:" + c;
-            }
-          };
+        if (node.event != null) {
+          candidate = node.event;
         }
-      } else {
+      }
+      if (candidate != null) {
         return candidate;
       }
+      if (node == null || node.children == null) {
+        return CodePointEvent.of(pending[head]);
+      }
     }
     return null;
   }
@@ -141,4 +178,63 @@ public class EventQueue implements Iterator<KeyEvent> {
   public void remove() {
     throw new UnsupportedOperationException("remove");
   }
+
+  /**
+   * A node of the bindings trie, the children are kept sorted by code point.
+   */
+  private static class Node {
+
+    private int[] codePoints;
+    private Node[] children;
+    private KeyEvent event;
+
+    void add(KeyEvent binding) {
+      int length = binding.length();
+      if (length > 0) {
+        Node node = this;
+        for (int i = 0;i < length;i++) {
+          node = node.getOrCreate(binding.getCodePointAt(i));
+        }
+        // Last binding wins for a same sequence
+        node.event = binding;
+      }
+    }
+
+    Node child(int codePoint) {
+      if (children != null) {
+        int index = Arrays.binarySearch(codePoints, codePoint);
+        if (index >= 0) {
+          return children[index];
+        }
+      }
+      return null;
+    }
+
+    private Node getOrCreate(int codePoint) {
+      int index;
+      if (children == null) {
+        codePoints = new int[0];
+        children = new Node[0];
+        index = -1;
+      } else {
+        index = Arrays.binarySearch(codePoints, codePoint);
+        if (index >= 0) {
+          return children[index];
+        }
+      }
+      int pos = -(index + 1);
+      int[] newCodePoints = new int[codePoints.length + 1];
+      Node[] newChildren = new Node[children.length + 1];
+      System.arraycopy(codePoints, 0, newCodePoints, 0, pos);
+      System.arraycopy(children, 0, newChildren, 0, pos);
+      System.arraycopy(codePoints, pos, newCodePoints, pos + 1, codePoints.length - pos);
+      System.arraycopy(children, pos, newChildren, pos + 1, children.length - pos);
+      Node child = new Node();
+      newCodePoints[pos] = codePoint;
+      newChildren[pos] = child;
+      codePoints = newCodePoints;
+      children = newChildren;
+      return child;
+    }
+  }
 }
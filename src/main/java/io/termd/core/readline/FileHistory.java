@@ -0,0 +1,560 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.readline;
+
+import io.termd.core.util.Helper;
+import io.termd.core.util.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A persistent {@link History} stored in two memory-mapped files: the data file contains the entries
+ * encoded in UTF-8 and the index file contains the offset of each entry in the data file. An entry is committed by
+ * updating the entry count of the index header after its data, so a process crash never exposes a partially written
+ * entry. The files are forced to the storage device by {@link #flush()} and {@link #close()}, an OS crash can lose
+ * the entries added since, the entries read back then are validated and a damaged entry reads as an empty line.
+ * {@link #setSync(boolean)} forces each entry before it is committed.<p/>
+ *
+ * Opening a history only maps the files, the entries are read when they are accessed. An entry identical to the
+ * most recent one is not added and an identical command reuses the data of the previous occurrence, the lookup
+ * table of the commands is built from the data file a few entries at a time when entries are added.<p/>
+ *
+ * The history is bounded: when it reaches twice its max number of entries, the most recent entries are written to
+ * temporary files that are forced and renamed over the history files. A crash during a compaction leaves either
+ * the previous files or the compacted ones, an interrupted compaction is completed or discarded when the history is
+ * opened. An entry evicted by a compaction after a snapshot was taken reads as an empty line from that snapshot.<p/>
+ *
+ * The instances are shared per file by {@link #open(File)}, so all the sessions of a user can use the same history.
+ * A sibling lock file is locked while the history is open, opening a history used by another process fails.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class FileHistory implements History {
+
+  private static final ConcurrentMap<File, FileHistory> histories = new ConcurrentHashMap<File, FileHistory>();
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int MAGIC = 0x54524d48; // TRMH
+  private static final int VERSION = 1;
+
+  // Index header: magic, version, entry count, data end
+  private static final int COUNT_OFFSET = 8;
+  private static final int DATA_END_OFFSET = 12;
+  private static final int INDEX_HEADER_SIZE = 16;
+
+  // Data header: magic, version
+  private static final int DATA_HEADER_SIZE = 8;
+
+  private static final int INITIAL_INDEX_SIZE = 16 * 1024;
+  private static final int INITIAL_DATA_SIZE = 64 * 1024;
+  private static final int MAX_FILE_SIZE = Integer.MAX_VALUE;
+
+  // The number of entries of the data file added to the lookup table per added entry
+  private static final int SCAN_STEP = 64;
+
+  /**
+   * The default max number of entries.
+   */
+  public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+  private static final int[] EMPTY = new int[0];
+
+  /**
+   * Open the history of a file with {@link #DEFAULT_MAX_ENTRIES}, see {@link #open(File, int)}.
+   *
+   * @param file the data file, the index is stored in a sibling file with an {@code .idx} suffix
+   * @return the history
+   */
+  public static FileHistory open(File file) throws IOException {
+    return open(file, DEFAULT_MAX_ENTRIES);
+  }
+
+  /**
+   * Open the history of a file, the history is shared with the other users of the same file until it is closed.
+   * When the history is already open, the open history is returned with its max number of entries.
+   *
+   * @param file the data file, the index is stored in a sibling file with an {@code .idx} suffix and the lock in a
+   *             sibling file with a {@code .lock} suffix
+   * @param maxEntries the number of entries kept by a compaction
+   * @return the history
+   * @throws IOException when the files cannot be opened or are locked by another process
+   */
+  public static FileHistory open(File file, int maxEntries) throws IOException {
+    if (maxEntries < 1 || maxEntries > (MAX_FILE_SIZE - INDEX_HEADER_SIZE) / 8) {
+      throw new IllegalArgumentException("Invalid max entries " + maxEntries);
+    }
+    File key = file.getCanonicalFile();
+    synchronized (histories) {
+      FileHistory history = histories.get(key);
+      if (history == null) {
+        history = new FileHistory(key, maxEntries);
+        histories.put(key, history);
+      }
+      return history;
+    }
+  }
+
+  private final File file;
+  private final File indexFile;
+  private final int maxEntries;
+  private final FileChannel lockChannel;
+  private FileChannel dataChannel;
+  private FileChannel indexChannel;
+  private volatile MappedByteBuffer data;
+  private volatile MappedByteBuffer index;
+  private volatile int count;
+  private volatile long evicted; // The sequence number of the oldest entry
+  private int dataEnd;
+  private final Map<Integer, Integer> offsets = new HashMap<Integer, Integer>(); // Hash of the entry bytes -> offset
+  private int scanned = DATA_HEADER_SIZE; // The end of the entries of the data file added to the offsets
+  private boolean sync;
+  private boolean closed;
+
+  private FileHistory(File file, int maxEntries) throws IOException {
+    this.file = file;
+    this.indexFile = new File(file.getPath() + ".idx");
+    this.maxEntries = maxEntries;
+    lockChannel = new RandomAccessFile(new File(file.getPath() + ".lock"), "rw").getChannel();
+    try {
+      // The lock is released when the channel is closed
+      FileLock lock;
+      try {
+        lock = lockChannel.tryLock();
+      } catch (OverlappingFileLockException e) {
+        lock = null;
+      }
+      if (lock == null) {
+        throw new IOException("History file " + file + " is used by another process");
+      }
+      recover();
+      boolean created = file.length() == 0;
+      if (created != (indexFile.length() == 0)) {
+        throw new IOException("History file " + file + " does not match its index " + indexFile);
+      }
+      if (created) {
+        ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION);
+        write(file, header.array(), DATA_HEADER_SIZE, INITIAL_DATA_SIZE);
+        header.putInt(0).putInt(DATA_HEADER_SIZE);
+        write(indexFile, header.array(), INDEX_HEADER_SIZE, INITIAL_INDEX_SIZE);
+      }
+      map();
+      if (data.capacity() < DATA_HEADER_SIZE || data.getInt(0) != MAGIC || data.getInt(4) != VERSION ||
+          index.capacity() < INDEX_HEADER_SIZE || index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+        throw new IOException("Invalid history file " + file);
+      }
+      count = index.getInt(COUNT_OFFSET);
+      dataEnd = index.getInt(DATA_END_OFFSET);
+      if (count < 0 || INDEX_HEADER_SIZE + (long) count * 4 > index.capacity() ||
+          dataEnd < DATA_HEADER_SIZE || dataEnd > data.capacity()) {
+        throw new IOException("Corrupted history file " + file);
+      }
+    } catch (IOException e) {
+      closeChannels();
+      throw e;
+    }
+  }
+
+  /**
+   * Complete or discard a compaction interrupted by a crash: the temporary files are forced before they are renamed
+   * over the history files, so a single remaining temporary file is complete and its rename is finished. When both
+   * temporary files remain, the history files were not replaced and the temporary files are discarded.
+   */
+  private void recover() throws IOException {
+    File dataTmp = compactFile(file);
+    File indexTmp = compactFile(indexFile);
+    if (dataTmp.exists() && indexTmp.exists()) {
+      Files.delete(dataTmp.toPath());
+      Files.delete(indexTmp.toPath());
+    } else if (dataTmp.exists()) {
+      rename(dataTmp, file);
+    } else if (indexTmp.exists()) {
+      rename(indexTmp, indexFile);
+    }
+  }
+
+  private void map() throws IOException {
+    dataChannel = new RandomAccessFile(file, "rw").getChannel();
+    indexChannel = new RandomAccessFile(indexFile, "rw").getChannel();
+    data = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, dataChannel.size());
+    index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+  }
+
+  private void closeChannels() throws IOException {
+    try {
+      if (dataChannel != null) {
+        dataChannel.close();
+      }
+      if (indexChannel != null) {
+        indexChannel.close();
+      }
+    } finally {
+      lockChannel.close();
+    }
+  }
+
+  /**
+   * @return the data file
+   */
+  public File file() {
+    return file;
+  }
+
+  /**
+   * @return true when each added entry is forced to the storage device
+   */
+  public synchronized boolean isSync() {
+    return sync;
+  }
+
+  /**
+   * Force each added entry to the storage device before it is committed, so an OS crash does not lose it. This
+   * blocks the thread adding the entry, usually an event loop, for the duration of the disk syncs and is disabled by
+   * default.
+   *
+   * @param sync true to force each entry
+   * @return this object
+   */
+  public synchronized FileHistory setSync(boolean sync) {
+    this.sync = sync;
+    return this;
+  }
+
+  @Override
+  public int size() {
+    return count;
+  }
+
+  @Override
+  public synchronized int[] get(int i) {
+    return read(evicted + count, count, i);
+  }
+
+  @Override
+  public long sequence() {
+    return evicted;
+  }
+
+  /**
+   * Add an entry, a failure to write the files is logged and the entry is not added.
+   *
+   * @param line the entry code points
+   */
+  @Override
+  public synchronized void add(int[] line) {
+    if (line == null) {
+      throw new NullPointerException("No null history entry accepted");
+    }
+    if (closed) {
+      throw new IllegalStateException("History closed");
+    }
+    byte[] bytes = Helper.fromCodePoints(line).getBytes(UTF_8);
+    if (count > 0 && matches(index.getInt(slot(count - 1)), bytes)) {
+      return;
+    }
+    if (DATA_HEADER_SIZE + 4L + bytes.length > MAX_FILE_SIZE) {
+      // The entry cannot be stored
+      return;
+    }
+    try {
+      scan(SCAN_STEP);
+      int offset;
+      while ((offset = store(bytes)) == -1) {
+        // The data file is full, keep fewer entries until the entry fits
+        compact(Math.min(count, maxEntries) / 2);
+      }
+      ensureIndex(slot(count + 1));
+      index.putInt(slot(count), offset);
+      index.putInt(DATA_END_OFFSET, dataEnd);
+      if (sync) {
+        data.force();
+        index.force();
+      }
+      index.putInt(COUNT_OFFSET, count + 1);
+      count++;
+      if (count >= 2 * maxEntries) {
+        compact(maxEntries);
+      }
+    } catch (IOException e) {
+      Logging.logUndeclaredIoError(e);
+    }
+  }
+
+  /**
+   * Store the entry bytes or reuse the data of an identical entry.
+   *
+   * @return the offset of the entry data or {@code -1} when the data file is full
+   */
+  private int store(byte[] bytes) throws IOException {
+    int hash = hash(ByteBuffer.wrap(bytes), 0, bytes.length);
+    Integer offset = offsets.get(hash);
+    if (offset != null && matches(offset, bytes)) {
+      return offset;
+    }
+    long end = (long) dataEnd + 4 + bytes.length;
+    if (end > MAX_FILE_SIZE) {
+      return -1;
+    }
+    offset = dataEnd;
+    ensureData(end);
+    data.putInt(offset, bytes.length);
+    ByteBuffer dst = data.duplicate();
+    dst.position(offset + 4);
+    dst.put(bytes);
+    dataEnd = (int) end;
+    if (scanned == offset) {
+      scanned = dataEnd;
+    }
+    offsets.put(hash, offset);
+    return offset;
+  }
+
+  /**
+   * Replace the files with files containing the {@code keep} most recent entries. The new files are written and
+   * forced as temporary files, the index is renamed first and then the data, see {@link #recover()}.
+   */
+  private void compact(int keep) throws IOException {
+    int drop = count - keep;
+    // Copy the kept entries, the identical entries keep sharing their data
+    Map<Integer, Integer> moved = new HashMap<Integer, Integer>();
+    ByteBuffer slots = ByteBuffer.allocate(slot(keep));
+    slots.putInt(MAGIC).putInt(VERSION).putInt(keep).putInt(0);
+    int end = DATA_HEADER_SIZE;
+    for (int i = 0;i < keep;i++) {
+      int from = index.getInt(slot(drop + i));
+      Integer to = moved.get(from);
+      if (to == null) {
+        to = end;
+        end += 4 + data.getInt(from);
+        moved.put(from, to);
+      }
+      slots.putInt(to);
+    }
+    slots.putInt(DATA_END_OFFSET, end);
+    byte[] compacted = new byte[end];
+    ByteBuffer.wrap(compacted).putInt(MAGIC).putInt(VERSION);
+    Map<Integer, Integer> compactedOffsets = new HashMap<Integer, Integer>();
+    for (Map.Entry<Integer, Integer> entry : moved.entrySet()) {
+      int length = data.getInt(entry.getKey());
+      ByteBuffer src = data.duplicate();
+      src.position(entry.getKey());
+      src.get(compacted, entry.getValue(), 4 + length);
+      compactedOffsets.put(hash(data, entry.getKey() + 4, length), entry.getValue());
+    }
+    File dataTmp = compactFile(file);
+    File indexTmp = compactFile(indexFile);
+    try {
+      write(dataTmp, compacted, end, Math.max(end, INITIAL_DATA_SIZE));
+      write(indexTmp, slots.array(), slots.capacity(), Math.max(slots.capacity(), INITIAL_INDEX_SIZE));
+    } catch (IOException e) {
+      dataTmp.delete();
+      indexTmp.delete();
+      throw e;
+    }
+    rename(indexTmp, indexFile);
+    rename(dataTmp, file);
+    dataChannel.close();
+    indexChannel.close();
+    map();
+    evicted += drop;
+    count = keep;
+    dataEnd = end;
+    offsets.clear();
+    offsets.putAll(compactedOffsets);
+    scanned = end;
+  }
+
+  private static File compactFile(File file) {
+    return new File(file.getPath() + ".compact");
+  }
+
+  /**
+   * Write a file of {@code size} bytes starting with {@code length} bytes of {@code content} and force it.
+   */
+  private static void write(File file, byte[] content, int length, int size) throws IOException {
+    RandomAccessFile out = new RandomAccessFile(file, "rw");
+    try {
+      out.setLength(0);
+      out.write(content, 0, length);
+      out.setLength(size);
+      out.getChannel().force(true);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void rename(File from, File to) throws IOException {
+    Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  @Override
+  public synchronized History snapshot() {
+    final long top = evicted + count;
+    final int size = count;
+    return new History() {
+      @Override
+      public int size() {
+        return size;
+      }
+      @Override
+      public int[] get(int i) {
+        synchronized (FileHistory.this) {
+          return read(top, size, i);
+        }
+      }
+      @Override
+      public long sequence() {
+        return top - size;
+      }
+      @Override
+      public void add(int[] line) {
+        throw new UnsupportedOperationException("Read only history");
+      }
+      @Override
+      public History snapshot() {
+        return this;
+      }
+    };
+  }
+
+  /**
+   * Force the changes to the storage device.
+   */
+  public synchronized void flush() {
+    if (!closed) {
+      data.force();
+      index.force();
+    }
+  }
+
+  /**
+   * Flush and close the files, the history is not shared anymore and a subsequent {@link #open(File)} opens a new
+   * history.
+   */
+  public void close() throws IOException {
+    synchronized (histories) {
+      histories.remove(file, this);
+    }
+    synchronized (this) {
+      if (!closed) {
+        flush();
+        closed = true;
+        closeChannels();
+      }
+    }
+  }
+
+  private int[] read(long top, int size, int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+    }
+    long seq = top - 1 - i;
+    if (seq < evicted) {
+      return EMPTY;
+    }
+    int offset = index.getInt(slot((int) (seq - evicted)));
+    // An entry damaged by an OS crash points outside of the data
+    if (offset < DATA_HEADER_SIZE || offset > dataEnd - 4) {
+      return EMPTY;
+    }
+    ByteBuffer buffer = data.duplicate();
+    int length = buffer.getInt(offset);
+    if (length < 0 || length > dataEnd - offset - 4) {
+      return EMPTY;
+    }
+    buffer.position(offset + 4);
+    buffer.limit(offset + 4 + length);
+    return Helper.toCodePoints(UTF_8.decode(buffer).toString());
+  }
+
+  private static int slot(int i) {
+    return INDEX_HEADER_SIZE + i * 4;
+  }
+
+  private boolean matches(int offset, byte[] bytes) {
+    if (offset < DATA_HEADER_SIZE || offset > dataEnd - 4 - bytes.length || data.getInt(offset) != bytes.length) {
+      return false;
+    }
+    for (int i = 0;i < bytes.length;i++) {
+      if (data.get(offset + 4 + i) != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Add at most {@code max} entries of the data file to the lookup table, so the table is built without reading the
+   * whole file at once.
+   */
+  private void scan(int max) {
+    for (int i = 0;i < max && scanned < dataEnd;i++) {
+      int length = data.getInt(scanned);
+      if (length < 0 || length > dataEnd - scanned - 4) {
+        // Damaged data, the remaining entries are not looked up
+        scanned = dataEnd;
+        return;
+      }
+      int hash = hash(data, scanned + 4, length);
+      if (!offsets.containsKey(hash)) {
+        offsets.put(hash, scanned);
+      }
+      scanned += 4 + length;
+    }
+  }
+
+  private static int hash(ByteBuffer buffer, int from, int length) {
+    int hash = 1;
+    for (int i = from;i < from + length;i++) {
+      hash = 31 * hash + buffer.get(i);
+    }
+    return hash;
+  }
+
+  private void ensureData(long size) throws IOException {
+    if (size > data.capacity()) {
+      data = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, grow(data.capacity(), size));
+    }
+  }
+
+  private void ensureIndex(long size) throws IOException {
+    if (size > index.capacity()) {
+      index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, grow(index.capacity(), size));
+    }
+  }
+
+  private static long grow(long capacity, long size) {
+    while (capacity < size) {
+      capacity *= 2;
+    }
+    return Math.min(capacity, MAX_FILE_SIZE);
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.readline;
+
+/**
+ * The history of the lines accepted by a {@link Readline}, the entry at index {@code 0} is the most recent one.
+ * A history can be shared by several readline instances and must be safe for concurrent use.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public interface History {
+
+  /**
+   * @return the number of entries
+   */
+  int size();
+
+  /**
+   * Get an entry.
+   *
+   * @param index the entry index, {@code 0} is the most recent entry
+   * @return the entry code points
+   * @throws IndexOutOfBoundsException when the index is out of range
+   */
+  int[] get(int index);
+
+  /**
+   * The sequence number identifies an entry for the lifetime of the history: an added entry gets the sequence
+   * number following the most recent one and the sequence number of the oldest entry increases when entries are
+   * evicted. Use a {@link #snapshot()} to read the sequence number and the size consistently.
+   *
+   * @return the sequence number of the oldest entry, the entry at index {@code i} has the sequence number
+   *         {@code sequence() + size() - 1 - i}
+   */
+  long sequence();
+
+  /**
+   * Add an entry as the most recent one.
+   *
+   * @param line the entry code points
+   * @throws UnsupportedOperationException when the history is read only
+   */
+  void add(int[] line);
+
+  /**
+   * Returns a read only view of the entries at this moment, the indexes of the view are not shifted by the entries
+   * added later.
+   *
+   * @return the snapshot
+   */
+  History snapshot();
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.readline;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A trigram index over the entries of a {@link History} for substring searches. The index maps each sequence of
+ * three code points to the sorted positions of the entries containing it, a search only checks the entries
+ * containing all the trigrams of the query instead of scanning the history.<p/>
+ *
+ * An index is shared by all the users of a history with {@link #of(History)}, so the sessions sharing a history
+ * don't index it each.<p/>
+ *
+ * The positions are the {@link History#sequence() sequence numbers} of the entries relative to the oldest indexed
+ * entry, {@link #update(History)} indexes the entries added since the last update. The positions of the evicted
+ * entries are ignored by the searches, the index is rebuilt when they outnumber the entries of the history. The
+ * methods are thread safe.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class HistoryIndex {
+
+  private static final Comparator<Postings> BY_SIZE = new Comparator<Postings>() {
+    @Override
+    public int compare(Postings p1, Postings p2) {
+      return p1.size - p2.size;
+    }
+  };
+
+  private static final class Postings {
+
+    private int[] positions = new int[4];
+    private int size;
+
+    void add(int position) {
+      if (size > 0 && positions[size - 1] == position) {
+        return;
+      }
+      if (size == positions.length) {
+        positions = Arrays.copyOf(positions, size * 2);
+      }
+      positions[size++] = position;
+    }
+
+    boolean contains(int position) {
+      return Arrays.binarySearch(positions, 0, size, position) >= 0;
+    }
+  }
+
+  private static final Map<History, HistoryIndex> indexes = new WeakHashMap<History, HistoryIndex>();
+
+  /**
+   * Get the index of a history, the index is created on first use and shared until the history is garbage
+   * collected.
+   *
+   * @param history the history
+   * @return the index
+   */
+  public static HistoryIndex of(History history) {
+    synchronized (indexes) {
+      HistoryIndex index = indexes.get(history);
+      if (index == null) {
+        index = new HistoryIndex();
+        indexes.put(history, index);
+      }
+      return index;
+    }
+  }
+
+  private final Map<Long, Postings> trigrams = new HashMap<Long, Postings>();
+  private long origin; // The sequence of the position 0
+  private long oldest; // The sequence of the oldest entry of the history
+  private long end; // The sequence following the most recent indexed entry
+
+  /**
+   * @return the number of indexed entries of the history
+   */
+  public synchronized int size() {
+    return (int) (end - oldest);
+  }
+
+  /**
+   * Update the index with the entries of a history.
+   *
+   * @param history the history
+   */
+  public synchronized void update(History history) {
+    history = history.snapshot();
+    long base = history.sequence();
+    int size = history.size();
+    long top = base + size;
+    if (top < end) {
+      // A snapshot older than the index, the searches in the snapshot scan the entries older than the index
+      return;
+    }
+    if (base < origin || base > end || base - origin > size) {
+      // Entries added before the oldest one, all the indexed entries evicted or mostly evicted
+      trigrams.clear();
+      origin = base;
+      oldest = base;
+      end = base;
+    }
+    oldest = Math.max(oldest, base);
+    for (long seq = end;seq < top;seq++) {
+      int[] entry = history.get((int) (top - 1 - seq));
+      int position = (int) (seq - origin);
+      for (int i = 0;i + 2 < entry.length;i++) {
+        Long key = key(entry, i);
+        Postings postings = trigrams.get(key);
+        if (postings == null) {
+          postings = new Postings();
+          trigrams.put(key, postings);
+        }
+        postings.add(position);
+      }
+    }
+    end = Math.max(end, top);
+  }
+
+  /**
+   * Search an entry containing a query.
+   *
+   * @param history the history, the index must be up to date with it
+   * @param query the query code points
+   * @param start the index of the first entry to check, {@code 0} is the most recent entry
+   * @param older true to search the older entries, false to search the more recent ones
+   * @return the index of the first entry found or {@code -1}
+   */
+  public synchronized int search(History history, int[] query, int start, boolean older) {
+    history = history.snapshot();
+    int size = history.size();
+    int step = older ? 1 : -1;
+    // The position of the oldest entry of the history
+    long shift = history.sequence() - origin;
+    if (query.length < 3 || shift < 0) {
+      // The query is too short for the trigrams or the history is older than the index
+      for (int index = start;index >= 0 && index < size;index += step) {
+        if (indexOf(history.get(index), query, 0) != -1) {
+          return index;
+        }
+      }
+      return -1;
+    }
+    Postings[] lists = new Postings[query.length - 2];
+    for (int i = 0;i < lists.length;i++) {
+      lists[i] = trigrams.get(key(query, i));
+      if (lists[i] == null) {
+        return -1;
+      }
+    }
+    Arrays.sort(lists, BY_SIZE);
+    // Iterate the shortest list, the positions are in the opposite order of the history indexes
+    Postings shortest = lists[0];
+    int from = Arrays.binarySearch(shortest.positions, 0, shortest.size, (int) (shift + size - 1 - start));
+    if (from < 0) {
+      from = older ? -from - 2 : -from - 1;
+    }
+    for (int i = from;i >= 0 && i < shortest.size;i -= step) {
+      int position = shortest.positions[i];
+      if (position < shift || position >= shift + size || !containsAll(lists, position)) {
+        continue;
+      }
+      // The trigrams may not be contiguous in the entry
+      int index = (int) (shift + size - 1 - position);
+      if (indexOf(history.get(index), query, 0) != -1) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean containsAll(Postings[] lists, int position) {
+    for (int i = 1;i < lists.length;i++) {
+      if (!lists[i].contains(position)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Long key(int[] codePoints, int index) {
+    return ((long) codePoints[index] << 42) | ((long) codePoints[index + 1] << 21) | codePoints[index + 2];
+  }
+
+  /**
+   * Find the first occurrence of a query in an entry.
+   *
+   * @param entry the entry
+   * @param query the query
+   * @param from the index to search from
+   * @return the index of the occurrence or {@code -1}
+   */
+  public static int indexOf(int[] entry, int[] query, int from) {
+    outer:
+    for (int i = Math.max(0, from);i + query.length <= entry.length;i++) {
+      for (int j = 0;j < query.length;j++) {
+        if (entry[i + j] != query[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+}
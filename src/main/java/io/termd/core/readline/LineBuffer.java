@@ -21,40 +21,52 @@ import io.termd.core.util.Vector;
 import io.termd.core.util.Helper;
 import io.termd.core.util.Wcwidth;
 
-import java.util.Arrays;
-
 /**
+ * A line of code points stored in a gap buffer: the code points are kept in an array with a gap at the last
+ * edit position, inserting or deleting at the cursor only moves the code points between the previous and the
+ * current edit position.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
 public class LineBuffer {
 
   private int[] data;
   private int cursor;
-  private int size;
+  private int gapStart; // The first index of the gap
+  private int gapEnd; // The index following the gap
 
   public LineBuffer() {
     this(1000);
   }
 
   public LineBuffer(int cap) {
-      data = new int[cap];
+    data = new int[Math.max(cap, 1)];
+    gapEnd = data.length;
   }
 
   private LineBuffer(LineBuffer that) {
     data = that.data.clone();
     cursor = that.cursor;
-    size = that.size;
+    gapStart = that.gapStart;
+    gapEnd = that.gapEnd;
   }
 
   public int[] toArray() {
-    return Arrays.copyOf(data, size);
+    int[] array = new int[getSize()];
+    System.arraycopy(data, 0, array, 0, gapStart);
+    System.arraycopy(data, gapEnd, array, gapStart, data.length - gapEnd);
+    return array;
   }
 
   public int getAt(int index) {
-    if (index < 0 | index >= size) {
+    if (index < 0 | index >= getSize()) {
       throw new IndexOutOfBoundsException();
     }
-    return data[index];
+    return at(index);
+  }
+
+  private int at(int index) {
+    return index < gapStart ? data[index] : data[index + gapEnd - gapStart];
   }
 
   /**
@@ -70,10 +82,7 @@ public class LineBuffer {
    * Insert an array of code points in the buffer at the current cursor position.
    */
   public LineBuffer insert(int... codePoints) {
-    for (int cp : codePoints) {
-      insert(cp);
-    }
-    return this;
+    return insert(codePoints, 0, codePoints.length);
   }
 
   public LineBuffer insert(Integer... codePoints) {
@@ -91,6 +100,46 @@ public class LineBuffer {
    * @throws IllegalArgumentException when an illegal character is inserted
    */
   public LineBuffer insert(int cp) {
+    checkCodePoint(cp);
+    prepareGap(1);
+    data[gapStart++] = cp;
+    cursor++;
+    return this;
+  }
+
+  /**
+   * Insert a slice of code points in the buffer at the current cursor position, the code points are checked
+   * before any is inserted.
+   *
+   * @param codePoints the code points
+   * @param offset the offset of the first code point
+   * @param length the number of code points
+   * @return this object
+   * @throws IllegalArgumentException when an illegal character is inserted
+   */
+  public LineBuffer insert(int[] codePoints, int offset, int length) {
+    for (int i = offset;i < offset + length;i++) {
+      checkCodePoint(codePoints[i]);
+    }
+    prepareGap(length);
+    System.arraycopy(codePoints, offset, data, gapStart, length);
+    gapStart += length;
+    cursor += length;
+    return this;
+  }
+
+  /**
+   * Check a code point can be inserted in the buffer.
+   *
+   * @param cp the code point
+   * @return true when the code point can be inserted
+   */
+  public static boolean isInsertable(int cp) {
+    int w = Wcwidth.of(cp);
+    return w == -1 ? cp == '\n' : w == 1;
+  }
+
+  private static void checkCodePoint(int cp) {
     int w = Wcwidth.of(cp);
     if (w == -1) {
       if (cp != '\n') {
@@ -99,21 +148,39 @@ public class LineBuffer {
     } else if (w != 1) {
       throw new IllegalArgumentException("LineBuffer cannot contain chars of width!=1 for the moment");
     }
-    if (cursor < size) {
-      System.arraycopy(data, cursor, data, cursor + 1, size - cursor);
-    }
-    data[cursor++] = cp;
-    size++;
-    if (size >= data.length) {
-        resize();
+  }
+
+  /**
+   * Move the gap to the cursor and make it large enough for {@code length} code points.
+   */
+  private void prepareGap(int length) {
+    moveGap(cursor);
+    if (gapEnd - gapStart < length) {
+      int size = getSize();
+      int[] tmpData = new int[Math.max(data.length * 2, size + length)];
+      int tail = data.length - gapEnd;
+      System.arraycopy(data, 0, tmpData, 0, gapStart);
+      System.arraycopy(data, gapEnd, tmpData, tmpData.length - tail, tail);
+      data = tmpData;
+      gapEnd = data.length - tail;
     }
-    return this;
   }
 
-  private void resize() {
-      int[] tmpData = new int[data.length * 2];
-      System.arraycopy(this.data, 0, tmpData, 0, data.length);
-      this.data = tmpData;
+  /**
+   * Move the gap start to the specified index.
+   */
+  private void moveGap(int index) {
+    if (index < gapStart) {
+      int count = gapStart - index;
+      System.arraycopy(data, index, data, gapEnd - count, count);
+      gapStart = index;
+      gapEnd -= count;
+    } else if (index > gapStart) {
+      int count = index - gapStart;
+      System.arraycopy(data, gapEnd, data, gapStart, count);
+      gapStart = index;
+      gapEnd += count;
+    }
   }
 
   public LineStatus.Ext insertEscaped(int... codePoints) {
@@ -199,27 +266,34 @@ public class LineBuffer {
    */
   public int delete(int delta) {
     if (delta > 0) {
-      delta = Math.min(delta, size - cursor);
-      System.arraycopy(data, cursor + delta, data, cursor, size - cursor + delta);
-      size -= delta;
+      delta = Math.min(delta, getSize() - cursor);
+      moveGap(cursor);
+      gapEnd += delta;
       return delta;
     } else if (delta < 0) {
-      delta = - Math.min(- delta, cursor);
-      System.arraycopy(data, cursor, data, cursor + delta, size - cursor);
-      size += delta;
-      cursor += delta;
-      return - delta;
+      delta = Math.min(- delta, cursor);
+      moveGap(cursor);
+      gapStart -= delta;
+      cursor -= delta;
+      return delta;
     } else {
       return 0;
     }
   }
 
   public int getSize() {
-    return size;
+    return data.length - (gapEnd - gapStart);
   }
 
+  /**
+   * Truncate the buffer to the specified size, the size of the buffer cannot be increased.
+   *
+   * @param size the new size
+   */
   public void setSize(int size) {
-    this.size = size >= 0 ? size : 0;
+    size = Math.min(size >= 0 ? size : 0, getSize());
+    moveGap(size);
+    gapEnd = data.length;
     if (cursor > size) {
       cursor = size;
     }
@@ -234,6 +308,7 @@ public class LineBuffer {
   }
 
   public LineBuffer setCursor(int next) {
+    int size = getSize();
     this.cursor = next < 0 ? 0 : (next > size ? size : next);
     return this;
   }
@@ -243,8 +318,9 @@ public class LineBuffer {
   }
 
   public void clear() {
-    size = 0;
     cursor = 0;
+    gapStart = 0;
+    gapEnd = data.length;
   }
 
   public int moveCursor(int delta) {
@@ -255,8 +331,9 @@ public class LineBuffer {
 
   public String toString() {
     StringBuilder sb = new StringBuilder();
+    int size = getSize();
     for (int i = 0; i < size; i++) {
-      sb.appendCodePoint(data[i]);
+      sb.appendCodePoint(at(i));
     }
     return sb.toString();
   }
@@ -280,15 +357,20 @@ public class LineBuffer {
    * @return the height
    */
   public Vector getPosition(int offset, int width) {
-    if (offset > size) {
+    if (offset > getSize()) {
       throw new IndexOutOfBoundsException("Offset cannot bebe greater than the buffer size");
     }
+    if (offset > gapStart) {
+      // The code points before the offset must be contiguous
+      moveGap(offset);
+    }
     return Helper.computePosition(data, new Vector(0, 0), offset, width);
   }
 
   private int findEndOfLine(int offset) {
+    int size = getSize();
     while (offset < size) {
-      int c = data[offset];
+      int c = at(offset);
       int w = Wcwidth.of(c);
       if (w == -1) {
         if (c == '\n') {
@@ -328,20 +410,20 @@ public class LineBuffer {
 
     public void perform(LineBuffer dst) {
 
-      while (dstIdx < dst.size) {
+      while (dstIdx < dst.getSize()) {
 
         int eol = dst.findEndOfLine(dstIdx);
         boolean needGlitchCorrection = dstIdx < eol;
 
         // Handle one dest line at a time
         while (dstIdx < eol) {
-          int c = dst.data[dstIdx];
+          int c = dst.at(dstIdx);
           int w = Wcwidth.of(c);
           if (w != 1) {
             throw new UnsupportedOperationException();
           }
-          if (srcIdx < size && new Vector(srcCol, srcRow).equals(new Vector(dstCol, dstRow))) {
-            if (data[srcIdx] == dst.data[dstIdx]) {
+          if (srcIdx < getSize() && new Vector(srcCol, srcRow).equals(new Vector(dstCol, dstRow))) {
+            if (at(srcIdx) == dst.at(dstIdx)) {
               dstCol += w;
               if (dstCol == width) {
                 dstCol = 0;
@@ -380,7 +462,7 @@ public class LineBuffer {
         }
 
         // Remove extra chars if needed
-        if (dstIdx < dst.size) {
+        if (dstIdx < dst.getSize()) {
           dstIdx++;
           dstCol = 0;
           ++dstRow;
@@ -400,12 +482,12 @@ public class LineBuffer {
       }
 
       // Erase extra remaining chars
-      if (srcIdx < size) {
+      if (srcIdx < getSize()) {
         int _col = srcCol;
         int _row = srcRow;
         int count = 0;
-        while (srcIdx < size) {
-          int c = data[srcIdx++];
+        while (srcIdx < getSize()) {
+          int c = at(srcIdx++);
           if (c == '\n') {
             if (count > 0) {
               moveCursor(_col, _row);
@@ -447,7 +529,8 @@ public class LineBuffer {
       // Update internal state
       data = dst.data.clone();
       cursor = dst.cursor;
-      size = dst.size;
+      gapStart = dst.gapStart;
+      gapEnd = dst.gapEnd;
     }
 
     /**
@@ -459,11 +542,11 @@ public class LineBuffer {
      */
     private boolean ensure(int col, int row) {
       boolean ret = false;
-      while (srcIdx < size) {
+      while (srcIdx < getSize()) {
         if (srcRow > row || (srcRow == row && srcCol >= col)) {
           break;
         }
-        int c = data[srcIdx];
+        int c = at(srcIdx);
         int w = Wcwidth.of(c);
         if (w == 1) {
           ret = true;
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.readline;
+
+import io.termd.core.function.Consumer;
+import io.termd.core.io.CodePointSink;
+import io.termd.core.term.CursorMotion;
+import io.termd.core.util.Helper;
+import io.termd.core.util.Vector;
+import io.termd.core.util.Wcwidth;
+
+/**
+ * Renders a prompt followed by a {@link LineBuffer} incrementally.<p/>
+ *
+ * The renderer remembers what is displayed on the screen and the position of the screen cursor, an edit of the
+ * buffer redraws only the code points that moved on the screen. The output of an edit is accumulated in a reusable
+ * array and written to the terminal in a single call. The cursor motions are planned by a {@link CursorMotion}.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+class LineRenderer {
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  private final CursorMotion motion;
+  private final CodePointSink sink = new CodePointSink() {
+    @Override
+    public void accept(int[] codePoints, int offset, int length) {
+      for (int i = offset;i < offset + length;i++) {
+        append(codePoints[i]);
+      }
+    }
+    @Override
+    public void accept(int[] codePoints) {
+      accept(codePoints, 0, codePoints.length);
+    }
+  };
+  private int[] prompt = new int[0];
+  private int irregular; // The number of displayed code points that do not occupy exactly one column
+  private int col, row; // The position of the screen cursor relative to the beginning of the prompt
+  private int[] out = new int[INITIAL_CAPACITY];
+  private int length;
+
+  LineRenderer() {
+    this(CursorMotion.ANSI);
+  }
+
+  LineRenderer(CursorMotion motion) {
+    this.motion = motion;
+  }
+
+  /**
+   * Reset the renderer state after the {@code prompt} and the {@code buffer} have been written to the screen, the
+   * screen cursor is assumed to be at the buffer cursor.
+   *
+   * @param prompt the prompt code points
+   * @param buffer the displayed buffer
+   * @param width the screen width
+   */
+  void reset(int[] prompt, LineBuffer buffer, int width) {
+    init(prompt, buffer);
+    Vector pos = position(buffer, prompt.length + buffer.getCursor(), width);
+    col = pos.x();
+    row = pos.y();
+  }
+
+  /**
+   * Write the {@code prompt} and the {@code buffer} from the current screen cursor position.
+   *
+   * @param prompt the prompt code points
+   * @param buffer the buffer to display
+   * @param width the screen width
+   * @param consumer the output
+   */
+  void redraw(int[] prompt, LineBuffer buffer, int width, Consumer<int[]> consumer) {
+    init(prompt, buffer);
+    col = 0;
+    row = 0;
+    int total = prompt.length + buffer.getSize();
+    draw(buffer, 0, total, width);
+    moveTo(buffer, prompt.length + buffer.getCursor(), width);
+    flush(consumer);
+  }
+
+  /**
+   * Replace {@code count} code points of the {@code buffer} at {@code from} with a slice of code points, set the
+   * buffer cursor and update the screen accordingly.
+   *
+   * @param buffer the displayed buffer
+   * @param from the index of the first replaced code point
+   * @param count the number of replaced code points
+   * @param codePoints the replacing code points
+   * @param offset the offset of the first replacing code point
+   * @param len the number of replacing code points
+   * @param cursorAfter the buffer cursor after the replacement
+   * @param width the screen width
+   * @param consumer the output
+   */
+  void replace(LineBuffer buffer, int from, int count, int[] codePoints, int offset, int len, int cursorAfter, int width, Consumer<int[]> consumer) {
+    if (count > 0 || len > 0) {
+      Vector oldEnd = position(buffer, prompt.length + buffer.getSize(), width);
+      int irregularBefore = irregular;
+      for (int i = from;i < from + count;i++) {
+        if (isIrregular(buffer.getAt(i))) {
+          irregular--;
+        }
+      }
+      buffer.setCursor(from);
+      buffer.delete(count);
+      buffer.insert(codePoints, offset, len);
+      for (int i = offset;i < offset + len;i++) {
+        if (isIrregular(codePoints[i])) {
+          irregular++;
+        }
+      }
+      int start = prompt.length + from;
+      if (count == len && irregularBefore == 0 && irregular == 0) {
+        // The following code points do not move, only the replaced ones are drawn
+        moveTo(buffer, start, width);
+        draw(buffer, start, start + len, width);
+      } else {
+        moveTo(buffer, start, width);
+        draw(buffer, start, prompt.length + buffer.getSize(), width);
+        if (oldEnd.y() > row || (oldEnd.y() == row && oldEnd.x() > col)) {
+          // Erase the rows that are not used anymore
+          int last = oldEnd.y();
+          eraseLine();
+          for (int r = row + 1;r <= last;r++) {
+            moveTo(0, r);
+            eraseLine();
+          }
+        }
+      }
+    }
+    buffer.setCursor(cursorAfter);
+    moveTo(buffer, prompt.length + buffer.getCursor(), width);
+    flush(consumer);
+  }
+
+  /**
+   * Replace the {@code prompt} and the content of the {@code buffer} with the content of {@code update} and
+   * update the screen accordingly.
+   *
+   * @param prompt the new prompt code points
+   * @param buffer the displayed buffer
+   * @param update the new buffer content and cursor
+   * @param width the screen width
+   * @param consumer the output
+   */
+  void replace(int[] prompt, LineBuffer buffer, LineBuffer update, int width, Consumer<int[]> consumer) {
+    Vector oldEnd = position(buffer, this.prompt.length + buffer.getSize(), width);
+    moveTo(0, 0);
+    buffer.clear();
+    buffer.insert(update.toArray());
+    init(prompt, buffer);
+    draw(buffer, 0, prompt.length + buffer.getSize(), width);
+    if (oldEnd.y() > row || (oldEnd.y() == row && oldEnd.x() > col)) {
+      int last = oldEnd.y();
+      eraseLine();
+      for (int r = row + 1;r <= last;r++) {
+        moveTo(0, r);
+        eraseLine();
+      }
+    }
+    buffer.setCursor(update.getCursor());
+    moveTo(buffer, prompt.length + buffer.getCursor(), width);
+    flush(consumer);
+  }
+
+  private void init(int[] prompt, LineBuffer buffer) {
+    this.prompt = prompt;
+    irregular = 0;
+    for (int cp : prompt) {
+      if (isIrregular(cp)) {
+        irregular++;
+      }
+    }
+    int size = buffer.getSize();
+    for (int i = 0;i < size;i++) {
+      if (isIrregular(buffer.getAt(i))) {
+        irregular++;
+      }
+    }
+  }
+
+  private int at(LineBuffer buffer, int index) {
+    return index < prompt.length ? prompt[index] : buffer.getAt(index - prompt.length);
+  }
+
+  private static boolean isIrregular(int cp) {
+    return Wcwidth.of(cp) != 1;
+  }
+
+  /**
+   * Compute the screen position of the code point at {@code offset}, this follows the same rules than
+   * {@link Helper#computePosition}.
+   */
+  private Vector position(LineBuffer buffer, int offset, int width) {
+    if (irregular == 0) {
+      return new Vector(offset % width, offset / width);
+    }
+    int c = 0;
+    int r = 0;
+    for (int i = 0;i < offset;i++) {
+      int cp = at(buffer, i);
+      int w = Wcwidth.of(cp);
+      if (w == -1) {
+        if (cp == '\r') {
+          c = 0;
+        } else if (cp == '\n') {
+          c = 0;
+          r++;
+        }
+      } else {
+        if (c + w > width) {
+          c = 0;
+          r++;
+        }
+        c += w;
+        if (c >= width) {
+          c -= width;
+          r++;
+        }
+      }
+    }
+    return new Vector(c, r);
+  }
+
+  /**
+   * Draw the code points in the {@code [from,to[} range, the screen cursor must be at the position of {@code from}.
+   */
+  private void draw(LineBuffer buffer, int from, int to, int width) {
+    boolean wrapped = false;
+    for (int i = from;i < to;i++) {
+      int cp = at(buffer, i);
+      int w = Wcwidth.of(cp);
+      if (w == -1) {
+        if (cp == '\n') {
+          if (wrapped) {
+            // Leave the pending wrap state of the terminal
+            append(' ');
+            append('\r');
+          }
+          eraseLine();
+          append('\n');
+          col = 0;
+          row++;
+        } else {
+          append(cp);
+          if (cp == '\r') {
+            col = 0;
+          }
+        }
+        wrapped = false;
+      } else {
+        if (col + w > width) {
+          col = 0;
+          row++;
+        }
+        append(cp);
+        col += w;
+        if (col >= width) {
+          col -= width;
+          row++;
+          wrapped = true;
+        } else {
+          wrapped = false;
+        }
+      }
+    }
+    if (wrapped) {
+      // The terminal keeps the cursor on the last column until the next char is printed
+      int next = to < prompt.length + buffer.getSize() ? at(buffer, to) : -1;
+      int w = next != -1 ? Wcwidth.of(next) : -1;
+      if (w > 0 && w < width) {
+        append(next);
+        col = w;
+      } else {
+        append(' ');
+        append('\r');
+      }
+    }
+  }
+
+  private void moveTo(LineBuffer buffer, int offset, int width) {
+    Vector pos = position(buffer, offset, width);
+    moveTo(pos.x(), pos.y());
+  }
+
+  private void moveTo(int toCol, int toRow) {
+    if (toCol != col || toRow != row) {
+      motion.move(col, row, toCol, toRow, sink);
+    }
+    col = toCol;
+    row = toRow;
+  }
+
+  /**
+   * Erase from the cursor to the end of the row.
+   */
+  private void eraseLine() {
+    append('\033');
+    append('[');
+    append('K');
+  }
+
+  private void append(int cp) {
+    if (length == out.length) {
+      int[] tmp = new int[out.length * 2];
+      System.arraycopy(out, 0, tmp, 0, length);
+      out = tmp;
+    }
+    out[length++] = cp;
+  }
+
+  private void flush(Consumer<int[]> consumer) {
+    if (length > 0) {
+      Helper.accept(consumer, out, 0, length);
+      length = 0;
+      if (out.length > INITIAL_CAPACITY * 64) {
+        // Do not retain the large array of a big paste
+        out = new int[INITIAL_CAPACITY];
+      }
+    }
+  }
+}
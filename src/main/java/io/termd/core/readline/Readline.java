@@ -18,16 +18,21 @@ package io.termd.core.readline;
 
 import io.termd.core.function.BiConsumer;
 import io.termd.core.function.Consumer;
+import io.termd.core.io.CodePointSink;
+import io.termd.core.term.CursorMotion;
+import io.termd.core.term.Device;
+import io.termd.core.term.TermInfo;
 import io.termd.core.tty.TtyConnection;
 import io.termd.core.tty.TtyEvent;
 import io.termd.core.util.Logging;
 import io.termd.core.util.Vector;
 import io.termd.core.util.Helper;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -37,42 +42,140 @@ import java.util.Map;
  */
 public class Readline {
 
-  /**
-   * The max number of history item that will be saved in memory.
-   */
-  private static final int MAX_HISTORY_SIZE = 500;
-
-  // private final Device device;
   private final Map<String, Function> functions = new HashMap<String, Function>();
   private final EventQueue decoder;
   private Interaction interaction;
   private Vector size;
-  private volatile List<int[]> history;
+  private volatile History history;
+  private CursorMotion motion;
+  private TermInfo termInfo;
+  private String terminalType;
+  private CursorMotion terminalMotion;
 
   public Readline(Keymap keymap) {
-    // https://github.com/alibaba/termd/issues/42
-    // this.device = TermInfo.defaultInfo().getDevice("xterm"); // For now use xterm
     this.decoder = new EventQueue(keymap);
-    this.history = new ArrayList<int[]>();
+    this.history = new RingHistory();
     addFunction(ACCEPT_LINE);
   }
 
   /**
    * @return the current history
    */
-  public List<int[]> getHistory() {
+  public History history() {
     return history;
   }
 
   /**
-   * Set the history
+   * Set the history, it can be shared with other readline instances.
    *
    * @param history the history
    */
-  public void setHistory(List<int[]> history) {
+  public void setHistoryStore(History history) {
+    if (history == null) {
+      throw new NullPointerException("No null history accepted");
+    }
     this.history = history;
   }
 
+  /**
+   * @return a list view of the current history, adding an element to the list adds an entry as the oldest one
+   * @deprecated use {@link #history()}
+   */
+  @Deprecated
+  public List<int[]> getHistory() {
+    return listView(history);
+  }
+
+  private static List<int[]> listView(final History history) {
+    return new AbstractList<int[]>() {
+      @Override
+      public int[] get(int index) {
+        return history.get(index);
+      }
+      @Override
+      public int size() {
+        return history.size();
+      }
+      @Override
+      public boolean add(int[] line) {
+        if (!(history instanceof RingHistory)) {
+          throw new UnsupportedOperationException();
+        }
+        if (!((RingHistory) history).addOldest(line)) {
+          throw new IllegalStateException("History is full");
+        }
+        return true;
+      }
+    };
+  }
+
+  /**
+   * Set the history from a list, the most recent entry first. The list is copied in a {@link RingHistory} of
+   * {@link RingHistory#DEFAULT_CAPACITY} entries, or of the list size when it is larger so no entry is dropped, the
+   * later changes of the list are not reflected in the history.
+   *
+   * @param history the history
+   * @deprecated use {@link #setHistoryStore(History)}
+   */
+  @Deprecated
+  public void setHistory(List<int[]> history) {
+    RingHistory ring = new RingHistory(Math.max(RingHistory.DEFAULT_CAPACITY, history.size()));
+    for (int i = history.size() - 1;i >= 0;i--) {
+      ring.add(history.get(i));
+    }
+    this.history = ring;
+  }
+
+  /**
+   * Set the device of the terminal, the device capabilities are used for moving the cursor. When no device is set
+   * the device is looked up in the {@link #setTermInfo(TermInfo) term info database} from the terminal type of the
+   * connection when an interaction starts. The cursor is moved with the ANSI sequences when there is no database or
+   * the terminal is not known.
+   *
+   * @param device the device or null
+   * @return this object
+   */
+  public synchronized Readline setDevice(Device device) {
+    motion = device != null ? CursorMotion.create(device) : null;
+    return this;
+  }
+
+  /**
+   * Set the term info database the device is looked up from when no device is set, usually the
+   * {@link TermInfo#defaultInfo() default database}. Loading the default database takes time, so it should be loaded
+   * before setting it and not on an event loop.
+   *
+   * @param termInfo the database or null to use the ANSI sequences
+   * @return this object
+   */
+  public synchronized Readline setTermInfo(TermInfo termInfo) {
+    this.termInfo = termInfo;
+    terminalMotion = null;
+    return this;
+  }
+
+  /**
+   * @return the motion planner of the device or of the specified terminal type
+   */
+  private synchronized CursorMotion motion(String type) {
+    if (motion != null) {
+      return motion;
+    }
+    if (termInfo == null || type == null) {
+      return CursorMotion.ANSI;
+    }
+    if (terminalMotion == null || !type.equals(terminalType)) {
+      Device device = termInfo.getDevice(type);
+      if (device == null) {
+        // Telnet clients usually send the terminal type in upper case
+        device = termInfo.getDevice(type.toLowerCase(Locale.ENGLISH));
+      }
+      terminalType = type;
+      terminalMotion = device != null ? CursorMotion.create(device) : CursorMotion.ANSI;
+    }
+    return terminalMotion;
+  }
+
   /**
    * @return the last known size
    */
@@ -110,18 +213,79 @@ public class Readline {
     while (true) {
       Interaction handler;
       KeyEvent event;
+      int[] text = null;
+      int textLength = 0;
       synchronized (this) {
         if (decoder.hasNext() && interaction != null && !interaction.paused) {
           event = decoder.next();
           handler = interaction;
+          if (handler.keyHandler == null && isText(event)) {
+            // Coalesce the consecutive text events (e.g. a paste) to insert and refresh them at once
+            text = new int[Math.max(16, event.length())];
+            KeyEvent next = event;
+            while (true) {
+              int length = next.length();
+              if (textLength + length > text.length) {
+                text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+              }
+              for (int i = 0;i < length;i++) {
+                text[textLength++] = next.getCodePointAt(i);
+              }
+              next = decoder.peek();
+              if (next == null || !isText(next)) {
+                break;
+              }
+              decoder.next();
+            }
+          }
         } else {
           return;
         }
       }
-      handler.handle(event);
+      if (text != null) {
+        handler.insert(text, textLength);
+      } else {
+        handler.handle(event);
+      }
     }
   }
 
+  /**
+   * @param event the key event
+   * @return the name of the function bound to the event or null when the event is not bound to a function
+   */
+  public static String functionName(KeyEvent event) {
+    return event instanceof FunctionEvent ? ((FunctionEvent) event).name() : null;
+  }
+
+  // The keys having a specific behavior
+  private static final int CTRL_C = 3;
+  private static final int CTRL_D = 4;
+  private static final int CTRL_L = 12;
+
+  /**
+   * Ctrl-D ends the interaction on an empty line even when it is bound to a function like {@code delete-char},
+   * Ctrl-C and Ctrl-L have a specific behavior unless they are bound to a function.
+   *
+   * @return the code point of a key having a specific behavior or {@code -1}
+   */
+  private static int specialKey(KeyEvent event) {
+    if (event.length() == 1) {
+      int cp = event.getCodePointAt(0);
+      if (cp == CTRL_D || (!(event instanceof FunctionEvent) && (cp == CTRL_C || cp == CTRL_L))) {
+        return cp;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return true if the event is inserted in the line buffer
+   */
+  private static boolean isText(KeyEvent event) {
+    return !(event instanceof FunctionEvent) && specialKey(event) == -1;
+  }
+
   /**
    * Read a line until a request can be processed.
    *
@@ -196,9 +360,13 @@ public class Readline {
     private final Map<String, Object> data;
     private final LineBuffer line = new LineBuffer();
     private final LineBuffer buffer = new LineBuffer();
+    private final LineRenderer renderer;
+    private final History sharedHistory = history;
+    private final History historySnapshot = sharedHistory.snapshot();
     private int historyIndex = -1;
     private String currentPrompt;
     private boolean paused;
+    private Consumer<KeyEvent> keyHandler;
 
     private Interaction(
         TtyConnection conn,
@@ -206,6 +374,7 @@ public class Readline {
         Consumer<String> requestHandler,
         Consumer<Completion> completionHandler) {
       this.conn = conn;
+      this.renderer = new LineRenderer(motion(conn.terminalType()));
       this.prompt = prompt;
       this.data = new HashMap<String, Object>();
       this.currentPrompt = prompt;
@@ -232,15 +401,32 @@ public class Readline {
       return true;
     }
 
-    private void handle(KeyEvent event) {
+    /**
+     * Handle a key event, the event is delivered to the key handler when there is one.
+     *
+     * @param event the key event
+     */
+    public void handle(KeyEvent event) {
+
+      Consumer<KeyEvent> handler;
+      synchronized (Readline.this) {
+        handler = keyHandler;
+      }
+      if (handler != null) {
+        handler.accept(event);
+        return;
+      }
 
       // Very specific behavior that cannot be encapsulated in a function flow
-      if (event.length() == 1) {
-        if (event.getCodePointAt(0) == 4 && buffer.getSize() == 0) {
-          // Specific behavior for Ctrl-D with empty line
-          end(null);
-          return;
-        } else if (event.getCodePointAt(0) == 3) {
+      switch (specialKey(event)) {
+        case CTRL_D:
+          if (buffer.getSize() == 0) {
+            // Specific behavior for Ctrl-D with empty line
+            end(null);
+            return;
+          }
+          break;
+        case CTRL_C:
           // Specific behavior Ctrl-C
           line.clear();
           buffer.clear();
@@ -249,9 +435,9 @@ public class Readline {
           currentPrompt = prompt;
           conn.stdoutHandler().accept(new int[]{'\n'});
           conn.write(interaction.prompt);
+          renderer.reset(Helper.toCodePoints(prompt), buffer, width());
           return;
-        }
-        else if (event.getCodePointAt(0) == 12) {
+        case CTRL_L:
           // Specific behavior Ctrl-L
 
           // \033 is the control character, \033[H means move the cursor to (0,0), \033[2J means clear screen
@@ -260,7 +446,6 @@ public class Readline {
           this.redraw();
 
           return;
-        }
       }
       if (event instanceof FunctionEvent) {
         FunctionEvent fname = (FunctionEvent) event;
@@ -274,17 +459,33 @@ public class Readline {
           Logging.READLINE.warn("Unimplemented function " + fname.name());
         }
       } else {
-        LineBuffer buf = buffer.copy();
-        for (int i = 0;i < event.length();i++) {
-          int codePoint = event.getCodePointAt(i);
-          try {
-            buf.insert(codePoint);
-          } catch (IllegalArgumentException e) {
-            conn.stdoutHandler().accept(new int[]{'\007'});
-          }
+        int[] codePoints = new int[event.length()];
+        for (int i = 0;i < codePoints.length;i++) {
+          codePoints[i] = event.getCodePointAt(i);
+        }
+        insert(codePoints, codePoints.length);
+      }
+    }
+
+    /**
+     * Insert code points at the cursor and refresh the line once, a bell is emitted for each code point that
+     * cannot be inserted.
+     *
+     * @param codePoints the code points, the array is modified
+     * @param length the number of code points
+     */
+    private void insert(int[] codePoints, int length) {
+      int count = 0;
+      for (int i = 0;i < length;i++) {
+        int codePoint = codePoints[i];
+        if (LineBuffer.isInsertable(codePoint)) {
+          codePoints[count++] = codePoint;
+        } else {
+          conn.stdoutHandler().accept(new int[]{'\007'});
         }
-        refresh(buf);
       }
+      int cursor = buffer.getCursor();
+      renderer.replace(buffer, cursor, 0, codePoints, 0, count, cursor + count, width(), conn.stdoutHandler());
     }
 
     void resize(int oldWith, int newWidth) {
@@ -326,8 +527,7 @@ public class Readline {
       out.accept(new int[]{'\033','[','1','K'});
 
       // Now redraw
-      out.accept(Helper.toCodePoints(currentPrompt));
-      refresh(new LineBuffer(), newWidth);
+      renderer.redraw(Helper.toCodePoints(currentPrompt), buffer, newWidth, out);
     }
 
     public Consumer<Completion> completionHandler() {
@@ -338,8 +538,30 @@ public class Readline {
       return data;
     }
 
+    /**
+     * @return a list view of the history as it was when the interaction started
+     * @deprecated use {@link #historySnapshot()}
+     */
+    @Deprecated
     public List<int[]> history() {
-      return history;
+      return listView(historySnapshot);
+    }
+
+    /**
+     * @return the history as it was when the interaction started
+     */
+    public History historySnapshot() {
+      return historySnapshot;
+    }
+
+    /**
+     * @return the search index shared by the users of the readline history, updated with the entries of the
+     *         interaction history
+     */
+    public HistoryIndex searchIndex() {
+      HistoryIndex index = HistoryIndex.of(sharedHistory);
+      index.update(historySnapshot);
+      return index;
     }
 
     public int getHistoryIndex() {
@@ -366,16 +588,35 @@ public class Readline {
       return size;
     }
 
+    public Consumer<KeyEvent> getKeyHandler() {
+      synchronized (Readline.this) {
+        return keyHandler;
+      }
+    }
+
+    /**
+     * Set a handler receiving the key events instead of the key bindings, for instance to implement a function
+     * reading several keys. The handler can pass an event back to the key bindings by setting the key handler
+     * to {@code null} and calling {@link #handle(KeyEvent)}.
+     *
+     * @param handler the handler or null
+     */
+    public void setKeyHandler(Consumer<KeyEvent> handler) {
+      synchronized (Readline.this) {
+        keyHandler = handler;
+      }
+    }
+
+    private int width() {
+      // Until the size is known the line is not wrapped
+      return size != null ? size.x() : Integer.MAX_VALUE;
+    }
+
     /**
      * Redraw the current line.
      */
     public void redraw() {
-      LineBuffer toto = new LineBuffer(buffer.getCapacity());
-      toto.insert(Helper.toCodePoints(currentPrompt));
-      toto.insert(buffer.toArray());
-      toto.setCursor(currentPrompt.length() + buffer.getCursor());
-      LineBuffer abc = new LineBuffer(toto.getCapacity());
-      abc.update(toto, conn.stdoutHandler(), size.x());
+      renderer.redraw(Helper.toCodePoints(currentPrompt), buffer, width(), conn.stdoutHandler());
     }
 
     /**
@@ -384,32 +625,41 @@ public class Readline {
      * @param buffer the new buffer
      */
     public Interaction refresh(LineBuffer buffer) {
-      refresh(buffer, size.x());
+      refresh(buffer, width());
+      return this;
+    }
+
+    /**
+     * Refresh the current prompt and the current buffer with the arguments.
+     *
+     * @param prompt the new prompt
+     * @param buffer the new buffer
+     */
+    public Interaction refresh(String prompt, LineBuffer buffer) {
+      currentPrompt = prompt;
+      renderer.replace(Helper.toCodePoints(prompt), this.buffer, buffer, width(), conn.stdoutHandler());
       return this;
     }
 
     private void refresh(LineBuffer update, int width) {
-      LineBuffer copy3 = new LineBuffer(update.getCapacity());
-      final List<Integer> codePoints = new LinkedList<Integer>();
-      copy3.insert(Helper.toCodePoints(currentPrompt));
-      copy3.insert(buffer().toArray());
-      copy3.setCursor(currentPrompt.length() + buffer().getCursor());
-      LineBuffer copy2 = new LineBuffer(copy3.getCapacity());
-      copy2.insert(Helper.toCodePoints(currentPrompt));
-      copy2.insert(update.toArray());
-      copy2.setCursor(currentPrompt.length() + update.getCursor());
-      copy3.update(copy2, new Consumer<int[]>() {
-        @Override
-        public void accept(int[] data) {
-          for (int cp : data) {
-            codePoints.add(cp);
-          }
-        }
-      }, width);
-      conn.stdoutHandler().accept(Helper.convert(codePoints));
-      buffer.clear();
-      buffer.insert(update.toArray());
-      buffer.setCursor(update.getCursor());
+      // Only the span between the common prefix and the common suffix changed
+      int oldSize = buffer.getSize();
+      int newSize = update.getSize();
+      int max = Math.min(oldSize, newSize);
+      int prefix = 0;
+      while (prefix < max && buffer.getAt(prefix) == update.getAt(prefix)) {
+        prefix++;
+      }
+      max -= prefix;
+      int suffix = 0;
+      while (suffix < max && buffer.getAt(oldSize - suffix - 1) == update.getAt(newSize - suffix - 1)) {
+        suffix++;
+      }
+      int[] codePoints = new int[newSize - prefix - suffix];
+      for (int i = 0;i < codePoints.length;i++) {
+        codePoints[i] = update.getAt(prefix + i);
+      }
+      renderer.replace(buffer, prefix, oldSize - prefix - suffix, codePoints, 0, codePoints.length, update.getCursor(), width, conn.stdoutHandler());
     }
 
     public void resume() {
@@ -426,16 +676,21 @@ public class Readline {
       prevReadHandler = conn.getStdinHandler();
       prevSizeHandler = conn.getSizeHandler();
       prevEventHandler = conn.getEventHandler();
-      conn.setStdinHandler(new Consumer<int[]>() {
+      conn.setStdinHandler(new CodePointSink() {
         @Override
         public void accept(int[] data) {
+          accept(data, 0, data.length);
+        }
+        @Override
+        public void accept(int[] data, int offset, int length) {
           synchronized (Readline.this) {
-            decoder.append(data);
+            decoder.append(data, offset, length);
           }
           deliver();
         }
       });
       size = conn.size();
+      renderer.reset(Helper.toCodePoints(prompt), buffer, width());
       conn.setSizeHandler(new Consumer<Vector>() {
         @Override
         public void accept(Vector dim) {
@@ -470,12 +725,14 @@ public class Readline {
         interaction.line.delete(-1); // Remove \
         interaction.currentPrompt = "> ";
         interaction.conn.write("\n> ");
+        interaction.renderer.reset(Helper.toCodePoints(interaction.currentPrompt), interaction.buffer, interaction.width());
         interaction.resume();
       } else {
         if (pb.isQuoted()) {
           interaction.line.insert('\n');
           interaction.conn.write("\n> ");
           interaction.currentPrompt = "> ";
+          interaction.renderer.reset(Helper.toCodePoints(interaction.currentPrompt), interaction.buffer, interaction.width());
           interaction.resume();
         } else {
           String raw = interaction.line.toString();
@@ -489,22 +746,14 @@ public class Readline {
       }
     }
 
-      private void addToHistory(int[] command) {
-          // copy and save. https://github.com/alibaba/termd/issues/44
-          synchronized (Readline.class) {
-              List<int[]> tmp = new ArrayList<int[]>(history.size());
-              // add to first
-              tmp.add(command);
-
-              for (int[] c : history) {
-                  tmp.add(c);
-                  if (tmp.size() >= MAX_HISTORY_SIZE) {
-                      break;
-                  }
-              }
-              history = tmp;
-          }
+    private void addToHistory(int[] command) {
+      try {
+        history.add(command);
+      } catch (RuntimeException e) {
+        // The line is still accepted
+        Logging.READLINE.error("Could not add the line to the history", e);
       }
+    }
 
   };
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.readline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded {@link History} kept in a lock-free ring, adding an entry is {@code O(1)} and evicts the oldest entry
+ * when the ring is full.<p/>
+ *
+ * Each entry gets a sequence number, the snapshots only retain the sequence range and read the ring, so they don't
+ * copy the entries. An entry evicted after a snapshot was taken reads as an empty line from that snapshot.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class RingHistory implements History {
+
+  /**
+   * The default max number of entries.
+   */
+  public static final int DEFAULT_CAPACITY = 500;
+
+  private static final int[] EMPTY = new int[0];
+
+  private static final class Entry {
+
+    final long seq;
+    final int[] line;
+
+    Entry(long seq, int[] line) {
+      this.seq = seq;
+      this.line = line;
+    }
+  }
+
+  private final int capacity;
+  private final AtomicReferenceArray<Entry> slots;
+  private final AtomicLong head = new AtomicLong(); // The sequence of the next most recent entry
+  private final AtomicLong tail = new AtomicLong(); // The sequence of the oldest entry
+
+  public RingHistory() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param capacity the max number of entries
+   */
+  public RingHistory(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Invalid capacity " + capacity);
+    }
+    this.capacity = capacity;
+    this.slots = new AtomicReferenceArray<Entry>(capacity);
+  }
+
+  /**
+   * @return the max number of entries
+   */
+  public int capacity() {
+    return capacity;
+  }
+
+  @Override
+  public int size() {
+    long t = tail.get();
+    return range(t, head.get());
+  }
+
+  @Override
+  public int[] get(int index) {
+    long t = tail.get();
+    long top = head.get();
+    return read(top, range(t, top), index);
+  }
+
+  @Override
+  public long sequence() {
+    long t = tail.get();
+    long top = head.get();
+    return top - range(t, top);
+  }
+
+  @Override
+  public void add(int[] line) {
+    if (line == null) {
+      throw new NullPointerException("No null history entry accepted");
+    }
+    long seq = head.getAndIncrement();
+    store(new Entry(seq, line));
+    long min = seq + 1 - capacity;
+    while (true) {
+      long t = tail.get();
+      if (t >= min || tail.compareAndSet(t, min)) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Add an entry as the oldest one, unless the history is full.
+   *
+   * @param line the entry code points
+   * @return true when the entry was added
+   */
+  public boolean addOldest(int[] line) {
+    if (line == null) {
+      throw new NullPointerException("No null history entry accepted");
+    }
+    while (true) {
+      long t = tail.get();
+      if (head.get() - t >= capacity) {
+        return false;
+      }
+      if (tail.compareAndSet(t, t - 1)) {
+        store(new Entry(t - 1, line));
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public History snapshot() {
+    long t = tail.get();
+    long top = head.get();
+    return new Snapshot(top, range(t, top));
+  }
+
+  private int range(long bottom, long top) {
+    return (int) Math.max(0, Math.min(top - bottom, capacity));
+  }
+
+  private int index(long seq) {
+    int index = (int) (seq % capacity);
+    return index < 0 ? index + capacity : index;
+  }
+
+  private void store(Entry entry) {
+    int index = index(entry.seq);
+    while (true) {
+      Entry current = slots.get(index);
+      // A newer entry wins over a late writer of an older one
+      if (current != null && current.seq > entry.seq) {
+        return;
+      }
+      if (slots.compareAndSet(index, current, entry)) {
+        return;
+      }
+    }
+  }
+
+  private int[] read(long top, int size, int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    long seq = top - 1 - index;
+    Entry entry = slots.get(index(seq));
+    // The entry was evicted or is still being written
+    return entry != null && entry.seq == seq ? entry.line : EMPTY;
+  }
+
+  private class Snapshot implements History {
+
+    private final long top;
+    private final int size;
+
+    Snapshot(long top, int size) {
+      this.top = top;
+      this.size = size;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public int[] get(int index) {
+      return read(top, size, index);
+    }
+
+    @Override
+    public long sequence() {
+      return top - size;
+    }
+
+    @Override
+    public void add(int[] line) {
+      throw new UnsupportedOperationException("Read only history");
+    }
+
+    @Override
+    public History snapshot() {
+      return this;
+    }
+  }
+}
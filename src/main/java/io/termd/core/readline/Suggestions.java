@@ -0,0 +1,393 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.readline;
+
+import io.termd.core.function.Consumer;
+import io.termd.core.tty.TtyConnection;
+import io.termd.core.util.Helper;
+import io.termd.core.util.Vector;
+import io.termd.core.util.Wcwidth;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the candidates of a {@link Completion} below the edited line, obtained with
+ * {@link Completion#suggestions()}. The candidates can be added in chunks from any thread until {@link #end()} is
+ * called, they are displayed page by page in columns sized with the display width of the candidates.<p/>
+ *
+ * Above the {@link #setQueryThreshold(int) query threshold} the user is asked whether the candidates should be
+ * displayed. A {@code --More--} prompt is displayed after each page that fills the screen, the space and enter keys
+ * display the next page and the {@code q}, {@code n}, {@code C-c} or {@code C-g} keys stop the display. A key
+ * typed while the candidates are loading or the {@link #setTimeout(long, TimeUnit) timeout} cancels the completion,
+ * the producer should then stop adding candidates.<p/>
+ *
+ * The screen is updated with the {@link TtyConnection#execute(Runnable)} executor of the connection.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class Suggestions {
+
+  /**
+   * The default number of candidates above which the user is asked before the candidates are displayed.
+   */
+  public static final int DEFAULT_QUERY_THRESHOLD = 100;
+
+  private static final int[] MORE = Helper.toCodePoints("--More--");
+  private static final int[] ERASE_MORE = {'\r', '\033', '[', 'K'};
+
+  private enum State {
+    LOADING, ASKING, MORE, DONE
+  }
+
+  private final Readline.Interaction interaction;
+  private final TtyConnection conn;
+  private final Runnable update = new Runnable() {
+    @Override
+    public void run() {
+      process();
+    }
+  };
+  private final Consumer<KeyEvent> keyHandler = new Consumer<KeyEvent>() {
+    @Override
+    public void accept(KeyEvent event) {
+      handle(event);
+    }
+  };
+
+  // Guarded by this
+  private final List<int[]> candidates = new ArrayList<int[]>();
+  private boolean ended;
+  private boolean cancelled;
+  private Consumer<Void> cancelHandler;
+  private int queryThreshold = DEFAULT_QUERY_THRESHOLD;
+
+  // Accessed from the connection executor
+  private State state = State.LOADING;
+  private boolean confirmed;
+  private boolean opened;
+  private int displayed;
+
+  Suggestions(Readline.Interaction interaction) {
+    this.interaction = interaction;
+    this.conn = interaction.conn;
+  }
+
+  void start() {
+    interaction.setKeyHandler(keyHandler);
+    interaction.resume();
+  }
+
+  public synchronized int getQueryThreshold() {
+    return queryThreshold;
+  }
+
+  /**
+   * Set the number of candidates above which the user is asked before the candidates are displayed, {@code 0}
+   * displays the candidates without asking.
+   *
+   * @param queryThreshold the threshold
+   * @return this object
+   */
+  public synchronized Suggestions setQueryThreshold(int queryThreshold) {
+    this.queryThreshold = queryThreshold;
+    return this;
+  }
+
+  /**
+   * Cancel the completion when the candidates are not all added after a delay.
+   *
+   * @param delay the delay
+   * @param unit the delay unit
+   * @return this object
+   */
+  public Suggestions setTimeout(long delay, TimeUnit unit) {
+    conn.schedule(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (Suggestions.this) {
+          if (ended) {
+            return;
+          }
+        }
+        cancel();
+      }
+    }, delay, unit);
+    return this;
+  }
+
+  /**
+   * Set a handler called when the completion is cancelled.
+   *
+   * @param handler the handler
+   * @return this object
+   */
+  public synchronized Suggestions setCancelHandler(Consumer<Void> handler) {
+    this.cancelHandler = handler;
+    return this;
+  }
+
+  /**
+   * @return true when the completion was cancelled
+   */
+  public synchronized boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Add a chunk of candidates.
+   *
+   * @param chunk the candidates
+   * @return false when the completion is cancelled, the candidates are then discarded
+   */
+  public boolean add(List<int[]> chunk) {
+    synchronized (this) {
+      if (ended) {
+        throw new IllegalStateException("Suggestions already ended");
+      }
+      if (cancelled) {
+        return false;
+      }
+      candidates.addAll(chunk);
+    }
+    conn.execute(update);
+    return true;
+  }
+
+  /**
+   * Signal that all the candidates were added.
+   */
+  public void end() {
+    synchronized (this) {
+      if (ended) {
+        throw new IllegalStateException("Suggestions already ended");
+      }
+      ended = true;
+    }
+    conn.execute(update);
+  }
+
+  private void handle(KeyEvent event) {
+    int cp = event.length() == 1 && Readline.functionName(event) == null ? event.getCodePointAt(0) : -1;
+    switch (state) {
+      case LOADING:
+        cancel();
+        break;
+      case ASKING:
+        if (cp == 'y' || cp == 'Y' || cp == ' ') {
+          closePrompt();
+          confirmed = true;
+          process();
+        } else if (cp == 'n' || cp == 'N' || cp == 3 || cp == 7) {
+          stop();
+        } else {
+          bell();
+        }
+        break;
+      case MORE:
+        if (cp == ' ' || cp == 'y' || "accept-line".equals(Readline.functionName(event))) {
+          closePrompt();
+          process();
+        } else if (cp == 'q' || cp == 'Q' || cp == 'n' || cp == 3 || cp == 7) {
+          stop();
+        } else {
+          bell();
+        }
+        break;
+    }
+  }
+
+  private void process() {
+    if (state != State.LOADING) {
+      return;
+    }
+    int size;
+    boolean ended;
+    int threshold;
+    synchronized (this) {
+      if (cancelled) {
+        return;
+      }
+      size = candidates.size();
+      ended = this.ended;
+      threshold = queryThreshold;
+    }
+    if (!confirmed) {
+      if (threshold > 0 && size > threshold) {
+        open();
+        conn.write(ended ? "Display all " + size + " possibilities? (y or n)" : "Display more than " + threshold + " possibilities? (y or n)");
+        state = State.ASKING;
+        return;
+      }
+      if (threshold > 0 && !ended) {
+        // Wait until the threshold is reached or the candidates are all added
+        return;
+      }
+      confirmed = true;
+    }
+    Vector screen = interaction.size();
+    if (screen == null) {
+      screen = new Vector();
+    }
+    int width = Math.max(1, screen.x());
+    int rows = Math.max(1, screen.y() - 1);
+    // A page shows at most columns * rows candidates, only this window is copied
+    int window = Math.max(1, width / 2) * rows;
+    while (displayed < size) {
+      List<int[]> page;
+      synchronized (this) {
+        page = new ArrayList<int[]>(candidates.subList(displayed, Math.min(size, displayed + window)));
+      }
+      int count = layout(page, width, rows);
+      if (count == -1 && !ended) {
+        // Wait for a full page
+        return;
+      }
+      if (count == -1) {
+        count = page.size();
+      }
+      open();
+      conn.stdoutHandler().accept(render(page.subList(0, count), width));
+      displayed += count;
+      if (displayed < size || !ended) {
+        conn.stdoutHandler().accept(MORE);
+        state = State.MORE;
+        return;
+      }
+    }
+    if (ended) {
+      finish();
+    }
+  }
+
+  /**
+   * @return the number of candidates of a full page or {@code -1} if there are not enough candidates
+   */
+  private static int layout(List<int[]> candidates, int width, int rows) {
+    int columns = Math.max(1, width / 2);
+    while (true) {
+      int count = Math.min(candidates.size(), columns * rows);
+      int max = maxWidth(candidates, count);
+      int fit = Math.max(1, (width + 1) / (max + 1));
+      if (fit >= columns) {
+        return count == columns * rows ? count : -1;
+      }
+      columns = fit;
+    }
+  }
+
+  private static int maxWidth(List<int[]> candidates, int count) {
+    int max = 1;
+    for (int i = 0;i < count;i++) {
+      max = Math.max(max, Wcwidth.of(candidates.get(i)));
+    }
+    return max;
+  }
+
+  /**
+   * Render the candidates in rows, the columns are separated by a space.
+   */
+  private static int[] render(List<int[]> candidates, int width) {
+    int max = maxWidth(candidates, candidates.size());
+    int columns = Math.max(1, (width + 1) / (max + 1));
+    int[] out = new int[64];
+    int length = 0;
+    for (int i = 0;i < candidates.size();i++) {
+      int[] candidate = candidates.get(i);
+      boolean last = i % columns == columns - 1 || i == candidates.size() - 1;
+      int padding = last ? 0 : max + 1 - Wcwidth.of(candidate);
+      if (length + candidate.length + padding + 1 > out.length) {
+        out = Arrays.copyOf(out, Math.max(out.length * 2, length + candidate.length + padding + 1));
+      }
+      System.arraycopy(candidate, 0, out, length, candidate.length);
+      length += candidate.length;
+      for (int j = 0;j < padding;j++) {
+        out[length++] = ' ';
+      }
+      if (last) {
+        out[length++] = '\n';
+      }
+    }
+    return Arrays.copyOf(out, length);
+  }
+
+  private void open() {
+    if (!opened) {
+      opened = true;
+      conn.write("\n");
+    }
+  }
+
+  private void bell() {
+    conn.stdoutHandler().accept(new int[]{'\007'});
+  }
+
+  /**
+   * Stop the display, the producer is cancelled when it is still adding candidates.
+   */
+  private void stop() {
+    boolean notify;
+    synchronized (this) {
+      notify = !ended;
+    }
+    if (notify) {
+      cancel();
+    } else {
+      finish();
+    }
+  }
+
+  private void cancel() {
+    Consumer<Void> handler;
+    synchronized (this) {
+      if (cancelled || state == State.DONE) {
+        return;
+      }
+      cancelled = true;
+      handler = cancelHandler;
+    }
+    finish();
+    if (handler != null) {
+      handler.accept(null);
+    }
+  }
+
+  /**
+   * Move below the question or erase the {@code --More--} prompt.
+   */
+  private void closePrompt() {
+    if (state == State.ASKING) {
+      conn.write("\n");
+    } else if (state == State.MORE) {
+      conn.stdoutHandler().accept(ERASE_MORE);
+    }
+    state = State.LOADING;
+  }
+
+  private void finish() {
+    if (state != State.DONE) {
+      closePrompt();
+      state = State.DONE;
+      interaction.setKeyHandler(null);
+      if (opened) {
+        interaction.redraw();
+      }
+    }
+  }
+}
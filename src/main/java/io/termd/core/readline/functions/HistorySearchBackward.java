@@ -1,8 +1,7 @@
 package io.termd.core.readline.functions;
 
-import java.util.List;
-
 import io.termd.core.readline.Function;
+import io.termd.core.readline.History;
 import io.termd.core.readline.LineBuffer;
 import io.termd.core.readline.Readline;
 import io.termd.core.util.LineBufferUtils;
@@ -23,7 +22,7 @@ public class HistorySearchBackward implements Function {
     public void apply(Readline.Interaction interaction) {
         LineBuffer buf = interaction.buffer().copy();
         int cursor = buf.getCursor();
-        List<int[]> history = interaction.history();
+        History history = interaction.historySnapshot();
 
         int curr = interaction.getHistoryIndex();
 
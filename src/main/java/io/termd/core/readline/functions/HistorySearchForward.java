@@ -2,12 +2,11 @@
 package io.termd.core.readline.functions;
 
 import io.termd.core.readline.Function;
+import io.termd.core.readline.History;
 import io.termd.core.readline.LineBuffer;
 import io.termd.core.readline.Readline;
 import io.termd.core.util.LineBufferUtils;
 
-import java.util.List;
-
 /**
  *
  * @author hengyunabc 2018-11-17
@@ -25,7 +24,7 @@ public class HistorySearchForward implements Function {
         LineBuffer buf = interaction.buffer().copy();
         int cursor = buf.getCursor();
 
-        List<int[]> history = interaction.history();
+        History history = interaction.historySnapshot();
 
         int currentHistoryIndex = interaction.getHistoryIndex();
 
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.readline.functions;
+
+import io.termd.core.function.Consumer;
+import io.termd.core.readline.History;
+import io.termd.core.readline.HistoryIndex;
+import io.termd.core.readline.KeyEvent;
+import io.termd.core.readline.LineBuffer;
+import io.termd.core.readline.Readline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An incremental search of the history: the typed characters extend the query and the line shows the entry
+ * matching it, searching again moves to the next matching entry, deleting a character goes back to the previous
+ * state and {@code C-g} restores the original line. Any other key ends the search with the matching entry and is
+ * handled by the key bindings.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+class IncrementalSearch implements Consumer<KeyEvent> {
+
+  static final String REVERSE_SEARCH_HISTORY = "reverse-search-history";
+  static final String FORWARD_SEARCH_HISTORY = "forward-search-history";
+
+  /**
+   * Start a search.
+   *
+   * @param interaction the interaction
+   * @param older the search direction
+   */
+  static void start(Readline.Interaction interaction, boolean older) {
+    IncrementalSearch search = new IncrementalSearch(interaction, older);
+    interaction.setKeyHandler(search);
+    search.render();
+    interaction.resume();
+  }
+
+  private static class State {
+
+    final int queryLength;
+    final int match;
+    final int matchOffset;
+    final boolean older;
+    final boolean failed;
+
+    State(int queryLength, int match, int matchOffset, boolean older, boolean failed) {
+      this.queryLength = queryLength;
+      this.match = match;
+      this.matchOffset = matchOffset;
+      this.older = older;
+      this.failed = failed;
+    }
+  }
+
+  private final Readline.Interaction interaction;
+  private final History history;
+  private final HistoryIndex index;
+  private final String prompt;
+  private final int[] line;
+  private final int cursor;
+  private final int historyIndex;
+  private final List<State> states = new ArrayList<State>();
+  private int[] query = new int[0];
+  private int match;
+  private int matchOffset;
+  private boolean older;
+  private boolean failed;
+
+  private IncrementalSearch(Readline.Interaction interaction, boolean older) {
+    this.interaction = interaction;
+    this.history = interaction.historySnapshot();
+    this.index = interaction.searchIndex();
+    this.prompt = interaction.currentPrompt();
+    this.line = interaction.buffer().toArray();
+    this.cursor = interaction.buffer().getCursor();
+    this.historyIndex = interaction.getHistoryIndex();
+    this.older = older;
+    this.match = -1;
+  }
+
+  @Override
+  public void accept(KeyEvent event) {
+    String name = Readline.functionName(event);
+    if (REVERSE_SEARCH_HISTORY.equals(name) || FORWARD_SEARCH_HISTORY.equals(name)) {
+      push();
+      older = REVERSE_SEARCH_HISTORY.equals(name);
+      if (query.length > 0) {
+        // Skip the current entry
+        find(match + (older ? 1 : -1), true);
+      }
+      render();
+    } else if ("backward-delete-char".equals(name)) {
+      if (states.size() > 0) {
+        State state = states.remove(states.size() - 1);
+        query = Arrays.copyOf(query, state.queryLength);
+        match = state.match;
+        matchOffset = state.matchOffset;
+        older = state.older;
+        failed = state.failed;
+      }
+      render();
+    } else if (name == null && event.length() == 1 && event.getCodePointAt(0) == 7) {
+      // C-g aborts the search
+      interaction.setKeyHandler(null);
+      interaction.refresh(prompt, new LineBuffer().insert(line).setCursor(cursor));
+      interaction.setHistoryIndex(historyIndex);
+    } else if (name == null && event.length() == 1 && event.getCodePointAt(0) >= 32) {
+      push();
+      query = Arrays.copyOf(query, query.length + 1);
+      query[query.length - 1] = event.getCodePointAt(0);
+      if (!failed) {
+        // The current entry can still match the longer query
+        find(match != -1 ? match : (older ? Math.max(historyIndex, 0) : historyIndex - 1), false);
+      }
+      render();
+    } else {
+      interaction.setKeyHandler(null);
+      interaction.refresh(prompt, current());
+      if (match != -1) {
+        if (historyIndex == -1) {
+          // Restored by next-history
+          interaction.data().put("abc", line);
+        }
+        interaction.setHistoryIndex(match);
+      }
+      interaction.handle(event);
+    }
+  }
+
+  private void push() {
+    states.add(new State(query.length, match, matchOffset, older, failed));
+  }
+
+  /**
+   * Find the next entry matching the query from {@code start}.
+   *
+   * @param start the index of the first entry to check
+   * @param skipDuplicate skip the entries identical to the current one
+   */
+  private void find(int start, boolean skipDuplicate) {
+    int[] current = skipDuplicate ? current().toArray() : null;
+    int next = start;
+    while (true) {
+      next = index.search(history, query, next, older);
+      if (next == -1) {
+        failed = true;
+        return;
+      }
+      int[] entry = history.get(next);
+      if (current == null || !Arrays.equals(current, entry)) {
+        failed = false;
+        match = next;
+        matchOffset = older ? lastIndexOf(entry, query) : HistoryIndex.indexOf(entry, query, 0);
+        return;
+      }
+      next += older ? 1 : -1;
+    }
+  }
+
+  private static int lastIndexOf(int[] entry, int[] query) {
+    int last = -1;
+    for (int i = HistoryIndex.indexOf(entry, query, 0);i != -1;i = HistoryIndex.indexOf(entry, query, i + 1)) {
+      last = i;
+    }
+    return last;
+  }
+
+  /**
+   * @return the matching entry or the original line when there is none
+   */
+  private LineBuffer current() {
+    if (match == -1) {
+      return new LineBuffer().insert(line).setCursor(cursor);
+    }
+    return new LineBuffer().insert(history.get(match)).setCursor(matchOffset);
+  }
+
+  private void render() {
+    StringBuilder sb = new StringBuilder();
+    sb.append('(');
+    if (failed) {
+      sb.append("failed ");
+    }
+    sb.append(older ? "reverse-i-search" : "i-search").append(")`");
+    for (int cp : query) {
+      sb.appendCodePoint(cp);
+    }
+    sb.append("': ");
+    interaction.refresh(sb.toString(), current());
+  }
+}
@@ -17,11 +17,10 @@
 package io.termd.core.readline.functions;
 
 import io.termd.core.readline.Function;
+import io.termd.core.readline.History;
 import io.termd.core.readline.LineBuffer;
 import io.termd.core.readline.Readline;
 
-import java.util.List;
-
 /**
  *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
@@ -35,7 +34,7 @@ public class PreviousHistory implements Function {
 
   @Override
   public void apply(Readline.Interaction interaction) {
-    List<int[]> history = interaction.history();
+    History history = interaction.historySnapshot();
     if (history.size() > 0) {
       int curr = interaction.getHistoryIndex();
       int next = curr + 1;
@@ -24,13 +24,13 @@ import io.termd.core.tty.TtyConnection;
 import io.termd.core.tty.TtyConnectionSupport;
 import io.termd.core.tty.TtyEvent;
 import io.termd.core.tty.TtyEventDecoder;
-import io.termd.core.tty.TtyOutputMode;
 import io.termd.core.util.Vector;
 import org.apache.sshd.common.channel.PtyMode;
 import org.apache.sshd.common.future.CloseFuture;
 import org.apache.sshd.common.future.SshFutureListener;
 import org.apache.sshd.common.io.IoInputStream;
 import org.apache.sshd.common.io.IoOutputStream;
+import org.apache.sshd.common.io.IoWriteFuture;
 import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
 import org.apache.sshd.server.AsyncCommand;
 import org.apache.sshd.server.ChannelSessionAware;
@@ -56,6 +56,9 @@ import java.util.regex.Pattern;
 */
 public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSessionAware {
 
+  public static final int DEFAULT_LOW_WATER_MARK = 32 * 1024;
+  public static final int DEFAULT_HIGH_WATER_MARK = 64 * 1024;
+
   private static final Pattern LC_PATTERN = Pattern.compile("(?:\\p{Alpha}{2}_\\p{Alpha}{2}\\.)?([^@]+)(?:@.+)?");
 
   private final Consumer<TtyConnection> handler;
@@ -65,11 +68,14 @@ public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSes
   private TtyEventDecoder eventDecoder;
   private BinaryDecoder decoder;
   private Consumer<int[]> stdout;
-  private Consumer<byte[]> out;
+  private OutputWriter out;
   private Vector size = null;
   private Consumer<Vector> sizeHandler;
   private Consumer<String> termHandler;
   private Consumer<Void> closeHandler;
+  private volatile Consumer<Boolean> writabilityHandler;
+  private int lowWaterMark = DEFAULT_LOW_WATER_MARK;
+  private int highWaterMark = DEFAULT_HIGH_WATER_MARK;
   protected ChannelSession session;
   private final AtomicBoolean closed = new AtomicBoolean();
   private ExitCallback exitCallback;
@@ -82,6 +88,21 @@ public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSes
     this.defaultCharset = defaultCharset;
   }
 
+  /**
+   * Set the water marks of the output written and not yet sent to the client, the connection becomes not writable
+   * above the high water mark and writable again below the low water mark.
+   *
+   * @param low the low water mark
+   * @param high the high water mark
+   */
+  public void setWriteBufferWaterMark(int low, int high) {
+    if (low < 0 || high < low) {
+      throw new IllegalArgumentException("Invalid water marks low=" + low + " high=" + high);
+    }
+    this.lowWaterMark = low;
+    this.highWaterMark = high;
+  }
+
   @Override
   public int data(ChannelSession channel, byte[] buf, int start, int len) throws IOException {
     if (decoder != null) {
@@ -118,12 +139,91 @@ public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSes
   @Override
   public void setIoOutputStream(final IoOutputStream out) {
     this.ioOut = out;
-    this.out = new Consumer<byte[]>() {
-      @Override
-      public void accept(byte[] bytes) {
-        out.write(new ByteArrayBuffer(bytes));
+    this.out = new OutputWriter(out);
+  }
+
+  /**
+   * The async output stream accepts a single pending write, the bytes written meanwhile are accumulated and written
+   * when the pending write completes. The connection is not writable while the accumulated bytes and the bytes of the
+   * pending write are above the high water mark.
+   */
+  private class OutputWriter implements Consumer<byte[]>, SshFutureListener<IoWriteFuture> {
+
+    private final IoOutputStream out;
+    private boolean writing;
+    private ByteArrayBuffer pending;
+    private int writeSize;
+    private int buffered;
+    private boolean writable = true;
+
+    OutputWriter(IoOutputStream out) {
+      this.out = out;
+    }
+
+    synchronized boolean isWritable() {
+      return writable;
+    }
+
+    @Override
+    public void accept(byte[] bytes) {
+      boolean write;
+      boolean changed = false;
+      synchronized (this) {
+        buffered += bytes.length;
+        if (writable && buffered > highWaterMark) {
+          writable = false;
+          changed = true;
+        }
+        write = !writing;
+        if (write) {
+          writing = true;
+          writeSize = bytes.length;
+        } else {
+          if (pending == null) {
+            pending = new ByteArrayBuffer(Math.max(bytes.length, 256), false);
+          }
+          pending.putRawBytes(bytes);
+        }
       }
-    };
+      if (write) {
+        out.write(new ByteArrayBuffer(bytes)).addListener(this);
+      }
+      if (changed) {
+        writabilityChanged(false);
+      }
+    }
+
+    @Override
+    public void operationComplete(IoWriteFuture future) {
+      ByteArrayBuffer next;
+      boolean changed = false;
+      synchronized (this) {
+        next = pending;
+        pending = null;
+        if (future.isWritten()) {
+          buffered -= writeSize;
+        } else {
+          // The session is broken, the accumulated bytes are dropped
+          next = null;
+          buffered = 0;
+        }
+        if (next != null) {
+          writeSize = next.available();
+        } else {
+          writing = false;
+        }
+        if (!writable && buffered <= lowWaterMark) {
+          writable = true;
+          changed = true;
+        }
+      }
+      if (next != null) {
+        out.write(next).addListener(this);
+      }
+      if (changed) {
+        writabilityChanged(true);
+      }
+    }
   }
 
   @Override
@@ -161,7 +261,10 @@ public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSes
     //
     eventDecoder = new TtyEventDecoder(vintr, vsusp, veof);
     decoder = new BinaryDecoder(512, charset, eventDecoder);
-    stdout = new TtyOutputMode(new BinaryEncoder(charset, out));
+    // the ssh output stream writes asynchronously, the encoder hands it a copy of the bytes it can retain
+    BinaryEncoder encoder = new BinaryEncoder(charset, out);
+    encoder.setOnlcr(true);
+    stdout = encoder;
     term = env.getEnv().get("TERM");
     conn = new Connection();
 
@@ -218,6 +321,13 @@ public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSes
     });
   }
 
+  private void writabilityChanged(boolean writable) {
+    Consumer<Boolean> handler = writabilityHandler;
+    if (handler != null) {
+      handler.accept(writable);
+    }
+  }
+
   @Override
   public void destroy() {
     // Test this
@@ -325,6 +435,21 @@ public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSes
       TtyCommand.this.schedule(task, delay, unit);
     }
 
+    @Override
+    public boolean isWritable() {
+      return out.isWritable();
+    }
+
+    @Override
+    public Consumer<Boolean> getWritabilityHandler() {
+      return writabilityHandler;
+    }
+
+    @Override
+    public void setWritabilityHandler(Consumer<Boolean> handler) {
+      writabilityHandler = handler;
+    }
+
     @Override
     public void setCloseHandler(Consumer<Void> handler) {
       closeHandler = handler;
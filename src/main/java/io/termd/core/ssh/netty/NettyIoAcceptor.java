@@ -20,12 +20,10 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.util.concurrent.Future;
@@ -55,7 +53,7 @@ public class NettyIoAcceptor extends AbstractCloseable implements IoAcceptor {
   final NettyIoServiceFactory factory;
   final ChannelGroup channelGroup;
   final NettyIoService ioService = new NettyIoService();
-  private final ServerBootstrap bootstrap = new ServerBootstrap();
+  private final ServerBootstrap bootstrap;
   private final DefaultCloseFuture closeFuture = new DefaultCloseFuture(null);
   private final Map<SocketAddress, Channel> boundAddresses = new HashMap<SocketAddress, Channel>();
   private final IoHandler handler;
@@ -64,14 +62,16 @@ public class NettyIoAcceptor extends AbstractCloseable implements IoAcceptor {
     this.factory = factory;
     this.handler = handler;
     channelGroup = new DefaultChannelGroup("sshd-acceptor-channels", GlobalEventExecutor.INSTANCE);
-    bootstrap.group(factory.eventLoopGroup)
-        .channel(NioServerSocketChannel.class)
-        .option(ChannelOption.SO_BACKLOG, 100)
+    bootstrap = factory.transport.newServerBootstrap();
+    bootstrap
         .handler(new LoggingHandler(LogLevel.INFO))
         .childHandler(new ChannelInitializer<SocketChannel>() {
           @Override
           public void initChannel(SocketChannel ch) throws Exception {
             ChannelPipeline p = ch.pipeline();
+            if (factory.writeCoalescing != null) {
+              p.addLast(factory.writeCoalescing.newHandler());
+            }
             p.addLast(new NettyIoSession(NettyIoAcceptor.this, handler).adapter);
           }
         });
@@ -33,6 +33,9 @@ public class NettyIoHandlerBridge {
     handler.sessionClosed(session);
   }
 
+  /**
+   * Forward a message to the handler, the message is only valid during the call.
+   */
   public void messageReceived(IoHandler handler, IoSession session, Readable message) throws Exception {
     handler.messageReceived(session, message);
   }
@@ -17,9 +17,10 @@
 package io.termd.core.ssh.netty;
 
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
+import io.termd.core.tty.netty.NettyTransport;
+import io.termd.core.tty.netty.WriteCoalescing;
 import org.apache.sshd.common.future.CloseFuture;
 import org.apache.sshd.common.io.IoAcceptor;
 import org.apache.sshd.common.io.IoConnector;
@@ -33,8 +34,10 @@ import org.apache.sshd.common.util.closeable.AbstractCloseable;
 public class NettyIoServiceFactory extends AbstractCloseable implements IoServiceFactory {
 
   final NettyIoHandlerBridge handlerBridge;
+  final NettyTransport transport;
   final EventLoopGroup eventLoopGroup;
-  final boolean closeEventLoopGroup;
+  final boolean closeTransport;
+  final WriteCoalescing writeCoalescing;
 
   public NettyIoServiceFactory() {
     this(null);
@@ -45,9 +48,26 @@ public class NettyIoServiceFactory extends AbstractCloseable implements IoServic
   }
 
   public NettyIoServiceFactory(EventLoopGroup group, NettyIoHandlerBridge handlerBridge) {
+    this(group, handlerBridge, null);
+  }
+
+  public NettyIoServiceFactory(EventLoopGroup group, NettyIoHandlerBridge handlerBridge, WriteCoalescing writeCoalescing) {
+    this(group == null ? new NettyTransport() : new NettyTransport().setEventLoopGroups(group, group), group == null, handlerBridge, writeCoalescing);
+  }
+
+  /**
+   * @param transport the transport, it is not shut down when this factory is closed
+   */
+  public NettyIoServiceFactory(NettyTransport transport, NettyIoHandlerBridge handlerBridge, WriteCoalescing writeCoalescing) {
+    this(transport, false, handlerBridge, writeCoalescing);
+  }
+
+  private NettyIoServiceFactory(NettyTransport transport, boolean closeTransport, NettyIoHandlerBridge handlerBridge, WriteCoalescing writeCoalescing) {
     this.handlerBridge = handlerBridge;
-    this.closeEventLoopGroup = group == null;
-    this.eventLoopGroup = group == null ? new NioEventLoopGroup() : group;
+    this.writeCoalescing = writeCoalescing;
+    this.transport = transport;
+    this.closeTransport = closeTransport;
+    this.eventLoopGroup = transport.workerGroup();
   }
 
   @Override
@@ -62,8 +82,8 @@ public class NettyIoServiceFactory extends AbstractCloseable implements IoServic
 
   @Override
   protected CloseFuture doCloseGracefully() {
-    if (closeEventLoopGroup) {
-      eventLoopGroup.shutdownGracefully().addListener(new GenericFutureListener<Future<Object>>() {
+    if (closeTransport) {
+      transport.shutdownGracefully().addListener(new GenericFutureListener<Future<Object>>() {
         @Override
         public void operationComplete(Future<Object> future) throws Exception {
           closeFuture.setClosed();
@@ -17,6 +17,8 @@
 package io.termd.core.ssh.netty;
 
 import io.netty.channel.EventLoopGroup;
+import io.termd.core.tty.netty.NettyTransport;
+import io.termd.core.tty.netty.WriteCoalescing;
 import org.apache.sshd.common.FactoryManager;
 import org.apache.sshd.common.io.IoServiceFactory;
 import org.apache.sshd.common.io.IoServiceFactoryFactory;
@@ -27,26 +29,45 @@ import org.apache.sshd.common.io.IoServiceFactoryFactory;
 public class NettyIoServiceFactoryFactory implements IoServiceFactoryFactory {
 
   final EventLoopGroup eventLoopGroup;
+  final NettyTransport transport;
   final NettyIoHandlerBridge handlerBridge;
+  final WriteCoalescing writeCoalescing;
 
   public NettyIoServiceFactoryFactory() {
-    this.eventLoopGroup = null;
-    this.handlerBridge = new NettyIoHandlerBridge();
+    this(null, new NettyIoHandlerBridge());
   }
 
   public NettyIoServiceFactoryFactory(EventLoopGroup eventLoopGroup) {
-    this.eventLoopGroup = eventLoopGroup;
-    this.handlerBridge = new NettyIoHandlerBridge();
+    this(eventLoopGroup, new NettyIoHandlerBridge());
   }
 
   public NettyIoServiceFactoryFactory(EventLoopGroup eventLoopGroup, NettyIoHandlerBridge handlerBridge) {
+    this(eventLoopGroup, handlerBridge, null);
+  }
+
+  public NettyIoServiceFactoryFactory(EventLoopGroup eventLoopGroup, NettyIoHandlerBridge handlerBridge, WriteCoalescing writeCoalescing) {
     this.eventLoopGroup = eventLoopGroup;
+    this.transport = null;
+    this.handlerBridge = handlerBridge;
+    this.writeCoalescing = writeCoalescing;
+  }
+
+  /**
+   * @param transport the transport shared by the created factories, it is not shut down when they are closed
+   */
+  public NettyIoServiceFactoryFactory(NettyTransport transport, NettyIoHandlerBridge handlerBridge, WriteCoalescing writeCoalescing) {
+    this.eventLoopGroup = null;
+    this.transport = transport;
     this.handlerBridge = handlerBridge;
+    this.writeCoalescing = writeCoalescing;
   }
 
   @Override
   public IoServiceFactory create(FactoryManager manager) {
-    return new NettyIoServiceFactory(eventLoopGroup, handlerBridge);
+    if (transport != null) {
+      return new NettyIoServiceFactory(transport, handlerBridge, writeCoalescing);
+    }
+    return new NettyIoServiceFactory(eventLoopGroup, handlerBridge, writeCoalescing);
   }
 
 }
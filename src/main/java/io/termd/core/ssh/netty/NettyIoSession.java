@@ -22,7 +22,7 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
-import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 import io.termd.core.util.Logging;
@@ -32,14 +32,20 @@ import org.apache.sshd.common.io.IoHandler;
 import org.apache.sshd.common.io.IoService;
 import org.apache.sshd.common.io.IoSession;
 import org.apache.sshd.common.io.IoWriteFuture;
+import org.apache.sshd.common.util.Readable;
 import org.apache.sshd.common.util.buffer.Buffer;
-import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
 import org.apache.sshd.common.util.closeable.AbstractCloseable;
 
 import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
@@ -49,11 +55,19 @@ public class NettyIoSession extends AbstractCloseable implements IoSession {
   private final Map<Object, Object> attributes = new HashMap<Object, Object>();
   private final NettyIoAcceptor acceptor;
   private final IoHandler handler;
-  private ChannelHandlerContext context;
+  private volatile ChannelHandlerContext context;
+  private volatile EventLoop eventLoop;
   private SocketAddress remoteAddr;
-  private ChannelFuture prev;
   private final DefaultCloseFuture closeFuture = new DefaultCloseFuture(null);
   private final long id;
+  private final Queue<NettyIoWriteFuture> pendingWrites = new ConcurrentLinkedQueue<NettyIoWriteFuture>();
+  private final AtomicBoolean drainScheduled = new AtomicBoolean();
+  private final Runnable drainTask = new Runnable() {
+    @Override
+    public void run() {
+      drainWrites();
+    }
+  };
 
   public NettyIoSession(NettyIoAcceptor acceptor, IoHandler handler) {
     this.acceptor = acceptor;
@@ -65,9 +79,9 @@ public class NettyIoSession extends AbstractCloseable implements IoSession {
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
       context = ctx;
+      eventLoop = ctx.channel().eventLoop();
       acceptor.channelGroup.add(ctx.channel());
       acceptor.ioService.sessions.put(id, NettyIoSession.this);
-      prev = context.newPromise().setSuccess();
       remoteAddr = context.channel().remoteAddress();
       acceptor.factory.handlerBridge.sessionCreated(handler, NettyIoSession.this);
     }
@@ -77,14 +91,18 @@ public class NettyIoSession extends AbstractCloseable implements IoSession {
       acceptor.ioService.sessions.remove(id);
       acceptor.factory.handlerBridge.sessionClosed(handler, NettyIoSession.this);
       context = null;
+      failPendingWrites();
     }
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
       ByteBuf buf = (ByteBuf) msg;
-      byte[] bytes = new byte[buf.readableBytes()];
-      buf.getBytes(0, bytes);
-      acceptor.factory.handlerBridge.messageReceived(handler, NettyIoSession.this, new ByteArrayBuffer(bytes));
+      try {
+        // The session copies the bytes in its decoder buffer, so the buffer is read in place and released after
+        acceptor.factory.handlerBridge.messageReceived(handler, NettyIoSession.this, new ByteBufReadable(buf));
+      } finally {
+        buf.release();
+      }
     }
 
     @Override
@@ -94,12 +112,16 @@ public class NettyIoSession extends AbstractCloseable implements IoSession {
     }
   };
 
+  /**
+   * Execute a task on the event loop of the channel, the event loop keeps running the tasks after the channel is
+   * closed so the output of a process ending after the client disconnected is still drained.
+   */
   public void execute(Runnable task) {
-    context.channel().eventLoop().execute(task);
+    eventLoop.execute(task);
   }
 
   public void schedule(Runnable task, long delay, TimeUnit unit) {
-    context.channel().eventLoop().schedule(task, delay, unit);
+    eventLoop.schedule(task, delay, unit);
   }
 
   @Override
@@ -127,32 +149,104 @@ public class NettyIoSession extends AbstractCloseable implements IoSession {
     return context.channel().localAddress();
   }
 
+  /**
+   * Write a packet, the packet buffer is owned by the session until the returned future is completed. The packets
+   * are written in the order of the calls, the packets written during the same event loop task are flushed together.
+   */
   @Override
   public IoWriteFuture write(Buffer buffer) {
-    final ByteBuf buf = Unpooled.buffer(buffer.available());
-    buf.writeBytes(buffer.array(), buffer.rpos(), buffer.available());
-    final NettyIoWriteFuture msg = new NettyIoWriteFuture();
-    final ChannelPromise next = context.newPromise();
-    prev.addListener(new GenericFutureListener<Future<? super Void>>() {
-      @Override
-      public void operationComplete(Future<? super Void> future) throws Exception {
-        if (context != null) {
-          context.writeAndFlush(buf, next);
-        }
+    NettyIoWriteFuture future = new NettyIoWriteFuture(Unpooled.wrappedBuffer(buffer.array(), buffer.rpos(), buffer.available()));
+    ChannelHandlerContext ctx = context;
+    if (ctx == null) {
+      future.fail(new ClosedChannelException());
+      return future;
+    }
+    pendingWrites.add(future);
+    if (drainScheduled.compareAndSet(false, true)) {
+      ctx.executor().execute(drainTask);
+    }
+    return future;
+  }
+
+  private void drainWrites() {
+    drainScheduled.set(false);
+    ChannelHandlerContext ctx = context;
+    if (ctx == null) {
+      failPendingWrites();
+      return;
+    }
+    NettyIoWriteFuture future = pendingWrites.poll();
+    if (future == null) {
+      return;
+    }
+    // Only the last write of the batch is tracked, the channel completes its writes in order
+    List<NettyIoWriteFuture> batch = new ArrayList<NettyIoWriteFuture>();
+    while (true) {
+      NettyIoWriteFuture next = pendingWrites.poll();
+      batch.add(future);
+      if (next == null) {
+        break;
       }
-    });
-    prev = next;
-    next.addListener(new GenericFutureListener<Future<? super Void>>() {
-      @Override
-      public void operationComplete(Future<? super Void> future) throws Exception {
-        if (future.isSuccess()) {
-          msg.setValue(Boolean.TRUE);
+      ctx.write(future.buf, ctx.voidPromise());
+      future = next;
+    }
+    ctx.write(future.buf).addListener(new BatchListener(batch));
+    ctx.flush();
+  }
+
+  private void failPendingWrites() {
+    ClosedChannelException cause = null;
+    NettyIoWriteFuture future;
+    while ((future = pendingWrites.poll()) != null) {
+      if (cause == null) {
+        cause = new ClosedChannelException();
+      }
+      future.buf.release();
+      future.fail(cause);
+    }
+  }
+
+  private static class BatchListener implements ChannelFutureListener {
+
+    private final List<NettyIoWriteFuture> batch;
+
+    BatchListener(List<NettyIoWriteFuture> batch) {
+      this.batch = batch;
+    }
+
+    @Override
+    public void operationComplete(ChannelFuture future) throws Exception {
+      Throwable cause = future.cause();
+      for (NettyIoWriteFuture write : batch) {
+        if (cause == null) {
+          write.succeed();
         } else {
-          msg.setValue(future.cause());
+          write.fail(cause);
         }
       }
-    });
-    return msg;
+    }
+  }
+
+  /**
+   * A view of an inbound buffer valid for the duration of the {@link IoHandler#messageReceived} call.
+   */
+  private static class ByteBufReadable implements Readable {
+
+    private final ByteBuf buf;
+
+    ByteBufReadable(ByteBuf buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public int available() {
+      return buf.readableBytes();
+    }
+
+    @Override
+    public void getRawBytes(byte[] data, int offset, int len) {
+      buf.readBytes(data, offset, len);
+    }
   }
 
   @Override
@@ -162,15 +256,27 @@ public class NettyIoSession extends AbstractCloseable implements IoSession {
 
   @Override
   protected CloseFuture doCloseGracefully() {
-    context.
-        writeAndFlush(Unpooled.EMPTY_BUFFER).
-        addListener(ChannelFutureListener.CLOSE).
-        addListener(new GenericFutureListener<Future<? super Void>>() {
-          @Override
-          public void operationComplete(Future<? super Void> future) throws Exception {
-            closeFuture.setClosed();
-          }
-        });
+    final ChannelHandlerContext ctx = context;
+    if (ctx == null) {
+      closeFuture.setClosed();
+      return closeFuture;
+    }
+    // Closed from a task so the pending writes are flushed before
+    ctx.executor().execute(new Runnable() {
+      @Override
+      public void run() {
+        drainWrites();
+        ctx.
+            writeAndFlush(Unpooled.EMPTY_BUFFER).
+            addListener(ChannelFutureListener.CLOSE).
+            addListener(new GenericFutureListener<Future<? super Void>>() {
+              @Override
+              public void operationComplete(Future<? super Void> future) throws Exception {
+                closeFuture.setClosed();
+              }
+            });
+      }
+    });
     return closeFuture;
   }
 
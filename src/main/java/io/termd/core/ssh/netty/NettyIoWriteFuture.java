@@ -16,6 +16,7 @@
 
 package io.termd.core.ssh.netty;
 
+import io.netty.buffer.ByteBuf;
 import org.apache.sshd.common.io.AbstractIoWriteFuture;
 
 /**
@@ -23,7 +24,22 @@ import org.apache.sshd.common.io.AbstractIoWriteFuture;
  */
 public class NettyIoWriteFuture extends AbstractIoWriteFuture {
 
+  final ByteBuf buf;
+
   public NettyIoWriteFuture() {
+    this(null);
+  }
+
+  NettyIoWriteFuture(ByteBuf buf) {
     super(null);
+    this.buf = buf;
+  }
+
+  void succeed() {
+    setValue(Boolean.TRUE);
+  }
+
+  void fail(Throwable cause) {
+    setValue(cause);
   }
 }
@@ -16,11 +16,11 @@
 
 package io.termd.core.ssh.netty;
 
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.termd.core.function.Consumer;
-import io.termd.core.ssh.TtyCommand;
 import io.termd.core.tty.TtyConnection;
+import io.termd.core.tty.netty.NettyTransport;
+import io.termd.core.tty.netty.WriteCoalescing;
 import io.termd.core.util.CompletableFuture;
 import io.termd.core.util.Helper;
 import org.apache.sshd.common.Factory;
@@ -46,18 +46,18 @@ public class NettySshTtyBootstrap {
   private String host;
   private int port;
   private Charset charset;
-  private EventLoopGroup parentGroup;
-  private EventLoopGroup childGroup;
+  private NettyTransport transport;
+  private boolean ownTransport;
   private SshServer server;
   private KeyPairProvider keyPairProvider;
   private PasswordAuthenticator passwordAuthenticator;
+  private WriteCoalescing writeCoalescing;
 
   public NettySshTtyBootstrap() {
     this.host = "localhost";
     this.port = 5000;
     this.charset = UTF_8;
-    this.parentGroup = new NioEventLoopGroup(1);
-    this.childGroup = new NioEventLoopGroup();
+    this.writeCoalescing = new WriteCoalescing();
     this.keyPairProvider = new SimpleGeneratorHostKeyProvider(new File("hostkey.ser").toPath());
     this.passwordAuthenticator = new PasswordAuthenticator() {
       @Override
@@ -100,6 +100,38 @@ public class NettySshTtyBootstrap {
     return this;
   }
 
+  public NettyTransport getTransport() {
+    return transport;
+  }
+
+  /**
+   * Set the transport of the server, the transport can be shared with other servers and is not shut down when this
+   * server stops. By default the server uses its own transport.
+   *
+   * @param transport the transport
+   * @return this object
+   */
+  public NettySshTtyBootstrap setTransport(NettyTransport transport) {
+    this.transport = transport;
+    this.ownTransport = false;
+    return this;
+  }
+
+  public WriteCoalescing getWriteCoalescing() {
+    return writeCoalescing;
+  }
+
+  /**
+   * Set the write coalescing of the connections, {@code null} flushes each write immediately.
+   *
+   * @param writeCoalescing the write coalescing
+   * @return this object
+   */
+  public NettySshTtyBootstrap setWriteCoalescing(WriteCoalescing writeCoalescing) {
+    this.writeCoalescing = writeCoalescing;
+    return this;
+  }
+
   public Charset getCharset() {
     return charset;
   }
@@ -109,16 +141,25 @@ public class NettySshTtyBootstrap {
   }
 
   public void start(final Consumer<TtyConnection> factory, Consumer<Throwable> doneHandler) {
+    if (transport == null) {
+      transport = new NettyTransport();
+      ownTransport = true;
+    }
     server = SshServer.setUpDefaultServer();
-    server.setIoServiceFactoryFactory(new NettyIoServiceFactoryFactory(childGroup));
+    server.setIoServiceFactoryFactory(new NettyIoServiceFactoryFactory(transport, new NettyIoHandlerBridge(), writeCoalescing));
     server.setPort(port);
     server.setHost(host);
     server.setKeyPairProvider(keyPairProvider);
     server.setPasswordAuthenticator(passwordAuthenticator);
+    final WriteBufferWaterMark waterMark = transport.getWriteBufferWaterMark();
     server.setShellFactory(new Factory<Command>() {
       @Override
       public Command create() {
-        return new TtyCommand(charset, factory);
+        NettyTtyCommand command = new NettyTtyCommand(charset, factory);
+        if (waterMark != null) {
+          command.setWriteBufferWaterMark(waterMark.low(), waterMark.high());
+        }
+        return command;
       }
     });
     try {
@@ -144,8 +185,11 @@ public class NettySshTtyBootstrap {
         doneHandler.accept(e);
         return;
       } finally {
-        childGroup.shutdownGracefully();
-        parentGroup.shutdownGracefully();
+        if (ownTransport) {
+          transport.shutdownGracefully();
+          transport = null;
+          ownTransport = false;
+        }
       }
       doneHandler.accept(null);
     } else {
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 Julien Viet
+ *
+ * Julien Viet licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package io.termd.core.ssh.netty;
+
+import io.termd.core.function.Consumer;
+import io.termd.core.ssh.TtyCommand;
+import io.termd.core.tty.TtyConnection;
+import org.apache.sshd.common.io.IoSession;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link TtyCommand} running the tasks of its connection on the event loop of the session channel, the same
+ * thread that delivers the input of the connection. When the session is not a {@link NettyIoSession} the tasks are
+ * run by the SSHD scheduled executor.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class NettyTtyCommand extends TtyCommand {
+
+  public NettyTtyCommand(Charset defaultCharset, Consumer<TtyConnection> handler) {
+    super(defaultCharset, handler);
+  }
+
+  @Override
+  protected void execute(Runnable task) {
+    IoSession ioSession = session.getSession().getIoSession();
+    if (ioSession instanceof NettyIoSession) {
+      ((NettyIoSession) ioSession).execute(task);
+    } else {
+      super.execute(task);
+    }
+  }
+
+  @Override
+  protected void schedule(Runnable task, long delay, TimeUnit unit) {
+    IoSession ioSession = session.getSession().getIoSession();
+    if (ioSession instanceof NettyIoSession) {
+      ((NettyIoSession) ioSession).schedule(task, delay, unit);
+    } else {
+      super.schedule(task, delay, unit);
+    }
+  }
+}
@@ -118,6 +118,36 @@ public enum Option {
         session.handler.onSize(width, height);
       }
     }
+  },
+
+  /**
+   * Mud Client Compression Protocol version 2 (<a href="https://tintin.mudhalla.net/protocols/mccp/">MCCP2</a>),
+   * the data sent to the client is compressed with zlib after the option is accepted. A <code>DO</code> is only
+   * accepted when the option was offered to the client, otherwise a <code>WON'T</code> is sent.
+   */
+  COMPRESS2((byte) 86) {
+    @Override
+    void handleDo(TelnetConnection session) {
+      if (!session.compressOffered) {
+        session.send(new byte[]{TelnetConnection.BYTE_IAC, TelnetConnection.BYTE_WONT, code});
+      } else if (!session.compressing) {
+        // The sequence starting the compressed stream is itself sent uncompressed
+        if (session.startCompression(new byte[]{TelnetConnection.BYTE_IAC, TelnetConnection.BYTE_SB, code, TelnetConnection.BYTE_IAC, TelnetConnection.BYTE_SE})) {
+          session.compressing = true;
+          session.handler.onCompress(true);
+        } else {
+          session.send(new byte[]{TelnetConnection.BYTE_IAC, TelnetConnection.BYTE_WONT, code});
+        }
+      }
+    }
+    @Override
+    void handleDont(TelnetConnection session) {
+      if (session.compressing) {
+        session.compressing = false;
+        session.stopCompression();
+        session.handler.onCompress(false);
+      }
+    }
   }
 
   ;
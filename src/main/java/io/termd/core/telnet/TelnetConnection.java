@@ -31,8 +31,6 @@ public abstract class TelnetConnection {
   public static final byte BYTE_SB = (byte)   0xFA;
   public static final byte BYTE_SE = (byte)   0xF0;
 
-  private byte[] pendingBuffer = new byte[256];
-  private int pendingLength = 0;
   Status status;
   Byte paramsOptionCode;
   byte[] paramsBuffer;
@@ -40,6 +38,8 @@ public abstract class TelnetConnection {
   boolean paramsIac;
   boolean sendBinary;
   boolean receiveBinary;
+  boolean compressOffered;
+  boolean compressing;
   final TelnetHandler handler;
 
   public TelnetConnection(TelnetHandler handler) {
@@ -80,6 +80,9 @@ public abstract class TelnetConnection {
    * @param option the option to send
    */
   public final void writeWillOption(Option option) {
+    if (option == Option.COMPRESS2) {
+      compressOffered = true;
+    }
     send(new byte[]{BYTE_IAC, BYTE_WILL, option.code});
   }
 
@@ -101,45 +104,144 @@ public abstract class TelnetConnection {
 
   protected abstract void send(byte[] data);
 
+  /**
+   * Send the {@code start} sequence and compress with zlib all the data sent afterwards, this is called when the
+   * client accepts the {@link Option#COMPRESS2} option offered with {@link #writeWillOption(Option)}. The default implementation does not support compression.
+   *
+   * @param start the sequence to send uncompressed before the compressed stream
+   * @return true when the compression started, false when it is not supported and nothing was sent
+   */
+  protected boolean startCompression(byte[] start) {
+    return false;
+  }
+
+  /**
+   * End the compressed stream started by {@link #startCompression(byte[])}, the data sent afterwards is not
+   * compressed.
+   */
+  protected void stopCompression() {
+  }
+
+  /**
+   * @return true when the data sent to the client is compressed
+   */
+  public boolean isCompressing() {
+    return compressing;
+  }
+
   public void receive(byte[] data) {
-    for (byte b : data) {
-      status.handle(this, b);
+    receive(data, 0, data.length);
+  }
+
+  /**
+   * Receive a slice of data from the client. The data is scanned for the {@code IAC} byte and the runs of data
+   * between the telnet commands are handed as slices of {@code data} to {@link TelnetHandler#onData(byte[], int, int)},
+   * only the commands are processed byte per byte.
+   *
+   * @param data the data buffer
+   * @param offset the offset of the data
+   * @param length the length of the data
+   */
+  public void receive(byte[] data, int offset, int length) {
+    int to = offset + length;
+    int index = offset;
+    while (index < to) {
+      if (status == Status.DATA) {
+        int start = index;
+        while (true) {
+          while (index < to && data[index] != BYTE_IAC) {
+            index++;
+          }
+          if (receiveBinary && index + 1 < to && data[index + 1] == BYTE_IAC) {
+            // Hand the run with the first byte of the escaped IAC and continue after it
+            handler.onData(data, start, index + 1 - start);
+            index += 2;
+            start = index;
+          } else {
+            break;
+          }
+        }
+        if (index > start) {
+          handler.onData(data, start, index - start);
+        }
+        if (index < to) {
+          status = receiveBinary ? Status.ESC : Status.IAC;
+          index++;
+        }
+      } else {
+        status.handle(this, data[index++]);
+      }
     }
-    flushDataIfNecessary();
   }
 
 
   /**
-   * Write data to the client, escaping data if necessary or truncating it. The original buffer can
-   * be mutated if incorrect data is provided.
+   * Send a slice of data to the client, the default implementation sends a copy of the slice with
+   * {@link #send(byte[])} doubling the {@code IAC} bytes when {@code escapeIac} is true.<p>
    *
-   * @param data the data to write
+   * The data is only valid for the duration of the call, an implementation can override this method
+   * to copy and escape the slice directly in its transport buffer.
+   *
+   * @param data the data buffer
+   * @param offset the offset of the data
+   * @param length the length of the data
+   * @param escapeIac whether to double the {@code IAC} bytes
    */
-  public final void write(byte[] data) {
-    if (sendBinary) {
-      // actually the logic here never get executed.
-      int prev = 0;
-      for (int i = 0;i < data.length;i++) {
-        if (data[i] == -1) {
-          rawWrite(data, prev, i - prev);
-          send(new byte[]{-1, -1});
-          prev = i + 1;
+  protected void send(byte[] data, int offset, int length, boolean escapeIac) {
+    int to = offset + length;
+    if (escapeIac) {
+      int prev = offset;
+      for (int i = offset;i < to;i++) {
+        if (data[i] == BYTE_IAC) {
+          rawWrite(data, prev, i + 1 - prev);
+          prev = i;
         }
       }
-      rawWrite(data, prev, data.length - prev);
+      rawWrite(data, prev, to - prev);
     } else {
-      // Not fully understand the logic below, but
-      // Chinese characters will be truncated by the following logic.
-      // So currently these logic is commented out.
-      // see middleware-container/arthas/issues/246 for more details
-      //
-//      for (int i = 0;i < data.length;i++) {
-//        data[i] = (byte)(data[i] & 0x7F);
-//      }
-      send(data);
+      byte[] chunk = new byte[length];
+      System.arraycopy(data, offset, chunk, 0, length);
+      send(chunk);
+    }
+  }
+
+  /**
+   * Write data to the client, escaping data if necessary.
+   *
+   * @param data the data to write
+   */
+  public final void write(byte[] data) {
+    write(data, 0, data.length);
+  }
+
+  /**
+   * Write a slice of data to the client, escaping data if necessary. The slice is only read during the
+   * call and can be reused by the caller afterwards.
+   *
+   * @param data the data buffer
+   * @param offset the offset of the data
+   * @param length the length of the data
+   */
+  public final void write(byte[] data, int offset, int length) {
+    if (length > 0) {
+      // Chinese characters used to be truncated by masking the bytes with 0x7F when binary was not negotiated,
+      // the data is sent unmasked, see middleware-container/arthas/issues/246 for more details
+      send(data, offset, length, sendBinary);
     }
   }
 
+  /**
+   * @return true when the data sent to the client is below the high water mark of the transport, the default
+   *         implementation does not buffer the data and always returns true
+   */
+  public boolean isWritable() {
+    return true;
+  }
+
+  protected void onWritabilityChanged(boolean writable) {
+    handler.onWritabilityChanged(writable);
+  }
+
   protected void onClose() {
     handler.onClose();
   }
@@ -233,55 +335,12 @@ public abstract class TelnetConnection {
     }
   }
 
-  /**
-   * Append a byte in the {@link #pendingBuffer} buffer. When the {@link #pendingBuffer} buffer is full, data
-   * is flushed.
-   *
-   * @param b the byte
-   * @see #flushData()
-   */
-  private void appendData(byte b) {
-    if (pendingLength >= pendingBuffer.length) {
-      flushData();
-    }
-    pendingBuffer[pendingLength++] = b;
-  }
-
-  /**
-   * Flush the {@link #pendingBuffer} buffer when it is not empty.
-   *
-   * @see #flushData()
-   */
-  private void flushDataIfNecessary() {
-    if (pendingLength > 0) {
-      flushData();
-    }
-  }
-
-  /**
-   * Flush the {@link #pendingBuffer} buffer to {@link TelnetHandler#onData(byte[])}.
-   */
-  private void flushData() {
-    byte[] data = Arrays.copyOf(pendingBuffer, pendingLength);
-    pendingLength = 0;
-    handler.onData(data);
-  }
-
   enum Status {
 
     DATA() {
       @Override
       void handle(TelnetConnection session, byte b) {
-        if (b == BYTE_IAC) {
-          if (session.receiveBinary) {
-            session.status = ESC;
-          } else {
-            session.flushDataIfNecessary();
-            session.status = IAC;
-          }
-        } else {
-          session.appendData(b);
-        }
+        session.receive(new byte[]{b}, 0, 1);
       }
     },
 
@@ -289,9 +348,10 @@ public abstract class TelnetConnection {
       @Override
       void handle(TelnetConnection session, byte b) {
         if (b == BYTE_IAC) {
-          session.appendData((byte)-1);
+          // The IAC was escaped by the end of the previous data
+          session.handler.onData(new byte[]{b}, 0, 1);
+          session.status = DATA;
         } else {
-          session.flushDataIfNecessary();
           IAC.handle(session, b);
         }
       }
@@ -42,6 +42,23 @@ public class TelnetHandler {
    */
   protected void onData(byte[] data) {}
 
+  /**
+   * Process a slice of data sent by the client, the default implementation calls {@link #onData(byte[])} with a copy
+   * of the slice.<p/>
+   *
+   * The slice is only valid for the duration of the call, an implementation overriding this method must copy the
+   * data it retains.
+   *
+   * @param data the data buffer
+   * @param offset the offset of the data
+   * @param length the length of the data
+   */
+  protected void onData(byte[] data, int offset, int length) {
+    byte[] copy = new byte[length];
+    System.arraycopy(data, offset, copy, 0, length);
+    onData(copy);
+  }
+
   protected void onSize(int width, int height) {}
   protected void onTerminalType(String terminalType) {}
   protected void onCommand(byte command) {}
@@ -50,5 +67,14 @@ public class TelnetHandler {
   protected void onSGA(boolean sga) {}
   protected void onSendBinary(boolean binary) { }
   protected void onReceiveBinary(boolean binary) { }
+  protected void onCompress(boolean compress) { }
+
+  /**
+   * The data sent to the client crossed the high water mark ({@code false}) or dropped back below the low water mark
+   * ({@code true}) of the transport.
+   *
+   * @param writable the new writability
+   */
+  protected void onWritabilityChanged(boolean writable) { }
 
 }
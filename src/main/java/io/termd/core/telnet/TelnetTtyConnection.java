@@ -21,11 +21,11 @@ import io.termd.core.function.Consumer;
 import io.termd.core.tty.ReadBuffer;
 import io.termd.core.tty.TtyEvent;
 import io.termd.core.tty.TtyEventDecoder;
-import io.termd.core.tty.TtyOutputMode;
 import io.termd.core.util.Helper;
 import io.termd.core.util.Vector;
 import io.termd.core.io.BinaryDecoder;
 import io.termd.core.io.BinaryEncoder;
+import io.termd.core.io.ByteSink;
 import io.termd.core.io.TelnetCharset;
 import io.termd.core.tty.TtyConnection;
 
@@ -44,6 +44,7 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
 
   private final boolean inBinary;
   private final boolean outBinary;
+  private final boolean compress;
   private boolean receivingBinary;
   private boolean sendingBinary;
   private boolean accepted;
@@ -52,6 +53,7 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
   private Consumer<Vector> sizeHandler;
   private Consumer<String> termHandler;
   private Consumer<Void> closeHandler;
+  private Consumer<Boolean> writabilityHandler;
   protected TelnetConnection conn;
   private final Charset charset;
   private final TtyEventDecoder eventDecoder = new TtyEventDecoder(3, 26, 4);
@@ -70,19 +72,33 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
   private long lastAccessedTime = System.currentTimeMillis();
 
   public TelnetTtyConnection(boolean inBinary, boolean outBinary, Charset charset, Consumer<TtyConnection> handler) {
+    this(inBinary, outBinary, false, charset, handler);
+  }
+
+  /**
+   * @param compress true to offer the {@link Option#COMPRESS2} compression of the output to the client
+   */
+  public TelnetTtyConnection(boolean inBinary, boolean outBinary, boolean compress, Charset charset, Consumer<TtyConnection> handler) {
     this.charset = charset;
     this.inBinary = inBinary;
     this.outBinary = outBinary;
+    this.compress = compress;
     this.handler = handler;
     this.size = new Vector();
     this.decoder = new BinaryDecoder(512, TelnetCharset.INSTANCE, readBuffer);
-    this.encoder = new BinaryEncoder(charset, new Consumer<byte[]>() {
+    // the encoder reuses its array, the connection copies each slice once in its transport buffer
+    this.encoder = new BinaryEncoder(charset, new ByteSink() {
       @Override
       public void accept(byte[] data) {
         conn.write(data);
       }
+      @Override
+      public void accept(byte[] data, int offset, int length) {
+        conn.write(data, offset, length);
+      }
     });
-    this.stdout = new TtyOutputMode(encoder);
+    this.encoder.setOnlcr(true);
+    this.stdout = encoder;
   }
 
   @Override
@@ -134,9 +150,9 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
   }
 
   @Override
-  protected void onData(byte[] data) {
+  protected void onData(byte[] data, int offset, int length) {
     lastAccessedTime = System.currentTimeMillis();
-    decoder.write(data);
+    decoder.write(data, offset, length);
   }
 
   @Override
@@ -161,6 +177,11 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
     // Get some info about user
     conn.writeDoOption(Option.TERMINAL_TYPE);
 
+    // The client does not need to support the compression to be accepted
+    if (compress) {
+      conn.writeWillOption(Option.COMPRESS2);
+    }
+
     //
     checkAccept();
   }
@@ -246,6 +267,28 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
     return stdout;
   }
 
+  @Override
+  public boolean isWritable() {
+    return conn.isWritable();
+  }
+
+  @Override
+  public Consumer<Boolean> getWritabilityHandler() {
+    return writabilityHandler;
+  }
+
+  @Override
+  public void setWritabilityHandler(Consumer<Boolean> handler) {
+    writabilityHandler = handler;
+  }
+
+  @Override
+  protected void onWritabilityChanged(boolean writable) {
+    if (writabilityHandler != null) {
+      writabilityHandler.accept(writable);
+    }
+  }
+
   @Override
   public void setCloseHandler(Consumer<Void> closeHandler) {
     this.closeHandler = closeHandler;
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.telnet.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+
+import java.util.zip.Deflater;
+
+/**
+ * Compress the buffers written to the channel in a single zlib stream for the
+ * {@link io.termd.core.telnet.Option#COMPRESS2} option. The writes are deflated without flushing the stream, the
+ * stream is synced when the channel is flushed so the writes coalesced until a flush share the same block, the
+ * stream is finished when the handler is removed or the channel closed.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+final class CompressionHandler extends ChannelOutboundHandlerAdapter {
+
+  private static final int MAX_INPUT_CHUNK = 8 * 1024;
+
+  private final Deflater deflater;
+  private byte[] input;
+  private boolean pending;
+  private boolean finished;
+
+  CompressionHandler(int level) {
+    this.deflater = new Deflater(level);
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    if (!(msg instanceof ByteBuf) || finished) {
+      ctx.write(msg, promise);
+      return;
+    }
+    ByteBuf buf = (ByteBuf) msg;
+    try {
+      int length = buf.readableBytes();
+      if (length == 0) {
+        ctx.write(Unpooled.EMPTY_BUFFER, promise);
+        return;
+      }
+      ByteBuf out = null;
+      if (buf.hasArray()) {
+        deflater.setInput(buf.array(), buf.arrayOffset() + buf.readerIndex(), length);
+        out = deflate(ctx, out, Deflater.NO_FLUSH);
+      } else {
+        if (input == null) {
+          input = new byte[Math.min(Math.max(length, 1024), MAX_INPUT_CHUNK)];
+        }
+        int index = buf.readerIndex();
+        int to = index + length;
+        while (index < to) {
+          int chunk = Math.min(to - index, input.length);
+          buf.getBytes(index, input, 0, chunk);
+          deflater.setInput(input, 0, chunk);
+          out = deflate(ctx, out, Deflater.NO_FLUSH);
+          index += chunk;
+        }
+      }
+      pending = true;
+      ctx.write(out != null ? out : Unpooled.EMPTY_BUFFER, promise);
+    } finally {
+      buf.release();
+    }
+  }
+
+  @Override
+  public void flush(ChannelHandlerContext ctx) throws Exception {
+    if (pending) {
+      pending = false;
+      ByteBuf out = deflate(ctx, null, Deflater.SYNC_FLUSH);
+      if (out != null) {
+        ctx.write(out);
+      }
+    }
+    ctx.flush();
+  }
+
+  @Override
+  public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+    finish(ctx);
+    ctx.flush();
+    ctx.close(promise);
+  }
+
+  @Override
+  public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+    try {
+      if (ctx.channel().isActive()) {
+        finish(ctx);
+        ctx.flush();
+      }
+    } finally {
+      finished = true;
+      deflater.end();
+    }
+  }
+
+  private void finish(ChannelHandlerContext ctx) {
+    if (!finished) {
+      finished = true;
+      pending = false;
+      deflater.finish();
+      ByteBuf out = deflate(ctx, null, Deflater.NO_FLUSH);
+      if (out != null) {
+        ctx.write(out);
+      }
+    }
+  }
+
+  /**
+   * Deflate the current input in the {@code out} heap buffer allocated when the deflater produces data.
+   *
+   * @return the buffer or null when nothing was produced
+   */
+  private ByteBuf deflate(ChannelHandlerContext ctx, ByteBuf out, int flush) {
+    while (true) {
+      if (out == null) {
+        out = ctx.alloc().heapBuffer(256);
+      } else if (!out.isWritable()) {
+        out.ensureWritable(out.capacity());
+      }
+      int writable = out.writableBytes();
+      int len = deflater.deflate(out.array(), out.arrayOffset() + out.writerIndex(), writable, flush);
+      out.writerIndex(out.writerIndex() + len);
+      if (len < writable && (deflater.finished() || (!finished && (flush != Deflater.NO_FLUSH || deflater.needsInput())))) {
+        break;
+      }
+    }
+    if (!out.isReadable()) {
+      out.release();
+      return null;
+    }
+    return out;
+  }
+}
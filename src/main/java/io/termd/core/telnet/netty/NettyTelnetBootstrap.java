@@ -17,15 +17,12 @@
 package io.termd.core.telnet.netty;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.util.concurrent.Future;
@@ -35,18 +32,73 @@ import io.termd.core.function.Consumer;
 import io.termd.core.function.Supplier;
 import io.termd.core.telnet.TelnetBootstrap;
 import io.termd.core.telnet.TelnetHandler;
+import io.termd.core.tty.netty.NettyTransport;
+import io.termd.core.tty.netty.WriteCoalescing;
 
 /**
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
 public class NettyTelnetBootstrap extends TelnetBootstrap {
 
-  private EventLoopGroup group;
+  private NettyTransport transport;
+  private boolean ownTransport;
   private ChannelGroup channelGroup;
+  private WriteCoalescing writeCoalescing;
+  private int compressionLevel = NettyTelnetConnection.DEFAULT_COMPRESSION_LEVEL;
 
   public NettyTelnetBootstrap() {
-    this.group = new NioEventLoopGroup();
     this.channelGroup = new DefaultChannelGroup(ImmediateEventExecutor.INSTANCE);
+    this.writeCoalescing = new WriteCoalescing();
+  }
+
+  public WriteCoalescing getWriteCoalescing() {
+    return writeCoalescing;
+  }
+
+  /**
+   * Set the write coalescing of the connections, {@code null} flushes each write immediately.
+   *
+   * @param writeCoalescing the write coalescing
+   * @return this object
+   */
+  public NettyTelnetBootstrap setWriteCoalescing(WriteCoalescing writeCoalescing) {
+    this.writeCoalescing = writeCoalescing;
+    return this;
+  }
+
+  public NettyTransport getTransport() {
+    return transport;
+  }
+
+  /**
+   * Set the transport of the server, the transport can be shared with other servers and is not shut down when this
+   * server stops. By default the server uses its own transport.
+   *
+   * @param transport the transport
+   * @return this object
+   */
+  public NettyTelnetBootstrap setTransport(NettyTransport transport) {
+    this.transport = transport;
+    this.ownTransport = false;
+    return this;
+  }
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  /**
+   * Set the zlib level of the {@link io.termd.core.telnet.Option#COMPRESS2} compression of the connections.
+   *
+   * @param compressionLevel the level from {@code 0} (no compression) to {@code 9} (best compression)
+   * @return this object
+   */
+  public NettyTelnetBootstrap setCompressionLevel(int compressionLevel) {
+    if (compressionLevel < 0 || compressionLevel > 9) {
+      throw new IllegalArgumentException("Invalid compression level " + compressionLevel);
+    }
+    this.compressionLevel = compressionLevel;
+    return this;
   }
 
   public NettyTelnetBootstrap setHost(String host) {
@@ -59,25 +111,33 @@ public class NettyTelnetBootstrap extends TelnetBootstrap {
 
   @Override
   public void start(final Supplier<TelnetHandler> factory, final Consumer<Throwable> doneHandler) {
-    ServerBootstrap boostrap = new ServerBootstrap();
-    boostrap.group(group)
-        .channel(NioServerSocketChannel.class)
-        .option(ChannelOption.SO_BACKLOG, 100)
+    if (transport == null) {
+      transport = new NettyTransport();
+      ownTransport = true;
+    }
+    ServerBootstrap boostrap = transport.newServerBootstrap();
+    boostrap
         .handler(new LoggingHandler(LogLevel.INFO))
         .childHandler(new ChannelInitializer<SocketChannel>() {
           @Override
           public void initChannel(SocketChannel ch) throws Exception {
             channelGroup.add(ch);
             ChannelPipeline p = ch.pipeline();
-            TelnetChannelHandler handler = new TelnetChannelHandler(factory);
+            if (writeCoalescing != null) {
+              p.addLast(writeCoalescing.newHandler());
+            }
+            TelnetChannelHandler handler = new TelnetChannelHandler(factory, compressionLevel);
             p.addLast(handler);
           }
         });
 
-    boostrap.bind(getHost(), getPort()).addListener(new GenericFutureListener<Future<? super Void>>() {
+    final ChannelFuture bind = boostrap.bind(getHost(), getPort());
+    bind.addListener(new GenericFutureListener<Future<? super Void>>() {
       @Override
       public void operationComplete(Future<? super Void> future) throws Exception {
        if (future.isSuccess()) {
+        // Closed with the connections when the server stops
+        channelGroup.add(bind.channel());
         doneHandler.accept(null);
       } else {
         doneHandler.accept(future.cause());
@@ -94,7 +154,11 @@ public class NettyTelnetBootstrap extends TelnetBootstrap {
           try {
             doneHandler.accept(future.cause());
           } finally {
-            group.shutdownGracefully();
+            if (ownTransport) {
+              transport.shutdownGracefully();
+              transport = null;
+              ownTransport = false;
+            }
           }
       }
     };
@@ -16,13 +16,13 @@
 
 package io.termd.core.telnet.netty;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.termd.core.telnet.TelnetConnection;
 import io.termd.core.telnet.TelnetHandler;
 
-import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -30,11 +30,51 @@ import java.util.concurrent.TimeUnit;
  */
 public class NettyTelnetConnection extends TelnetConnection {
 
+  private static final int MAX_INBOUND_CHUNK = 16 * 1024;
+
+  /**
+   * The default zlib level of the {@link io.termd.core.telnet.Option#COMPRESS2} compression.
+   */
+  public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+
   final ChannelHandlerContext context;
+  private final int compressionLevel;
+  private byte[] inbound;
+  private CompressionHandler compression;
 
   public NettyTelnetConnection(TelnetHandler handler, ChannelHandlerContext context) {
+    this(handler, context, DEFAULT_COMPRESSION_LEVEL);
+  }
+
+  public NettyTelnetConnection(TelnetHandler handler, ChannelHandlerContext context, int compressionLevel) {
     super(handler);
     this.context = context;
+    this.compressionLevel = compressionLevel;
+  }
+
+  /**
+   * Receive a buffer from the client. The content of a heap buffer is received in place, the content of a direct
+   * buffer is copied in bulk to an array reused by this connection.
+   *
+   * @param buf the buffer
+   */
+  public void receive(ByteBuf buf) {
+    int length = buf.readableBytes();
+    if (buf.hasArray()) {
+      receive(buf.array(), buf.arrayOffset() + buf.readerIndex(), length);
+    } else {
+      int index = buf.readerIndex();
+      int to = index + length;
+      if (inbound == null || inbound.length < Math.min(length, MAX_INBOUND_CHUNK)) {
+        inbound = new byte[Math.min(Math.max(length, 1024), MAX_INBOUND_CHUNK)];
+      }
+      while (index < to) {
+        int chunk = Math.min(to - index, inbound.length);
+        buf.getBytes(index, inbound, 0, chunk);
+        receive(inbound, 0, chunk);
+        index += chunk;
+      }
+    }
   }
 
   @Override
@@ -49,22 +89,94 @@ public class NettyTelnetConnection extends TelnetConnection {
 
   @Override
   protected void send(byte[] data) {
-    final byte[] copy = Arrays.copyOf(data, data.length);
-    Runnable writeTask = new Runnable() {
-      @Override
-      public void run() {
-        if (context.channel().isActive()) {
-          context.writeAndFlush(Unpooled.wrappedBuffer(copy));
+    send(data, 0, data.length, false);
+  }
+
+  /**
+   * Copy the slice in a buffer doubling the {@code IAC} bytes in the same pass when necessary, the buffer is written
+   * and flushed on the event loop. The buffer is allocated by the channel allocator on the event loop, other threads
+   * use an unpooled buffer to not create a Netty thread local cache.<p/>
+   *
+   * The tty output is not encoded in the buffer: the {@link io.termd.core.io.BinaryEncoder} encodes the code points
+   * in its own array and this method copies the encoded slice once in the buffer.
+   */
+  @Override
+  protected void send(byte[] data, int offset, int length, boolean escapeIac) {
+    boolean inEventLoop = context.channel().eventLoop().inEventLoop();
+    int capacity = escapeIac ? length + 16 : length;
+    final ByteBuf buf = inEventLoop ? context.alloc().buffer(capacity) : Unpooled.buffer(capacity);
+    if (escapeIac) {
+      int to = offset + length;
+      int prev = offset;
+      for (int i = offset;i < to;i++) {
+        if (data[i] == BYTE_IAC) {
+          buf.writeBytes(data, prev, i + 1 - prev);
+          prev = i;
         }
       }
-    };
-    if (context.channel().eventLoop().inEventLoop()) {
-      writeTask.run();
+      buf.writeBytes(data, prev, to - prev);
+    } else {
+      buf.writeBytes(data, offset, length);
+    }
+    if (inEventLoop) {
+      writeAndFlush(buf);
     } else {
-      context.channel().eventLoop().execute(writeTask);
+      context.channel().eventLoop().execute(new Runnable() {
+        @Override
+        public void run() {
+          writeAndFlush(buf);
+        }
+      });
+    }
+  }
+
+  /**
+   * Send the {@code start} sequence then insert a {@link CompressionHandler} at the head of the pipeline, this runs on
+   * the event loop so the writes already in the pipeline reach the socket uncompressed and all the writes executed
+   * afterwards are compressed.
+   */
+  @Override
+  protected boolean startCompression(byte[] start) {
+    if (compression == null && context.channel().isActive()) {
+      send(start);
+      compression = new CompressionHandler(compressionLevel);
+      context.pipeline().addFirst(compression);
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  protected void stopCompression() {
+    if (compression != null) {
+      CompressionHandler handler = compression;
+      compression = null;
+      if (context.channel().isActive()) {
+        context.pipeline().remove(handler);
+      }
     }
   }
 
+  private void writeAndFlush(ByteBuf buf) {
+    if (context.channel().isActive()) {
+      context.writeAndFlush(buf);
+    } else {
+      buf.release();
+    }
+  }
+
+  @Override
+  public boolean isWritable() {
+    return context.channel().isWritable();
+  }
+
+  /**
+   * Signal the current writability of the channel, called by the channel handler when it changes.
+   */
+  void writabilityChanged() {
+    onWritabilityChanged(isWritable());
+  }
+
   @Override
   protected void onClose() {
     super.onClose();
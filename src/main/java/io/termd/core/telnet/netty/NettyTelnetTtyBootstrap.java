@@ -5,6 +5,8 @@ import io.termd.core.function.Supplier;
 import io.termd.core.telnet.TelnetHandler;
 import io.termd.core.telnet.TelnetTtyConnection;
 import io.termd.core.tty.TtyConnection;
+import io.termd.core.tty.netty.NettyTransport;
+import io.termd.core.tty.netty.WriteCoalescing;
 import io.termd.core.util.CompletableFuture;
 import io.termd.core.util.Helper;
 
@@ -18,6 +20,7 @@ public class NettyTelnetTtyBootstrap {
   private final NettyTelnetBootstrap telnet;
   private boolean outBinary;
   private boolean inBinary;
+  private boolean compress;
   private Charset charset = Charset.forName("UTF-8");
 
   public NettyTelnetTtyBootstrap() {
@@ -72,6 +75,68 @@ public class NettyTelnetTtyBootstrap {
     return this;
   }
 
+  public boolean isCompress() {
+    return compress;
+  }
+
+  /**
+   * Enable or disable the MCCP2 compression of the output, the client accepting the TELNET COMPRESS2 option
+   * receives a zlib stream.
+   *
+   * @param compress true to offer the compression to the client
+   * @return this object
+   */
+  public NettyTelnetTtyBootstrap setCompress(boolean compress) {
+    this.compress = compress;
+    return this;
+  }
+
+  public int getCompressionLevel() {
+    return telnet.getCompressionLevel();
+  }
+
+  /**
+   * Set the zlib level of the output compression.
+   *
+   * @param compressionLevel the level from {@code 0} (no compression) to {@code 9} (best compression)
+   * @return this object
+   */
+  public NettyTelnetTtyBootstrap setCompressionLevel(int compressionLevel) {
+    telnet.setCompressionLevel(compressionLevel);
+    return this;
+  }
+
+  public NettyTransport getTransport() {
+    return telnet.getTransport();
+  }
+
+  /**
+   * Set the transport of the server, the transport can be shared with other servers and is not shut down when this
+   * server stops. By default the server uses its own transport.
+   *
+   * @param transport the transport
+   * @return this object
+   */
+  public NettyTelnetTtyBootstrap setTransport(NettyTransport transport) {
+    telnet.setTransport(transport);
+    return this;
+  }
+
+  public WriteCoalescing getWriteCoalescing() {
+    return telnet.getWriteCoalescing();
+  }
+
+  /**
+   * Set the write coalescing of the connections, {@code null} flushes each write immediately.
+   *
+   * @param writeCoalescing the write coalescing
+   * @return this object
+   */
+  public NettyTelnetTtyBootstrap setWriteCoalescing(WriteCoalescing writeCoalescing) {
+    telnet.setWriteCoalescing(writeCoalescing);
+    return this;
+  }
+
   public Charset getCharset() {
     return charset;
   }
@@ -96,7 +161,7 @@ public class NettyTelnetTtyBootstrap {
     telnet.start(new Supplier<TelnetHandler>() {
       @Override
       public TelnetHandler get() {
-        return new TelnetTtyConnection(inBinary, outBinary, charset, factory);
+        return new TelnetTtyConnection(inBinary, outBinary, compress, charset, factory);
       }
     }, doneHandler);
   }
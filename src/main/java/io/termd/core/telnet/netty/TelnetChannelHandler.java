@@ -31,20 +31,26 @@ import io.termd.core.util.Logging;
 public class TelnetChannelHandler extends ChannelInboundHandlerAdapter {
 
   private final Supplier<TelnetHandler> factory;
+  private final int compressionLevel;
   private NettyTelnetConnection conn;
 
   public TelnetChannelHandler(Supplier<TelnetHandler> factory) {
+    this(factory, NettyTelnetConnection.DEFAULT_COMPRESSION_LEVEL);
+  }
+
+  /**
+   * @param compressionLevel the zlib level of the connection compression, from {@code 0} to {@code 9}
+   */
+  public TelnetChannelHandler(Supplier<TelnetHandler> factory, int compressionLevel) {
     this.factory = factory;
+    this.compressionLevel = compressionLevel;
   }
 
   @Override
   public void channelRead(ChannelHandlerContext ctx, Object msg) {
     ByteBuf buf = (ByteBuf) msg;
     try {
-      int size = buf.readableBytes();
-      byte[] data = new byte[size];
-      buf.getBytes(0, data);
-      conn.receive(data);
+      conn.receive(buf);
     } finally {
       buf.release();
     }
@@ -52,10 +58,18 @@ public class TelnetChannelHandler extends ChannelInboundHandlerAdapter {
 
   @Override
   public void channelActive(ChannelHandlerContext ctx) throws Exception {
-    this.conn = new NettyTelnetConnection(factory.get(), ctx);
+    this.conn = new NettyTelnetConnection(factory.get(), ctx, compressionLevel);
     conn.onInit();
   }
 
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+    if (conn != null) {
+      conn.writabilityChanged();
+    }
+    super.channelWritabilityChanged(ctx);
+  }
+
   @Override
   public void channelInactive(ChannelHandlerContext ctx) throws Exception {
     conn.onClose();
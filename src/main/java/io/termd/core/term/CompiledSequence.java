@@ -0,0 +1,688 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.term;
+
+import io.termd.core.io.ByteSink;
+import io.termd.core.io.CodePointSink;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link Sequence} compiled to a flat instruction array evaluated on an {@code int} stack with {@code int}
+ * parameters.<p/>
+ *
+ * The evaluation does not allocate, the sequence is written in a buffer reused by the current thread and
+ * then passed as a slice to the sink. The string parameters of the {@code %s} and {@code %l} operations are not
+ * supported: {@code %s} formats the integer parameter and {@code %l} cannot be compiled. Like curses, the dynamic
+ * variables are reset for each evaluation and the static variables are retained by the thread, popping an empty
+ * stack yields {@code 0} and a division by zero yields {@code 0}.<p/>
+ *
+ * A compiled sequence is immutable and can be evaluated concurrently.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class CompiledSequence {
+
+  // Instructions
+  private static final int LITERAL = 0;       // offset length
+  private static final int PUSH_PARAM = 1;    // index
+  private static final int PUSH = 2;          // value
+  private static final int ADD_1 = 3;
+  private static final int PRINT_CHAR = 4;
+  private static final int PRINTF = 5;        // flags width precision specifier
+  private static final int SET_VAR = 6;       // slot
+  private static final int GET_VAR = 7;       // slot
+  private static final int ADD = 8;
+  private static final int SUB = 9;
+  private static final int MUL = 10;
+  private static final int DIV = 11;
+  private static final int MOD = 12;
+  private static final int BIT_AND = 13;
+  private static final int BIT_OR = 14;
+  private static final int BIT_XOR = 15;
+  private static final int EQ = 16;
+  private static final int GT = 17;
+  private static final int LT = 18;
+  private static final int AND = 19;
+  private static final int OR = 20;
+  private static final int NOT = 21;
+  private static final int COMPLEMENT = 22;
+  private static final int JUMP_IF_ZERO = 23; // target
+  private static final int JUMP = 24;         // target
+
+  // Printf flags
+  private static final int LEFT = 1;
+  private static final int SIGN = 2;
+  private static final int SPACE = 4;
+  private static final int ALTERNATE = 8;
+  private static final int ZERO = 16;
+
+  private static final int DYNAMIC_VARS = 26;
+  private static final int MAX_PARAMS = 9;
+
+  /**
+   * Compile a sequence.
+   *
+   * @param sequence the sequence to compile
+   * @return the compiled sequence
+   * @throws IllegalArgumentException when the sequence uses an operation that requires string parameters
+   */
+  public static CompiledSequence compile(Sequence sequence) throws IllegalArgumentException {
+    Compiler compiler = new Compiler();
+    compiler.compile(sequence.value);
+    return new CompiledSequence(
+        Arrays.copyOf(compiler.code, compiler.codeLength),
+        Arrays.copyOf(compiler.literals, compiler.literalsLength),
+        compiler.pushes);
+  }
+
+  private static final ThreadLocal<Frame> FRAME = new ThreadLocal<Frame>() {
+    @Override
+    protected Frame initialValue() {
+      return new Frame();
+    }
+  };
+
+  private final int[] code;
+  private final int[] literals;
+  private final int maxStack;
+
+  private CompiledSequence(int[] code, int[] literals, int maxStack) {
+    this.code = code;
+    this.literals = literals;
+    this.maxStack = maxStack;
+  }
+
+  /**
+   * Evaluate the sequence without parameters.
+   *
+   * @param out the sink receiving the code points
+   */
+  public void eval(CodePointSink out) {
+    Frame frame = begin();
+    try {
+      run(frame, 0);
+      out.accept(frame.out, 0, frame.length);
+    } finally {
+      frame.busy = false;
+    }
+  }
+
+  /**
+   * Evaluate the sequence with one parameter.
+   *
+   * @param p1 the first parameter
+   * @param out the sink receiving the code points
+   */
+  public void eval(int p1, CodePointSink out) {
+    Frame frame = begin();
+    try {
+      frame.params[0] = p1;
+      run(frame, 1);
+      out.accept(frame.out, 0, frame.length);
+    } finally {
+      frame.busy = false;
+    }
+  }
+
+  /**
+   * Evaluate the sequence with two parameters.
+   *
+   * @param p1 the first parameter
+   * @param p2 the second parameter
+   * @param out the sink receiving the code points
+   */
+  public void eval(int p1, int p2, CodePointSink out) {
+    Frame frame = begin();
+    try {
+      frame.params[0] = p1;
+      frame.params[1] = p2;
+      run(frame, 2);
+      out.accept(frame.out, 0, frame.length);
+    } finally {
+      frame.busy = false;
+    }
+  }
+
+  /**
+   * Evaluate the sequence.
+   *
+   * @param params the parameters
+   * @param out the sink receiving the code points
+   */
+  public void eval(int[] params, CodePointSink out) {
+    Frame frame = begin();
+    try {
+      run(frame, setParams(frame, params));
+      out.accept(frame.out, 0, frame.length);
+    } finally {
+      frame.busy = false;
+    }
+  }
+
+  /**
+   * Evaluate the sequence, each code point is written as a byte like the terminfo strings are.
+   *
+   * @param params the parameters
+   * @param out the sink receiving the bytes
+   */
+  public void eval(int[] params, ByteSink out) {
+    Frame frame = begin();
+    try {
+      run(frame, setParams(frame, params));
+      out.accept(frame.bytes(), 0, frame.length);
+    } finally {
+      frame.busy = false;
+    }
+  }
+
+  /**
+   * Evaluate the sequence, each code point is written as a byte like the terminfo strings are.
+   *
+   * @param p1 the first parameter
+   * @param p2 the second parameter
+   * @param out the sink receiving the bytes
+   */
+  public void eval(int p1, int p2, ByteSink out) {
+    Frame frame = begin();
+    try {
+      frame.params[0] = p1;
+      frame.params[1] = p2;
+      run(frame, 2);
+      out.accept(frame.bytes(), 0, frame.length);
+    } finally {
+      frame.busy = false;
+    }
+  }
+
+  /**
+   * Evaluate the sequence to a new array.
+   *
+   * @param params the parameters
+   * @return the code points
+   */
+  public int[] eval(int... params) {
+    Frame frame = begin();
+    try {
+      run(frame, setParams(frame, params));
+      return Arrays.copyOf(frame.out, frame.length);
+    } finally {
+      frame.busy = false;
+    }
+  }
+
+  private static Frame begin() {
+    Frame frame = FRAME.get();
+    if (frame.busy) {
+      // Evaluated from a sink
+      frame = new Frame();
+    }
+    frame.busy = true;
+    return frame;
+  }
+
+  private static int setParams(Frame frame, int[] params) {
+    if (params.length > MAX_PARAMS) {
+      throw new IllegalArgumentException("Too many parameters");
+    }
+    System.arraycopy(params, 0, frame.params, 0, params.length);
+    return params.length;
+  }
+
+  private void run(Frame frame, int paramCount) {
+    int[] code = this.code;
+    int[] params = frame.params;
+    int[] vars = frame.vars;
+    if (frame.stack.length < maxStack) {
+      frame.stack = new int[maxStack];
+    }
+    int[] stack = frame.stack;
+    int sp = 0;
+    Arrays.fill(vars, 0, DYNAMIC_VARS, 0);
+    frame.length = 0;
+    int pc = 0;
+    while (pc < code.length) {
+      int a, b;
+      switch (code[pc++]) {
+        case LITERAL:
+          frame.write(literals, code[pc++], code[pc++]);
+          break;
+        case PUSH_PARAM: {
+          int index = code[pc++];
+          if (index >= paramCount) {
+            throw new IllegalArgumentException("Not enough parameters");
+          }
+          stack[sp++] = params[index];
+          break;
+        }
+        case PUSH:
+          stack[sp++] = code[pc++];
+          break;
+        case ADD_1: {
+          // Sequences with a single parameter like hpa also use %i
+          int length = Math.min(paramCount, 2);
+          if (length < 1) {
+            throw new IllegalArgumentException("Missing parameters");
+          }
+          for (int i = 0;i < length;i++) {
+            params[i]++;
+          }
+          break;
+        }
+        case PRINT_CHAR:
+          frame.write(sp > 0 ? stack[--sp] : 0);
+          break;
+        case PRINTF:
+          frame.printf(sp > 0 ? stack[--sp] : 0, code[pc++], code[pc++], code[pc++], code[pc++]);
+          break;
+        case SET_VAR:
+          vars[code[pc++]] = sp > 0 ? stack[--sp] : 0;
+          break;
+        case GET_VAR:
+          stack[sp++] = vars[code[pc++]];
+          break;
+        case NOT:
+          a = sp > 0 ? stack[--sp] : 0;
+          stack[sp++] = a == 0 ? 1 : 0;
+          break;
+        case COMPLEMENT:
+          a = sp > 0 ? stack[--sp] : 0;
+          stack[sp++] = ~a;
+          break;
+        case JUMP_IF_ZERO: {
+          int target = code[pc++];
+          if ((sp > 0 ? stack[--sp] : 0) == 0) {
+            pc = target;
+          }
+          break;
+        }
+        case JUMP:
+          pc = code[pc];
+          break;
+        default:
+          // Binary operation, the second operand is on the top of the stack
+          b = sp > 0 ? stack[--sp] : 0;
+          a = sp > 0 ? stack[--sp] : 0;
+          stack[sp++] = binary(code[pc - 1], a, b);
+          break;
+      }
+    }
+  }
+
+  private static int binary(int op, int a, int b) {
+    switch (op) {
+      case ADD:
+        return a + b;
+      case SUB:
+        return a - b;
+      case MUL:
+        return a * b;
+      case DIV:
+        return b != 0 ? a / b : 0;
+      case MOD:
+        return b != 0 ? a % b : 0;
+      case BIT_AND:
+        return a & b;
+      case BIT_OR:
+        return a | b;
+      case BIT_XOR:
+        return a ^ b;
+      case EQ:
+        return a == b ? 1 : 0;
+      case GT:
+        return a > b ? 1 : 0;
+      case LT:
+        return a < b ? 1 : 0;
+      case AND:
+        return a != 0 && b != 0 ? 1 : 0;
+      case OR:
+        return a != 0 || b != 0 ? 1 : 0;
+      default:
+        throw new IllegalStateException("Invalid instruction " + op);
+    }
+  }
+
+  /**
+   * The evaluation state, reused by a thread.
+   */
+  private static class Frame {
+
+    private final int[] params = new int[MAX_PARAMS];
+    private final int[] vars = new int[DYNAMIC_VARS * 2];
+    private final int[] digits = new int[32];
+    private int[] stack = new int[16];
+    private int[] out = new int[64];
+    private byte[] bytes = new byte[64];
+    private int length;
+    private boolean busy;
+
+    private void ensureCapacity(int n) {
+      if (length + n > out.length) {
+        out = Arrays.copyOf(out, Math.max(out.length * 2, length + n));
+      }
+    }
+
+    void write(int codePoint) {
+      ensureCapacity(1);
+      out[length++] = codePoint;
+    }
+
+    void write(int[] codePoints, int offset, int len) {
+      ensureCapacity(len);
+      System.arraycopy(codePoints, offset, out, length, len);
+      length += len;
+    }
+
+    byte[] bytes() {
+      if (bytes.length < length) {
+        bytes = new byte[out.length];
+      }
+      for (int i = 0;i < length;i++) {
+        bytes[i] = (byte) out[i];
+      }
+      return bytes;
+    }
+
+    void printf(int value, int flags, int width, int precision, int specifier) {
+      long magnitude;
+      int radix;
+      boolean negative = false;
+      switch (specifier) {
+        case 'd':
+        case 's':
+          negative = value < 0;
+          magnitude = Math.abs((long) value);
+          radix = 10;
+          break;
+        case 'o':
+          magnitude = value & 0xFFFFFFFFL;
+          radix = 8;
+          break;
+        case 'x':
+        case 'X':
+          magnitude = value & 0xFFFFFFFFL;
+          radix = 16;
+          break;
+        default:
+          return;
+      }
+      int count = 0;
+      while (magnitude != 0) {
+        int digit = (int) (magnitude % radix);
+        digits[count++] = digit < 10 ? '0' + digit : (specifier == 'X' ? 'A' : 'a') + digit - 10;
+        magnitude /= radix;
+      }
+      int zeros = Math.max(Math.max(precision, 1) - count, 0);
+      if (precision == 0 && count == 0) {
+        zeros = 0;
+      }
+      if (radix == 8 && (flags & ALTERNATE) != 0 && zeros == 0) {
+        zeros = 1;
+      }
+      int prefix0 = -1, prefix1 = -1;
+      if (negative) {
+        prefix0 = '-';
+      } else if (specifier == 'd' && (flags & SIGN) != 0) {
+        prefix0 = '+';
+      } else if (specifier == 'd' && (flags & SPACE) != 0) {
+        prefix0 = ' ';
+      } else if (radix == 16 && (flags & ALTERNATE) != 0 && count > 0) {
+        prefix0 = '0';
+        prefix1 = specifier;
+      }
+      int size = zeros + count + (prefix0 != -1 ? 1 : 0) + (prefix1 != -1 ? 1 : 0);
+      int padding = Math.max(width - size, 0);
+      if ((flags & ZERO) != 0 && (flags & LEFT) == 0 && precision == -1) {
+        zeros += padding;
+        padding = 0;
+      }
+      ensureCapacity(size + padding);
+      if ((flags & LEFT) == 0) {
+        pad(' ', padding);
+      }
+      if (prefix0 != -1) {
+        out[length++] = prefix0;
+      }
+      if (prefix1 != -1) {
+        out[length++] = prefix1;
+      }
+      pad('0', zeros);
+      while (count > 0) {
+        out[length++] = digits[--count];
+      }
+      if ((flags & LEFT) != 0) {
+        pad(' ', padding);
+      }
+    }
+
+    private void pad(int codePoint, int n) {
+      while (n-- > 0) {
+        out[length++] = codePoint;
+      }
+    }
+  }
+
+  /**
+   * Translates the op codes to instructions.
+   */
+  private static class Compiler {
+
+    private int[] code = new int[32];
+    private int codeLength;
+    private int[] literals = new int[32];
+    private int literalsLength;
+    private int pushes;
+    private int lastLiteral = -1;
+
+    void compile(List<OpCode> ops) {
+      for (OpCode op : ops) {
+        compile(op);
+      }
+    }
+
+    void compile(OpCode op) {
+      if (op instanceof OpCode.PushParam) {
+        emit(PUSH_PARAM, ((OpCode.PushParam) op).getIndex() - 1);
+        pushes++;
+      } else if (op instanceof OpCode.Literal) {
+        literal(((OpCode.Literal) op).value);
+      } else if (op == OpCode.Percent.INSTANCE) {
+        literal("%");
+      } else if (op instanceof OpCode.PushConstant) {
+        emit(PUSH, ((OpCode.PushConstant) op).getValue());
+        pushes++;
+      } else if (op == OpCode.Add1ToParams.INSTANCE) {
+        emit(ADD_1);
+      } else if (op == OpCode.PrintChar.INSTANCE) {
+        emit(PRINT_CHAR);
+      } else if (op instanceof OpCode.SetPopVar) {
+        emit(SET_VAR, slot(((OpCode.SetPopVar) op).value));
+      } else if (op instanceof OpCode.GetPushVar) {
+        emit(GET_VAR, slot(((OpCode.GetPushVar) op).value));
+        pushes++;
+      } else if (op instanceof OpCode.Bit) {
+        switch (((OpCode.Bit) op).value) {
+          case '|':
+            emit(BIT_OR);
+            break;
+          case '&':
+            emit(BIT_AND);
+            break;
+          case '^':
+            emit(BIT_XOR);
+            break;
+          default:
+            emit(COMPLEMENT);
+            break;
+        }
+        pushes++;
+      } else if (op instanceof OpCode.Logical) {
+        switch (((OpCode.Logical) op).value) {
+          case '=':
+            emit(EQ);
+            break;
+          case '>':
+            emit(GT);
+            break;
+          case '<':
+            emit(LT);
+            break;
+          case 'A':
+            emit(AND);
+            break;
+          case 'O':
+            emit(OR);
+            break;
+          default:
+            emit(NOT);
+            break;
+        }
+        pushes++;
+      } else if (op instanceof OpCode.Arithmetic) {
+        switch (((OpCode.Arithmetic) op).value) {
+          case '+':
+            emit(ADD);
+            break;
+          case '-':
+            emit(SUB);
+            break;
+          case '*':
+            emit(MUL);
+            break;
+          case '/':
+            emit(DIV);
+            break;
+          default:
+            emit(MOD);
+            break;
+        }
+        pushes++;
+      } else if (op instanceof OpCode.Printf) {
+        printf((OpCode.Printf) op);
+      } else if (op instanceof OpCode.If) {
+        compileIf((OpCode.If) op);
+      } else if (op == OpCode.PushStrLen.INSTANCE) {
+        throw new IllegalArgumentException("The %l operation requires string parameters");
+      } else {
+        throw new IllegalArgumentException("Cannot compile " + op);
+      }
+    }
+
+    private void compileIf(OpCode.If op) {
+      compile(op.expr);
+      int jumpToElse = emit(JUMP_IF_ZERO, -1);
+      compile(op.thenPart.expr);
+      ElsePart elsePart = op.thenPart.elsePart;
+      if (elsePart != null) {
+        int jumpToEnd = emit(JUMP, -1);
+        label(jumpToElse);
+        if (elsePart instanceof OpCode.If) {
+          compileIf((OpCode.If) elsePart);
+        } else {
+          compile(((OpCode.Else) elsePart).expr);
+        }
+        label(jumpToEnd);
+      } else {
+        label(jumpToElse);
+      }
+    }
+
+    private void printf(OpCode.Printf op) {
+      int flags = 0;
+      Character flag = op.getFlag();
+      if (flag != null) {
+        switch (flag) {
+          case '-':
+            flags = LEFT;
+            break;
+          case '+':
+            flags = SIGN;
+            break;
+          case ' ':
+            flags = SPACE;
+            break;
+          default:
+            flags = ALTERNATE;
+            break;
+        }
+      }
+      int width = 0;
+      if (op.getWidth() != null) {
+        if (op.getWidth().charAt(0) == '0') {
+          flags |= ZERO;
+        }
+        width = Integer.parseInt(op.getWidth());
+      }
+      int precision = op.getPrecision() != null ? Integer.parseInt(op.getPrecision()) : -1;
+      Character specifier = op.getSpecifier();
+      emit(PRINTF, flags);
+      emit(width);
+      emit(precision);
+      emit(specifier != null ? specifier : 0);
+    }
+
+    private static int slot(char name) {
+      if (name >= 'a' && name <= 'z') {
+        return name - 'a';
+      } else if (name >= 'A' && name <= 'Z') {
+        return DYNAMIC_VARS + name - 'A';
+      }
+      throw new IllegalArgumentException("Invalid variable " + name);
+    }
+
+    private void literal(String s) {
+      int start = literalsLength;
+      for (int i = 0;i < s.length();) {
+        int cp = s.codePointAt(i);
+        if (literalsLength == literals.length) {
+          literals = Arrays.copyOf(literals, literals.length * 2);
+        }
+        literals[literalsLength++] = cp;
+        i += Character.charCount(cp);
+      }
+      if (lastLiteral != -1) {
+        // Extend the previous literal instruction
+        code[lastLiteral + 2] += literalsLength - start;
+      } else {
+        int pos = emit(LITERAL, start);
+        emit(literalsLength - start);
+        lastLiteral = pos;
+      }
+    }
+
+    private void label(int jump) {
+      code[jump + 1] = codeLength;
+      lastLiteral = -1;
+    }
+
+    private int emit(int instruction) {
+      if (codeLength == code.length) {
+        code = Arrays.copyOf(code, code.length * 2);
+      }
+      lastLiteral = -1;
+      code[codeLength] = instruction;
+      return codeLength++;
+    }
+
+    private int emit(int instruction, int operand) {
+      int pos = emit(instruction);
+      emit(operand);
+      return pos;
+    }
+  }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.term;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A term info database backed by the binary format of the {@link TermInfoCompiler}, the devices are resolved
+ * when they are looked up.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+class CompiledTermInfo extends TermInfo {
+
+  /**
+   * Load a compiled database, the database is memory mapped when it is a file.
+   *
+   * @param url the database url
+   * @return the database
+   */
+  static CompiledTermInfo load(URL url) throws IOException {
+    ByteBuffer buffer;
+    if ("file".equals(url.getProtocol())) {
+      File path;
+      try {
+        // The url path is escaped
+        path = new File(url.toURI());
+      } catch (URISyntaxException e) {
+        throw new IOException("Invalid database url " + url, e);
+      }
+      RandomAccessFile file = new RandomAccessFile(path, "r");
+      try {
+        FileChannel channel = file.getChannel();
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      } finally {
+        file.close();
+      }
+    } else {
+      InputStream in = url.openStream();
+      try {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] bytes = new byte[4096];
+        int len;
+        while ((len = in.read(bytes)) != -1) {
+          out.write(bytes, 0, len);
+        }
+        buffer = ByteBuffer.wrap(out.toByteArray());
+      } finally {
+        in.close();
+      }
+    }
+    return new CompiledTermInfo(buffer);
+  }
+
+  private final ByteBuffer buffer;
+  private final int stringOffsets;
+  private final int stringSection;
+  private final String[] strings;
+  private final int entryOffsets;
+  private final int nameIndex;
+  private final int nameCount;
+  private final int entrySection;
+  private final Device[] resolved;
+  private final boolean[] resolving;
+
+  CompiledTermInfo(ByteBuffer buffer) {
+    super(Collections.<String, Device>emptyMap());
+    if (buffer.getInt(0) != TermInfoCompiler.MAGIC) {
+      throw new IllegalArgumentException("Not a compiled term info database");
+    }
+    if (buffer.getInt(4) != TermInfoCompiler.VERSION) {
+      throw new IllegalArgumentException("Unsupported compiled term info database version " + buffer.getInt(4));
+    }
+    int pos = 8;
+    int stringCount = buffer.getInt(pos);
+    stringOffsets = pos + 4;
+    pos = stringOffsets + stringCount * 4;
+    stringSection = pos + 4;
+    pos = stringSection + buffer.getInt(pos);
+    int entryCount = buffer.getInt(pos);
+    entryOffsets = pos + 4;
+    pos = entryOffsets + entryCount * 4;
+    nameCount = buffer.getInt(pos);
+    nameIndex = pos + 4;
+    pos = nameIndex + nameCount * 8;
+    entrySection = pos + 4;
+    this.buffer = buffer;
+    this.strings = new String[stringCount];
+    this.resolved = new Device[entryCount];
+    this.resolving = new boolean[entryCount];
+  }
+
+  @Override
+  public synchronized Device getDevice(String name) {
+    int low = 0;
+    int high = nameCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = string(buffer.getInt(nameIndex + mid * 8)).compareTo(name);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return resolve(buffer.getInt(nameIndex + mid * 8 + 4));
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public synchronized Collection<Device> devices() {
+    Map<String, Device> devices = new LinkedHashMap<String, Device>();
+    for (int i = 0;i < nameCount;i++) {
+      devices.put(string(buffer.getInt(nameIndex + i * 8)), resolve(buffer.getInt(nameIndex + i * 8 + 4)));
+    }
+    return devices.values();
+  }
+
+  private String string(int index) {
+    String s = strings[index];
+    if (s == null) {
+      int pos = stringSection + buffer.getInt(stringOffsets + index * 4);
+      byte[] bytes = new byte[buffer.getShort(pos) & 0xFFFF];
+      for (int i = 0;i < bytes.length;i++) {
+        bytes[i] = buffer.get(pos + 2 + i);
+      }
+      s = new String(bytes, TermInfoCompiler.UTF_8);
+      strings[index] = s;
+    }
+    return s;
+  }
+
+  private Device resolve(int index) {
+    Device result = resolved[index];
+    if (result != null) {
+      return result;
+    }
+    if (resolving[index]) {
+      throw new IllegalStateException("Detected cycle in term info dependencies");
+    }
+    resolving[index] = true;
+    try {
+      Reader reader = new Reader(entrySection + buffer.getInt(entryOffsets + index * 4));
+      int nameCount = reader.readShort();
+      String[] names = new String[nameCount];
+      for (int i = 0;i < nameCount;i++) {
+        names[i] = string(reader.readInt());
+      }
+      result = new Device(Arrays.asList(names));
+      int useCount = reader.readShort();
+      for (int i = 0;i < useCount;i++) {
+        result.addFeatures(resolve(reader.readInt()).getFeatures());
+      }
+      int featureCount = reader.readShort();
+      for (int i = 0;i < featureCount;i++) {
+        String name = string(reader.readInt());
+        int type = reader.readByte();
+        switch (type) {
+          case TermInfoCompiler.FALSE:
+            result.addFeature(Feature.create(name, false));
+            break;
+          case TermInfoCompiler.TRUE:
+            result.addFeature(Feature.create(name, true));
+            break;
+          case TermInfoCompiler.NUMERIC:
+            result.addFeature(Feature.create(name, reader.readInt()));
+            break;
+          case TermInfoCompiler.STRING:
+            result.addFeature(Feature.create(name, new Sequence(reader.readOpCodes())));
+            break;
+          default:
+            throw new IllegalStateException("Invalid feature type " + type);
+        }
+      }
+    } finally {
+      resolving[index] = false;
+    }
+    resolved[index] = result;
+    return result;
+  }
+
+  /**
+   * Reads the content of an entry.
+   */
+  private class Reader {
+
+    private int pos;
+
+    Reader(int pos) {
+      this.pos = pos;
+    }
+
+    int readByte() {
+      return buffer.get(pos++) & 0xFF;
+    }
+
+    int readShort() {
+      int value = buffer.getShort(pos) & 0xFFFF;
+      pos += 2;
+      return value;
+    }
+
+    int readInt() {
+      int value = buffer.getInt(pos);
+      pos += 4;
+      return value;
+    }
+
+    List<OpCode> readOpCodes() {
+      int count = readShort();
+      List<OpCode> ops = new ArrayList<OpCode>(count);
+      for (int i = 0;i < count;i++) {
+        ops.add(readOpCode(readByte()));
+      }
+      return ops;
+    }
+
+    OpCode readOpCode(int tag) {
+      switch (tag) {
+        case TermInfoCompiler.PUSH_PARAM:
+          return new OpCode.PushParam(readByte());
+        case TermInfoCompiler.LITERAL:
+          return new OpCode.Literal(string(readInt()));
+        case TermInfoCompiler.PUSH_CONSTANT: {
+          int value = readInt();
+          return new OpCode.PushConstant(value, readByte() != 0);
+        }
+        case TermInfoCompiler.PERCENT:
+          return OpCode.Percent.INSTANCE;
+        case TermInfoCompiler.PUSH_STR_LEN:
+          return OpCode.PushStrLen.INSTANCE;
+        case TermInfoCompiler.ADD_1_TO_PARAMS:
+          return OpCode.Add1ToParams.INSTANCE;
+        case TermInfoCompiler.PRINT_CHAR:
+          return OpCode.PrintChar.INSTANCE;
+        case TermInfoCompiler.SET_POP_VAR:
+          return new OpCode.SetPopVar((char) readShort());
+        case TermInfoCompiler.GET_PUSH_VAR:
+          return new OpCode.GetPushVar((char) readShort());
+        case TermInfoCompiler.BIT:
+          return bit((char) readShort());
+        case TermInfoCompiler.LOGICAL:
+          return logical((char) readShort());
+        case TermInfoCompiler.ARITHMETIC:
+          return arithmetic((char) readShort());
+        case TermInfoCompiler.PRINTF: {
+          char flag = (char) readShort();
+          int width = readInt();
+          int precision = readInt();
+          char specifier = (char) readShort();
+          return new OpCode.Printf(
+              flag != 0 ? flag : null,
+              width != -1 ? string(width) : null,
+              precision != -1 ? string(precision) : null,
+              specifier != 0 ? specifier : null);
+        }
+        case TermInfoCompiler.IF: {
+          List<OpCode> expr = readOpCodes();
+          List<OpCode> thenExpr = readOpCodes();
+          int elseTag = readByte();
+          ElsePart elsePart;
+          switch (elseTag) {
+            case TermInfoCompiler.NONE:
+              elsePart = null;
+              break;
+            case TermInfoCompiler.ELSE:
+              elsePart = new OpCode.Else(readOpCodes());
+              break;
+            default:
+              elsePart = (ElsePart) readOpCode(elseTag);
+              break;
+          }
+          return new OpCode.If(expr, new OpCode.Then(thenExpr, elsePart));
+        }
+        default:
+          throw new IllegalStateException("Invalid op code " + tag);
+      }
+    }
+  }
+
+  private static OpCode.Bit bit(char value) {
+    for (OpCode.Bit bit : new OpCode.Bit[]{OpCode.Bit.OR, OpCode.Bit.AND, OpCode.Bit.XOR, OpCode.Bit.NEG}) {
+      if (bit.value == value) {
+        return bit;
+      }
+    }
+    throw new IllegalStateException("Invalid bit operator " + value);
+  }
+
+  private static OpCode.Logical logical(char value) {
+    for (OpCode.Logical logical : new OpCode.Logical[]{OpCode.Logical.EQ, OpCode.Logical.GT, OpCode.Logical.LT, OpCode.Logical.AND, OpCode.Logical.OR, OpCode.Logical.NEG}) {
+      if (logical.value == value) {
+        return logical;
+      }
+    }
+    throw new IllegalStateException("Invalid logical operator " + value);
+  }
+
+  private static OpCode.Arithmetic arithmetic(char value) {
+    for (OpCode.Arithmetic arithmetic : new OpCode.Arithmetic[]{OpCode.Arithmetic.PLUS, OpCode.Arithmetic.MINUS, OpCode.Arithmetic.MUL, OpCode.Arithmetic.DIV, OpCode.Arithmetic.MOD}) {
+      if (arithmetic.value == value) {
+        return arithmetic;
+      }
+    }
+    throw new IllegalStateException("Invalid arithmetic operator " + value);
+  }
+}
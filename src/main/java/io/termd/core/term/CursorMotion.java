@@ -0,0 +1,327 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.term;
+
+import io.termd.core.io.CodePointSink;
+import io.termd.core.util.Helper;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Plan the cheapest sequence moving the cursor between two positions of the screen, the cost of a sequence is the
+ * number of code points it emits, in the manner of the curses {@code mvcur} cost model.<p/>
+ *
+ * The planner considers the relative motions ({@code cuu1}, {@code cud1}, {@code cuf1}, {@code cub1} repeated or
+ * their parameterized {@code cuu}, {@code cud}, {@code cuf}, {@code cub} counterparts), the carriage return and the
+ * absolute column address {@code hpa}. Absolute addressing with {@code cup} is not considered as the row of the
+ * cursor is only known relatively to the position where the output started.<p/>
+ *
+ * Evaluated sequences are cached, so planning a motion does not evaluate a terminfo sequence again.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class CursorMotion {
+
+  /**
+   * The motion planner used when the terminal is not known, it uses only the VT100 sequences.
+   */
+  public static final CursorMotion ANSI = new CursorMotion(
+      new int[]{'\r'},
+      new int[]{'\033', '[', 'A'},
+      new int[]{'\033', '[', 'B'},
+      new int[]{'\033', '[', 'C'},
+      new int[]{'\b'},
+      new AnsiMotion('A'),
+      new AnsiMotion('B'),
+      new AnsiMotion('C'),
+      new AnsiMotion('D'),
+      null);
+
+  /**
+   * Create a motion planner for the specified device, the sequences the device does not provide are not used. A
+   * device that cannot move the cursor in a direction uses the sequences of {@link #ANSI} for this direction.
+   *
+   * @param device the device
+   * @return the motion planner
+   */
+  public static CursorMotion create(Device device) {
+    int[] cuu1 = literal(device.getFeature(Capability.cursor_up));
+    int[] cud1 = literal(device.getFeature(Capability.cursor_down));
+    int[] cuf1 = literal(device.getFeature(Capability.cursor_right));
+    int[] cub1 = literal(device.getFeature(Capability.cursor_left));
+    Motion cuu = motion(device.getCompiledFeature(Capability.parm_up_cursor));
+    Motion cud = motion(device.getCompiledFeature(Capability.parm_down_cursor));
+    Motion cuf = motion(device.getCompiledFeature(Capability.parm_right_cursor));
+    Motion cub = motion(device.getCompiledFeature(Capability.parm_left_cursor));
+    if (cud1 != null && contains(cud1, '\n')) {
+      // A line feed may be translated to a carriage return followed by a line feed (onlcr)
+      cud1 = null;
+    }
+    if (cuu1 == null && cuu == null) {
+      cuu1 = ANSI.cuu1;
+      cuu = ANSI.cuu;
+    }
+    if (cud1 == null && cud == null) {
+      cud1 = ANSI.cud1;
+      cud = ANSI.cud;
+    }
+    if (cuf1 == null && cuf == null) {
+      cuf1 = ANSI.cuf1;
+      cuf = ANSI.cuf;
+    }
+    if (cub1 == null && cub == null) {
+      cub1 = ANSI.cub1;
+      cub = ANSI.cub;
+    }
+    int[] cr = literal(device.getFeature(Capability.carriage_return));
+    return new CursorMotion(
+        cr != null ? cr : ANSI.cr,
+        cuu1,
+        cud1,
+        cuf1,
+        cub1,
+        cuu,
+        cud,
+        cuf,
+        cub,
+        motion(device.getCompiledFeature(Capability.column_address)));
+  }
+
+  private static int[] literal(Sequence seq) {
+    return seq != null ? Helper.toCodePoints(seq.eval()) : null;
+  }
+
+  private static Motion motion(CompiledSequence seq) {
+    return seq != null ? new SequenceMotion(seq) : null;
+  }
+
+  private static boolean contains(int[] seq, int codePoint) {
+    for (int cp : seq) {
+      if (cp == codePoint) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private final int[] cr;
+  private final int[] cuu1;
+  private final int[] cud1;
+  private final int[] cuf1;
+  private final int[] cub1;
+  private final Motion cuu;
+  private final Motion cud;
+  private final Motion cuf;
+  private final Motion cub;
+  private final Motion hpa;
+
+  private CursorMotion(int[] cr, int[] cuu1, int[] cud1, int[] cuf1, int[] cub1, Motion cuu, Motion cud, Motion cuf, Motion cub, Motion hpa) {
+    this.cr = cr;
+    this.cuu1 = cuu1;
+    this.cud1 = cud1;
+    this.cuf1 = cuf1;
+    this.cub1 = cub1;
+    this.cuu = cuu;
+    this.cud = cud;
+    this.cuf = cuf;
+    this.cub = cub;
+    this.hpa = hpa;
+  }
+
+  /**
+   * Compute the cost of the cheapest motion between two positions.
+   *
+   * @param fromCol the current column
+   * @param fromRow the current row
+   * @param toCol the target column
+   * @param toRow the target row
+   * @return the number of code points of the motion
+   */
+  public int cost(int fromCol, int fromRow, int toCol, int toRow) {
+    int cost = toRow != fromRow ? vertical(toRow - fromRow) & COST : 0;
+    return cost + (horizontal(fromCol, toCol) & COST);
+  }
+
+  /**
+   * Emit the cheapest motion between two positions.
+   *
+   * @param fromCol the current column
+   * @param fromRow the current row
+   * @param toCol the target column
+   * @param toRow the target row
+   * @param out the output
+   */
+  public void move(int fromCol, int fromRow, int toCol, int toRow, CodePointSink out) {
+    if (toRow != fromRow) {
+      int n = Math.abs(toRow - fromRow);
+      if ((vertical(toRow - fromRow) & PARAMETERIZED) != 0) {
+        emit((toRow < fromRow ? cuu : cud).get(n), out);
+      } else {
+        repeat(toRow < fromRow ? cuu1 : cud1, n, out);
+      }
+    }
+    if (fromCol != toCol) {
+      int horizontal = horizontal(fromCol, toCol);
+      switch (horizontal & STRATEGY) {
+        case ABSOLUTE:
+          emit(hpa.get(toCol), out);
+          break;
+        case RETURN:
+          emit(cr, out);
+          right(0, toCol, horizontal, out);
+          break;
+        default:
+          if (toCol > fromCol) {
+            right(fromCol, toCol, horizontal, out);
+          } else if ((horizontal & PARAMETERIZED) != 0) {
+            emit(cub.get(fromCol - toCol), out);
+          } else {
+            repeat(cub1, fromCol - toCol, out);
+          }
+          break;
+      }
+    }
+  }
+
+  private void right(int col, int toCol, int plan, CodePointSink out) {
+    if (toCol > col) {
+      if ((plan & PARAMETERIZED) != 0) {
+        emit(cuf.get(toCol - col), out);
+      } else {
+        repeat(cuf1, toCol - col, out);
+      }
+    }
+  }
+
+  // A plan is encoded as an int : the cost in the 16 low bits followed by flags
+  private static final int COST = 0xFFFF;
+  private static final int INFINITE = COST;
+  private static final int PARAMETERIZED = 1 << 16;
+  private static final int RETURN = 1 << 17;
+  private static final int ABSOLUTE = 2 << 17;
+  private static final int STRATEGY = 3 << 17;
+
+  private int vertical(int delta) {
+    int n = Math.abs(delta);
+    int[] unit = delta < 0 ? cuu1 : cud1;
+    Motion parm = delta < 0 ? cuu : cud;
+    int repeated = unit != null ? cost(unit.length * n) : INFINITE;
+    int parameterized = parm != null ? cost(parm.get(n).length) | PARAMETERIZED : INFINITE;
+    return (parameterized & COST) < (repeated & COST) ? parameterized : repeated;
+  }
+
+  private int horizontal(int col, int toCol) {
+    if (col == toCol) {
+      return 0;
+    }
+    int best = relative(col, toCol);
+    if (toCol < col) {
+      int ret = relative(0, toCol);
+      if ((ret & COST) != INFINITE) {
+        ret = cost(cr.length + (ret & COST)) | (ret & PARAMETERIZED) | RETURN;
+        if ((ret & COST) < (best & COST)) {
+          best = ret;
+        }
+      }
+    }
+    if (hpa != null) {
+      int abs = cost(hpa.get(toCol).length) | ABSOLUTE;
+      if ((abs & COST) < (best & COST)) {
+        best = abs;
+      }
+    }
+    return best;
+  }
+
+  private int relative(int col, int toCol) {
+    if (col == toCol) {
+      return 0;
+    }
+    int n = Math.abs(toCol - col);
+    int[] unit = toCol > col ? cuf1 : cub1;
+    Motion parm = toCol > col ? cuf : cub;
+    int repeated = unit != null ? cost(unit.length * n) : INFINITE;
+    int parameterized = parm != null ? cost(parm.get(n).length) | PARAMETERIZED : INFINITE;
+    return (parameterized & COST) < (repeated & COST) ? parameterized : repeated;
+  }
+
+  private static int cost(int cost) {
+    return Math.min(cost, INFINITE - 1);
+  }
+
+  private static void emit(int[] seq, CodePointSink out) {
+    out.accept(seq, 0, seq.length);
+  }
+
+  private static void repeat(int[] seq, int n, CodePointSink out) {
+    while (n-- > 0) {
+      out.accept(seq, 0, seq.length);
+    }
+  }
+
+  /**
+   * A parameterized motion.
+   */
+  private static abstract class Motion {
+
+    private static final int CACHE_SIZE = 512;
+
+    private final AtomicReferenceArray<int[]> cache = new AtomicReferenceArray<int[]>(CACHE_SIZE);
+
+    int[] get(int n) {
+      if (n < CACHE_SIZE) {
+        int[] seq = cache.get(n);
+        if (seq == null) {
+          seq = eval(n);
+          cache.set(n, seq);
+        }
+        return seq;
+      }
+      return eval(n);
+    }
+
+    abstract int[] eval(int n);
+  }
+
+  private static class AnsiMotion extends Motion {
+
+    private final char f;
+
+    AnsiMotion(char f) {
+      this.f = f;
+    }
+
+    @Override
+    int[] eval(int n) {
+      return Helper.toCodePoints("\033[" + n + f);
+    }
+  }
+
+  private static class SequenceMotion extends Motion {
+
+    private final CompiledSequence seq;
+
+    SequenceMotion(CompiledSequence seq) {
+      this.seq = seq;
+    }
+
+    @Override
+    int[] eval(int n) {
+      return seq.eval(n);
+    }
+  }
+}
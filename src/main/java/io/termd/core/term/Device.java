@@ -22,6 +22,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
 * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
@@ -32,6 +33,7 @@ public class Device {
   final List<String> synonyms;
   final String longname;
   final Map<Capability<?>, Feature<?>> features;
+  private final ConcurrentHashMap<Capability<?>, CompiledSequence> compiled = new ConcurrentHashMap<Capability<?>, CompiledSequence>();
 
   public Device(List<String> names) {
     name = names.get(0);
@@ -63,8 +65,29 @@ public class Device {
     return def;
   }
 
+  /**
+   * Return the compiled sequence of a string capability, the compiled sequence is cached by this device.
+   *
+   * @param capability the capability
+   * @return the compiled sequence or null when the device does not have the capability
+   * @throws IllegalArgumentException when the sequence cannot be compiled
+   */
+  public CompiledSequence getCompiledFeature(Capability<Sequence> capability) throws IllegalArgumentException {
+    CompiledSequence sequence = compiled.get(capability);
+    if (sequence == null) {
+      Sequence value = getFeature(capability);
+      if (value == null) {
+        return null;
+      }
+      sequence = CompiledSequence.compile(value);
+      compiled.put(capability, sequence);
+    }
+    return sequence;
+  }
+
   public void addFeature(Feature<?> feature) {
     features.put(feature.capability, feature);
+    compiled.remove(feature.capability);
   }
 
   public void addFeature(String name, Object value) {
@@ -111,7 +111,7 @@ public abstract class OpCode {
   public static class PushConstant extends OpCode {
 
     private final int value;
-    private final boolean literal;
+    final boolean literal;
 
     public PushConstant(int value, boolean literal) {
       this.value = value;
@@ -190,10 +190,12 @@ public abstract class OpCode {
 
     @Override
     public void eval(EvalContext context) {
-      if (context.getParametersLength() < 2) {
+      // Sequences with a single parameter like hpa also use %i
+      int length = Math.min(context.getParametersLength(), 2);
+      if (length < 1) {
         throw new IllegalArgumentException("Missing parameters");
       }
-      for (int i = 0;i < 2; i++) {
+      for (int i = 0;i < length; i++) {
         context.setParameter(i, Integer.toString((Integer.parseInt(context.getParameter(i)) + 1)));
       }
     }
@@ -218,7 +220,7 @@ public abstract class OpCode {
   }
 
   public static class SetPopVar extends OpCode {
-    private final char value;
+    final char value;
     public SetPopVar(char value) {
       this.value = value;
     }
@@ -240,7 +242,7 @@ public abstract class OpCode {
   }
 
   public static class GetPushVar extends OpCode {
-    private final char value;
+    final char value;
     public GetPushVar(char value) {
       this.value = value;
     }
@@ -268,7 +270,7 @@ public abstract class OpCode {
     public static final Bit XOR = new Bit('^');
     public static final Bit NEG = new Bit('~');
 
-    private final char value;
+    final char value;
 
     private Bit(char value) {
       this.value = value;
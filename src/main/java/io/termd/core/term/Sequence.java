@@ -27,7 +27,7 @@ import java.util.List;
  */
 public class Sequence implements Iterable<OpCode> {
 
-  private final List<OpCode> value;
+  final List<OpCode> value;
 
   public Sequence(List<OpCode> value) {
     this.value = value;
@@ -55,6 +55,14 @@ public class Sequence implements Iterable<OpCode> {
     eval(new EvalContext(parameters, result));
   }
 
+  /**
+   * @return this sequence compiled for evaluating with integer parameters
+   * @throws IllegalArgumentException when the sequence cannot be compiled
+   */
+  public CompiledSequence compile() throws IllegalArgumentException {
+    return CompiledSequence.compile(this);
+  }
+
   public void eval(EvalContext context) {
     for (OpCode op : value) {
       op.eval(context);
@@ -16,8 +16,10 @@
 
 package io.termd.core.term;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URL;
 import java.util.Collection;
 import java.util.Map;
 
@@ -29,25 +31,49 @@ import java.util.Map;
 public class TermInfo {
 
   private static TermInfo loadDefault() {
+    URL compiled = TermInfo.class.getResource("terminfo.bin");
+    if (compiled != null) {
+      try {
+        return CompiledTermInfo.load(compiled);
+      } catch (Throwable t) {
+        t.printStackTrace();
+      }
+    }
+    try {
+      return parseDefault();
+    } catch (Throwable t) {
+      t.printStackTrace();
+      return null;
+    }
+  }
+
+  /**
+   * Parse the {@code terminfo.src} resource.
+   */
+  static TermInfo parseDefault() throws ParseException, IOException {
+    InputStream in = TermInfo.class.getResourceAsStream("terminfo.src");
     try {
-      InputStream in = TermInfo.class.getResourceAsStream("terminfo.src");
       TermInfoParser parser = new TermInfoParser(new InputStreamReader(in, "US-ASCII"));
       TermInfoBuilder builder = new TermInfoBuilder();
       parser.parseDatabase(builder);
       return builder.build();
-    } catch (Throwable t) {
-      t.printStackTrace();
-      return null;
+    } finally {
+      in.close();
     }
   }
 
-  private static final TermInfo DEFAULT = loadDefault();
+  private static class Default {
+    private static final TermInfo INSTANCE = loadDefault();
+  }
 
   /**
-   * @return the default term info database loaded from the {@code terminfo.src} resource
+   * Return the default term info database, it is loaded on first use from the {@code terminfo.bin} resource
+   * compiled by the {@link TermInfoCompiler} during the build or from the {@code terminfo.src} resource when it is not available.
+   *
+   * @return the default term info database
    */
   public static TermInfo defaultInfo() {
-    return DEFAULT;
+    return Default.INSTANCE;
   }
 
   final Map<String, Device> devices;
@@ -82,6 +82,13 @@ public class TermInfoBuilder extends ParserHandler {
   public void endDatabase() {
   }
 
+  /**
+   * @return the parsed entries, before their uses are resolved
+   */
+  List<Entry> entries() {
+    return entries;
+  }
+
   public TermInfo build() {
     Map<String, Entry> entryMap = new HashMap<String, Entry>();
     for (Entry entry : entries) {
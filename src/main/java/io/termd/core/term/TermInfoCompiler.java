@@ -0,0 +1,309 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.term;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiles a terminfo source database into the binary database loaded by {@link TermInfo#defaultInfo()}.<p/>
+ *
+ * The binary database is made of a string table, the device entries and an index of the device names sorted
+ * alphabetically. The entries are stored with their features and the index of the entries they use, so a device
+ * is resolved only when it is looked up. The format is:
+ *
+ * <pre>
+ * magic version
+ * string_count string_offset* string_section_length (u2 length, utf-8 bytes)*
+ * entry_count entry_offset* name_count (name, entry)* entry_section_length entry*
+ *
+ * entry: u2 name_count name* u2 use_count entry* u2 feature_count (name, u1 type, value?)*
+ * </pre>
+ *
+ * Strings are referenced by their index in the string table and the string features are stored as compiled
+ * {@link OpCode} trees. The database is regenerated with the {@code terminfo} build profile.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class TermInfoCompiler {
+
+  static final int MAGIC = 0x54494442;
+  static final int VERSION = 1;
+  static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  // Feature types
+  static final int FALSE = 0;
+  static final int TRUE = 1;
+  static final int NUMERIC = 2;
+  static final int STRING = 3;
+
+  // Op code tags
+  static final int NONE = 0;
+  static final int PUSH_PARAM = 1;
+  static final int LITERAL = 2;
+  static final int PUSH_CONSTANT = 3;
+  static final int PERCENT = 4;
+  static final int PUSH_STR_LEN = 5;
+  static final int ADD_1_TO_PARAMS = 6;
+  static final int PRINT_CHAR = 7;
+  static final int SET_POP_VAR = 8;
+  static final int GET_PUSH_VAR = 9;
+  static final int BIT = 10;
+  static final int LOGICAL = 11;
+  static final int ARITHMETIC = 12;
+  static final int PRINTF = 13;
+  static final int IF = 14;
+  static final int ELSE = 15;
+
+  /**
+   * Compile a terminfo source file.
+   *
+   * @param args the output file followed by an optional source file, the source defaults to the
+   *             {@code terminfo.src} resource
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("usage: TermInfoCompiler <output> [<terminfo.src>]");
+      System.exit(1);
+    }
+    InputStream in = args.length > 1 ? new FileInputStream(args[1]) : TermInfo.class.getResourceAsStream("terminfo.src");
+    byte[] compiled;
+    try {
+      compiled = compile(new InputStreamReader(in, "US-ASCII"));
+    } finally {
+      in.close();
+    }
+    FileOutputStream out = new FileOutputStream(args[0]);
+    try {
+      out.write(compiled);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Compile a terminfo source database.
+   *
+   * @param source the source
+   * @return the binary database
+   */
+  public static byte[] compile(Reader source) throws ParseException, IOException {
+    TermInfoParser parser = new TermInfoParser(source);
+    TermInfoBuilder builder = new TermInfoBuilder();
+    parser.parseDatabase(builder);
+    return new TermInfoCompiler(builder).compile();
+  }
+
+  private final List<TermInfoBuilder.Entry> entries;
+  private final TermInfo info;
+  private final Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+  private final List<String> strings = new ArrayList<String>();
+
+  private TermInfoCompiler(TermInfoBuilder builder) {
+    this.entries = builder.entries();
+    this.info = builder.build();
+  }
+
+  private byte[] compile() throws IOException {
+
+    // Index the entries like the builder does for resolving the uses
+    Map<String, Integer> aliases = new HashMap<String, Integer>();
+    for (int i = 0;i < entries.size();i++) {
+      for (String alias : entries.get(i).names) {
+        aliases.put(alias, i);
+      }
+    }
+
+    // The device names are those of the built database, the long names are not part of it
+    Map<Device, Integer> devices = new IdentityHashMap<Device, Integer>();
+    for (int i = 0;i < entries.size();i++) {
+      Device resolved = entries.get(i).resolved;
+      if (resolved != null) {
+        devices.put(resolved, i);
+      }
+    }
+    TreeMap<String, Integer> names = new TreeMap<String, Integer>();
+    for (Map.Entry<String, Device> device : info.devices.entrySet()) {
+      names.put(device.getKey(), devices.get(device.getValue()));
+    }
+
+    // Entries
+    ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+    DataOutputStream entryOut = new DataOutputStream(entryBytes);
+    int[] entryOffsets = new int[entries.size()];
+    for (int i = 0;i < entries.size();i++) {
+      TermInfoBuilder.Entry entry = entries.get(i);
+      entryOffsets[i] = entryOut.size();
+      entryOut.writeShort(entry.names.size());
+      for (String name : entry.names) {
+        entryOut.writeInt(string(name));
+      }
+      entryOut.writeShort(entry.uses.size());
+      for (String use : entry.uses) {
+        Integer index = aliases.get(use);
+        if (index == null) {
+          throw new IllegalStateException("Entry not found " + use);
+        }
+        entryOut.writeInt(index);
+      }
+      entryOut.writeShort(entry.features.size());
+      for (Feature<?> feature : entry.features) {
+        entryOut.writeInt(string(feature.capability.name));
+        Object value = feature.value;
+        if (value instanceof Boolean) {
+          entryOut.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer) {
+          entryOut.writeByte(NUMERIC);
+          entryOut.writeInt((Integer) value);
+        } else {
+          entryOut.writeByte(STRING);
+          writeOpCodes(((Sequence) value).value, entryOut);
+        }
+      }
+    }
+
+    // Strings
+    ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+    DataOutputStream stringOut = new DataOutputStream(stringBytes);
+    int[] stringOffsets = new int[strings.size()];
+    for (int i = 0;i < strings.size();i++) {
+      byte[] bytes = strings.get(i).getBytes(UTF_8);
+      stringOffsets[i] = stringOut.size();
+      stringOut.writeShort(bytes.length);
+      stringOut.write(bytes);
+    }
+
+    // Assemble
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(stringOffsets.length);
+    for (int offset : stringOffsets) {
+      out.writeInt(offset);
+    }
+    out.writeInt(stringOut.size());
+    stringBytes.writeTo(out);
+    out.writeInt(entryOffsets.length);
+    for (int offset : entryOffsets) {
+      out.writeInt(offset);
+    }
+    out.writeInt(names.size());
+    for (Map.Entry<String, Integer> name : names.entrySet()) {
+      out.writeInt(string(name.getKey()));
+      out.writeInt(name.getValue());
+    }
+    out.writeInt(entryOut.size());
+    entryBytes.writeTo(out);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  private int string(String s) {
+    Integer index = stringIndex.get(s);
+    if (index == null) {
+      if (s.getBytes(UTF_8).length > 0xFFFF) {
+        throw new IllegalArgumentException("String too long " + s);
+      }
+      index = strings.size();
+      strings.add(s);
+      stringIndex.put(s, index);
+    }
+    return index;
+  }
+
+  private void writeOpCodes(List<OpCode> ops, DataOutputStream out) throws IOException {
+    out.writeShort(ops.size());
+    for (OpCode op : ops) {
+      writeOpCode(op, out);
+    }
+  }
+
+  private void writeOpCode(OpCode op, DataOutputStream out) throws IOException {
+    if (op instanceof OpCode.PushParam) {
+      out.writeByte(PUSH_PARAM);
+      out.writeByte(((OpCode.PushParam) op).getIndex());
+    } else if (op instanceof OpCode.Literal) {
+      out.writeByte(LITERAL);
+      out.writeInt(string(((OpCode.Literal) op).value));
+    } else if (op instanceof OpCode.PushConstant) {
+      OpCode.PushConstant constant = (OpCode.PushConstant) op;
+      out.writeByte(PUSH_CONSTANT);
+      out.writeInt(constant.getValue());
+      out.writeBoolean(constant.literal);
+    } else if (op == OpCode.Percent.INSTANCE) {
+      out.writeByte(PERCENT);
+    } else if (op == OpCode.PushStrLen.INSTANCE) {
+      out.writeByte(PUSH_STR_LEN);
+    } else if (op == OpCode.Add1ToParams.INSTANCE) {
+      out.writeByte(ADD_1_TO_PARAMS);
+    } else if (op == OpCode.PrintChar.INSTANCE) {
+      out.writeByte(PRINT_CHAR);
+    } else if (op instanceof OpCode.SetPopVar) {
+      out.writeByte(SET_POP_VAR);
+      out.writeChar(((OpCode.SetPopVar) op).value);
+    } else if (op instanceof OpCode.GetPushVar) {
+      out.writeByte(GET_PUSH_VAR);
+      out.writeChar(((OpCode.GetPushVar) op).value);
+    } else if (op instanceof OpCode.Bit) {
+      out.writeByte(BIT);
+      out.writeChar(((OpCode.Bit) op).value);
+    } else if (op instanceof OpCode.Logical) {
+      out.writeByte(LOGICAL);
+      out.writeChar(((OpCode.Logical) op).value);
+    } else if (op instanceof OpCode.Arithmetic) {
+      out.writeByte(ARITHMETIC);
+      out.writeChar(((OpCode.Arithmetic) op).value);
+    } else if (op instanceof OpCode.Printf) {
+      OpCode.Printf printf = (OpCode.Printf) op;
+      out.writeByte(PRINTF);
+      out.writeChar(printf.getFlag() != null ? printf.getFlag() : 0);
+      out.writeInt(printf.getWidth() != null ? string(printf.getWidth()) : -1);
+      out.writeInt(printf.getPrecision() != null ? string(printf.getPrecision()) : -1);
+      out.writeChar(printf.getSpecifier() != null ? printf.getSpecifier() : 0);
+    } else if (op instanceof OpCode.If) {
+      OpCode.If ifOp = (OpCode.If) op;
+      out.writeByte(IF);
+      writeOpCodes(ifOp.expr, out);
+      writeOpCodes(ifOp.thenPart.expr, out);
+      ElsePart elsePart = ifOp.thenPart.elsePart;
+      if (elsePart instanceof OpCode.Else) {
+        out.writeByte(ELSE);
+        writeOpCodes(((OpCode.Else) elsePart).expr, out);
+      } else if (elsePart instanceof OpCode.If) {
+        writeOpCode((OpCode.If) elsePart, out);
+      } else {
+        out.writeByte(NONE);
+      }
+    } else {
+      throw new UnsupportedOperationException("Cannot compile " + op.getClass().getName());
+    }
+  }
+}
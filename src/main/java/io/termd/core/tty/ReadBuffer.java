@@ -17,15 +17,18 @@
 package io.termd.core.tty;
 
 import io.termd.core.function.Consumer;
+import io.termd.core.io.CodePointSink;
+import io.termd.core.util.Helper;
 
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Queue;
 import java.util.concurrent.Executor;
 
 /**
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
-public class ReadBuffer implements Consumer<int[]> {
+public class ReadBuffer implements CodePointSink {
 
   private final Queue<int[]> queue = new ArrayDeque<int[]>(10);
   private final Executor executor;
@@ -46,6 +49,16 @@ public class ReadBuffer implements Consumer<int[]> {
     }
   }
 
+  @Override
+  public void accept(int[] data, int offset, int length) {
+    Consumer<int[]> handler = readHandler;
+    if (handler != null && queue.isEmpty()) {
+      Helper.accept(handler, data, offset, length);
+    } else {
+      accept(Arrays.copyOfRange(data, offset, offset + length));
+    }
+  }
+
   public Consumer<int[]> getReadHandler() {
     return readHandler;
   }
@@ -86,6 +86,22 @@ public interface TtyConnection {
    */
   Consumer<int[]> stdoutHandler();
 
+  /**
+   * @return true when the output buffered by the connection is below its high water mark, a producer should stop
+   *         writing when it returns false and wait for the writability handler to be called with true
+   */
+  boolean isWritable();
+
+  Consumer<Boolean> getWritabilityHandler();
+
+  /**
+   * Set an handler called with the new writability when the output buffered by the connection crosses its high water
+   * mark ({@code false}) and when it drops back below its low water mark ({@code true}).
+   *
+   * @param handler the writability handler
+   */
+  void setWritabilityHandler(Consumer<Boolean> handler);
+
   void setCloseHandler(Consumer<Void> closeHandler);
 
   Consumer<Void> getCloseHandler();
@@ -1,11 +1,15 @@
 package io.termd.core.tty;
 
+import io.termd.core.function.Consumer;
 import io.termd.core.util.Helper;
 
 /**
  * @author bw on 25/10/2016.
  */
 public abstract class TtyConnectionSupport implements TtyConnection {
+
+    private volatile Consumer<Boolean> writabilityHandler;
+
     @Override
     public void close(int exit) {
         close();
@@ -22,4 +26,22 @@ public abstract class TtyConnectionSupport implements TtyConnection {
         stdoutHandler().accept(codePoints);
         return this;
     }
+
+    /**
+     * @return true, a connection buffering its output should override it and call the writability handler
+     */
+    @Override
+    public boolean isWritable() {
+        return true;
+    }
+
+    @Override
+    public Consumer<Boolean> getWritabilityHandler() {
+        return writabilityHandler;
+    }
+
+    @Override
+    public void setWritabilityHandler(Consumer<Boolean> handler) {
+        writabilityHandler = handler;
+    }
 }
@@ -19,11 +19,13 @@ package io.termd.core.tty;
 
 import io.termd.core.function.BiConsumer;
 import io.termd.core.function.Consumer;
+import io.termd.core.io.CodePointSink;
+import io.termd.core.util.Helper;
 
 /**
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
-public class TtyEventDecoder implements Consumer<int[]> {
+public class TtyEventDecoder implements CodePointSink {
 
   private Consumer<int[]> readHandler;
   private BiConsumer<TtyEvent, Integer> eventHandler;
@@ -58,39 +60,55 @@ public class TtyEventDecoder implements Consumer<int[]> {
   @Override
   public void accept(int[] data) {
     if (eventHandler != null) {
-      int index = 0;
-      while (index < data.length) {
-        int val = data[index];
-        TtyEvent event = null;
-        if (val == vintr) {
-          event = TtyEvent.INTR;
-        } else if (val == vsusp) {
-          event = TtyEvent.SUSP;
-        } else if (val == veof) {
-          event = TtyEvent.EOF;
-        }
-        if (event != null) {
-          if (eventHandler != null) {
-            if (readHandler != null) {
-              int[] a = new int[index];
-              if (index > 0) {
-                System.arraycopy(data, 0, a, 0, index);
-                readHandler.accept(a);
-              }
-            }
-            eventHandler.accept(event, val);
-            int[] a = new int[data.length - index - 1];
-            System.arraycopy(data, index + 1, a, 0, a.length);
-            data = a;
-            index = 0;
-            continue;
-          }
+      dispatch(data, 0, data.length, true);
+    } else if (readHandler != null && data.length > 0) {
+      readHandler.accept(data);
+    }
+  }
+
+  @Override
+  public void accept(int[] data, int offset, int length) {
+    if (eventHandler != null) {
+      dispatch(data, offset, offset + length, false);
+    } else if (readHandler != null && length > 0) {
+      Helper.accept(readHandler, data, offset, length);
+    }
+  }
+
+  /**
+   * Split the {@literal [from,to[} range on the control chars and deliver the chunks in between to the read handler.
+   */
+  private void dispatch(int[] data, int from, int to, boolean owned) {
+    int index = from;
+    while (index < to) {
+      int val = data[index];
+      TtyEvent event = null;
+      if (val == vintr) {
+        event = TtyEvent.INTR;
+      } else if (val == vsusp) {
+        event = TtyEvent.SUSP;
+      } else if (val == veof) {
+        event = TtyEvent.EOF;
+      }
+      if (event != null && eventHandler != null) {
+        if (readHandler != null && index > from) {
+          deliver(data, from, index, owned);
         }
-        index++;
+        eventHandler.accept(event, val);
+        from = index + 1;
       }
+      index++;
     }
-    if (readHandler != null && data.length > 0) {
+    if (readHandler != null && to > from) {
+      deliver(data, from, to, owned);
+    }
+  }
+
+  private void deliver(int[] data, int from, int to, boolean owned) {
+    if (owned && from == 0 && to == data.length) {
       readHandler.accept(data);
+    } else {
+      Helper.accept(readHandler, data, from, to - from);
     }
   }
 }
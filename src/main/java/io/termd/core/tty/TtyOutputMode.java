@@ -18,11 +18,18 @@ package io.termd.core.tty;
 
 
 import io.termd.core.function.Consumer;
+import io.termd.core.io.CodePointSink;
+import io.termd.core.util.Helper;
 
 /**
+ * Translates {@code \n} to {@code \r\n} (equivalent to {@code stty onlcr}), a {@link CodePointSink} handler
+ * receives slices of the original array instead of copies.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
-public class TtyOutputMode implements Consumer<int[]> {
+public class TtyOutputMode implements CodePointSink {
+
+  private static final int[] CRLF = {'\r', '\n'};
 
   private final Consumer<int[]> readHandler;
 
@@ -32,33 +39,32 @@ public class TtyOutputMode implements Consumer<int[]> {
 
   @Override
   public void accept(int[] data) {
-    if (readHandler != null && data.length > 0) {
-      int prev = 0;
-      int ptr = 0;
-      while (ptr < data.length) {
+    accept(data, 0, data.length);
+  }
+
+  @Override
+  public void accept(int[] data, int offset, int length) {
+    if (readHandler != null && length > 0) {
+      int to = offset + length;
+      int prev = offset;
+      int ptr = offset;
+      while (ptr < to) {
         // Simple implementation that works only on system that uses /n as line terminator
         // equivalent to 'stty onlcr'
         int cp = data[ptr];
         if (cp == '\n') {
           if (ptr > prev) {
-            sendChunk(data, prev, ptr);
+            Helper.accept(readHandler, data, prev, ptr - prev);
           }
-          readHandler.accept(new int[]{'\r','\n'});
+          Helper.accept(readHandler, CRLF, 0, 2);
           prev = ++ptr;
         } else {
           ptr++;
         }
       }
       if (ptr > prev) {
-        sendChunk(data, prev, ptr);
+        Helper.accept(readHandler, data, prev, ptr - prev);
       }
     }
   }
-
-  private void sendChunk(int[] data, int prev, int ptr) {
-    int len = ptr - prev;
-    int[] buf = new int[len];
-    System.arraycopy(data, prev, buf, 0, len);
-    readHandler.accept(buf);
-  }
 }
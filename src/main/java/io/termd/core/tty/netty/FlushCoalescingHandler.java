@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.tty.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defers the flushes of a channel according to a {@link WriteCoalescing} configuration, the pending writes are
+ * flushed before the channel is closed.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+class FlushCoalescingHandler extends ChannelDuplexHandler {
+
+  private final WriteCoalescing config;
+  private final boolean enabled;
+  private final int flushThreshold;
+  private final long flushDelay;
+  private ChannelHandlerContext context;
+  private int pendingBytes;
+  private boolean flushPending;
+  private final Runnable flushTask = new Runnable() {
+    @Override
+    public void run() {
+      if (flushPending) {
+        flushNow(context);
+      }
+    }
+  };
+
+  FlushCoalescingHandler(WriteCoalescing config) {
+    this.config = config;
+    this.enabled = config.isEnabled();
+    this.flushThreshold = config.getFlushThreshold();
+    this.flushDelay = config.getFlushDelay();
+  }
+
+  @Override
+  public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+    context = ctx;
+  }
+
+  @Override
+  public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+    if (flushPending) {
+      flushNow(ctx);
+    }
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    config.writes.increment();
+    if (msg instanceof ByteBuf) {
+      pendingBytes += ((ByteBuf) msg).readableBytes();
+    } else if (msg instanceof ByteBufHolder) {
+      pendingBytes += ((ByteBufHolder) msg).content().readableBytes();
+    }
+    ctx.write(msg, promise);
+  }
+
+  @Override
+  public void flush(ChannelHandlerContext ctx) throws Exception {
+    if (!enabled || pendingBytes >= flushThreshold) {
+      flushNow(ctx);
+    } else if (!flushPending) {
+      flushPending = true;
+      if (flushDelay > 0) {
+        ctx.executor().schedule(flushTask, flushDelay, TimeUnit.MILLISECONDS);
+      } else {
+        ctx.executor().execute(flushTask);
+      }
+    }
+  }
+
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+    if (flushPending && !ctx.channel().isWritable()) {
+      // Let the pending bytes drain as soon as possible
+      flushNow(ctx);
+    }
+    ctx.fireChannelWritabilityChanged();
+  }
+
+  @Override
+  public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+    if (flushPending) {
+      flushNow(ctx);
+    }
+    ctx.disconnect(promise);
+  }
+
+  @Override
+  public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+    if (flushPending) {
+      flushNow(ctx);
+    }
+    ctx.close(promise);
+  }
+
+  private void flushNow(ChannelHandlerContext ctx) {
+    flushPending = false;
+    pendingBytes = 0;
+    config.flushes.increment();
+    ctx.flush();
+  }
+}
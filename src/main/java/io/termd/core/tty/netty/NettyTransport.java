@@ -0,0 +1,315 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.tty.netty;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Configures the Netty transport of the telnet, websocket and ssh servers: the event loop groups, the server channel
+ * type and the options of the server and of the accepted channels. Several servers configured with the same
+ * transport share its event loop groups.<p/>
+ *
+ * The native epoll transport is used when the {@code netty-transport-native-epoll} jar is on the classpath and
+ * available on the platform, otherwise the NIO transport is used.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class NettyTransport {
+
+  private static final String EPOLL_PACKAGE = "io.netty.channel.epoll.";
+
+  /**
+   * @return true when the native epoll transport can be used
+   */
+  public static boolean isEpollAvailable() {
+    try {
+      Class<?> epoll = Class.forName(EPOLL_PACKAGE + "Epoll", true, NettyTransport.class.getClassLoader());
+      return (Boolean) epoll.getMethod("isAvailable").invoke(null);
+    } catch (Throwable ignore) {
+      return false;
+    }
+  }
+
+  private boolean preferNative = true;
+  private int bossThreads = 1;
+  private int workerThreads;
+  private EventLoopGroup bossGroup;
+  private EventLoopGroup workerGroup;
+  private boolean ownGroups;
+  private ByteBufAllocator allocator;
+  private final Map<ChannelOption<?>, Object> options = new LinkedHashMap<ChannelOption<?>, Object>();
+  private final Map<ChannelOption<?>, Object> childOptions = new LinkedHashMap<ChannelOption<?>, Object>();
+
+  public NettyTransport() {
+    options.put(ChannelOption.SO_BACKLOG, 100);
+  }
+
+  public boolean isPreferNative() {
+    return preferNative;
+  }
+
+  /**
+   * Use the native epoll transport when it is available, this is the default.
+   *
+   * @param preferNative false to always use the NIO transport
+   * @return this object
+   */
+  public synchronized NettyTransport setPreferNative(boolean preferNative) {
+    checkNotStarted();
+    this.preferNative = preferNative;
+    return this;
+  }
+
+  public int getBossThreads() {
+    return bossThreads;
+  }
+
+  /**
+   * Set the number of threads accepting the connections.
+   *
+   * @param bossThreads the number of threads
+   * @return this object
+   */
+  public synchronized NettyTransport setBossThreads(int bossThreads) {
+    if (bossThreads < 1) {
+      throw new IllegalArgumentException("Invalid boss threads " + bossThreads);
+    }
+    checkNotStarted();
+    this.bossThreads = bossThreads;
+    return this;
+  }
+
+  public int getWorkerThreads() {
+    return workerThreads;
+  }
+
+  /**
+   * Set the number of threads serving the connections, {@code 0} uses the Netty default of twice the number of
+   * processors.
+   *
+   * @param workerThreads the number of threads
+   * @return this object
+   */
+  public synchronized NettyTransport setWorkerThreads(int workerThreads) {
+    if (workerThreads < 0) {
+      throw new IllegalArgumentException("Invalid worker threads " + workerThreads);
+    }
+    checkNotStarted();
+    this.workerThreads = workerThreads;
+    return this;
+  }
+
+  /**
+   * Use event loop groups managed by the application instead of creating them, the groups are not shut down by
+   * this transport. The transport type is the one of the groups.
+   *
+   * @param bossGroup the group accepting the connections
+   * @param workerGroup the group serving the connections
+   * @return this object
+   */
+  public synchronized NettyTransport setEventLoopGroups(EventLoopGroup bossGroup, EventLoopGroup workerGroup) {
+    if (bossGroup == null || workerGroup == null) {
+      throw new NullPointerException("Event loop groups must not be null");
+    }
+    checkNotStarted();
+    this.bossGroup = bossGroup;
+    this.workerGroup = workerGroup;
+    return this;
+  }
+
+  public ByteBufAllocator getAllocator() {
+    return allocator;
+  }
+
+  /**
+   * Set the allocator of the server and of the accepted channels, {@code null} uses the Netty default.
+   *
+   * @param allocator the allocator
+   * @return this object
+   */
+  public synchronized NettyTransport setAllocator(ByteBufAllocator allocator) {
+    this.allocator = allocator;
+    return this;
+  }
+
+  /**
+   * Set an option of the server channels, {@code null} removes it.
+   */
+  public synchronized <T> NettyTransport setOption(ChannelOption<T> option, T value) {
+    if (value == null) {
+      options.remove(option);
+    } else {
+      options.put(option, value);
+    }
+    return this;
+  }
+
+  /**
+   * Set an option of the accepted channels, like {@link ChannelOption#TCP_NODELAY},
+   * {@link ChannelOption#SO_SNDBUF} or {@link ChannelOption#WRITE_BUFFER_WATER_MARK}, {@code null} removes it.
+   */
+  public synchronized <T> NettyTransport setChildOption(ChannelOption<T> option, T value) {
+    if (value == null) {
+      childOptions.remove(option);
+    } else {
+      childOptions.put(option, value);
+    }
+    return this;
+  }
+
+  /**
+   * Set the water marks of the data written to the accepted channels and not yet sent, a connection becomes not
+   * writable above the high water mark and writable again below the low water mark.
+   *
+   * @param low the low water mark
+   * @param high the high water mark
+   * @return this object
+   */
+  public NettyTransport setWriteBufferWaterMark(int low, int high) {
+    return setChildOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(low, high));
+  }
+
+  /**
+   * @return the water marks of the accepted channels, or {@code null} when the Netty default is used
+   */
+  public synchronized WriteBufferWaterMark getWriteBufferWaterMark() {
+    return (WriteBufferWaterMark) childOptions.get(ChannelOption.WRITE_BUFFER_WATER_MARK);
+  }
+
+  public synchronized Map<ChannelOption<?>, Object> getChildOptions() {
+    return new LinkedHashMap<ChannelOption<?>, Object>(childOptions);
+  }
+
+  /**
+   * @return the group accepting the connections, created on first use
+   */
+  public synchronized EventLoopGroup bossGroup() {
+    createGroups();
+    return bossGroup;
+  }
+
+  /**
+   * @return the group serving the connections, created on first use
+   */
+  public synchronized EventLoopGroup workerGroup() {
+    createGroups();
+    return workerGroup;
+  }
+
+  /**
+   * @return true when the transport uses the native epoll transport
+   */
+  public boolean isEpoll() {
+    return workerGroup().getClass().getName().startsWith(EPOLL_PACKAGE);
+  }
+
+  /**
+   * @return the server channel class matching the event loop groups
+   */
+  public Class<? extends ServerChannel> serverChannelClass() {
+    if (isEpoll()) {
+      try {
+        return Class.forName(EPOLL_PACKAGE + "EpollServerSocketChannel", true, NettyTransport.class.getClassLoader())
+            .asSubclass(ServerChannel.class);
+      } catch (ClassNotFoundException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    return NioServerSocketChannel.class;
+  }
+
+  /**
+   * Create a server bootstrap configured with the groups, the channel class and the options of this transport.
+   *
+   * @return the bootstrap
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized ServerBootstrap newServerBootstrap() {
+    ServerBootstrap bootstrap = new ServerBootstrap();
+    bootstrap.group(bossGroup(), workerGroup()).channel(serverChannelClass());
+    for (Map.Entry<ChannelOption<?>, Object> option : options.entrySet()) {
+      bootstrap.option((ChannelOption<Object>) option.getKey(), option.getValue());
+    }
+    for (Map.Entry<ChannelOption<?>, Object> option : childOptions.entrySet()) {
+      bootstrap.childOption((ChannelOption<Object>) option.getKey(), option.getValue());
+    }
+    if (allocator != null) {
+      bootstrap.option(ChannelOption.ALLOCATOR, allocator);
+      bootstrap.childOption(ChannelOption.ALLOCATOR, allocator);
+    }
+    return bootstrap;
+  }
+
+  /**
+   * Shut down the event loop groups created by this transport, the servers using it must be stopped before.
+   *
+   * @return the future completed when the groups are terminated
+   */
+  public synchronized Future<?> shutdownGracefully() {
+    if (ownGroups) {
+      ownGroups = false;
+      EventLoopGroup boss = bossGroup;
+      EventLoopGroup worker = workerGroup;
+      bossGroup = null;
+      workerGroup = null;
+      boss.shutdownGracefully();
+      return worker.shutdownGracefully();
+    }
+    return ImmediateEventExecutor.INSTANCE.newSucceededFuture(null);
+  }
+
+  private void checkNotStarted() {
+    if (bossGroup != null) {
+      throw new IllegalStateException("Event loop groups already created");
+    }
+  }
+
+  private void createGroups() {
+    if (bossGroup == null) {
+      if (preferNative && isEpollAvailable()) {
+        bossGroup = newEpollGroup(bossThreads);
+        workerGroup = newEpollGroup(workerThreads);
+      } else {
+        bossGroup = new NioEventLoopGroup(bossThreads);
+        workerGroup = new NioEventLoopGroup(workerThreads);
+      }
+      ownGroups = true;
+    }
+  }
+
+  private static EventLoopGroup newEpollGroup(int threads) {
+    try {
+      return (EventLoopGroup) Class.forName(EPOLL_PACKAGE + "EpollEventLoopGroup", true, NettyTransport.class.getClassLoader())
+          .getConstructor(int.class)
+          .newInstance(threads);
+    } catch (Exception e) {
+      throw new IllegalStateException("Could not create the epoll event loop group", e);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.tty.netty;
+
+import io.netty.channel.ChannelHandler;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Configures how the writes of a connection are coalesced before being flushed to the socket and counts the writes
+ * and the flushes of all the connections using it.<p/>
+ *
+ * When enabled the flushes requested during an event loop task are deferred to a single flush performed after the
+ * task, or after the {@link #setFlushDelay(long) flush delay}, unless the pending bytes reach the
+ * {@link #setFlushThreshold(int) flush threshold}.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class WriteCoalescing {
+
+  private volatile boolean enabled = true;
+  private volatile int flushThreshold = 16 * 1024;
+  private volatile long flushDelay;
+  // Striped counters, the event loops of the connections do not contend on them
+  final LongAdder writes = new LongAdder();
+  final LongAdder flushes = new LongAdder();
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Enable or disable the coalescing, when disabled each flush is performed immediately and the counters are still
+   * updated.
+   *
+   * @param enabled true to enable
+   * @return this object
+   */
+  public WriteCoalescing setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    return this;
+  }
+
+  public int getFlushThreshold() {
+    return flushThreshold;
+  }
+
+  /**
+   * Set the number of pending bytes above which a flush is performed immediately.
+   *
+   * @param flushThreshold the threshold in bytes
+   * @return this object
+   */
+  public WriteCoalescing setFlushThreshold(int flushThreshold) {
+    if (flushThreshold < 0) {
+      throw new IllegalArgumentException("Invalid flush threshold " + flushThreshold);
+    }
+    this.flushThreshold = flushThreshold;
+    return this;
+  }
+
+  public long getFlushDelay() {
+    return flushDelay;
+  }
+
+  /**
+   * Set the delay in milliseconds a deferred flush waits for, {@code 0} flushes right after the current event loop
+   * task.
+   *
+   * @param flushDelay the delay in milliseconds
+   * @return this object
+   */
+  public WriteCoalescing setFlushDelay(long flushDelay) {
+    if (flushDelay < 0) {
+      throw new IllegalArgumentException("Invalid flush delay " + flushDelay);
+    }
+    this.flushDelay = flushDelay;
+    return this;
+  }
+
+  /**
+   * @return the number of messages written to the channels
+   */
+  public long writes() {
+    return writes.sum();
+  }
+
+  /**
+   * @return the number of flushes performed on the channels
+   */
+  public long flushes() {
+    return flushes.sum();
+  }
+
+  /**
+   * Reset the write and flush counters.
+   */
+  public void resetCounters() {
+    writes.reset();
+    flushes.reset();
+  }
+
+  /**
+   * Create the handler for a channel, it must be added to the pipeline before the handlers writing the tty output.
+   *
+   * @return the handler
+   */
+  public ChannelHandler newHandler() {
+    return new FlushCoalescingHandler(this);
+  }
+}
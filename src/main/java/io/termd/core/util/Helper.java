@@ -18,6 +18,7 @@ package io.termd.core.util;
 
 import io.termd.core.function.Consumer;
 import io.termd.core.function.IntConsumer;
+import io.termd.core.io.CodePointSink;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -87,6 +88,23 @@ public class Helper {
     }
   }
 
+  /**
+   * Deliver a slice of a transient code point buffer to a consumer: a {@link CodePointSink} receives the slice
+   * as is, any other consumer receives a copy it can retain.
+   *
+   * @param consumer the consumer
+   * @param codePoints the code points buffer
+   * @param offset the slice offset
+   * @param length the slice length
+   */
+  public static void accept(Consumer<int[]> consumer, int[] codePoints, int offset, int length) {
+    if (consumer instanceof CodePointSink) {
+      ((CodePointSink) consumer).accept(codePoints, offset, length);
+    } else {
+      consumer.accept(Arrays.copyOfRange(codePoints, offset, offset + length));
+    }
+  }
+
   public static <S> List<S> loadServices(ClassLoader loader, Class<S> serviceClass) {
     ArrayList<S> services = new ArrayList<S>();
     Iterator<S> i = ServiceLoader.load(serviceClass, loader).iterator();
@@ -182,7 +200,7 @@ public class Helper {
     StringBuilder sb = new StringBuilder();
     for (int[] completion : completions) {
       Helper.appendCodePoints(completion, sb);
-      for (int i = completion.length;i < max;i++) {
+      for (int i = Wcwidth.of(completion);i < max;i++) {
         sb.append(' ');
       }
       count++;
@@ -284,10 +302,13 @@ public class Helper {
     return minLen;
   }
 
+  /**
+   * @return the max number of columns of the entries
+   */
   private static int max(List<int[]> entries) {
-    int maxLen = entries.get(0).length;
+    int maxLen = Wcwidth.of(entries.get(0));
     for (int i = 1; i < entries.size(); i++) {
-      int len = entries.get(i).length;
+      int len = Wcwidth.of(entries.get(i));
       if (maxLen < len) {
         maxLen = len;
       }
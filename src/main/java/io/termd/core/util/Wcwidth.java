@@ -217,4 +217,21 @@ public class Wcwidth {
                 (codePoint >= 0x20000 && codePoint <= 0x2fffd) ||
                 (codePoint >= 0x30000 && codePoint <= 0x3fffd))) ? 1 : 0);
   }
+
+  /**
+   * Compute the number of columns of a sequence of code points, the control characters are not counted.
+   *
+   * @param codePoints the code points
+   * @return the number of columns
+   */
+  public static int of(int[] codePoints) {
+    int width = 0;
+    for (int codePoint : codePoints) {
+      int w = of(codePoint);
+      if (w > 0) {
+        width += w;
+      }
+    }
+    return width;
+  }
 }
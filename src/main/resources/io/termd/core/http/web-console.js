@@ -1,6 +1,15 @@
 var ws;
 var xterm;
 
+/** binary protocol, negotiated as a websocket subprotocol, JSON text messages are used otherwise **/
+var BINARY_PROTOCOL = 'termd.binary';
+var OP_DATA = 0;
+var OP_RESIZE = 1;
+var OP_PING = 2;
+var binary = false;
+var encoder = window.TextEncoder ? new TextEncoder() : null;
+var decoder = window.TextDecoder ? new TextDecoder('utf-8') : null;
+
 $(function () {
     var url = window.location.href;
     var ip = getUrlParam('ip');
@@ -73,7 +82,49 @@ function getTerminalSize () {
 /** init websocket **/
 function initWs (ip, port) {
     var path = 'ws://' + ip + ':' + port + '/ws';
-    ws = new WebSocket(path);
+    if (encoder != null && decoder != null) {
+        ws = new WebSocket(path, [BINARY_PROTOCOL]);
+        ws.binaryType = 'arraybuffer';
+    } else {
+        ws = new WebSocket(path);
+    }
+}
+
+/** send the data typed by the user **/
+function sendData (data) {
+    if (binary) {
+        var bytes = encoder.encode(data);
+        var msg = new Uint8Array(bytes.length + 1);
+        msg[0] = OP_DATA;
+        msg.set(bytes, 1);
+        ws.send(msg.buffer);
+    } else {
+        ws.send(JSON.stringify({action: 'read', data: data}));
+    }
+}
+
+/** send the terminal size **/
+function sendResize (cols, rows) {
+    if (binary) {
+        var msg = new Uint8Array(5);
+        msg[0] = OP_RESIZE;
+        msg[1] = (cols >> 8) & 0xFF;
+        msg[2] = cols & 0xFF;
+        msg[3] = (rows >> 8) & 0xFF;
+        msg[4] = rows & 0xFF;
+        ws.send(msg.buffer);
+    } else {
+        ws.send(JSON.stringify({action: 'resize', cols: cols, rows: rows}));
+    }
+}
+
+/** keep the connection alive **/
+function sendPing () {
+    if (binary) {
+        ws.send(new Uint8Array([OP_PING]).buffer);
+    } else {
+        ws.send(JSON.stringify({action: 'read', data: ""}));
+    }
 }
 
 /** init xterm **/
@@ -107,6 +158,7 @@ function startConnect (silent) {
     };
     ws.onopen = function () {
         console.log('open');
+        binary = ws.protocol === BINARY_PROTOCOL;
         $('#fullSc').show();
         var terminalSize = getTerminalSize()
         console.log('terminalSize')
@@ -116,17 +168,25 @@ function startConnect (silent) {
         ws.onmessage = function (event) {
             if (event.type === 'message') {
                 var data = event.data;
-                xterm.write(data);
+                if (typeof data === 'string') {
+                    xterm.write(data);
+                } else {
+                    var msg = new Uint8Array(data);
+                    if (msg.length > 0 && msg[0] === OP_DATA) {
+                        // stream mode keeps the characters split across messages
+                        xterm.write(decoder.decode(msg.subarray(1), {stream: true}));
+                    }
+                }
             }
         };
         xterm.open(document.getElementById('terminal'));
         xterm.on('data', function (data) {
-            ws.send(JSON.stringify({action: 'read', data: data}))
+            sendData(data);
         });
-        ws.send(JSON.stringify({action: 'resize', cols: terminalSize.cols, rows: terminalSize.rows}));
+        sendResize(terminalSize.cols, terminalSize.rows);
         window.setInterval(function () {
             if (ws != null) {
-                ws.send(JSON.stringify({action: 'read', data: ""}));
+                sendPing();
             }
         }, 30000);
     }
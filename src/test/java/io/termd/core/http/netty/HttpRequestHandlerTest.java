@@ -0,0 +1,272 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.http.netty;
+
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.termd.core.http.HttpTtyConnection;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class HttpRequestHandlerTest {
+
+  private EmbeddedChannel channel = new EmbeddedChannel(new HttpRequestHandler("/ws"));
+
+  @After
+  public void after() {
+    channel.finishAndReleaseAll();
+  }
+
+  private FullHttpResponse get(String uri, String... headers) {
+    return request(HttpVersion.HTTP_1_1, HttpMethod.GET, uri, headers);
+  }
+
+  private FullHttpResponse request(HttpVersion version, HttpMethod method, String uri, String... headers) {
+    FullHttpRequest request = new DefaultFullHttpRequest(version, method, uri);
+    for (int i = 0;i < headers.length;i += 2) {
+      request.headers().set(headers[i], headers[i + 1]);
+    }
+    channel.writeInbound(request);
+    return channel.readOutbound();
+  }
+
+  private static byte[] resource(String path) throws Exception {
+    return readFully(HttpTtyConnection.class.getResourceAsStream("/io/termd/core/http" + path));
+  }
+
+  private static byte[] readFully(InputStream in) throws Exception {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] tmp = new byte[1024];
+      for (int l = in.read(tmp);l != -1;l = in.read(tmp)) {
+        out.write(tmp, 0, l);
+      }
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testGet() throws Exception {
+    FullHttpResponse response = get("/web-console.js");
+    try {
+      assertEquals(HttpResponseStatus.OK, response.status());
+      assertEquals("application/javascript", response.headers().get(HttpHeaderNames.CONTENT_TYPE));
+      assertNotNull(response.headers().get(HttpHeaderNames.ETAG));
+      assertEquals("public, max-age=86400", response.headers().get(HttpHeaderNames.CACHE_CONTROL));
+      assertNull(response.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+      byte[] expected = resource("/web-console.js");
+      assertEquals(expected.length, response.headers().getInt(HttpHeaderNames.CONTENT_LENGTH).intValue());
+      assertArrayEquals(expected, ByteBufUtil.getBytes(response.content()));
+    } finally {
+      response.release();
+    }
+    // Keep alive
+    assertTrue(channel.isOpen());
+  }
+
+  @Test
+  public void testIndex() throws Exception {
+    FullHttpResponse response = get("/");
+    try {
+      assertEquals(HttpResponseStatus.OK, response.status());
+      assertEquals("text/html", response.headers().get(HttpHeaderNames.CONTENT_TYPE));
+      assertEquals("no-cache", response.headers().get(HttpHeaderNames.CACHE_CONTROL));
+      assertArrayEquals(resource("/index.html"), ByteBufUtil.getBytes(response.content()));
+    } finally {
+      response.release();
+    }
+  }
+
+  @Test
+  public void testGzip() throws Exception {
+    FullHttpResponse response = get("/xterm.js", "Accept-Encoding", "deflate, gzip");
+    try {
+      assertEquals(HttpResponseStatus.OK, response.status());
+      assertEquals("gzip", response.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+      assertEquals("accept-encoding", response.headers().get(HttpHeaderNames.VARY));
+      byte[] expected = resource("/xterm.js");
+      assertTrue(response.content().readableBytes() < expected.length);
+      byte[] body = ByteBufUtil.getBytes(response.content());
+      assertArrayEquals(expected, readFully(new GZIPInputStream(new ByteArrayInputStream(body))));
+    } finally {
+      response.release();
+    }
+    response = get("/xterm.js", "Accept-Encoding", "gzip;q=0");
+    try {
+      assertNull(response.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+    } finally {
+      response.release();
+    }
+  }
+
+  @Test
+  public void testNotModified() throws Exception {
+    FullHttpResponse response = get("/main.css");
+    String etag = response.headers().get(HttpHeaderNames.ETAG);
+    response.release();
+    response = get("/main.css", "If-None-Match", "\"other\", " + etag);
+    try {
+      assertEquals(HttpResponseStatus.NOT_MODIFIED, response.status());
+      assertEquals(etag, response.headers().get(HttpHeaderNames.ETAG));
+      assertEquals(0, response.content().readableBytes());
+    } finally {
+      response.release();
+    }
+    response = get("/main.css", "If-None-Match", "\"other\"");
+    try {
+      assertEquals(HttpResponseStatus.OK, response.status());
+    } finally {
+      response.release();
+    }
+  }
+
+  @Test
+  public void testAcceptsGzip() {
+    assertFalse(HttpRequestHandler.acceptsGzip(null));
+    assertTrue(HttpRequestHandler.acceptsGzip("gzip"));
+    assertTrue(HttpRequestHandler.acceptsGzip("deflate, GZIP;q=0.5"));
+    assertFalse(HttpRequestHandler.acceptsGzip("gzip;q=0"));
+    assertFalse(HttpRequestHandler.acceptsGzip("deflate"));
+    assertTrue(HttpRequestHandler.acceptsGzip("*"));
+    assertFalse(HttpRequestHandler.acceptsGzip("*;q=0"));
+    // An explicit coding takes precedence over *
+    assertTrue(HttpRequestHandler.acceptsGzip("*;q=0, gzip"));
+    assertTrue(HttpRequestHandler.acceptsGzip("gzip;q=1, *;q=0"));
+    assertFalse(HttpRequestHandler.acceptsGzip("gzip;q=0, *"));
+  }
+
+  @Test
+  public void testGzipNotModified() throws Exception {
+    FullHttpResponse response = get("/main.css");
+    String etag = response.headers().get(HttpHeaderNames.ETAG);
+    response.release();
+    response = get("/main.css", "Accept-Encoding", "gzip");
+    String gzipEtag = response.headers().get(HttpHeaderNames.ETAG);
+    response.release();
+    assertFalse(etag.equals(gzipEtag));
+    response = get("/main.css", "Accept-Encoding", "gzip", "If-None-Match", gzipEtag);
+    try {
+      assertEquals(HttpResponseStatus.NOT_MODIFIED, response.status());
+      assertEquals(gzipEtag, response.headers().get(HttpHeaderNames.ETAG));
+    } finally {
+      response.release();
+    }
+    // The identity validator does not validate the gzipped representation
+    response = get("/main.css", "Accept-Encoding", "gzip", "If-None-Match", etag);
+    try {
+      assertEquals(HttpResponseStatus.OK, response.status());
+      assertEquals("gzip", response.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+    } finally {
+      response.release();
+    }
+  }
+
+  @Test
+  public void testCachedContent() throws Exception {
+    FullHttpResponse first = get("/logo.png");
+    FullHttpResponse second = get("/logo.png");
+    try {
+      assertEquals("image/png", first.headers().get(HttpHeaderNames.CONTENT_TYPE));
+      // The png is not worth gzipping
+      assertNull(first.headers().get(HttpHeaderNames.VARY));
+      assertEquals(first.content(), second.content());
+      assertEquals(first.content().memoryAddress(), second.content().memoryAddress());
+    } finally {
+      first.release();
+      second.release();
+    }
+  }
+
+  @Test
+  public void testHead() throws Exception {
+    FullHttpResponse response = request(HttpVersion.HTTP_1_1, HttpMethod.HEAD, "/main.css");
+    try {
+      assertEquals(HttpResponseStatus.OK, response.status());
+      assertEquals(resource("/main.css").length, response.headers().getInt(HttpHeaderNames.CONTENT_LENGTH).intValue());
+      assertEquals(0, response.content().readableBytes());
+    } finally {
+      response.release();
+    }
+  }
+
+  @Test
+  public void testNotFound() throws Exception {
+    FullHttpResponse response = get("/missing.js");
+    assertEquals(HttpResponseStatus.NOT_FOUND, response.status());
+    response.release();
+    response = get("/../http/index.html");
+    assertEquals(HttpResponseStatus.NOT_FOUND, response.status());
+    response.release();
+    assertTrue(channel.isOpen());
+  }
+
+  @Test
+  public void testBadRequest() throws Exception {
+    FullHttpResponse response = get("/index.html?a=%zz b");
+    assertEquals(HttpResponseStatus.BAD_REQUEST, response.status());
+    response.release();
+    // Keep alive
+    assertTrue(channel.isOpen());
+    response = get("/main.css");
+    assertEquals(HttpResponseStatus.OK, response.status());
+    response.release();
+  }
+
+  @Test
+  public void testMethodNotAllowed() throws Exception {
+    FullHttpResponse response = request(HttpVersion.HTTP_1_1, HttpMethod.POST, "/index.html");
+    assertEquals(HttpResponseStatus.METHOD_NOT_ALLOWED, response.status());
+    response.release();
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    FullHttpResponse response = request(HttpVersion.HTTP_1_0, HttpMethod.GET, "/main.css");
+    assertEquals(HttpResponseStatus.OK, response.status());
+    response.release();
+    assertFalse(channel.isOpen());
+  }
+
+  @Test
+  public void testWebSocketUpgrade() throws Exception {
+    FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/ws");
+    channel.writeInbound(request);
+    FullHttpRequest forwarded = channel.readInbound();
+    assertSame(request, forwarded);
+    forwarded.release();
+    assertNull(channel.readOutbound());
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.http.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.termd.core.http.HttpTtyConnection;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the bytes on the wire of typical terminal outputs sent as binary websocket messages with and without the
+ * permessage-deflate compression: a {@code ls -lR} listing read in 4KB chunks, full screen redraws of a {@code top}
+ * like application and the echo of keystrokes. The {@code wireBytes} and {@code rawBytes} counters give the total
+ * bytes written to the socket and the total payload of the messages.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebSocketCompressionBenchmark {
+
+  @Param({"ls", "redraw", "keystrokes"})
+  public String workload;
+
+  @Param({"false", "true"})
+  public boolean compress;
+
+  private List<byte[]> messages;
+  private EmbeddedChannel channel;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Counters {
+
+    public long wireBytes;
+    public long rawBytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      wireBytes = 0;
+      rawBytes = 0;
+    }
+  }
+
+  @Setup
+  public void setup() {
+    if (workload.equals("ls")) {
+      messages = chunk(ls(), 4096);
+    } else if (workload.equals("redraw")) {
+      messages = new ArrayList<byte[]>();
+      for (int i = 0;i < 16;i++) {
+        messages.add(redraw(i));
+      }
+    } else {
+      messages = new ArrayList<byte[]>();
+      String typed = "cd /usr/share/doc && ls -l | grep README\r";
+      for (int i = 0;i < typed.length();i++) {
+        messages.add(new byte[]{(byte) typed.charAt(i)});
+      }
+    }
+    channel = new EmbeddedChannel(new WebSocket13FrameEncoder(false));
+    if (compress) {
+      channel.pipeline().addLast(new WebSocketCompression().newHandshaker()
+          .handshakeExtension(new WebSocketExtensionData("permessage-deflate", Collections.<String, String>emptyMap()))
+          .newExtensionEncoder());
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    channel.finishAndReleaseAll();
+  }
+
+  private static byte[] ls() {
+    StringBuilder sb = new StringBuilder();
+    String[] names = {"TtyWebSocketFrameHandler", "HttpRequestHandler", "NettyWebsocketTtyBootstrap", "BinaryDecoder",
+        "Readline", "TelnetConnection", "TermInfo", "Helper"};
+    for (int dir = 0;dir < 20;dir++) {
+      sb.append("./src/main/java/io/termd/core/module").append(dir).append(":\r\n");
+      sb.append("total ").append(dir * 37 + 12).append("\r\n");
+      for (int i = 0;i < 40;i++) {
+        String name = names[(dir + i) % names.length];
+        sb.append(String.format("-rw-r--r--  1 julien  staff  %6d Oct %2d %02d:%02d %s%d.java\r\n",
+            (dir * 7919 + i * 104729) % 50000, 1 + i % 28, i % 24, (dir * 13 + i) % 60, name, i));
+      }
+      sb.append("\r\n");
+    }
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] redraw(int tick) {
+    StringBuilder sb = new StringBuilder("\033[H");
+    sb.append(String.format("\033[1mtop - 12:%02d:%02d up 3 days,  load average: 0.%02d, 0.%02d\033[0m\033[K\r\n",
+        tick / 60, tick % 60, tick * 7 % 100, tick * 3 % 100));
+    sb.append("\033[7m  PID USER      PR  NI    VIRT    RES  %CPU  %MEM COMMAND\033[0m\033[K\r\n");
+    for (int row = 0;row < 22;row++) {
+      int pid = 1000 + row * 17;
+      sb.append(String.format("\033[%d;1H%5d julien    20   0 %7d %6d \033[1;3%dm%5.1f\033[0m %5.1f java\033[K",
+          row + 3, pid, 3000000 + row * 4096, 100000 + (row * tick * 31) % 9000, 1 + row % 6,
+          ((row + tick) * 37 % 1000) / 10.0, (row * 13 % 100) / 10.0));
+    }
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static List<byte[]> chunk(byte[] data, int size) {
+    List<byte[]> chunks = new ArrayList<byte[]>();
+    for (int i = 0;i < data.length;i += size) {
+      byte[] chunk = new byte[Math.min(size, data.length - i)];
+      System.arraycopy(data, i, chunk, 0, chunk.length);
+      chunks.add(chunk);
+    }
+    return chunks;
+  }
+
+  @Benchmark
+  public void send(Counters counters) {
+    for (byte[] message : messages) {
+      ByteBuf payload = Unpooled.buffer(message.length + 1).writeByte(HttpTtyConnection.OP_DATA).writeBytes(message);
+      counters.rawBytes += payload.readableBytes();
+      channel.writeOutbound(new BinaryWebSocketFrame(payload));
+      ByteBuf out;
+      while ((out = channel.readOutbound()) != null) {
+        counters.wireBytes += out.readableBytes();
+        out.release();
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(WebSocketCompressionBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.http.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketClientCompressionHandler;
+import io.termd.core.function.Consumer;
+import io.termd.core.http.HttpTtyConnection;
+import io.termd.core.tty.TtyConnection;
+import io.termd.core.util.Helper;
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class WebSocketCompressionTest {
+
+  private static final String LINE = "-rw-r--r--  1 julien  staff  4096 Oct 18 12:00 TtyWebSocketFrameHandler.java\n";
+
+  private NettyWebsocketTtyBootstrap bootstrap;
+  private EventLoopGroup clientGroup;
+  private Channel client;
+  private final AtomicInteger wireBytes = new AtomicInteger();
+  private final StringBuilder received = new StringBuilder();
+  private final BlockingQueue<Integer> frameRsv = new ArrayBlockingQueue<Integer>(1000);
+
+  private void start(WebSocketCompression compression) throws Throwable {
+    bootstrap = new NettyWebsocketTtyBootstrap().setHost("localhost").setPort(8080).setCompression(compression);
+    bootstrap.start(new Consumer<TtyConnection>() {
+      @Override
+      public void accept(final TtyConnection conn) {
+        conn.setStdinHandler(new Consumer<int[]>() {
+          @Override
+          public void accept(int[] keys) {
+            String s = Helper.fromCodePoints(keys);
+            if (s.equals("b")) {
+              StringBuilder big = new StringBuilder();
+              for (int i = 0;i < 1000;i++) {
+                big.append(LINE);
+              }
+              conn.write(big.toString());
+            }
+            conn.write("ok");
+          }
+        });
+      }
+    }).get(10, TimeUnit.SECONDS);
+  }
+
+  private void connect(final boolean offerCompression) throws Exception {
+    clientGroup = new NioEventLoopGroup(1);
+    final CountDownLatch handshake = new CountDownLatch(1);
+    final WebSocketClientProtocolHandler protocolHandler = new WebSocketClientProtocolHandler(
+        new URI("ws://localhost:8080/ws"), WebSocketVersion.V13, HttpTtyConnection.BINARY_PROTOCOL, true,
+        new DefaultHttpHeaders(), 1024 * 1024);
+    client = new Bootstrap().group(clientGroup).channel(NioSocketChannel.class).handler(new ChannelInitializer<SocketChannel>() {
+      @Override
+      protected void initChannel(SocketChannel ch) throws Exception {
+        ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+          @Override
+          public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            wireBytes.addAndGet(((ByteBuf) msg).readableBytes());
+            super.channelRead(ctx, msg);
+          }
+        });
+        ch.pipeline().addLast(new HttpClientCodec());
+        ch.pipeline().addLast(new HttpObjectAggregator(8192));
+        // Record the frames before the extension decoder
+        ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+          @Override
+          public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof BinaryWebSocketFrame) {
+              frameRsv.add(((WebSocketFrame) msg).rsv());
+            }
+            super.channelRead(ctx, msg);
+          }
+        });
+        if (offerCompression) {
+          ch.pipeline().addLast(WebSocketClientCompressionHandler.INSTANCE);
+        }
+        ch.pipeline().addLast(protocolHandler);
+        ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+          @Override
+          public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt == WebSocketClientProtocolHandler.ClientHandshakeStateEvent.HANDSHAKE_COMPLETE) {
+              handshake.countDown();
+            }
+            super.userEventTriggered(ctx, evt);
+          }
+          @Override
+          public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            WebSocketFrame frame = (WebSocketFrame) msg;
+            try {
+              ByteBuf content = frame.content();
+              if (frame instanceof BinaryWebSocketFrame && content.readByte() == HttpTtyConnection.OP_DATA) {
+                synchronized (received) {
+                  received.append(content.toString(StandardCharsets.UTF_8));
+                }
+              }
+            } finally {
+              frame.release();
+            }
+          }
+        });
+      }
+    }).connect("localhost", 8080).sync().channel();
+    assertTrue(handshake.await(10, TimeUnit.SECONDS));
+  }
+
+  private void send(String s) {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    ByteBuf buf = Unpooled.buffer(bytes.length + 1).writeByte(HttpTtyConnection.OP_DATA).writeBytes(bytes);
+    client.writeAndFlush(new BinaryWebSocketFrame(buf));
+  }
+
+  private String awaitReceived(String suffix) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (System.currentTimeMillis() < deadline) {
+      synchronized (received) {
+        if (received.toString().endsWith(suffix)) {
+          return received.toString();
+        }
+      }
+      Thread.sleep(10);
+    }
+    fail("Was expecting " + suffix + " in " + received);
+    return null;
+  }
+
+  @After
+  public void after() throws Throwable {
+    if (client != null) {
+      client.close().sync();
+    }
+    if (clientGroup != null) {
+      clientGroup.shutdownGracefully();
+    }
+    if (bootstrap != null) {
+      bootstrap.stop().get(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void testCompress() throws Throwable {
+    start(new WebSocketCompression());
+    connect(true);
+    int before = wireBytes.get();
+    send("b");
+    String output = awaitReceived("ok");
+    assertTrue(output.length() > 1000 * LINE.length());
+    int wire = wireBytes.get() - before;
+    assertTrue("Was expecting " + wire + " bytes on the wire to be less than a tenth of " + output.length(), wire * 10 < output.length());
+    boolean compressed = false;
+    for (Integer rsv : frameRsv) {
+      compressed |= (rsv & 4) != 0;
+    }
+    assertTrue(compressed);
+  }
+
+  @Test
+  public void testThreshold() throws Throwable {
+    start(new WebSocketCompression().setThreshold(64));
+    connect(true);
+    send("s");
+    awaitReceived("ok");
+    assertEquals((Integer) 0, frameRsv.poll(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testClientWithoutCompression() throws Throwable {
+    start(new WebSocketCompression());
+    connect(false);
+    int before = wireBytes.get();
+    send("b");
+    String output = awaitReceived("ok");
+    assertTrue(wireBytes.get() - before > output.length());
+    for (Integer rsv : frameRsv) {
+      assertEquals(0, rsv & 4);
+    }
+  }
+
+  @Test
+  public void testServerWithoutCompression() throws Throwable {
+    start(null);
+    connect(true);
+    send("b");
+    awaitReceived("ok");
+    for (Integer rsv : frameRsv) {
+      assertEquals(0, rsv & 4);
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.io;
+
+import io.termd.core.function.Consumer;
+import io.termd.core.util.Helper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link BinaryEncoder} with the previous implementation that went through {@link Charset#encode(CharBuffer)}
+ * for every write.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryEncoderBenchmark {
+
+  @Param({"UTF-8", "US-ASCII", "GBK"})
+  public String charset;
+
+  @Param({"redraw", "cjk"})
+  public String payload;
+
+  private int[] codePoints;
+  private BinaryEncoder encoder;
+  private BinaryEncoder sinkEncoder;
+  private LegacyEncoder legacy;
+  private Blackhole blackhole;
+
+  @Setup
+  public void setup(Blackhole blackhole) {
+    this.blackhole = blackhole;
+    Charset cs = Charset.forName(charset);
+    StringBuilder sb = new StringBuilder();
+    if ("redraw".equals(payload)) {
+      // A full screen redraw : cursor addressing followed by a line of text
+      for (int row = 1;row <= 24;row++) {
+        sb.append("\033[").append(row).append(";1H\033[38;5;").append(row * 7).append('m');
+        for (int col = 0;col < 80;col++) {
+          sb.append((char) ('!' + (row * col) % 90));
+        }
+      }
+    } else {
+      for (int i = 0;i < 400;i++) {
+        sb.append("\u7EC8\u7AEF ").append(i).append(' ');
+      }
+    }
+    codePoints = Helper.toCodePoints(sb.toString());
+    Consumer<byte[]> sink = new Consumer<byte[]>() {
+      @Override
+      public void accept(byte[] bytes) {
+        BinaryEncoderBenchmark.this.blackhole.consume(bytes);
+      }
+    };
+    encoder = new BinaryEncoder(cs, sink);
+    sinkEncoder = new BinaryEncoder(cs, new ByteSink() {
+      @Override
+      public void accept(byte[] bytes, int offset, int length) {
+        BinaryEncoderBenchmark.this.blackhole.consume(bytes[offset + length - 1]);
+      }
+      @Override
+      public void accept(byte[] bytes) {
+        BinaryEncoderBenchmark.this.blackhole.consume(bytes);
+      }
+    });
+    legacy = new LegacyEncoder(cs, sink);
+  }
+
+  @Benchmark
+  public void legacy() {
+    legacy.accept(codePoints);
+  }
+
+  @Benchmark
+  public void encoder() {
+    encoder.accept(codePoints);
+  }
+
+  @Benchmark
+  public void encoderSink() {
+    sinkEncoder.accept(codePoints);
+  }
+
+  /**
+   * The encoder implementation before the introduction of the encoding engines.
+   */
+  static class LegacyEncoder implements Consumer<int[]> {
+
+    private final Charset charset;
+    private final Consumer<byte[]> onByte;
+
+    LegacyEncoder(Charset charset, Consumer<byte[]> onByte) {
+      this.charset = charset;
+      this.onByte = onByte;
+    }
+
+    @Override
+    public void accept(int[] codePoints) {
+      final char[] tmp = new char[2];
+      int capacity = 0;
+      for (int codePoint : codePoints) {
+        capacity += Character.charCount(codePoint);
+      }
+      CharBuffer charBuf = CharBuffer.allocate(capacity);
+      for (int codePoint : codePoints) {
+        int size = Character.toChars(codePoint, tmp, 0);
+        charBuf.put(tmp, 0, size);
+      }
+      charBuf.flip();
+      ByteBuffer bytesBuf = charset.encode(charBuf);
+      byte[] bytes = bytesBuf.array();
+      if (bytesBuf.limit() < bytesBuf.array().length) {
+        bytes = Arrays.copyOf(bytes, bytesBuf.limit());
+      }
+      onByte.accept(bytes);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(BinaryEncoderBenchmark.class.getSimpleName()).build()).run();
+  }
+}
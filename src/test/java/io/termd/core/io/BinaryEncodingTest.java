@@ -4,6 +4,7 @@ import io.termd.core.function.Consumer;
 import io.termd.core.util.Helper;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
@@ -11,6 +12,9 @@ import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
@@ -106,4 +110,167 @@ public class BinaryEncodingTest {
     assertEquals(1, codePoints.size());
     assertEquals('\u20AC', (int)codePoints.get(0));
   }
+
+  @Test
+  public void testDecoderSink() throws Exception {
+    final List<String> chunks = new ArrayList<String>();
+    final int[][] buffers = new int[1][];
+    BinaryDecoder decoder = new BinaryDecoder(4, UTF8, new CodePointSink() {
+      @Override
+      public void accept(int[] codePoints, int offset, int length) {
+        if (buffers[0] == null) {
+          buffers[0] = codePoints;
+        } else {
+          assertSame(buffers[0], codePoints);
+        }
+        chunks.add(new String(codePoints, offset, length));
+      }
+      @Override
+      public void accept(int[] codePoints) {
+        fail();
+      }
+    });
+    decoder.write("ABCDEF".getBytes(UTF8));
+    decoder.write("GH".getBytes(UTF8));
+    assertEquals(Arrays.asList("ABCD", "EF", "GH"), chunks);
+  }
+
+  @Test
+  public void testDecoderSplitSurrogatePair() throws Exception {
+    final StringBuilder sb = new StringBuilder();
+    BinaryDecoder decoder = new BinaryDecoder(2, UTF8, new Consumer<int[]>() {
+      @Override
+      public void accept(int[] event) {
+        Helper.appendCodePoints(event, sb);
+      }
+    });
+    String s = new StringBuilder().append('A').appendCodePoint(66231).append('B').toString();
+    byte[] data = s.getBytes(UTF8);
+    for (byte b : data) {
+      decoder.write(new byte[]{b});
+    }
+    assertEquals(s, sb.toString());
+    sb.setLength(0);
+    decoder.write(data);
+    assertEquals(s, sb.toString());
+  }
+
+  @Test
+  public void testDecoderMalformedInput() throws Exception {
+    final StringBuilder sb = new StringBuilder();
+    BinaryDecoder decoder = new BinaryDecoder(UTF8, new Consumer<int[]>() {
+      @Override
+      public void accept(int[] event) {
+        Helper.appendCodePoints(event, sb);
+      }
+    });
+    decoder.write(new byte[]{65, (byte) 0xFF, 66});
+    assertEquals("A\uFFFDB", sb.toString());
+  }
+
+  @Test
+  public void testDecoderLargeInput() throws Exception {
+    final StringBuilder sb = new StringBuilder();
+    BinaryDecoder decoder = new BinaryDecoder(512, UTF8, new Consumer<int[]>() {
+      @Override
+      public void accept(int[] event) {
+        Helper.appendCodePoints(event, sb);
+      }
+    });
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0;i < 10000;i++) {
+      expected.append("\u20AC").appendCodePoint(66231).append(i);
+    }
+    decoder.write(expected.toString().getBytes(UTF8));
+    assertEquals(expected.toString(), sb.toString());
+  }
+
+  @Test
+  public void testEncoderCharsets() throws Exception {
+    String s = new StringBuilder("A\u00E9\u20AC\u7EC8").appendCodePoint(66231).append('\uD800').append('Z').toString();
+    int[] codePoints = Helper.toCodePoints(s);
+    for (String name : Arrays.asList("UTF-8", "US-ASCII", "ISO-8859-1", "GBK", "UTF-16BE")) {
+      Charset charset = Charset.forName(name);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new BinaryEncoder(charset, collector(out)).accept(codePoints);
+      assertEquals(name, Arrays.toString(s.getBytes(charset)), Arrays.toString(out.toByteArray()));
+    }
+  }
+
+  @Test
+  public void testEncoderSetCharset() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = new BinaryEncoder(Charset.forName("US-ASCII"), collector(out));
+    int[] codePoints = Helper.toCodePoints("\u20AC");
+    encoder.accept(codePoints);
+    assertEquals("[63]", Arrays.toString(out.toByteArray()));
+    out.reset();
+    encoder.setCharset(UTF8);
+    encoder.accept(codePoints);
+    assertEquals("[-30, -126, -84]", Arrays.toString(out.toByteArray()));
+  }
+
+  @Test
+  public void testEncoderChunks() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0;i < 100;i++) {
+      sb.append("abc\u20AC").appendCodePoint(66231);
+    }
+    String s = sb.toString();
+    int[] codePoints = Helper.toCodePoints(s);
+    for (String name : Arrays.asList("UTF-8", "ISO-8859-1", "GBK")) {
+      Charset charset = Charset.forName(name);
+      final List<byte[]> chunks = new ArrayList<byte[]>();
+      final int[] sliceCount = new int[1];
+      BinaryEncoder encoder = new BinaryEncoder(16, charset, new ByteSink() {
+        @Override
+        public void accept(byte[] bytes, int offset, int length) {
+          assertTrue(length <= 16);
+          sliceCount[0]++;
+          chunks.add(Arrays.copyOfRange(bytes, offset, offset + length));
+        }
+        @Override
+        public void accept(byte[] bytes) {
+          fail();
+        }
+      });
+      encoder.accept(codePoints);
+      assertTrue(sliceCount[0] > 1);
+      StringBuilder decoded = new StringBuilder();
+      for (byte[] chunk : chunks) {
+        decoded.append(new String(chunk, charset));
+      }
+      assertEquals(name, new String(s.getBytes(charset), charset), decoded.toString());
+    }
+  }
+
+  @Test
+  public void testEncoderOnlcr() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0;i < 20;i++) {
+      sb.append("a\u20AC\n\n");
+    }
+    String s = sb.toString();
+    int[] codePoints = Helper.toCodePoints(s);
+    for (String name : Arrays.asList("UTF-8", "US-ASCII", "GBK")) {
+      Charset charset = Charset.forName(name);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      BinaryEncoder encoder = new BinaryEncoder(16, charset, collector(out));
+      encoder.accept(codePoints);
+      assertEquals(name, Arrays.toString(s.getBytes(charset)), Arrays.toString(out.toByteArray()));
+      out.reset();
+      encoder.setOnlcr(true);
+      encoder.accept(codePoints);
+      assertEquals(name, Arrays.toString(s.replace("\n", "\r\n").getBytes(charset)), Arrays.toString(out.toByteArray()));
+    }
+  }
+
+  private static Consumer<byte[]> collector(final ByteArrayOutputStream out) {
+    return new Consumer<byte[]>() {
+      @Override
+      public void accept(byte[] event) {
+        out.write(event, 0, event.length);
+      }
+    };
+  }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.pty;
+
+import io.termd.core.function.Consumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to run a batch of concurrent short-lived processes with a platform thread per process, with
+ * the bounded shared pool and with virtual threads. The virtual threads require a Java 21 runtime.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PtyMasterBenchmark {
+
+  @Param({"thread", "pool", "virtual"})
+  public String runner;
+
+  @Param({"64"})
+  public int processes;
+
+  private ExecutorService executor;
+
+  @Setup
+  public void setup() {
+    if (runner.equals("pool")) {
+      executor = PtyExecutors.newBoundedExecutor(PtyExecutors.DEFAULT_MAX_THREADS);
+    } else if (runner.equals("virtual")) {
+      if (!PtyExecutors.isVirtualThreadAvailable()) {
+        throw new IllegalStateException("Virtual threads are not available, a Java 21 runtime is required");
+      }
+      executor = PtyExecutors.newVirtualThreadExecutor();
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  @Benchmark
+  public void run() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(processes);
+    Consumer<int[]> stdout = new Consumer<int[]>() {
+      @Override
+      public void accept(int[] codePoints) {
+      }
+    };
+    Consumer<Void> done = new Consumer<Void>() {
+      @Override
+      public void accept(Void v) {
+        latch.countDown();
+      }
+    };
+    for (int i = 0;i < processes;i++) {
+      PtyMaster master = new PtyMaster("echo " + i, stdout, done);
+      if (executor == null) {
+        master.start();
+      } else {
+        master.start(executor);
+      }
+    }
+    if (!latch.await(30, TimeUnit.SECONDS)) {
+      throw new IllegalStateException("Processes did not terminate");
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(PtyMasterBenchmark.class.getSimpleName()).build()).run();
+  }
+}
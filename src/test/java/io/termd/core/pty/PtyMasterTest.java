@@ -0,0 +1,232 @@
+/*
+ * Copyright 2014 Julien Viet
+ *
+ * Julien Viet licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package io.termd.core.pty;
+
+import io.termd.core.function.BiConsumer;
+import io.termd.core.function.Consumer;
+import io.termd.core.util.Helper;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class PtyMasterTest {
+
+  @Test
+  public void testPauseOutput() throws Exception {
+    final StringBuffer output = new StringBuffer();
+    final CountDownLatch done = new CountDownLatch(1);
+    PtyMaster master = new PtyMaster("echo hello", new Consumer<int[]>() {
+      @Override
+      public void accept(int[] codePoints) {
+        output.append(Helper.fromCodePoints(codePoints));
+      }
+    }, new Consumer<Void>() {
+      @Override
+      public void accept(Void v) {
+        done.countDown();
+      }
+    });
+    master.pauseOutput();
+    assertTrue(master.isOutputPaused());
+    master.start();
+    assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+    assertEquals("", output.toString());
+    master.resumeOutput();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals("hello\n", output.toString());
+  }
+
+  @Test
+  public void testInterruptPaused() throws Exception {
+    final CountDownLatch done = new CountDownLatch(1);
+    PtyMaster master = new PtyMaster("sleep 10", new Consumer<int[]>() {
+      @Override
+      public void accept(int[] codePoints) {
+      }
+    }, new Consumer<Void>() {
+      @Override
+      public void accept(Void v) {
+        done.countDown();
+      }
+    });
+    master.pauseOutput();
+    master.start();
+    while (master.getProcess() == null) {
+      Thread.sleep(10);
+    }
+    master.interruptProcess();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+  }
+
+  private static class Run {
+
+    final StringBuffer output = new StringBuffer();
+    final List<Status> statuses = Collections.synchronizedList(new ArrayList<Status>());
+    final CountDownLatch done = new CountDownLatch(1);
+    final PtyMaster master;
+
+    Run(String line) {
+      master = new PtyMaster(line, new Consumer<int[]>() {
+        @Override
+        public void accept(int[] codePoints) {
+          output.append(Helper.fromCodePoints(codePoints));
+        }
+      }, new Consumer<Void>() {
+        @Override
+        public void accept(Void v) {
+          done.countDown();
+        }
+      });
+      master.setChangeHandler(new BiConsumer<Status, Status>() {
+        @Override
+        public void accept(Status prev, Status next) {
+          statuses.add(next);
+        }
+      });
+    }
+
+    void await() throws Exception {
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testExecutor() throws Exception {
+    ExecutorService executor = PtyExecutors.newBoundedExecutor(2);
+    try {
+      List<Run> runs = new ArrayList<Run>();
+      for (int i = 0;i < 8;i++) {
+        Run run = new Run("echo " + i);
+        run.master.start(executor);
+        runs.add(run);
+      }
+      for (int i = 0;i < runs.size();i++) {
+        Run run = runs.get(i);
+        run.await();
+        assertEquals(i + "\n", run.output.toString());
+        assertEquals(Arrays.asList(Status.RUNNING, Status.COMPLETED), run.statuses);
+        assertEquals(0, run.master.getExitValue());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testSaturatedExecutor() throws Exception {
+    ExecutorService executor = PtyExecutors.newBoundedExecutor(1);
+    Run blocking = new Run("sleep 10");
+    try {
+      blocking.master.start(executor);
+      // The pool thread is busy, the process runs in a new thread
+      Run run = new Run("echo hello");
+      run.master.start(executor);
+      run.await();
+      assertEquals("hello\n", run.output.toString());
+    } finally {
+      blocking.master.interruptProcess();
+      blocking.await();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testStartTwice() throws Exception {
+    Run run = new Run("echo");
+    run.master.start();
+    try {
+      run.master.start(PtyExecutors.defaultExecutor());
+      fail();
+    } catch (IllegalStateException ignore) {
+    }
+    run.await();
+  }
+
+  @Test
+  public void testAwaitTermination() throws Exception {
+    Run run = new Run("sleep 10");
+    assertFalse(run.master.isRunning());
+    run.master.start(PtyExecutors.defaultExecutor());
+    assertTrue(run.master.isRunning());
+    assertFalse(run.master.awaitTermination(100, TimeUnit.MILLISECONDS));
+    run.master.interruptProcess();
+    assertTrue(run.master.awaitTermination(10, TimeUnit.SECONDS));
+    assertFalse(run.master.isRunning());
+    assertEquals(0, run.done.getCount());
+  }
+
+  @Test
+  public void testJoin() throws Exception {
+    Run run = new Run("echo hello");
+    run.master.start();
+    run.master.join(10000);
+    assertFalse(run.master.isAlive());
+    run.master.awaitTermination();
+    assertFalse(run.master.isRunning());
+    assertEquals("hello\n", run.output.toString());
+  }
+
+  @Test
+  public void testErrorOutput() throws Exception {
+    Run run = new Run("sh -c 'echo out; echo err 1>&2; exit 3'");
+    run.master.start(PtyExecutors.defaultExecutor());
+    run.await();
+    assertEquals("out\nerr\n", run.output.toString());
+    assertEquals(Arrays.asList(Status.RUNNING, Status.FAILED), run.statuses);
+    assertEquals(3, run.master.getExitValue());
+  }
+
+  @Test
+  public void testStartFailure() throws Exception {
+    Run run = new Run("does-not-exist-command");
+    run.master.start(PtyExecutors.defaultExecutor());
+    run.await();
+    assertTrue(run.output.toString().contains("does-not-exist-command"));
+    assertEquals(Collections.singletonList(Status.FAILED), run.statuses);
+  }
+
+  @Test
+  public void testInterrupt() throws Exception {
+    Run run = new Run("sleep 10");
+    run.master.start(PtyExecutors.defaultExecutor());
+    while (run.master.getProcess() == null) {
+      Thread.sleep(10);
+    }
+    run.master.interruptProcess();
+    run.await();
+    assertEquals(Arrays.asList(Status.RUNNING, Status.INTERRUPTED), run.statuses);
+  }
+
+  @Test
+  public void testParseCommand() {
+    assertEquals(Collections.<String>emptyList(), PtyMaster.parseCommand("  "));
+    assertEquals(Arrays.asList("ls", "-l"), PtyMaster.parseCommand(" ls   -l "));
+    assertEquals(Arrays.asList("echo", "a b", "c'd", "e\\f"), PtyMaster.parseCommand("echo 'a b' \"c'd\" 'e\\f'"));
+    assertEquals(Arrays.asList("a b", "\"", ""), PtyMaster.parseCommand("a\\ b \\\" ''"));
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.readline;
+
+import io.termd.core.util.Helper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures finding the candidates starting with a prefix and their longest common prefix by scanning a vocabulary
+ * and with a {@link CompletionIndex}.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompletionIndexBenchmark {
+
+  @Param({"100000"})
+  public int size;
+
+  private List<int[]> vocabulary;
+  private CompletionIndex index;
+  private int[] prefix;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(0);
+    vocabulary = new ArrayList<int[]>(size);
+    for (int i = 0;i < size;i++) {
+      int[] word = new int[4 + random.nextInt(12)];
+      for (int j = 0;j < word.length;j++) {
+        word[j] = 'a' + random.nextInt(8);
+      }
+      vocabulary.add(word);
+    }
+    index = CompletionIndex.create(vocabulary);
+    index.size();
+    prefix = Helper.toCodePoints("abcd");
+  }
+
+  @Benchmark
+  public int[] scan() {
+    List<int[]> matches = new ArrayList<int[]>();
+    for (int[] word : vocabulary) {
+      if (word.length >= prefix.length && startsWith(word, prefix)) {
+        matches.add(word);
+      }
+    }
+    return Helper.findLongestCommonPrefix(matches);
+  }
+
+  @Benchmark
+  public int[] index() {
+    return index.findLongestCommonPrefix(prefix);
+  }
+
+  private static boolean startsWith(int[] word, int[] prefix) {
+    for (int i = 0;i < prefix.length;i++) {
+      if (word[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(CompletionIndexBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.readline;
+
+import io.termd.core.TestBase;
+import io.termd.core.function.Consumer;
+import io.termd.core.function.Supplier;
+import io.termd.core.util.Helper;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class CompletionIndexTest extends TestBase {
+
+  private static List<String> toStrings(List<int[]> candidates) {
+    List<String> list = new ArrayList<String>();
+    for (int[] candidate : candidates) {
+      list.add(Helper.fromCodePoints(candidate));
+    }
+    return list;
+  }
+
+  private static String lcp(CompletionIndex index, String prefix) {
+    int[] lcp = index.findLongestCommonPrefix(Helper.toCodePoints(prefix));
+    return lcp != null ? Helper.fromCodePoints(lcp) : null;
+  }
+
+  @Test
+  public void testFind() {
+    CompletionIndex index = CompletionIndex.create("git", "grep", "gitk", "git", "ls", "gzip", "", "g");
+    assertEquals(7, index.size());
+    assertEquals(Arrays.asList("", "g", "git", "gitk", "grep", "gzip", "ls"), toStrings(index.find(new int[0])));
+    assertEquals(Arrays.asList("g", "git", "gitk", "grep", "gzip"), toStrings(index.find(Helper.toCodePoints("g"))));
+    assertEquals(Arrays.asList("git", "gitk"), toStrings(index.find(Helper.toCodePoints("git"))));
+    assertEquals(Arrays.asList("gitk"), toStrings(index.find(Helper.toCodePoints("gitk"))));
+    assertEquals(0, index.find(Helper.toCodePoints("gitx")).size());
+    assertEquals(0, index.find(Helper.toCodePoints("a")).size());
+    assertEquals(0, index.find(Helper.toCodePoints("z")).size());
+  }
+
+  @Test
+  public void testFindSupplementaryCodePoints() {
+    CompletionIndex index = CompletionIndex.create("\uD83D\uDE00a", "\uD83D\uDE00b", "\u00e9z");
+    assertEquals(Arrays.asList("\uD83D\uDE00a", "\uD83D\uDE00b"), toStrings(index.find(new int[]{0x1F600})));
+  }
+
+  @Test
+  public void testLongestCommonPrefix() {
+    CompletionIndex index = CompletionIndex.create("checkout", "cherry-pick", "cherry", "clone", "commit");
+    assertEquals("c", lcp(index, ""));
+    assertEquals("che", lcp(index, "ch"));
+    assertEquals("cherry", lcp(index, "cher"));
+    assertEquals("clone", lcp(index, "cl"));
+    assertNull(lcp(index, "x"));
+    assertEquals("", lcp(CompletionIndex.create("a", "b"), ""));
+    assertNull(lcp(CompletionIndex.create(), ""));
+  }
+
+  @Test
+  public void testInvalidate() {
+    final List<int[]> candidates = new ArrayList<int[]>();
+    candidates.add(Helper.toCodePoints("foo"));
+    final AtomicInteger loads = new AtomicInteger();
+    final AtomicInteger invalidations = new AtomicInteger();
+    CompletionIndex index = new CompletionIndex(new Supplier<Iterable<int[]>>() {
+      @Override
+      public Iterable<int[]> get() {
+        loads.incrementAndGet();
+        return new ArrayList<int[]>(candidates);
+      }
+    });
+    index.addInvalidationHandler(new Consumer<Void>() {
+      @Override
+      public void accept(Void v) {
+        invalidations.incrementAndGet();
+      }
+    });
+    assertEquals(0, loads.get());
+    assertEquals(1, index.find(Helper.toCodePoints("f")).size());
+    assertEquals(1, index.find(Helper.toCodePoints("fo")).size());
+    assertEquals(1, loads.get());
+    candidates.add(Helper.toCodePoints("fox"));
+    assertEquals(1, index.find(Helper.toCodePoints("f")).size());
+    index.invalidate();
+    assertEquals(1, invalidations.get());
+    assertEquals(1, loads.get());
+    assertEquals(Arrays.asList("foo", "fox"), toStrings(index.find(Helper.toCodePoints("f"))));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testComplete() {
+    final CompletionIndex index = CompletionIndex.create("checkout", "cherry-pick", "clone");
+    TestTerm term = new TestTerm(this);
+    Supplier<String> line = term.readlineComplete(new Consumer<Completion>() {
+      @Override
+      public void accept(Completion completion) {
+        index.complete(completion);
+      }
+    });
+    term.read('c', '\t');
+    term.executeTasks();
+    term.assertScreen("% c", "checkout    cherry-pick clone", "% c");
+    term.read('h', '\t');
+    term.assertScreen("% c", "checkout    cherry-pick clone", "% che");
+    term.read('r', '\t');
+    term.assertScreen("% c", "checkout    cherry-pick clone", "% cherry-pick ");
+    term.read('x', '\t');
+    term.assertScreen("% c", "checkout    cherry-pick clone", "% cherry-pick x");
+    term.read('\r');
+    assertEquals("cherry-pick x", line.get());
+  }
+}
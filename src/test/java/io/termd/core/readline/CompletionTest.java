@@ -21,11 +21,16 @@ import io.termd.core.function.Consumer;
 import io.termd.core.function.Supplier;
 import io.termd.core.util.CompletableFuture;
 import io.termd.core.util.Helper;
+import io.termd.core.util.Vector;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -436,6 +441,176 @@ public class CompletionTest extends TestBase {
     assertCompleteInline("\\", "a", true, "% \\a ");
   }
 
+  private Suggestions suggestions(TestTerm term, AtomicReference<Supplier<String>> line, int threshold) {
+    return suggestions(term, line, threshold, 40);
+  }
+
+  private Suggestions suggestions(final TestTerm term, final AtomicReference<Supplier<String>> line, final int threshold, int width) {
+    final AtomicReference<Suggestions> suggestions = new AtomicReference<Suggestions>();
+    line.set(term.readlineComplete(new Consumer<Completion>() {
+      @Override
+      public void accept(Completion completion) {
+        suggestions.set(completion.suggestions().setQueryThreshold(threshold));
+      }
+    }));
+    // 3 rows of candidates per page
+    term.setWidth(width);
+    term.sizeHandler.accept(new Vector(width, 4));
+    term.read('\t');
+    return suggestions.get();
+  }
+
+  private static List<int[]> candidates(String... candidates) {
+    List<int[]> list = new ArrayList<int[]>();
+    for (String candidate : candidates) {
+      list.add(Helper.toCodePoints(candidate));
+    }
+    return list;
+  }
+
+  @Test
+  public void testStreamingSuggestions() throws Exception {
+    TestTerm term = new TestTerm(this);
+    AtomicReference<Supplier<String>> line = new AtomicReference<Supplier<String>>();
+    Suggestions suggestions = suggestions(term, line, 0);
+    assertTrue(suggestions.add(candidates("abc", "def")));
+    term.executeTasks();
+    term.assertScreen("% ");
+    assertTrue(suggestions.add(candidates("ghi")));
+    suggestions.end();
+    term.executeTasks();
+    term.assertScreen("% ", "abc def ghi", "% ");
+    term.assertAt(2, 2);
+    term.read('a', '\r');
+    assertEquals("a", line.get().get());
+  }
+
+  @Test
+  public void testSuggestionsPagination() throws Exception {
+    TestTerm term = new TestTerm(this);
+    AtomicReference<Supplier<String>> line = new AtomicReference<Supplier<String>>();
+    Suggestions suggestions = suggestions(term, line, 0);
+    suggestions.add(candidates("a-rather-long-candidate-1", "a-rather-long-candidate-2", "a-rather-long-candidate-3", "a-rather-long-candidate-4"));
+    suggestions.end();
+    term.executeTasks();
+    term.assertScreen("% ", "a-rather-long-candidate-1", "a-rather-long-candidate-2", "a-rather-long-candidate-3", "--More--");
+    term.read('x');
+    assertEquals(1, term.getBellCount());
+    term.read(' ');
+    term.assertScreen("% ", "a-rather-long-candidate-1", "a-rather-long-candidate-2", "a-rather-long-candidate-3", "a-rather-long-candidate-4", "% ");
+    term.read('a', '\r');
+    assertEquals("a", line.get().get());
+  }
+
+  @Test
+  public void testSuggestionsStopPagination() throws Exception {
+    TestTerm term = new TestTerm(this);
+    AtomicReference<Supplier<String>> line = new AtomicReference<Supplier<String>>();
+    Suggestions suggestions = suggestions(term, line, 0);
+    suggestions.add(candidates("a-rather-long-candidate-1", "a-rather-long-candidate-2", "a-rather-long-candidate-3", "a-rather-long-candidate-4"));
+    suggestions.end();
+    term.executeTasks();
+    term.read('q');
+    term.assertScreen("% ", "a-rather-long-candidate-1", "a-rather-long-candidate-2", "a-rather-long-candidate-3", "% ");
+    assertFalse(suggestions.isCancelled());
+  }
+
+  @Test
+  public void testSuggestionsQuery() throws Exception {
+    TestTerm term = new TestTerm(this);
+    AtomicReference<Supplier<String>> line = new AtomicReference<Supplier<String>>();
+    Suggestions suggestions = suggestions(term, line, 2, 80);
+    suggestions.add(candidates("abc", "def"));
+    term.executeTasks();
+    term.assertScreen("% ");
+    suggestions.add(candidates("ghi"));
+    suggestions.end();
+    term.executeTasks();
+    term.assertScreen("% ", "Display all 3 possibilities? (y or n)");
+    term.read('y');
+    term.assertScreen("% ", "Display all 3 possibilities? (y or n)", "abc def ghi", "% ");
+  }
+
+  @Test
+  public void testSuggestionsQueryRefused() throws Exception {
+    TestTerm term = new TestTerm(this);
+    AtomicReference<Supplier<String>> line = new AtomicReference<Supplier<String>>();
+    Suggestions suggestions = suggestions(term, line, 2, 80);
+    final AtomicInteger cancelled = new AtomicInteger();
+    suggestions.setCancelHandler(new Consumer<Void>() {
+      @Override
+      public void accept(Void v) {
+        cancelled.incrementAndGet();
+      }
+    });
+    suggestions.add(candidates("abc", "def", "ghi"));
+    term.executeTasks();
+    term.assertScreen("% ", "Display more than 2 possibilities? (y or n)");
+    term.read('n');
+    term.assertScreen("% ", "Display more than 2 possibilities? (y or n)", "% ");
+    assertEquals(1, cancelled.get());
+    assertTrue(suggestions.isCancelled());
+    assertFalse(suggestions.add(candidates("jkl")));
+    term.executeTasks();
+    term.assertScreen("% ", "Display more than 2 possibilities? (y or n)", "% ");
+  }
+
+  @Test
+  public void testCancelSuggestions() throws Exception {
+    TestTerm term = new TestTerm(this);
+    AtomicReference<Supplier<String>> line = new AtomicReference<Supplier<String>>();
+    Suggestions suggestions = suggestions(term, line, 0);
+    final AtomicInteger cancelled = new AtomicInteger();
+    suggestions.setCancelHandler(new Consumer<Void>() {
+      @Override
+      public void accept(Void v) {
+        cancelled.incrementAndGet();
+      }
+    });
+    suggestions.add(candidates("abc"));
+    term.executeTasks();
+    // The key cancelling the completion is discarded
+    term.read(3);
+    assertEquals(1, cancelled.get());
+    assertFalse(suggestions.add(candidates("def")));
+    suggestions.end();
+    term.executeTasks();
+    term.assertScreen("% ");
+    term.read('a', '\r');
+    assertEquals("a", line.get().get());
+  }
+
+  @Test
+  public void testSuggestionsTimeout() throws Exception {
+    TestTerm term = new TestTerm(this);
+    AtomicReference<Supplier<String>> line = new AtomicReference<Supplier<String>>();
+    Suggestions suggestions = suggestions(term, line, 0);
+    suggestions.setTimeout(10, TimeUnit.MILLISECONDS);
+    suggestions.add(candidates("abc"));
+    term.executeTasks();
+    assertTrue(suggestions.isCancelled());
+    term.read('a');
+    term.assertScreen("% a");
+  }
+
+  @Test
+  public void testWideSuggestions() throws Exception {
+    TestTerm term = new TestTerm(this);
+    AtomicReference<Supplier<String>> line = new AtomicReference<Supplier<String>>();
+    Suggestions suggestions = suggestions(term, line, 0);
+    // Each candidate is 4 columns wide
+    suggestions.add(candidates("\u4f60\u597d", "ab", "abcd"));
+    suggestions.end();
+    term.executeTasks();
+    term.assertScreen("% ", "\u4f60\u597d ab   abcd", "% ");
+  }
+
+  @Test
+  public void testComputeBlockWidth() throws Exception {
+    int[] block = Helper.computeBlock(new Vector(40, 20), candidates("\u4f60\u597d", "abcd"));
+    assertEquals("\u4f60\u597d abcd \n", Helper.fromCodePoints(block));
+  }
+
   private void assertPrefix(String line, String expected) {
     TestTerm term = new TestTerm(this);
     final AtomicReference<String> prefix = new AtomicReference<String>();
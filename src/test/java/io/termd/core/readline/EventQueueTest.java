@@ -24,6 +24,7 @@ import java.nio.ReadOnlyBufferException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -115,4 +116,78 @@ public class EventQueueTest {
     } catch (ReadOnlyBufferException ignore) {
     }
   }
+
+  @Test
+  public void testLongestMatch() {
+    EventQueue queue = new EventQueue(new Keymap(new ByteArrayInputStream("\"a\":foo\n\"abc\":bar\n\"ab\":juu".getBytes())));
+    queue.append('a', 'b');
+    assertEquals("juu", ((FunctionEvent) queue.next()).name());
+    queue.append('a', 'b', 'c', 'a', 'x');
+    assertEquals("bar", ((FunctionEvent) queue.next()).name());
+    assertEquals("foo", ((FunctionEvent) queue.next()).name());
+    assertEquals('x', queue.next().getCodePointAt(0));
+    assertFalse(queue.hasNext());
+  }
+
+  @Test
+  public void testLastBindingWins() {
+    EventQueue queue = new EventQueue(new Keymap(new ByteArrayInputStream("\"ab\":foo\n\"ab\":bar".getBytes())));
+    queue.append('a', 'b');
+    assertEquals("bar", ((FunctionEvent) queue.next()).name());
+  }
+
+  @Test
+  public void testInternCodePointEvent() {
+    EventQueue queue = new EventQueue(new Keymap());
+    queue.append('a', 'a', 0x4E2D, 0x4E2D, 0x1F600);
+    KeyEvent a = queue.next();
+    assertSame(a, queue.next());
+    KeyEvent zhong = queue.next();
+    assertSame(zhong, queue.next());
+    assertEquals(0x1F600, queue.next().getCodePointAt(0));
+  }
+
+  @Test
+  public void testWrapAround() {
+    EventQueue queue = new EventQueue(new Keymap(new ByteArrayInputStream("\"ab\":foo".getBytes())));
+    StringBuilder decoded = new StringBuilder();
+    for (int i = 0;i < 100;i++) {
+      queue.append('x', 'y', 'z', 'a');
+      assertEquals(4, queue.getBuffer().remaining());
+      queue.append(new int[]{'-', 'b', 'c', '-'}, 1, 2);
+      while (queue.hasNext()) {
+        KeyEvent event = queue.next();
+        if (event instanceof FunctionEvent) {
+          decoded.append('[').append(((FunctionEvent) event).name()).append(']');
+        } else {
+          decoded.appendCodePoint(event.getCodePointAt(0));
+        }
+      }
+    }
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0;i < 100;i++) {
+      expected.append("xyz[foo]c");
+    }
+    assertEquals(expected.toString(), decoded.toString());
+  }
+
+  @Test
+  public void testGrow() {
+    EventQueue queue = new EventQueue(new Keymap());
+    int[] codePoints = new int[1000];
+    for (int i = 0;i < codePoints.length;i++) {
+      codePoints[i] = 'a' + (i % 26);
+    }
+    queue.append('0', '1', '2', '3', '4', '5', '6', '7', '8', '9');
+    for (int i = 0;i < 8;i++) {
+      assertEquals('0' + i, queue.next().getCodePointAt(0));
+    }
+    queue.append(codePoints);
+    assertEquals('8', queue.next().getCodePointAt(0));
+    assertEquals('9', queue.next().getCodePointAt(0));
+    for (int codePoint : codePoints) {
+      assertEquals(codePoint, queue.next().getCodePointAt(0));
+    }
+    assertFalse(queue.hasNext());
+  }
 }
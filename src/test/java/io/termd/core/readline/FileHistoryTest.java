@@ -0,0 +1,313 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.readline;
+
+import io.termd.core.util.Helper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class FileHistoryTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static String get(History history, int index) {
+    return Helper.fromCodePoints(history.get(index));
+  }
+
+  private static void add(History history, String line) {
+    history.add(Helper.toCodePoints(line));
+  }
+
+  private static void write(File file, String content) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+
+  @Test
+  public void testPersistence() throws Exception {
+    File file = new File(folder.getRoot(), "history");
+    FileHistory history = FileHistory.open(file);
+    assertEquals(0, history.size());
+    add(history, "ls -l");
+    add(history, "echo € 😀");
+    assertEquals(2, history.size());
+    assertEquals("echo € 😀", get(history, 0));
+    assertEquals("ls -l", get(history, 1));
+    history.close();
+    history = FileHistory.open(file);
+    try {
+      assertEquals(2, history.size());
+      assertEquals("echo € 😀", get(history, 0));
+      assertEquals("ls -l", get(history, 1));
+      add(history, "pwd");
+      assertEquals("pwd", get(history, 0));
+    } finally {
+      history.close();
+    }
+  }
+
+  @Test
+  public void testShared() throws Exception {
+    File file = new File(folder.getRoot(), "history");
+    FileHistory history = FileHistory.open(file);
+    try {
+      assertSame(history, FileHistory.open(new File(folder.getRoot(), "./history")));
+    } finally {
+      history.close();
+    }
+    FileHistory other = FileHistory.open(file);
+    try {
+      assertNotSame(history, other);
+    } finally {
+      other.close();
+    }
+    try {
+      add(history, "ls");
+      fail();
+    } catch (IllegalStateException ignore) {
+    }
+  }
+
+  @Test
+  public void testDeduplication() throws Exception {
+    File file = new File(folder.getRoot(), "history");
+    FileHistory history = FileHistory.open(file);
+    try {
+      add(history, "ls");
+      add(history, "ls");
+      assertEquals(1, history.size());
+      add(history, "pwd");
+      add(history, "ls");
+      assertEquals(3, history.size());
+      assertEquals("ls", get(history, 0));
+      assertEquals("pwd", get(history, 1));
+      assertEquals("ls", get(history, 2));
+    } finally {
+      history.close();
+    }
+    history = FileHistory.open(file);
+    try {
+      // The lookup table is rebuilt from the file
+      add(history, "pwd");
+      add(history, "cd");
+      assertEquals(5, history.size());
+      assertEquals("pwd", get(history, 1));
+    } finally {
+      history.close();
+    }
+  }
+
+  @Test
+  public void testGrowth() throws Exception {
+    File file = new File(folder.getRoot(), "history");
+    FileHistory history = FileHistory.open(file, 20000);
+    try {
+      for (int i = 0;i < 20000;i++) {
+        add(history, "command number " + i);
+      }
+      assertEquals(20000, history.size());
+      assertEquals("command number 19999", get(history, 0));
+      assertEquals("command number 0", get(history, 19999));
+    } finally {
+      history.close();
+    }
+    history = FileHistory.open(file, 20000);
+    try {
+      assertEquals(20000, history.size());
+      assertEquals("command number 12345", get(history, 19999 - 12345));
+    } finally {
+      history.close();
+    }
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+    File file = new File(folder.getRoot(), "history");
+    FileHistory history = FileHistory.open(file, 10);
+    try {
+      for (int i = 0;i < 19;i++) {
+        add(history, "command " + (i % 5 == 0 ? "shared" : i));
+      }
+      History snapshot = history.snapshot();
+      assertEquals(19, history.size());
+      add(history, "command 19");
+      // Compacted to the 10 most recent entries
+      assertEquals(10, history.size());
+      assertEquals(10, history.sequence());
+      assertEquals("command 19", get(history, 0));
+      assertEquals("command shared", get(history, 4));
+      assertEquals("command 11", get(history, 8));
+      assertEquals("command shared", get(history, 9));
+      // The evicted entries read as empty lines
+      assertEquals(19, snapshot.size());
+      assertEquals("command 18", get(snapshot, 0));
+      assertEquals("command shared", get(snapshot, 8));
+      assertEquals("", get(snapshot, 9));
+      for (int i = 20;i < 25;i++) {
+        add(history, "command " + i);
+      }
+      assertEquals(15, history.size());
+      assertEquals("command 24", get(history, 0));
+    } finally {
+      history.close();
+    }
+    history = FileHistory.open(file, 10);
+    try {
+      assertEquals(15, history.size());
+      assertEquals(0, history.sequence());
+      assertEquals("command 24", get(history, 0));
+      assertEquals("command shared", get(history, 9));
+      assertEquals("command 11", get(history, 13));
+      assertEquals("command shared", get(history, 14));
+    } finally {
+      history.close();
+    }
+  }
+
+  @Test
+  public void testLocked() throws Exception {
+    File file = new File(folder.getRoot(), "history");
+    FileHistory.open(file).close();
+    // Another process using the history holds the lock
+    RandomAccessFile lock = new RandomAccessFile(new File(folder.getRoot(), "history.lock"), "rw");
+    try {
+      lock.getChannel().lock();
+      try {
+        FileHistory.open(file);
+        fail();
+      } catch (IOException ignore) {
+      }
+    } finally {
+      lock.close();
+    }
+    FileHistory history = FileHistory.open(file);
+    history.close();
+  }
+
+  @Test
+  public void testSync() throws Exception {
+    File file = new File(folder.getRoot(), "history");
+    FileHistory history = FileHistory.open(file);
+    try {
+      assertFalse(history.isSync());
+      assertSame(history, history.setSync(true));
+      add(history, "ls");
+      add(history, "pwd");
+      assertEquals(2, history.size());
+      assertEquals("pwd", get(history, 0));
+    } finally {
+      history.close();
+    }
+  }
+
+  @Test
+  public void testRecoverDiscardedCompaction() throws Exception {
+    File file = new File(folder.getRoot(), "history");
+    FileHistory history = FileHistory.open(file);
+    add(history, "ls");
+    history.close();
+    // Crash before the index was renamed
+    File dataTmp = new File(folder.getRoot(), "history.compact");
+    File indexTmp = new File(folder.getRoot(), "history.idx.compact");
+    write(dataTmp, "partial");
+    write(indexTmp, "partial");
+    history = FileHistory.open(file);
+    try {
+      assertFalse(dataTmp.exists());
+      assertFalse(indexTmp.exists());
+      assertEquals(1, history.size());
+      assertEquals("ls", get(history, 0));
+    } finally {
+      history.close();
+    }
+  }
+
+  @Test
+  public void testRecoverCompletedCompaction() throws Exception {
+    File file = new File(folder.getRoot(), "history");
+    FileHistory history = FileHistory.open(file, 2);
+    for (int i = 0;i < 4;i++) {
+      add(history, "command " + i);
+    }
+    history.close();
+    // Crash after the index was renamed, the compacted data was not renamed over the previous data
+    File dataTmp = new File(folder.getRoot(), "history.compact");
+    Files.copy(file.toPath(), dataTmp.toPath());
+    write(file, "previous data");
+    history = FileHistory.open(file, 2);
+    try {
+      assertFalse(dataTmp.exists());
+      assertEquals(2, history.size());
+      assertEquals("command 3", get(history, 0));
+      assertEquals("command 2", get(history, 1));
+    } finally {
+      history.close();
+    }
+  }
+
+  @Test
+  public void testSnapshot() throws Exception {
+    FileHistory history = FileHistory.open(new File(folder.getRoot(), "history"));
+    try {
+      add(history, "a");
+      History snapshot = history.snapshot();
+      add(history, "b");
+      assertEquals(1, snapshot.size());
+      assertEquals("a", get(snapshot, 0));
+      try {
+        add(snapshot, "c");
+        fail();
+      } catch (UnsupportedOperationException ignore) {
+      }
+    } finally {
+      history.close();
+    }
+  }
+
+  @Test
+  public void testInvalidFile() throws Exception {
+    File file = new File(folder.getRoot(), "history");
+    FileOutputStream out = new FileOutputStream(file);
+    out.write("not a history file".getBytes("UTF-8"));
+    out.close();
+    out = new FileOutputStream(new File(folder.getRoot(), "history.idx"));
+    out.write(new byte[32]);
+    out.close();
+    try {
+      FileHistory.open(file);
+      fail();
+    } catch (IOException ignore) {
+    }
+  }
+}
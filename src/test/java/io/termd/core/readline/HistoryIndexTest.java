@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.readline;
+
+import io.termd.core.util.Helper;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class HistoryIndexTest {
+
+  private static int search(HistoryIndex index, History history, String query, int start, boolean older) {
+    return index.search(history, Helper.toCodePoints(query), start, older);
+  }
+
+  private static RingHistory history(int capacity, String... entries) {
+    RingHistory history = new RingHistory(capacity);
+    for (String entry : entries) {
+      history.add(Helper.toCodePoints(entry));
+    }
+    return history;
+  }
+
+  @Test
+  public void testSearch() {
+    RingHistory history = history(10, "git status", "ls -l", "git commit -m fix", "echo status", "git push");
+    HistoryIndex index = new HistoryIndex();
+    index.update(history);
+    assertEquals(5, index.size());
+    assertEquals(0, search(index, history, "git", 0, true));
+    assertEquals(2, search(index, history, "git", 1, true));
+    assertEquals(4, search(index, history, "git", 3, true));
+    assertEquals(-1, search(index, history, "git", 5, true));
+    assertEquals(1, search(index, history, "status", 0, true));
+    assertEquals(4, search(index, history, "git status", 0, true));
+    assertEquals(1, search(index, history, "status", 3, false));
+    assertEquals(2, search(index, history, "git", 3, false));
+    assertEquals(-1, search(index, history, "pull", 0, true));
+    // Short queries
+    assertEquals(3, search(index, history, "-l", 0, true));
+    assertEquals(2, search(index, history, "m", 0, true));
+    // The trigrams of the query are in the entry but not contiguous
+    assertEquals(-1, search(index, history, "gitgit", 0, true));
+  }
+
+  @Test
+  public void testIncrementalUpdate() {
+    RingHistory history = history(10, "abcd");
+    HistoryIndex index = new HistoryIndex();
+    index.update(history);
+    history.add(Helper.toCodePoints("bcde"));
+    assertEquals(1, search(index, history, "bcd", 0, true));
+    index.update(history);
+    assertEquals(2, index.size());
+    assertEquals(0, search(index, history, "bcd", 0, true));
+    assertEquals(1, search(index, history, "abc", 0, true));
+  }
+
+  @Test
+  public void testEviction() {
+    RingHistory history = history(2, "abcd", "efgh");
+    HistoryIndex index = new HistoryIndex();
+    index.update(history);
+    history.add(Helper.toCodePoints("ijkl"));
+    index.update(history);
+    assertEquals(2, index.size());
+    assertEquals(-1, search(index, history, "abc", 0, true));
+    assertEquals(1, search(index, history, "efg", 0, true));
+    assertEquals(0, search(index, history, "jkl", 0, true));
+  }
+
+  @Test
+  public void testEvictionWithRepeatedEntries() {
+    RingHistory history = history(4, "q", "q", "foo", "bar");
+    HistoryIndex index = new HistoryIndex();
+    index.update(history);
+    history.add(Helper.toCodePoints("bar"));
+    index.update(history);
+    assertEquals(4, index.size());
+    assertEquals(2, search(index, history, "foo", 0, true));
+    assertEquals(0, search(index, history, "bar", 0, true));
+    assertEquals(1, search(index, history, "bar", 1, true));
+    for (int i = 0;i < 8;i++) {
+      history.add(Helper.toCodePoints("bar"));
+      index.update(history);
+    }
+    assertEquals(4, index.size());
+    assertEquals(-1, search(index, history, "foo", 0, true));
+    assertEquals(3, search(index, history, "bar", 3, true));
+  }
+
+  @Test
+  public void testStaleHistory() {
+    RingHistory history = history(2, "abcd", "efgh");
+    History stale = history.snapshot();
+    HistoryIndex index = new HistoryIndex();
+    history.add(Helper.toCodePoints("ijkl"));
+    history.add(Helper.toCodePoints("mnop"));
+    history.add(Helper.toCodePoints("qrst"));
+    index.update(history);
+    // The snapshot is older than the index and does not rebuild it
+    index.update(stale);
+    assertEquals(0, search(index, history, "qrs", 0, true));
+    assertEquals(1, search(index, history, "nop", 0, true));
+  }
+
+  @Test
+  public void testSharedIndex() {
+    RingHistory history = history(10, "abcd");
+    HistoryIndex index = HistoryIndex.of(history);
+    assertSame(index, HistoryIndex.of(history));
+    assertNotSame(index, HistoryIndex.of(history(10, "abcd")));
+    index.update(history);
+    history.add(Helper.toCodePoints("efgh"));
+    // Another user of the history updates the same index incrementally
+    HistoryIndex.of(history).update(history.snapshot());
+    assertEquals(2, index.size());
+    assertEquals(0, search(index, history, "fgh", 0, true));
+  }
+
+  @Test
+  public void testLargeHistory() {
+    RingHistory history = new RingHistory(100000);
+    for (int i = 0;i < 100000;i++) {
+      history.add(Helper.toCodePoints("command " + i + " --option=" + (i % 7)));
+    }
+    HistoryIndex index = new HistoryIndex();
+    index.update(history);
+    assertEquals(100000 - 1 - 4242, search(index, history, " 4242 ", 0, true));
+    assertEquals(-1, search(index, history, "200000", 0, true));
+  }
+}
@@ -17,9 +17,15 @@
 package io.termd.core.readline;
 
 import io.termd.core.TestBase;
+import io.termd.core.function.Supplier;
+import io.termd.core.readline.functions.ForwardSearchHistory;
+import io.termd.core.readline.functions.ReverseSearchHistory;
 import io.termd.core.util.Helper;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
@@ -69,4 +75,141 @@ public class HistoryTest extends TestBase {
     term.read('\r');
     assertEquals(0, term.readline.getHistory().size());
   }
+
+  @Test
+  public void testAcceptLine() {
+    TestTerm term = new TestTerm(this);
+    term.readlineComplete();
+    term.read('a', 'b', 'c', '\r');
+    term.readlineComplete();
+    term.read('d', 'e', 'f', '\r');
+    History history = term.readline.history();
+    assertEquals(2, history.size());
+    assertEquals("def", Helper.fromCodePoints(history.get(0)));
+    assertEquals("abc", Helper.fromCodePoints(history.get(1)));
+  }
+
+  @Test
+  public void testSharedHistory() {
+    RingHistory history = new RingHistory();
+    TestTerm term1 = new TestTerm(this);
+    TestTerm term2 = new TestTerm(this);
+    term1.readline.setHistoryStore(history);
+    term2.readline.setHistoryStore(history);
+    term1.readlineComplete();
+    term2.readlineComplete();
+    term1.read('a', 'b', 'c', '\r');
+    // The history of an interaction does not change while it runs
+    term2.read(Keys.UP.sequence);
+    term2.assertScreen("% ");
+    term2.read('\r');
+    term2.readlineComplete();
+    term2.read(Keys.UP.sequence);
+    term2.assertScreen("% ", "% abc");
+  }
+
+  @Test
+  public void testSetHistoryList() {
+    TestTerm term = new TestTerm(this);
+    List<int[]> list = new ArrayList<int[]>();
+    for (int i = 0;i < RingHistory.DEFAULT_CAPACITY + 100;i++) {
+      list.add(Helper.toCodePoints("command " + i));
+    }
+    term.readline.setHistory(list);
+    History history = term.readline.history();
+    assertEquals(list.size(), history.size());
+    assertEquals("command 0", Helper.fromCodePoints(history.get(0)));
+    assertEquals("command " + (list.size() - 1), Helper.fromCodePoints(history.get(list.size() - 1)));
+  }
+
+  @Test
+  public void testFailingHistory() {
+    TestTerm term = new TestTerm(this);
+    term.readline.setHistoryStore(new RingHistory() {
+      @Override
+      public void add(int[] line) {
+        throw new IllegalStateException("History closed");
+      }
+    });
+    Supplier<String> line = term.readlineComplete();
+    term.read('a', 'b', 'c', '\r');
+    // The line is accepted without being added
+    assertEquals("abc", line.get());
+  }
+
+  private TestTerm searchTerm(String... entries) {
+    TestTerm term = new TestTerm(this);
+    term.readline.addFunction(new ReverseSearchHistory());
+    term.readline.addFunction(new ForwardSearchHistory());
+    for (String entry : entries) {
+      term.readline.history().add(Helper.toCodePoints(entry));
+    }
+    return term;
+  }
+
+  @Test
+  public void testReverseSearch() {
+    TestTerm term = searchTerm("git status", "ls -l", "git commit", "echo");
+    Supplier<String> line = term.readlineComplete();
+    term.setWidth(80);
+    term.read(18);
+    term.assertScreen("(reverse-i-search)`': ");
+    term.read('g', 'i');
+    term.assertScreen("(reverse-i-search)`gi': git commit");
+    term.assertAt(0, 24);
+    term.read(18);
+    term.assertScreen("(reverse-i-search)`gi': git status");
+    term.read(18);
+    term.assertScreen("(failed reverse-i-search)`gi': git status");
+    term.read(19);
+    term.assertScreen("(i-search)`gi': git commit");
+    term.read('\r');
+    term.assertScreen("% git commit");
+    assertEquals("git commit", line.get());
+  }
+
+  @Test
+  public void testReverseSearchNarrowing() {
+    TestTerm term = searchTerm("git status", "ls -l", "git commit");
+    term.readlineComplete();
+    term.setWidth(80);
+    term.read(18, 's');
+    term.assertScreen("(reverse-i-search)`s': ls -l");
+    term.read('t');
+    term.assertScreen("(reverse-i-search)`st': git status");
+    term.read('x');
+    term.assertScreen("(failed reverse-i-search)`stx': git status");
+    term.read(127);
+    term.assertScreen("(reverse-i-search)`st': git status");
+    term.read(127);
+    term.assertScreen("(reverse-i-search)`s': ls -l");
+    term.read(127);
+    term.assertScreen("(reverse-i-search)`': ");
+  }
+
+  @Test
+  public void testReverseSearchExit() {
+    TestTerm term = searchTerm("git status", "ls -l");
+    term.readlineComplete();
+    term.read('a', 'b');
+    term.read(18, 'l', 's');
+    // Editing ends the search
+    term.read(Keys.CTRL_E.sequence);
+    term.assertScreen("% ls -l");
+    term.assertAt(0, 7);
+    term.read(Keys.DOWN.sequence);
+    term.assertScreen("% ab");
+  }
+
+  @Test
+  public void testReverseSearchAbort() {
+    TestTerm term = searchTerm("git status");
+    term.readlineComplete();
+    term.read('a', 'b');
+    term.read(18, 'g');
+    term.assertScreen("(reverse-i-search)`g': git status");
+    term.read(7);
+    term.assertScreen("% ab");
+    term.assertAt(0, 4);
+  }
 }
@@ -3,6 +3,8 @@ package io.termd.core.readline;
 import io.termd.core.util.Vector;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.*;
 
 /**
@@ -340,4 +342,76 @@ public class LineBufferTest {
     buffer.update(to, screen, 2);
     screen.assertCodePoints("abcde").assertEmpty();
   }
+
+  @Test
+  public void testEditAroundCursor() {
+    LineBuffer buffer = new LineBuffer(4);
+    buffer.insert("abcdef");
+    buffer.setCursor(2);
+    buffer.insert('X');
+    buffer.moveCursor(2);
+    buffer.insert('Y', 'Z');
+    assertEquals("abXcdYZef", buffer.toString());
+    assertEquals(7, buffer.getCursor());
+    buffer.setCursor(1);
+    assertEquals(2, buffer.delete(2));
+    assertEquals("acdYZef", buffer.toString());
+    buffer.setCursor(5);
+    assertEquals(1, buffer.delete(-1));
+    assertEquals("acdYef", buffer.toString());
+    assertEquals('Y', buffer.getAt(3));
+    assertEquals('f', buffer.getAt(5));
+    assertEquals("[97, 99, 100, 89, 101, 102]", Arrays.toString(buffer.toArray()));
+    assertEquals(new Vector(0, 1), buffer.getPosition(4, 4));
+    assertEquals(4, buffer.getCursor());
+    LineBuffer copy = buffer.copy();
+    copy.insert('!');
+    assertEquals("acdY!ef", copy.toString());
+    assertEquals("acdYef", buffer.toString());
+  }
+
+  @Test
+  public void testSetSizeAfterGap() {
+    LineBuffer buffer = new LineBuffer();
+    buffer.insert('a', 'b', 'c', 'd', 'e');
+    buffer.setCursor(1);
+    buffer.insert('x');
+    buffer.setSize(4);
+    assertEquals("axbc", buffer.toString());
+    assertEquals(2, buffer.getCursor());
+    buffer.setSize(10);
+    assertEquals(4, buffer.getSize());
+    buffer.insert('y');
+    assertEquals("axybc", buffer.toString());
+  }
+
+  @Test
+  public void testInsertSlice() {
+    LineBuffer buffer = new LineBuffer(2);
+    int[] text = new int[10000];
+    for (int i = 0;i < text.length;i++) {
+      text[i] = 'a' + (i % 26);
+    }
+    buffer.insert('<', '>');
+    buffer.setCursor(1);
+    buffer.insert(text, 1, text.length - 1);
+    assertEquals(text.length + 1, buffer.getSize());
+    assertEquals(text.length, buffer.getCursor());
+    assertEquals('<', buffer.getAt(0));
+    assertEquals('b', buffer.getAt(1));
+    assertEquals('>', buffer.getAt(text.length));
+  }
+
+  @Test
+  public void testInsertSliceIsChecked() {
+    LineBuffer buffer = new LineBuffer();
+    buffer.insert('a');
+    try {
+      buffer.insert('b', 7, 'c');
+      fail();
+    } catch (IllegalArgumentException ignore) {
+    }
+    assertEquals("a", buffer.toString());
+    assertEquals(1, buffer.getCursor());
+  }
 }
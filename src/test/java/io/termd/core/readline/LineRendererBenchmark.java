@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.readline;
+
+import io.termd.core.function.Consumer;
+import io.termd.core.io.CodePointSink;
+import io.termd.core.util.Helper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures typing a char in a long line and erasing it with the {@link LineRenderer} compared to the previous
+ * refresh that diffed two copies of the whole line.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineRendererBenchmark {
+
+  private static final int WIDTH = 80;
+  private static final int[] PROMPT = Helper.toCodePoints("% ");
+  private static final int[] CHAR = { 'x' };
+
+  @Param({"1024", "10240", "102400"})
+  public int size;
+
+  @Param({"end", "middle"})
+  public String position;
+
+  private int cursor;
+  private LineBuffer buffer;
+  private LineRenderer renderer;
+  private LineBuffer legacyBuffer;
+  private CodePointSink out;
+
+  @Setup
+  public void setup(final Blackhole blackhole) {
+    int[] line = new int[size];
+    for (int i = 0;i < size;i++) {
+      line[i] = 'a' + i % 26;
+    }
+    cursor = "end".equals(position) ? size : size / 2;
+    buffer = new LineBuffer().insert(line).setCursor(cursor);
+    renderer = new LineRenderer();
+    renderer.reset(PROMPT, buffer, WIDTH);
+    legacyBuffer = new LineBuffer().insert(line).setCursor(cursor);
+    out = new CodePointSink() {
+      @Override
+      public void accept(int[] codePoints, int offset, int length) {
+        blackhole.consume(codePoints[offset + length - 1]);
+      }
+      @Override
+      public void accept(int[] codePoints) {
+        blackhole.consume(codePoints);
+      }
+    };
+  }
+
+  @Benchmark
+  public void renderer() {
+    renderer.replace(buffer, cursor, 0, CHAR, 0, 1, cursor + 1, WIDTH, out);
+    renderer.replace(buffer, cursor, 1, CHAR, 0, 0, cursor, WIDTH, out);
+  }
+
+  @Benchmark
+  public void legacy() {
+    LineBuffer update = legacyBuffer.copy();
+    update.insert(CHAR);
+    legacyRefresh(update);
+    update = legacyBuffer.copy();
+    update.delete(-1);
+    legacyRefresh(update);
+  }
+
+  /**
+   * The refresh implementation before the introduction of the {@link LineRenderer}.
+   */
+  private void legacyRefresh(LineBuffer update) {
+    LineBuffer copy3 = new LineBuffer(update.getCapacity());
+    final List<Integer> codePoints = new LinkedList<Integer>();
+    copy3.insert(PROMPT);
+    copy3.insert(legacyBuffer.toArray());
+    copy3.setCursor(PROMPT.length + legacyBuffer.getCursor());
+    LineBuffer copy2 = new LineBuffer(copy3.getCapacity());
+    copy2.insert(PROMPT);
+    copy2.insert(update.toArray());
+    copy2.setCursor(PROMPT.length + update.getCursor());
+    copy3.update(copy2, new Consumer<int[]>() {
+      @Override
+      public void accept(int[] data) {
+        for (int cp : data) {
+          codePoints.add(cp);
+        }
+      }
+    }, WIDTH);
+    out.accept(Helper.convert(codePoints));
+    legacyBuffer.clear();
+    legacyBuffer.insert(update.toArray());
+    legacyBuffer.setCursor(update.getCursor());
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(LineRendererBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.readline;
+
+import io.termd.core.function.Consumer;
+import io.termd.core.util.Helper;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class LineRendererTest {
+
+  private static final int[] PROMPT = Helper.toCodePoints("% ");
+
+  private static void insert(LineRenderer renderer, LineBuffer buffer, String s, int width, Consumer<int[]> out) {
+    int[] codePoints = Helper.toCodePoints(s);
+    int cursor = buffer.getCursor();
+    renderer.replace(buffer, cursor, 0, codePoints, 0, codePoints.length, cursor + codePoints.length, width, out);
+  }
+
+  @Test
+  public void testInsertAtEnd() {
+    TestTerminal screen = new TestTerminal();
+    LineRenderer renderer = new LineRenderer();
+    LineBuffer buffer = new LineBuffer();
+    renderer.reset(PROMPT, buffer, 20);
+    insert(renderer, buffer, "a", 20, screen);
+    insert(renderer, buffer, "bc", 20, screen);
+    screen.assertCodePoints("abc").assertEmpty();
+    assertEquals("abc", buffer.toString());
+    assertEquals(3, buffer.getCursor());
+  }
+
+  @Test
+  public void testInsertInMiddle() {
+    TestTerminal screen = new TestTerminal();
+    LineRenderer renderer = new LineRenderer();
+    LineBuffer buffer = new LineBuffer().insert("abc").setCursor(1);
+    renderer.reset(PROMPT, buffer, 20);
+    insert(renderer, buffer, "X", 20, screen);
+    screen.assertCodePoints("Xbc\b\b").assertEmpty();
+    assertEquals("aXbc", buffer.toString());
+    assertEquals(2, buffer.getCursor());
+  }
+
+  @Test
+  public void testReplaceSameLength() {
+    TestTerminal screen = new TestTerminal();
+    LineRenderer renderer = new LineRenderer();
+    LineBuffer buffer = new LineBuffer().insert("abcdef");
+    renderer.reset(PROMPT, buffer, 20);
+    renderer.replace(buffer, 2, 1, new int[]{'X'}, 0, 1, 6, 20, screen);
+    screen.assertCodePoints("\b\b\b\bX\033[3C").assertEmpty();
+    assertEquals("abXdef", buffer.toString());
+  }
+
+  @Test
+  public void testReplacePrompt() {
+    TestTerminal screen = new TestTerminal();
+    LineRenderer renderer = new LineRenderer();
+    LineBuffer buffer = new LineBuffer().insert("abcdefgh");
+    renderer.reset(PROMPT, buffer, 6);
+    renderer.replace(Helper.toCodePoints("> "), buffer, new LineBuffer().insert("xy").setCursor(1), 6, screen);
+    screen.assertCodePoints("\033[A\r> xy\033[K\033[B\r\033[K\033[A\033[3C").assertEmpty();
+    assertEquals("xy", buffer.toString());
+    assertEquals(1, buffer.getCursor());
+  }
+
+  @Test
+  public void testMoveCursor() {
+    TestTerminal screen = new TestTerminal();
+    LineRenderer renderer = new LineRenderer();
+    LineBuffer buffer = new LineBuffer().insert("abcdef");
+    renderer.reset(PROMPT, buffer, 4);
+    renderer.replace(buffer, 0, 0, new int[0], 0, 0, 0, 4, screen);
+    screen.assertCodePoints("\033[2A\033[2C").assertEmpty();
+    renderer.replace(buffer, 0, 0, new int[0], 0, 0, 1, 4, screen);
+    screen.assertCodePoints("\033[C").assertEmpty();
+    renderer.replace(buffer, 0, 0, new int[0], 0, 0, 6, 4, screen);
+    screen.assertCodePoints("\033[2B\r").assertEmpty();
+  }
+
+  @Test
+  public void testPendingWrap() {
+    TestTerminal screen = new TestTerminal();
+    LineRenderer renderer = new LineRenderer();
+    LineBuffer buffer = new LineBuffer();
+    renderer.reset(PROMPT, buffer, 5);
+    insert(renderer, buffer, "abc", 5, screen);
+    screen.assertCodePoints("abc \r").assertEmpty();
+    insert(renderer, buffer, "d", 5, screen);
+    screen.assertCodePoints("d").assertEmpty();
+  }
+
+  @Test
+  public void testPendingWrapBeforeNextChar() {
+    TestTerminal screen = new TestTerminal();
+    LineRenderer renderer = new LineRenderer();
+    LineBuffer buffer = new LineBuffer().insert("abcd").setCursor(2);
+    renderer.reset(PROMPT, buffer, 5);
+    renderer.replace(buffer, 2, 1, new int[]{'X'}, 0, 1, 3, 5, screen);
+    // The char following the wrap is printed again to leave the pending wrap state
+    screen.assertCodePoints("Xd\b").assertEmpty();
+    assertEquals("abXd", buffer.toString());
+  }
+
+  @Test
+  public void testDeleteErasesRows() {
+    TestTerminal screen = new TestTerminal();
+    LineRenderer renderer = new LineRenderer();
+    LineBuffer buffer = new LineBuffer().insert("abcdefghij").setCursor(1);
+    renderer.reset(PROMPT, buffer, 4);
+    renderer.replace(buffer, 1, 6, new int[0], 0, 0, 1, 4, screen);
+    screen.assertCodePoints("hij\033[K\033[B\r\033[K\033[B\033[K\033[3A\033[3C").assertEmpty();
+    assertEquals("ahij", buffer.toString());
+  }
+
+  @Test
+  public void testNewLine() {
+    TestTerminal screen = new TestTerminal();
+    LineRenderer renderer = new LineRenderer();
+    LineBuffer buffer = new LineBuffer().insert("ab\ncd").setCursor(2);
+    renderer.reset(PROMPT, buffer, 20);
+    renderer.replace(buffer, 2, 1, new int[0], 0, 0, 2, 20, screen);
+    screen.assertCodePoints("cd\033[K\033[B\r\033[K\033[A\033[4C").assertEmpty();
+    assertEquals("abcd", buffer.toString());
+  }
+
+  @Test
+  public void testRedraw() {
+    TestTerminal screen = new TestTerminal();
+    LineRenderer renderer = new LineRenderer();
+    LineBuffer buffer = new LineBuffer().insert("abc").setCursor(1);
+    renderer.redraw(PROMPT, buffer, 20, screen);
+    screen.assertCodePoints("% abc\b\b").assertEmpty();
+  }
+
+  @Test
+  public void testSingleWrite() {
+    final List<int[]> writes = new ArrayList<int[]>();
+    Consumer<int[]> out = new Consumer<int[]>() {
+      @Override
+      public void accept(int[] codePoints) {
+        writes.add(codePoints);
+      }
+    };
+    LineRenderer renderer = new LineRenderer();
+    LineBuffer buffer = new LineBuffer().insert("abcdefghij").setCursor(1);
+    renderer.reset(PROMPT, buffer, 4);
+    insert(renderer, buffer, "XYZ", 4, out);
+    assertEquals(1, writes.size());
+  }
+}
@@ -5,6 +5,8 @@ import io.termd.core.function.BiConsumer;
 import io.termd.core.function.Consumer;
 import io.termd.core.function.Supplier;
 import io.termd.core.tty.TtyEvent;
+import io.termd.core.term.TermInfo;
+import io.termd.core.util.Helper;
 import io.termd.core.util.Vector;
 import org.junit.Test;
 
@@ -367,6 +369,42 @@ public class ReadlineTest extends TestBase {
     assertEquals("ab", line.get());
   }
 
+  @Test
+  public void testPaste() {
+    TestTerm term = new TestTerm(this);
+    Supplier<String> line = term.readlineComplete();
+    term.read('<', '>');
+    term.read(27, '[', 'D');
+    StringBuilder text = new StringBuilder();
+    for (int i = 0;i < 300;i++) {
+      text.append((char) ('a' + (i % 26)));
+    }
+    int[] paste = Helper.toCodePoints(text + "\r");
+    term.read(paste);
+    assertEquals("<" + text + ">", line.get());
+  }
+
+  @Test
+  public void testEditWrappedLine() {
+    TestTerm term = new TestTerm(this);
+    Supplier<String> line = term.readlineComplete();
+    term.setWidth(4);
+    term.read('a', 'b', 'c', 'd', 'e');
+    term.read(BACKWARD_KEY);
+    term.read(BACKWARD_KEY);
+    term.read(BACKWARD_KEY);
+    term.read('X', 'Y');
+    term.assertScreen("% ab", "XYcd", "e");
+    term.assertAt(1, 2);
+    term.read(BACKWARD_DELETE_KEY);
+    term.read(BACKWARD_DELETE_KEY);
+    term.read(BACKWARD_DELETE_KEY);
+    term.assertScreen("% ac", "de", "");
+    term.assertAt(0, 3);
+    term.read('\r');
+    assertEquals("acde", line.get());
+  }
+
   @Test
   public void testEventHandler() {
     TestTerm term = new TestTerm(this);
@@ -401,6 +439,54 @@ public class ReadlineTest extends TestBase {
     assertEquals(Collections.singletonList(null), lines);
   }
 
+  @Test
+  public void testReboundCtrlL() {
+    Keymap keymap = InputrcParser.create();
+    keymap.bindFunction("\\C-l", "insert-l");
+    TestTerm term = new TestTerm(this, keymap);
+    term.readline.addFunction(new Function() {
+      @Override
+      public String name() {
+        return "insert-l";
+      }
+      @Override
+      public void apply(Readline.Interaction interaction) {
+        LineBuffer buf = interaction.buffer().copy();
+        buf.insert('l');
+        interaction.refresh(buf);
+        interaction.resume();
+      }
+    });
+    Supplier<String> line = term.readlineComplete();
+    term.read('a', 12);
+    term.assertScreen("% al");
+    term.read('\r');
+    assertEquals("al", line.get());
+  }
+
+  @Test
+  public void testTerminalTypeDevice() {
+    TermInfo info = TermInfo.defaultInfo();
+    assertEquals("\033[3G", moveToBeginningOfLine(info, "xterm"));
+    assertEquals("\033[3G", moveToBeginningOfLine(info, "XTERM"));
+    assertEquals("\033[10D", moveToBeginningOfLine(info, "unknown"));
+    assertEquals("\033[10D", moveToBeginningOfLine(info, null));
+    // The ANSI sequences are used without a database
+    assertEquals("\033[10D", moveToBeginningOfLine(null, "xterm"));
+  }
+
+  private String moveToBeginningOfLine(TermInfo info, String terminalType) {
+    TestTerm term = new TestTerm(this);
+    term.readline.setTermInfo(info);
+    term.terminalType = terminalType;
+    term.readlineComplete();
+    term.read(Helper.toCodePoints("abcdefghij"));
+    term.output.setLength(0);
+    term.read(1);
+    term.assertAt(0, 2);
+    return term.output.toString();
+  }
+
   @Test
   public void testDeleteChar() {
     TestTerm term = new TestTerm(this);
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.readline;
+
+import io.termd.core.util.Helper;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class RingHistoryTest {
+
+  private static String get(History history, int index) {
+    return Helper.fromCodePoints(history.get(index));
+  }
+
+  private static void add(History history, String line) {
+    history.add(Helper.toCodePoints(line));
+  }
+
+  @Test
+  public void testAdd() {
+    RingHistory history = new RingHistory(3);
+    assertEquals(0, history.size());
+    add(history, "a");
+    add(history, "b");
+    assertEquals(2, history.size());
+    assertEquals("b", get(history, 0));
+    assertEquals("a", get(history, 1));
+    try {
+      history.get(2);
+      fail();
+    } catch (IndexOutOfBoundsException ignore) {
+    }
+  }
+
+  @Test
+  public void testEviction() {
+    RingHistory history = new RingHistory(3);
+    for (int i = 0;i < 10;i++) {
+      add(history, "" + i);
+    }
+    assertEquals(3, history.size());
+    assertEquals("9", get(history, 0));
+    assertEquals("8", get(history, 1));
+    assertEquals("7", get(history, 2));
+  }
+
+  @Test
+  public void testAddOldest() {
+    RingHistory history = new RingHistory(3);
+    add(history, "b");
+    assertTrue(history.addOldest(Helper.toCodePoints("a")));
+    add(history, "c");
+    assertFalse(history.addOldest(Helper.toCodePoints("z")));
+    assertEquals(3, history.size());
+    assertEquals("c", get(history, 0));
+    assertEquals("b", get(history, 1));
+    assertEquals("a", get(history, 2));
+    add(history, "d");
+    assertEquals(3, history.size());
+    assertEquals("b", get(history, 2));
+  }
+
+  @Test
+  public void testSnapshot() {
+    RingHistory history = new RingHistory(3);
+    add(history, "a");
+    add(history, "b");
+    History snapshot = history.snapshot();
+    add(history, "c");
+    assertEquals(2, snapshot.size());
+    assertEquals("b", get(snapshot, 0));
+    assertEquals("a", get(snapshot, 1));
+    add(history, "d");
+    // a is evicted
+    assertEquals("b", get(snapshot, 0));
+    assertEquals("", get(snapshot, 1));
+    try {
+      add(snapshot, "e");
+      fail();
+    } catch (UnsupportedOperationException ignore) {
+    }
+  }
+
+  @Test
+  public void testConcurrentAdd() throws Exception {
+    final RingHistory history = new RingHistory(100);
+    final int threads = 8;
+    final int count = 1000;
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] workers = new Thread[threads];
+    for (int i = 0;i < threads;i++) {
+      final int id = i;
+      workers[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int j = 0;j < count;j++) {
+            add(history, id + ":" + j);
+          }
+        }
+      };
+      workers[i].start();
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    assertEquals(100, history.size());
+    Set<String> entries = new HashSet<String>();
+    for (int i = 0;i < history.size();i++) {
+      String entry = get(history, i);
+      assertTrue(entry.matches("[0-7]:[0-9]+"));
+      assertTrue(entries.add(entry));
+    }
+  }
+}
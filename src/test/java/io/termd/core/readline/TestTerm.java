@@ -37,6 +37,7 @@ import io.termd.core.tty.TtyConnection;
 import io.termd.core.tty.TtyConnectionSupport;
 import io.termd.core.tty.TtyEvent;
 import io.termd.core.tty.TtyOutputMode;
+import io.termd.core.util.Helper;
 import io.termd.core.util.Vector;
 
 import java.nio.charset.Charset;
@@ -60,9 +61,12 @@ class TestTerm {
   private int acc = -1;
   private int bell;
   private int width = 40;
+  String terminalType = "xterm";
+  final StringBuilder output = new StringBuilder();
   Consumer<int[]> writeHandler = new Consumer<int[]>() {
     @Override
     public void accept(int[] event) {
+      Helper.appendCodePoints(event, output);
       for (int i : event) {
         if (buffer[row] == null) {
           buffer[row] = new int[100];
@@ -107,6 +111,17 @@ class TestTerm {
                 acc = acc * 10 + (i - '0');
               }
             } else {
+              switch (i) {
+                case 'A':
+                case 'B':
+                case 'C':
+                case 'D':
+                  if (acc == -1) {
+                    // The default parameter value
+                    acc = 1;
+                  }
+                  break;
+              }
               switch (i) {
                 case 'A':
                   while (acc-- > 0 && row > 0) {
@@ -128,6 +143,10 @@ class TestTerm {
                     backward();
                   }
                   break;
+                case 'G':
+                  // The column is one based
+                  cursor = acc == -1 ? 0 : acc - 1;
+                  break;
                 case 'K': {
                   if (acc != -1) {
                     throw new UnsupportedOperationException("Not yet implemented");
@@ -194,7 +213,7 @@ class TestTerm {
 
     @Override
     public String terminalType() {
-      return "xterm";
+      return terminalType;
     }
 
     @Override
@@ -257,7 +276,8 @@ class TestTerm {
 
     @Override
     public void schedule(Runnable task, long delay, TimeUnit unit) {
-      throw new UnsupportedOperationException();
+      // The delay is elapsed when the tasks are executed
+      tasks.add(task);
     }
 
     @Override
@@ -277,8 +297,11 @@ class TestTerm {
   };
 
   public TestTerm(TestBase test) {
+    this(test, InputrcParser.create());
+  }
+
+  public TestTerm(TestBase test, Keymap keymap) {
     this.readlineTest = test;
-    Keymap keymap = InputrcParser.create();
     readline = new Readline(keymap);
     readline.addFunction(new BackwardDeleteChar());
     readline.addFunction(new BackwardChar());
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014 Julien Viet
+ *
+ * Julien Viet licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package io.termd.core.ssh.netty;
+
+import com.jcraft.jsch.ChannelShell;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.Session;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ResourceLeakDetector;
+import io.termd.core.function.Consumer;
+import io.termd.core.tty.TtyConnection;
+import io.termd.core.tty.netty.NettyTransport;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Echo data over many concurrent ssh sessions and check that the inbound and outbound buffers are all released.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class NettyIoSessionStressTest {
+
+  private static final int SESSIONS = 32;
+  private static final int BLOCKS = 50;
+  private static final int BLOCK_SIZE = 1024;
+
+  private static ResourceLeakDetector.Level level;
+
+  @BeforeClass
+  public static void enableLeakDetection() {
+    level = ResourceLeakDetector.getLevel();
+    ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+  }
+
+  @AfterClass
+  public static void restoreLeakDetection() {
+    ResourceLeakDetector.setLevel(level);
+  }
+
+  @Test
+  public void testConcurrentSessions() throws Throwable {
+    // No thread caches, so the released buffers are returned to the arenas
+    PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 2, 2, 8192, 11, 0, 0, false);
+    NettyTransport transport = new NettyTransport().setWorkerThreads(4).setAllocator(allocator);
+    // JSch fails to verify some DSA signatures, the default host key algorithm, so use an RSA host key
+    SimpleGeneratorHostKeyProvider hostKey = new SimpleGeneratorHostKeyProvider();
+    hostKey.setAlgorithm("RSA");
+    hostKey.setKeySize(2048);
+    final int port = freePort();
+    NettySshTtyBootstrap bootstrap = new NettySshTtyBootstrap()
+        .setHost("localhost")
+        .setPort(port)
+        .setKeyPairProvider(hostKey)
+        .setTransport(transport);
+    ExecutorService clients = Executors.newFixedThreadPool(SESSIONS);
+    try {
+      bootstrap.start(new Consumer<TtyConnection>() {
+        @Override
+        public void accept(final TtyConnection conn) {
+          conn.setStdinHandler(new Consumer<int[]>() {
+            @Override
+            public void accept(int[] codePoints) {
+              conn.stdoutHandler().accept(codePoints);
+            }
+          });
+        }
+      }).get(10, TimeUnit.SECONDS);
+      final JSch jsch = new JSch();
+      List<Future<Void>> results = new ArrayList<Future<Void>>();
+      for (int i = 0;i < SESSIONS;i++) {
+        final int index = i;
+        results.add(clients.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            echo(jsch, port, index);
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> result : results) {
+        result.get(2, TimeUnit.MINUTES);
+      }
+    } finally {
+      clients.shutdownNow();
+      bootstrap.stop().get(10, TimeUnit.SECONDS);
+      transport.shutdownGracefully().sync();
+    }
+    assertEquals(0, activeAllocations(allocator.metric().directArenas()));
+    assertEquals(0, activeAllocations(allocator.metric().heapArenas()));
+  }
+
+  private static int freePort() throws Exception {
+    ServerSocket socket = new ServerSocket(0);
+    try {
+      return socket.getLocalPort();
+    } finally {
+      socket.close();
+    }
+  }
+
+  private static void echo(JSch jsch, int port, int index) throws Exception {
+    Session session = jsch.getSession("whatever", "localhost", port);
+    session.setPassword("whocares");
+    session.setConfig("StrictHostKeyChecking", "no");
+    session.setConfig("server_host_key", "ssh-rsa");
+    session.connect();
+    try {
+      ChannelShell channel = (ChannelShell) session.openChannel("shell");
+      channel.connect();
+      InputStream in = channel.getInputStream();
+      OutputStream out = channel.getOutputStream();
+      byte[] block = new byte[BLOCK_SIZE];
+      byte[] received = new byte[BLOCK_SIZE];
+      for (int i = 0;i < BLOCKS;i++) {
+        for (int j = 0;j < block.length;j++) {
+          block[j] = (byte) ('a' + (index + i + j) % 26);
+        }
+        out.write(block);
+        out.flush();
+        int len = 0;
+        while (len < received.length) {
+          int count = in.read(received, len, received.length - len);
+          if (count == -1) {
+            throw new AssertionError("Session " + index + " closed");
+          }
+          len += count;
+        }
+        assertArrayEquals(block, received);
+      }
+      channel.disconnect();
+    } finally {
+      session.disconnect();
+    }
+  }
+
+  private static long activeAllocations(List<PoolArenaMetric> arenas) {
+    long count = 0;
+    for (PoolArenaMetric arena : arenas) {
+      count += arena.numActiveAllocations();
+    }
+    return count;
+  }
+}
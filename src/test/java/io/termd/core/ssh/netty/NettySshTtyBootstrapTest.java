@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 Julien Viet
+ *
+ * Julien Viet licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package io.termd.core.ssh.netty;
+
+import com.jcraft.jsch.ChannelShell;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.Session;
+import io.termd.core.function.Consumer;
+import io.termd.core.tty.TtyConnection;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class NettySshTtyBootstrapTest {
+
+  @Test
+  public void testEventLoopConfinement() throws Throwable {
+    final BlockingQueue<Thread> threads = new ArrayBlockingQueue<Thread>(4);
+    NettySshTtyBootstrap bootstrap = new NettySshTtyBootstrap().setHost("localhost").setPort(5000);
+    bootstrap.start(new Consumer<TtyConnection>() {
+      @Override
+      public void accept(final TtyConnection conn) {
+        conn.setStdinHandler(new Consumer<int[]>() {
+          @Override
+          public void accept(int[] codePoints) {
+            threads.add(Thread.currentThread());
+            conn.execute(new Runnable() {
+              @Override
+              public void run() {
+                threads.add(Thread.currentThread());
+              }
+            });
+            conn.schedule(new Runnable() {
+              @Override
+              public void run() {
+                threads.add(Thread.currentThread());
+              }
+            }, 10, TimeUnit.MILLISECONDS);
+          }
+        });
+      }
+    }).get(10, TimeUnit.SECONDS);
+    try {
+      Session session = new JSch().getSession("whatever", "localhost", 5000);
+      session.setPassword("whocares");
+      session.setConfig("StrictHostKeyChecking", "no");
+      session.connect();
+      try {
+        ChannelShell channel = (ChannelShell) session.openChannel("shell");
+        channel.connect();
+        OutputStream out = channel.getOutputStream();
+        out.write('a');
+        out.flush();
+        Thread inputThread = threads.poll(10, TimeUnit.SECONDS);
+        assertNotNull(inputThread);
+        assertTrue(inputThread.getName().startsWith("nioEventLoopGroup"));
+        assertSame(inputThread, threads.poll(10, TimeUnit.SECONDS));
+        assertSame(inputThread, threads.poll(10, TimeUnit.SECONDS));
+      } finally {
+        session.disconnect();
+      }
+    } finally {
+      bootstrap.stop().get(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void testExecuteAfterDisconnect() throws Throwable {
+    final BlockingQueue<TtyConnection> connections = new ArrayBlockingQueue<TtyConnection>(1);
+    // JSch fails to verify some DSA signatures, the default host key algorithm, so use an RSA host key
+    SimpleGeneratorHostKeyProvider hostKey = new SimpleGeneratorHostKeyProvider();
+    hostKey.setAlgorithm("RSA");
+    hostKey.setKeySize(2048);
+    NettySshTtyBootstrap bootstrap = new NettySshTtyBootstrap().setHost("localhost").setPort(5000).setKeyPairProvider(hostKey);
+    bootstrap.start(new Consumer<TtyConnection>() {
+      @Override
+      public void accept(TtyConnection conn) {
+        connections.add(conn);
+      }
+    }).get(10, TimeUnit.SECONDS);
+    try {
+      Session session = new JSch().getSession("whatever", "localhost", 5000);
+      session.setPassword("whocares");
+      session.setConfig("StrictHostKeyChecking", "no");
+      session.connect();
+      ChannelShell channel = (ChannelShell) session.openChannel("shell");
+      channel.connect();
+      final TtyConnection conn = connections.poll(10, TimeUnit.SECONDS);
+      assertNotNull(conn);
+      session.disconnect();
+      // The output of a process keeps coming while and after the server notices the disconnection
+      int count = 50;
+      final CountDownLatch executed = new CountDownLatch(count * 2);
+      for (int i = 0;i < count;i++) {
+        conn.execute(new Runnable() {
+          @Override
+          public void run() {
+            conn.write("hello");
+            executed.countDown();
+          }
+        });
+        conn.schedule(new Runnable() {
+          @Override
+          public void run() {
+            executed.countDown();
+          }
+        }, 1, TimeUnit.MILLISECONDS);
+        Thread.sleep(20);
+      }
+      assertTrue(executed.await(10, TimeUnit.SECONDS));
+    } finally {
+      bootstrap.stop().get(10, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.telnet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class TelnetConnectionTest {
+
+  private static class TestConnection extends TelnetConnection {
+    final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+    TestConnection() {
+      this(new TelnetHandler());
+    }
+    TestConnection(TelnetHandler handler) {
+      super(handler);
+    }
+    @Override
+    public void close() {
+    }
+    @Override
+    protected void execute(Runnable task) {
+      task.run();
+    }
+    @Override
+    protected void schedule(Runnable task, long delay, TimeUnit unit) {
+    }
+    @Override
+    protected void send(byte[] data) {
+      sent.write(data, 0, data.length);
+    }
+  }
+
+  @Test
+  public void testWriteSlice() {
+    TestConnection conn = new TestConnection();
+    conn.write(new byte[]{0, 1, -1, 2, 3}, 1, 3);
+    assertEquals("[1, -1, 2]", Arrays.toString(conn.sent.toByteArray()));
+  }
+
+  @Test
+  public void testWriteEscapeIac() {
+    TestConnection conn = new TestConnection();
+    conn.sendBinary = true;
+    conn.write(new byte[]{0, -1, 1, -1, -1, 2, -1}, 1, 6);
+    assertEquals("[-1, -1, 1, -1, -1, -1, -1, 2, -1, -1]", Arrays.toString(conn.sent.toByteArray()));
+  }
+
+  private static class RecordingHandler extends TelnetHandler {
+    final List<String> events = new ArrayList<String>();
+    @Override
+    protected void onData(byte[] data, int offset, int length) {
+      events.add("data" + Arrays.toString(Arrays.copyOfRange(data, offset, offset + length)));
+    }
+    @Override
+    protected void onCommand(byte command) {
+      events.add("command" + command);
+    }
+  }
+
+  @Test
+  public void testReceiveDataRun() {
+    RecordingHandler handler = new RecordingHandler();
+    TestConnection conn = new TestConnection(handler);
+    conn.receive(new byte[]{9, 0, 1, 2, 3, 4, 9}, 1, 5);
+    assertEquals(Arrays.asList("data[0, 1, 2, 3, 4]"), handler.events);
+  }
+
+  @Test
+  public void testReceiveDataSlice() {
+    final List<byte[]> arrays = new ArrayList<byte[]>();
+    TestConnection conn = new TestConnection(new TelnetHandler() {
+      @Override
+      protected void onData(byte[] data, int offset, int length) {
+        arrays.add(data);
+      }
+    });
+    byte[] data = {0, 1, 2, -1, -15, 3, 4};
+    conn.receive(data);
+    assertEquals(2, arrays.size());
+    assertSame(data, arrays.get(0));
+    assertSame(data, arrays.get(1));
+  }
+
+  @Test
+  public void testReceiveCommand() {
+    RecordingHandler handler = new RecordingHandler();
+    TestConnection conn = new TestConnection(handler);
+    conn.receive(new byte[]{0, 1, -1, -15, 2, -1, -1, 3});
+    assertEquals(Arrays.asList("data[0, 1]", "command-15", "data[2]", "command-1", "data[3]"), handler.events);
+  }
+
+  @Test
+  public void testReceiveSplitCommand() {
+    RecordingHandler handler = new RecordingHandler();
+    TestConnection conn = new TestConnection(handler);
+    conn.receive(new byte[]{0, -1});
+    conn.receive(new byte[]{-15, 1});
+    assertEquals(Arrays.asList("data[0]", "command-15", "data[1]"), handler.events);
+  }
+
+  @Test
+  public void testReceiveBinaryEscapedIac() {
+    RecordingHandler handler = new RecordingHandler();
+    TestConnection conn = new TestConnection(handler);
+    conn.receiveBinary = true;
+    conn.receive(new byte[]{0, -1, -1, 1, -1, -1, -1, -1, 2});
+    assertEquals(Arrays.asList("data[0, -1]", "data[1, -1]", "data[-1]", "data[2]"), handler.events);
+    handler.events.clear();
+    conn.receive(new byte[]{3, -1});
+    conn.receive(new byte[]{-1, 4, -1, -15, 5});
+    assertEquals(Arrays.asList("data[3]", "data[-1]", "data[4]", "command-15", "data[5]"), handler.events);
+  }
+
+  @Test
+  public void testReceiveParameters() {
+    final List<String> parameters = new ArrayList<String>();
+    RecordingHandler handler = new RecordingHandler();
+    TestConnection conn = new TestConnection(handler) {
+      @Override
+      protected void onOptionParameters(byte optionCode, byte[] params) {
+        parameters.add(optionCode + Arrays.toString(params));
+      }
+    };
+    conn.receive(new byte[]{0, -1, -6, 24, 0, 65});
+    conn.receive(new byte[]{-1, -1, 66, -1, -16, 1});
+    assertEquals(Arrays.asList("24[0, 65, -1, 66]"), parameters);
+    assertEquals(Arrays.asList("data[0]", "data[1]"), handler.events);
+  }
+
+  @Test
+  public void testCompressUnsupported() {
+    TestConnection conn = new TestConnection();
+    conn.receive(new byte[]{-1, -3, 86});
+    assertEquals("[-1, -4, 86]", Arrays.toString(conn.sent.toByteArray()));
+    assertFalse(conn.isCompressing());
+  }
+
+  @Test
+  public void testCompressNotOffered() {
+    TestConnection conn = new TestConnection() {
+      @Override
+      protected boolean startCompression(byte[] start) {
+        throw new AssertionError();
+      }
+    };
+    conn.receive(new byte[]{-1, -3, 86});
+    assertEquals("[-1, -4, 86]", Arrays.toString(conn.sent.toByteArray()));
+    assertFalse(conn.isCompressing());
+  }
+
+  @Test
+  public void testCompress() {
+    final List<String> events = new ArrayList<String>();
+    TestConnection conn = new TestConnection(new TelnetHandler() {
+      @Override
+      protected void onCompress(boolean compress) {
+        events.add("compress" + compress);
+      }
+    }) {
+      @Override
+      protected boolean startCompression(byte[] start) {
+        events.add("start" + Arrays.toString(start));
+        return true;
+      }
+      @Override
+      protected void stopCompression() {
+        events.add("stop");
+      }
+    };
+    conn.writeWillOption(Option.COMPRESS2);
+    conn.receive(new byte[]{-1, -3, 86});
+    assertTrue(conn.isCompressing());
+    conn.receive(new byte[]{-1, -3, 86});
+    conn.receive(new byte[]{-1, -2, 86});
+    assertFalse(conn.isCompressing());
+    conn.receive(new byte[]{-1, -2, 86});
+    assertEquals(Arrays.asList("start[-1, -6, 86, -1, -16]", "compresstrue", "stop", "compressfalse"), events);
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.telnet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures receiving a paste of plain data with a few telnet commands, the {@link TelnetConnection#receive(byte[])}
+ * scanning for {@code IAC} compared to the previous byte per byte state machine.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TelnetReceiveBenchmark {
+
+  @Param({"64", "4096", "65536"})
+  public int size;
+
+  private byte[] data;
+  private TelnetConnection conn;
+  private TelnetHandler handler;
+
+  // The state of the previous implementation
+  private byte[] pendingBuffer = new byte[256];
+  private int pendingLength;
+  private boolean iac;
+
+  @Setup
+  public void setup(final Blackhole blackhole) {
+    data = new byte[size];
+    for (int i = 0;i < size;i++) {
+      data[i] = (byte) ('a' + i % 26);
+    }
+    // A NOP command every 4096 bytes
+    for (int i = 4096;i < size;i += 4096) {
+      data[i - 2] = TelnetConnection.BYTE_IAC;
+      data[i - 1] = (byte) 241;
+    }
+    handler = new TelnetHandler() {
+      @Override
+      protected void onData(byte[] data) {
+        blackhole.consume(data);
+      }
+      @Override
+      protected void onData(byte[] data, int offset, int length) {
+        blackhole.consume(data[offset + length - 1]);
+      }
+      @Override
+      protected void onCommand(byte command) {
+        blackhole.consume(command);
+      }
+    };
+    conn = new TelnetConnection(handler) {
+      @Override
+      public void close() {
+      }
+      @Override
+      protected void execute(Runnable task) {
+      }
+      @Override
+      protected void schedule(Runnable task, long delay, TimeUnit unit) {
+      }
+      @Override
+      protected void send(byte[] data) {
+      }
+    };
+  }
+
+  @Benchmark
+  public void receive() {
+    conn.receive(data);
+  }
+
+  @Benchmark
+  public void legacy() {
+    // Netty buffer copy
+    byte[] copy = new byte[data.length];
+    System.arraycopy(data, 0, copy, 0, copy.length);
+    for (byte b : copy) {
+      if (iac) {
+        iac = false;
+        handler.onCommand(b);
+      } else if (b == TelnetConnection.BYTE_IAC) {
+        flush();
+        iac = true;
+      } else {
+        if (pendingLength >= pendingBuffer.length) {
+          flush();
+        }
+        pendingBuffer[pendingLength++] = b;
+      }
+    }
+    flush();
+  }
+
+  private void flush() {
+    if (pendingLength > 0) {
+      byte[] chunk = Arrays.copyOf(pendingBuffer, pendingLength);
+      pendingLength = 0;
+      handler.onData(chunk);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(TelnetReceiveBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.telnet.netty;
+
+import io.termd.core.function.Consumer;
+import io.termd.core.tty.TtyConnection;
+import io.termd.core.util.Helper;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the MCCP2 compression with a client inflating the stream after the {@code IAC SB COMPRESS2 IAC SE} sequence.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class NettyTelnetCompressionTest {
+
+  private static final byte IAC = (byte) 255;
+  private static final byte DO = (byte) 253;
+  private static final byte DONT = (byte) 254;
+  private static final byte WILL = (byte) 251;
+  private static final byte WONT = (byte) 252;
+  private static final byte SB = (byte) 250;
+  private static final byte SE = (byte) 240;
+  private static final byte COMPRESS2 = 86;
+
+  private static final String LINE = "The quick brown fox jumps over the lazy dog. ";
+
+  private NettyTelnetTtyBootstrap bootstrap;
+  private Socket socket;
+
+  private void start(boolean compress) throws Throwable {
+    bootstrap = new NettyTelnetTtyBootstrap().setHost("localhost").setPort(4000).setCompress(compress);
+    bootstrap.start(new Consumer<TtyConnection>() {
+      @Override
+      public void accept(final TtyConnection conn) {
+        conn.setStdinHandler(new Consumer<int[]>() {
+          @Override
+          public void accept(int[] keys) {
+            String s = Helper.fromCodePoints(keys);
+            if (s.equals("b")) {
+              StringBuilder big = new StringBuilder();
+              for (int i = 0;i < 1000;i++) {
+                big.append(LINE);
+              }
+              conn.write(big.toString());
+            }
+            conn.write("echo:" + s);
+          }
+        });
+      }
+    }).get(10, TimeUnit.SECONDS);
+    socket = new Socket("localhost", 4000);
+    socket.setSoTimeout(10000);
+  }
+
+  @After
+  public void after() throws Throwable {
+    if (socket != null) {
+      socket.close();
+    }
+    if (bootstrap != null) {
+      bootstrap.stop().get(10, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Counts the bytes received on the socket, the data is read byte per byte so the inflater never consumes the
+   * bytes after the end of the compressed stream.
+   */
+  private static class Counting extends FilterInputStream {
+    int count;
+    Counting(InputStream in) {
+      super(in);
+    }
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b != -1) {
+        count++;
+      }
+      return b;
+    }
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int c = read();
+      if (c == -1) {
+        return -1;
+      }
+      b[off] = (byte) c;
+      return 1;
+    }
+  }
+
+  private static void readUntil(InputStream in, byte... expected) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    while (true) {
+      int b = in.read();
+      if (b == -1) {
+        throw new EOFException("Was expecting " + Arrays.toString(expected) + " in " + Arrays.toString(buffer.toByteArray()));
+      }
+      buffer.write(b);
+      byte[] received = buffer.toByteArray();
+      if (received.length >= expected.length &&
+          Arrays.equals(expected, Arrays.copyOfRange(received, received.length - expected.length, received.length))) {
+        return;
+      }
+    }
+  }
+
+  private static String readUntil(InputStream in, String expected) throws IOException {
+    StringBuilder buffer = new StringBuilder();
+    while (buffer.indexOf(expected) == -1) {
+      int b = in.read();
+      if (b == -1) {
+        throw new EOFException("Was expecting " + expected + " in " + buffer);
+      }
+      buffer.append((char) b);
+    }
+    return buffer.toString();
+  }
+
+  private Counting negotiate(byte answer) throws IOException {
+    Counting in = new Counting(socket.getInputStream());
+    readUntil(in, IAC, WILL, COMPRESS2);
+    OutputStream out = socket.getOutputStream();
+    out.write(new byte[]{IAC, answer, COMPRESS2});
+    out.flush();
+    return in;
+  }
+
+  private void send(String s) throws IOException {
+    OutputStream out = socket.getOutputStream();
+    out.write(s.getBytes("US-ASCII"));
+    out.flush();
+  }
+
+  @Test
+  public void testCompress() throws Throwable {
+    start(true);
+    Counting in = negotiate(DO);
+    readUntil(in, IAC, SB, COMPRESS2, IAC, SE);
+    InputStream inflated = new InflaterInputStream(in, new Inflater(), 1);
+    send("a");
+    readUntil(inflated, "echo:a");
+    send("c");
+    readUntil(inflated, "echo:c");
+  }
+
+  @Test
+  public void testCompressionRatio() throws Throwable {
+    start(true);
+    Counting in = negotiate(DO);
+    readUntil(in, IAC, SB, COMPRESS2, IAC, SE);
+    InputStream inflated = new InflaterInputStream(in, new Inflater(), 1);
+    int before = in.count;
+    send("b");
+    String received = readUntil(inflated, "echo:b");
+    assertTrue(received.length() >= 1000 * LINE.length());
+    int compressed = in.count - before;
+    assertTrue("Was expecting " + compressed + " compressed bytes to be less than a tenth of " + received.length(),
+        compressed * 10 < received.length());
+  }
+
+  @Test
+  public void testStopCompression() throws Throwable {
+    start(true);
+    Counting in = negotiate(DO);
+    readUntil(in, IAC, SB, COMPRESS2, IAC, SE);
+    Inflater inflater = new Inflater();
+    InputStream inflated = new InflaterInputStream(in, inflater, 1);
+    send("a");
+    readUntil(inflated, "echo:a");
+    OutputStream out = socket.getOutputStream();
+    out.write(new byte[]{IAC, DONT, COMPRESS2});
+    out.flush();
+    // The end of the compressed stream
+    assertEquals(-1, inflated.read());
+    assertTrue(inflater.finished());
+    send("c");
+    readUntil(in, "echo:c");
+  }
+
+  @Test
+  public void testRefuseCompression() throws Throwable {
+    start(true);
+    Counting in = negotiate(DONT);
+    send("a");
+    String received = readUntil(in, "echo:a");
+    assertEquals(-1, received.indexOf((char) (SB & 0xFF)));
+  }
+
+  @Test
+  public void testCompressionDisabled() throws Throwable {
+    start(false);
+    Counting in = new Counting(socket.getInputStream());
+    send("a");
+    String received = readUntil(in, "echo:a");
+    assertEquals(-1, received.indexOf("" + (char) (WILL & 0xFF) + (char) COMPRESS2));
+  }
+
+  @Test
+  public void testUnsolicitedCompression() throws Throwable {
+    start(false);
+    Counting in = new Counting(socket.getInputStream());
+    OutputStream out = socket.getOutputStream();
+    out.write(new byte[]{IAC, DO, COMPRESS2});
+    out.flush();
+    readUntil(in, IAC, WONT, COMPRESS2);
+    send("a");
+    String received = readUntil(in, "echo:a");
+    assertEquals(-1, received.indexOf((char) (SB & 0xFF)));
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.term;
+
+import io.termd.core.io.ByteSink;
+import io.termd.core.io.CodePointSink;
+import io.termd.core.util.Helper;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class CompiledSequenceTest {
+
+  private static Sequence parse(String s) {
+    try {
+      TermInfoBuilder builder = new TermInfoBuilder();
+      new TermInfoParser("foo,\n seq=" + s + ",\n").parseDatabase(builder);
+      return (Sequence) builder.entries().get(0).features.get(0).value;
+    } catch (ParseException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static String eval(String s, int... params) {
+    return Helper.fromCodePoints(parse(s).compile().eval(params));
+  }
+
+  private static void assertEval(String expected, String s, int... params) {
+    TermInfoTest.assertSequenceEquals(expected, eval(s, params));
+  }
+
+  @Test
+  public void testLiteral() {
+    assertEval("\033[H\033[2J", "\\E[H\\E[2J");
+    assertEval("100%", "100%%");
+  }
+
+  @Test
+  public void testParameters() {
+    assertEval("\033[5;10H", "\\E[%i%p1%d;%p2%dH", 4, 9);
+    assertEval("\033[10;5H", "\\E[%i%p2%d;%p1%dH", 4, 9);
+    assertEval("\033[5G", "\\E[%i%p1%dG", 4);
+    try {
+      eval("%p2%d", 1);
+      fail();
+    } catch (IllegalArgumentException ignore) {
+    }
+  }
+
+  @Test
+  public void testPrintChar() {
+    assertEval("\033=% ", "\\E=%p1%' '%+%c%p2%' '%+%c", 5, 0);
+    assertEval("A", "%p1%c", 65);
+  }
+
+  @Test
+  public void testPrintf() {
+    assertEval("42", "%p1%d", 42);
+    assertEval("-42", "%p1%d", -42);
+    assertEval("007", "%p1%03d", 7);
+    assertEval("  7", "%p1%3d", 7);
+    assertEval("7  ", "%p1%:-3d", 7);
+    assertEval("+7", "%p1%:+d", 7);
+    assertEval(" 7", "%p1%: d", 7);
+    assertEval("007", "%p1%.3d", 7);
+    assertEval("ff", "%p1%x", 255);
+    assertEval("FF", "%p1%X", 255);
+    assertEval("0xff", "%p1%#x", 255);
+    assertEval("17", "%p1%o", 15);
+    assertEval("017", "%p1%#o", 15);
+    assertEval("12", "%p1%s", 12);
+  }
+
+  @Test
+  public void testArithmetic() {
+    assertEval("7", "%p1%p2%+%d", 3, 4);
+    assertEval("-1", "%p1%p2%-%d", 3, 4);
+    assertEval("12", "%p1%p2%*%d", 3, 4);
+    assertEval("3", "%p1%p2%/%d", 13, 4);
+    assertEval("1", "%p1%p2%m%d", 13, 4);
+    assertEval("0", "%p1%p2%/%d", 13, 0);
+    assertEval("13", "%{10}%p1%+%d", 3);
+  }
+
+  @Test
+  public void testBitAndLogical() {
+    assertEval("2", "%p1%p2%&%d", 6, 3);
+    assertEval("7", "%p1%p2%|%d", 6, 3);
+    assertEval("5", "%p1%p2%^%d", 6, 3);
+    assertEval("-7", "%p1%~%d", 6);
+    assertEval("1", "%p1%p2%=%d", 3, 3);
+    assertEval("1", "%p1%p2%>%d", 4, 3);
+    assertEval("0", "%p1%p2%<%d", 4, 3);
+    assertEval("1", "%p1%p2%A%d", 4, 3);
+    assertEval("0", "%p1%p2%A%d", 4, 0);
+    assertEval("1", "%p1%p2%O%d", 0, 3);
+    assertEval("1", "%p1%!%d", 0);
+  }
+
+  @Test
+  public void testVariables() {
+    assertEval("34", "%p1%Pa%p2%Pb%gb%d%ga%d", 4, 3);
+    assertEval("0", "%ga%d");
+  }
+
+  @Test
+  public void testIfThenElse() {
+    String setb = "\\E[4%?%p1%{1}%=%t4%e%p1%{3}%=%t6%e%p1%{4}%=%t1%e%p1%{6}%=%t3%e%p1%d%;m";
+    assertEval("\033[44m", setb, 1);
+    assertEval("\033[46m", setb, 3);
+    assertEval("\033[41m", setb, 4);
+    assertEval("\033[43m", setb, 6);
+    assertEval("\033[47m", setb, 7);
+    assertEval("ab", "a%?%p1%tb%;", 1);
+    assertEval("a", "a%?%p1%tb%;", 0);
+  }
+
+  @Test
+  public void testStrLen() {
+    try {
+      parse("%p1%l%d").compile();
+      fail();
+    } catch (IllegalArgumentException ignore) {
+    }
+  }
+
+  @Test
+  public void testSinks() {
+    CompiledSequence cup = parse("\\E[%i%p1%d;%p2%dH").compile();
+    final StringBuilder codePoints = new StringBuilder();
+    cup.eval(9, 19, new CodePointSink() {
+      @Override
+      public void accept(int[] data, int offset, int length) {
+        Helper.appendCodePoints(Arrays.copyOfRange(data, offset, offset + length), codePoints);
+      }
+      @Override
+      public void accept(int[] data) {
+        throw new AssertionError();
+      }
+    });
+    assertEquals("\033[10;20H", codePoints.toString());
+    final StringBuilder bytes = new StringBuilder();
+    cup.eval(0, 0, new ByteSink() {
+      @Override
+      public void accept(byte[] data, int offset, int length) {
+        for (int i = offset;i < offset + length;i++) {
+          bytes.append((char) data[i]);
+        }
+      }
+      @Override
+      public void accept(byte[] data) {
+        throw new AssertionError();
+      }
+    });
+    assertEquals("\033[1;1H", bytes.toString());
+  }
+
+  @Test
+  public void testEvalFromSink() {
+    final CompiledSequence inner = parse("%p1%d").compile();
+    CompiledSequence outer = parse("abc").compile();
+    final StringBuilder result = new StringBuilder();
+    outer.eval(new CodePointSink() {
+      @Override
+      public void accept(int[] data, int offset, int length) {
+        inner.eval(123, new CodePointSink() {
+          @Override
+          public void accept(int[] data, int offset, int length) {
+            Helper.appendCodePoints(Arrays.copyOfRange(data, offset, offset + length), result);
+          }
+          @Override
+          public void accept(int[] data) {
+          }
+        });
+        Helper.appendCodePoints(Arrays.copyOfRange(data, offset, offset + length), result);
+      }
+      @Override
+      public void accept(int[] data) {
+      }
+    });
+    assertEquals("123abc", result.toString());
+  }
+
+  @Test
+  public void testDeviceCache() {
+    Device device = new Device(Arrays.asList("foo"));
+    assertNull(device.getCompiledFeature(Capability.cursor_address));
+    device.addFeature(new Feature<Sequence>(Capability.cursor_address, parse("\\E[%i%p1%d;%p2%dH")));
+    CompiledSequence cup = device.getCompiledFeature(Capability.cursor_address);
+    assertSame(cup, device.getCompiledFeature(Capability.cursor_address));
+    device.addFeature(new Feature<Sequence>(Capability.cursor_address, parse("\\E[%p1%d;%p2%dH")));
+    assertNotSame(cup, device.getCompiledFeature(Capability.cursor_address));
+  }
+
+  @Test
+  public void testInterpreted() {
+    // The compiled sequences evaluate like the interpreted sequences
+    String[] params = {"3", "5", "7", "11", "13", "17", "19", "23", "29"};
+    int[] intParams = {3, 5, 7, 11, 13, 17, 19, 23, 29};
+    int count = 0;
+    for (Device device : TermInfo.defaultInfo().devices()) {
+      for (Feature<?> feature : device.getFeatures()) {
+        if (feature.value instanceof Sequence) {
+          Sequence seq = (Sequence) feature.value;
+          String expected;
+          try {
+            expected = seq.eval(params.clone());
+          } catch (Exception e) {
+            continue;
+          }
+          CompiledSequence compiled;
+          try {
+            compiled = seq.compile();
+          } catch (IllegalArgumentException e) {
+            continue;
+          }
+          assertEquals(device.name + " " + feature, Helper.escape(expected), Helper.escape(Helper.fromCodePoints(compiled.eval(intParams))));
+          count++;
+        }
+      }
+    }
+    assertTrue(count > 100000);
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.term;
+
+import io.termd.core.io.CodePointSink;
+import io.termd.core.util.Helper;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class CursorMotionTest {
+
+  private static String move(CursorMotion motion, int fromCol, int fromRow, int toCol, int toRow) {
+    final StringBuilder sb = new StringBuilder();
+    motion.move(fromCol, fromRow, toCol, toRow, new CodePointSink() {
+      @Override
+      public void accept(int[] codePoints, int offset, int length) {
+        for (int i = offset;i < offset + length;i++) {
+          sb.appendCodePoint(codePoints[i]);
+        }
+      }
+      @Override
+      public void accept(int[] codePoints) {
+        accept(codePoints, 0, codePoints.length);
+      }
+    });
+    return sb.toString();
+  }
+
+  private static void assertMove(String expected, CursorMotion motion, int fromCol, int fromRow, int toCol, int toRow) {
+    TermInfoTest.assertSequenceEquals(expected, move(motion, fromCol, fromRow, toCol, toRow));
+  }
+
+  @Test
+  public void testAnsi() {
+    CursorMotion motion = CursorMotion.ANSI;
+    assertMove("", motion, 5, 2, 5, 2);
+    assertMove("\033[C", motion, 5, 0, 6, 0);
+    assertMove("\033[10C", motion, 0, 0, 10, 0);
+    assertMove("\b\b", motion, 5, 0, 3, 0);
+    assertMove("\033[7D", motion, 15, 0, 8, 0);
+    assertMove("\r", motion, 50, 0, 0, 0);
+    assertMove("\r\033[C", motion, 50, 0, 1, 0);
+    assertMove("\033[A", motion, 3, 1, 3, 0);
+    assertMove("\033[3B", motion, 3, 0, 3, 3);
+    assertMove("\033[2A\r", motion, 79, 2, 0, 0);
+  }
+
+  @Test
+  public void testDevice() {
+    CursorMotion motion = CursorMotion.create(TermInfo.defaultInfo().getDevice("xterm"));
+    assertMove("\033[6G", motion, 70, 0, 5, 0);
+    assertMove("\b", motion, 70, 0, 69, 0);
+    assertMove("\r", motion, 70, 0, 0, 0);
+    assertMove("\033[C", motion, 70, 0, 71, 0);
+    assertMove("\033[A", motion, 3, 1, 3, 0);
+    // The cud1 line feed is not used
+    assertMove("\033[1B", motion, 3, 0, 3, 1);
+  }
+
+  @Test
+  public void testCost() {
+    CursorMotion[] motions = {CursorMotion.ANSI, CursorMotion.create(TermInfo.defaultInfo().getDevice("xterm"))};
+    Random random = new Random(0);
+    for (CursorMotion motion : motions) {
+      for (int i = 0;i < 1000;i++) {
+        int fromCol = random.nextInt(200), fromRow = random.nextInt(50);
+        int toCol = random.nextInt(200), toRow = random.nextInt(50);
+        String seq = move(motion, fromCol, fromRow, toCol, toRow);
+        assertEquals(Helper.escape(seq), Helper.toCodePoints(seq).length, motion.cost(fromCol, fromRow, toCol, toRow));
+        int naive = Math.abs(toRow - fromRow) * 4 + Math.abs(toCol - fromCol) * (toCol > fromCol ? 4 : 1);
+        assertTrue(seq.length() <= naive);
+      }
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.term;
+
+import io.termd.core.io.CodePointSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the evaluation of the xterm {@code cup} and {@code setaf} capabilities, interpreted with string
+ * parameters compared to compiled with integer parameters.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequenceEvalBenchmark {
+
+  private Sequence cup;
+  private Sequence setaf;
+  private CompiledSequence compiledCup;
+  private CompiledSequence compiledSetaf;
+  private CodePointSink out;
+  private int row;
+
+  @Setup
+  public void setup(final Blackhole blackhole) {
+    Device xterm = TermInfo.defaultInfo().getDevice("xterm");
+    cup = xterm.getFeature(Capability.cursor_address);
+    setaf = xterm.getFeature(Capability.set_a_foreground);
+    compiledCup = xterm.getCompiledFeature(Capability.cursor_address);
+    compiledSetaf = xterm.getCompiledFeature(Capability.set_a_foreground);
+    out = new CodePointSink() {
+      @Override
+      public void accept(int[] codePoints, int offset, int length) {
+        blackhole.consume(codePoints[offset + length - 1]);
+      }
+      @Override
+      public void accept(int[] codePoints) {
+        blackhole.consume(codePoints);
+      }
+    };
+  }
+
+  @Benchmark
+  public String interpretedCup() {
+    row = (row + 1) & 63;
+    return cup.eval(Integer.toString(row), "40");
+  }
+
+  @Benchmark
+  public void compiledCup() {
+    row = (row + 1) & 63;
+    compiledCup.eval(row, 40, out);
+  }
+
+  @Benchmark
+  public String interpretedSetaf() {
+    row = (row + 1) & 255;
+    return setaf.eval(Integer.toString(row));
+  }
+
+  @Benchmark
+  public void compiledSetaf() {
+    row = (row + 1) & 255;
+    compiledSetaf.eval(row, out);
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(SequenceEvalBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.term;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class TermInfoCompilerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static CompiledTermInfo compile(String s) throws Exception {
+    return new CompiledTermInfo(ByteBuffer.wrap(TermInfoCompiler.compile(new StringReader(s))));
+  }
+
+  @Test
+  public void testCompile() throws Exception {
+    TermInfo info = compile(
+        "a|the a,\n" +
+            " bw, cols#80, cuf=\\E[%p1%dC,\n" +
+            "b|b1|b2|the b,\n" +
+            " use=a, am,\n" +
+            "c,\n" +
+            " use=a, bw@, cols#132,\n");
+    Device a = info.getDevice("a");
+    assertEquals("a", a.name);
+    assertEquals("the a", a.longname);
+    assertTrue(a.getFeature(Capability.auto_left_margin));
+    assertEquals(80, (int) a.getFeature(Capability.columns));
+    assertEquals("\033[5C", a.getFeature(Capability.parm_right_cursor).eval("5"));
+    Device b = info.getDevice("b1");
+    assertSame(b, info.getDevice("b"));
+    assertSame(b, info.getDevice("b2"));
+    assertEquals(Arrays.asList("b1", "b2"), b.synonyms);
+    assertTrue(b.getFeature(Capability.auto_left_margin));
+    assertTrue(b.getFeature(Capability.auto_right_margin));
+    Device c = info.getDevice("c");
+    assertFalse(c.getFeature(Capability.auto_left_margin));
+    assertEquals(132, (int) c.getFeature(Capability.columns));
+    assertNull(info.getDevice("the a"));
+    assertNull(info.getDevice("d"));
+    assertEquals(3, new HashSet<Device>(info.devices()).size());
+  }
+
+  @Test
+  public void testCompileUseNotFound() throws Exception {
+    try {
+      compile("a,\n use=b,\n");
+      fail();
+    } catch (IllegalStateException ignore) {
+    }
+  }
+
+  @Test
+  public void testLoadEscapedPath() throws Exception {
+    File file = new File(folder.newFolder("term info"), "terminfo.bin");
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(TermInfoCompiler.compile(new StringReader("a,\n bw,\n")));
+    } finally {
+      out.close();
+    }
+    // The space is escaped in the url
+    TermInfo info = CompiledTermInfo.load(file.toURI().toURL());
+    assertTrue(info.getDevice("a").getFeature(Capability.auto_left_margin));
+  }
+
+  @Test
+  public void testDefaultInfo() {
+    assertTrue(TermInfo.defaultInfo() instanceof CompiledTermInfo);
+  }
+
+  @Test
+  public void testCompiledDatabaseUpToDate() throws Exception {
+    InputStream in = TermInfo.class.getResourceAsStream("terminfo.src");
+    byte[] expected;
+    try {
+      expected = TermInfoCompiler.compile(new InputStreamReader(in, "US-ASCII"));
+    } finally {
+      in.close();
+    }
+    in = TermInfo.class.getResourceAsStream("terminfo.bin");
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    try {
+      byte[] buffer = new byte[4096];
+      int len;
+      while ((len = in.read(buffer)) != -1) {
+        actual.write(buffer, 0, len);
+      }
+    } finally {
+      in.close();
+    }
+    assertTrue("The terminfo.bin resource is not up to date with terminfo.src, rebuild the project",
+        Arrays.equals(expected, actual.toByteArray()));
+  }
+
+  @Test
+  public void testCompiledDevices() throws Exception {
+    TermInfo parsed = TermInfo.parseDefault();
+    TermInfo compiled = TermInfo.defaultInfo();
+    assertEquals(parsed.devices.size(), compiled.devices().size());
+    for (String name : parsed.devices.keySet()) {
+      Device expected = parsed.getDevice(name);
+      Device device = compiled.getDevice(name);
+      assertNotNull(name, device);
+      assertEquals(expected.name, device.name);
+      assertEquals(expected.synonyms, device.synonyms);
+      assertEquals(expected.longname, device.longname);
+      assertTrue(name, expected.features.equals(device.features));
+    }
+  }
+}
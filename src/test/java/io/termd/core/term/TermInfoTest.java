@@ -489,6 +489,8 @@ public class TermInfoTest {
     Sequence smcup = TermInfo.defaultInfo().getDevice("xterm-color").getFeature(Capability.enter_ca_mode);
     assertSequenceEquals("\033[1;1H", cup.eval("0", "0"));
     assertSequenceEquals("\0337\033[?47h", smcup.eval());
+    Sequence hpa = TermInfo.defaultInfo().getDevice("xterm").getFeature(Capability.column_address);
+    assertSequenceEquals("\033[5G", hpa.eval("4"));
     Sequence setb = TermInfo.defaultInfo().getDevice("xtermc").getFeature(Capability.set_background);
     assertSequenceEquals("\033[44m", setb.eval("1"));
     assertSequenceEquals("\033[42m", setb.eval("2"));
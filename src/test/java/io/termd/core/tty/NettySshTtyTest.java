@@ -21,8 +21,7 @@ import io.netty.channel.nio.NioEventLoopGroup;
 import io.termd.core.function.Consumer;
 import io.termd.core.ssh.TtyCommand;
 import io.termd.core.ssh.netty.NettyIoServiceFactoryFactory;
-import io.termd.core.ssh.netty.NettyIoSession;
-import org.apache.sshd.common.session.Session;
+import io.termd.core.ssh.netty.NettyTtyCommand;
 import org.apache.sshd.server.SshServer;
 import org.junit.After;
 import org.junit.Before;
@@ -55,14 +54,7 @@ public class NettySshTtyTest extends SshTtyTestBase {
 
   @Override
   protected TtyCommand createConnection(Consumer<TtyConnection> onConnect) {
-    return new TtyCommand(charset, onConnect) {
-      @Override
-      public void execute(Runnable task) {
-        Session session = this.session.getSession();
-        NettyIoSession ioSession = (NettyIoSession) session.getIoSession();
-        ioSession.execute(task);
-      }
-    };
+    return new NettyTtyCommand(charset, onConnect);
   }
 
   @Override
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.tty;
+
+import io.termd.core.function.Consumer;
+import io.termd.core.http.HttpTtyConnection;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run the websocket tests with the binary messages.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class NettyWebsocketBinaryTtyTest extends NettyWebsocketTtyTest {
+
+  private final BlockingQueue<Byte> controls = new ArrayBlockingQueue<Byte>(10);
+
+  @Override
+  protected boolean binary() {
+    return true;
+  }
+
+  @Override
+  protected void onControl(byte op) {
+    controls.add(op);
+  }
+
+  @Test
+  public void testNegotiate() throws Exception {
+    server(new Consumer<TtyConnection>() {
+      @Override
+      public void accept(TtyConnection conn) {
+      }
+    });
+    assertConnect();
+    assertEquals(HttpTtyConnection.BINARY_PROTOCOL, session().getNegotiatedSubprotocol());
+  }
+
+  @Test
+  public void testPing() throws Exception {
+    server(new Consumer<TtyConnection>() {
+      @Override
+      public void accept(TtyConnection conn) {
+      }
+    });
+    assertConnect();
+    session().getBasicRemote().sendBinary(ByteBuffer.wrap(new byte[]{HttpTtyConnection.OP_PING}));
+    assertEquals((Byte) HttpTtyConnection.OP_ACK, controls.poll(10, TimeUnit.SECONDS));
+  }
+}
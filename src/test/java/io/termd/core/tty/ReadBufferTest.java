@@ -114,4 +114,22 @@ public class ReadBufferTest extends TestBase {
     assertEquals(0, commands.size());
   }
 
+  @Test
+  public void testQueueCopiesSlice() throws Exception {
+    int[] chunk = {'f', 'o', 'o', 'b', 'a', 'r'};
+    buf.accept(chunk, 3, 3);
+    chunk[3] = 'X';
+    buf.setReadHandler(new Consumer<int[]>() {
+      @Override
+      public void accept(int[] event) {
+        reads.add(event);
+      }
+    });
+    commands.poll().run();
+    assertEquals(1, reads.size());
+    assertEquals(reads.get(0), new int[]{'b', 'a', 'r'});
+    buf.accept(chunk, 0, 3);
+    assertEquals(2, reads.size());
+    assertEquals(reads.get(1), new int[]{'f', 'o', 'o'});
+  }
 }
@@ -17,10 +17,12 @@
 package io.termd.core.tty;
 
 import io.termd.core.function.Consumer;
+import io.termd.core.io.CodePointSink;
 import io.termd.core.util.Helper;
 import org.junit.Test;
 
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -40,6 +42,24 @@ public class TtyOutputModeTest {
     assertOutput("a\r\nb\r\nc", "a\nb\nc");
   }
 
+  @Test
+  public void testSinkReceivesSlices() {
+    final StringBuilder result = new StringBuilder();
+    TtyOutputMode out = new TtyOutputMode(new CodePointSink() {
+      @Override
+      public void accept(int[] codePoints, int offset, int length) {
+        result.append(Helper.fromCodePoints(Arrays.copyOfRange(codePoints, offset, offset + length))).append('|');
+      }
+      @Override
+      public void accept(int[] codePoints) {
+        fail();
+      }
+    });
+    int[] codePoints = Helper.toCodePoints("xab\ncdx");
+    out.accept(codePoints, 1, 5);
+    assertEquals("ab|\r\n|cd|", result.toString());
+  }
+
   private void assertOutput(String expected, String actual) {
     ReadHandler readHandler = new ReadHandler();
     TtyOutputMode out = new TtyOutputMode(readHandler);
@@ -17,6 +17,7 @@
 package io.termd.core.tty;
 
 import com.alibaba.fastjson2.JSON;
+import io.termd.core.http.HttpTtyConnection;
 import org.junit.After;
 
 import javax.websocket.ClientEndpointConfig;
@@ -31,6 +32,11 @@ import java.io.IOException;
 import java.io.PipedReader;
 import java.io.PipedWriter;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
@@ -44,6 +50,23 @@ import java.util.concurrent.CountDownLatch;
   private Session session;
   private PipedReader in;
 
+  /**
+   * @return true to negotiate the {@link HttpTtyConnection#BINARY_PROTOCOL} instead of the json messages
+   */
+  protected boolean binary() {
+    return false;
+  }
+
+  protected Session session() {
+    return session;
+  }
+
+  /**
+   * Called when a binary message other than data is received.
+   */
+  protected void onControl(byte op) {
+  }
+
   @After
   public void after() throws Exception {
     if (session != null) {
@@ -73,6 +96,34 @@ import java.util.concurrent.CountDownLatch;
     endpoint = new Endpoint() {
       @Override
       public void onOpen(Session session, EndpointConfig endpointConfig) {
+        final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        final ByteBuffer pending = ByteBuffer.allocate(8);
+        session.addMessageHandler(new MessageHandler.Whole<ByteBuffer>() {
+          @Override
+          public void onMessage(ByteBuffer message) {
+            if (message.remaining() == 0) {
+              return;
+            }
+            byte op = message.get();
+            if (op != HttpTtyConnection.OP_DATA) {
+              onControl(op);
+            } else {
+              // Decode the characters split across messages
+              CharBuffer chars = CharBuffer.allocate(message.remaining() + pending.position());
+              ByteBuffer bytes = ByteBuffer.allocate(message.remaining() + pending.position());
+              pending.flip();
+              bytes.put(pending).put(message).flip();
+              pending.clear();
+              decoder.decode(bytes, chars, false);
+              pending.put(bytes);
+              try {
+                out.write(chars.array(), 0, chars.position());
+              } catch (IOException e) {
+                e.printStackTrace();
+              }
+            }
+          }
+        });
         session.addMessageHandler(new MessageHandler.Whole<String>() {
           @Override
           public void onMessage(String message) {
@@ -95,7 +146,11 @@ import java.util.concurrent.CountDownLatch;
       public void onError(Session session, Throwable thr) {
       }
     };
-    ClientEndpointConfig clientEndpointConfig = ClientEndpointConfig.Builder.create().build();
+    ClientEndpointConfig.Builder builder = ClientEndpointConfig.Builder.create();
+    if (binary()) {
+      builder.preferredSubprotocols(Collections.singletonList(HttpTtyConnection.BINARY_PROTOCOL));
+    }
+    ClientEndpointConfig clientEndpointConfig = builder.build();
     WebSocketContainer webSocketContainer = ContainerProvider.getWebSocketContainer();
     session = webSocketContainer.connectToServer(endpoint, clientEndpointConfig, new URI("http://localhost:8080/ws"));
     latch.await();
@@ -103,6 +158,13 @@ import java.util.concurrent.CountDownLatch;
 
   @Override
   protected void assertWrite(String s) throws Exception {
+      if (binary()) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer msg = ByteBuffer.allocate(1 + bytes.length);
+        msg.put(HttpTtyConnection.OP_DATA).put(bytes).flip();
+        session.getBasicRemote().sendBinary(msg);
+        return;
+      }
       Map<String, String> msg = new HashMap<>();
       msg.put("action", "read");
       msg.put("data", s);
@@ -140,6 +202,12 @@ import java.util.concurrent.CountDownLatch;
 
   @Override
   protected void resize(int width, int height) throws Exception {
+      if (binary()) {
+        ByteBuffer msg = ByteBuffer.allocate(5);
+        msg.put(HttpTtyConnection.OP_RESIZE).putShort((short) width).putShort((short) height).flip();
+        session.getBasicRemote().sendBinary(msg);
+        return;
+      }
       Map<String, Object> msg = new HashMap<>();
       msg.put("action", "resize");
       msg.put("cols", width);
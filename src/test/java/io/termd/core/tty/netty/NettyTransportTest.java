@@ -0,0 +1,211 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.tty.netty;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.EventExecutor;
+import io.termd.core.function.Consumer;
+import io.termd.core.function.Supplier;
+import io.termd.core.http.netty.NettyWebsocketTtyBootstrap;
+import io.termd.core.ssh.netty.NettySshTtyBootstrap;
+import io.termd.core.telnet.TelnetConnection;
+import io.termd.core.telnet.TelnetHandler;
+import io.termd.core.telnet.netty.NettyTelnetBootstrap;
+import io.termd.core.telnet.netty.NettyTelnetConnection;
+import io.termd.core.telnet.netty.NettyTelnetTtyBootstrap;
+import io.termd.core.tty.TtyConnection;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class NettyTransportTest {
+
+  @Test
+  public void testNio() throws Exception {
+    NettyTransport transport = new NettyTransport().setPreferNative(false);
+    try {
+      assertFalse(transport.isEpoll());
+      assertTrue(transport.workerGroup() instanceof NioEventLoopGroup);
+      assertEquals(NioServerSocketChannel.class, transport.serverChannelClass());
+    } finally {
+      transport.shutdownGracefully().sync();
+    }
+  }
+
+  @Test
+  public void testNative() throws Exception {
+    NettyTransport transport = new NettyTransport();
+    try {
+      assertEquals(NettyTransport.isEpollAvailable(), transport.isEpoll());
+    } finally {
+      transport.shutdownGracefully().sync();
+    }
+  }
+
+  @Test
+  public void testEventLoopGroups() throws Exception {
+    EventLoopGroup boss = new NioEventLoopGroup(1);
+    EventLoopGroup worker = new NioEventLoopGroup(1);
+    try {
+      NettyTransport transport = new NettyTransport().setEventLoopGroups(boss, worker);
+      assertSame(boss, transport.bossGroup());
+      assertSame(worker, transport.workerGroup());
+      try {
+        transport.setWorkerThreads(4);
+        fail();
+      } catch (IllegalStateException ignore) {
+      }
+      transport.shutdownGracefully().sync();
+      assertFalse(boss.isShuttingDown());
+      assertFalse(worker.isShuttingDown());
+    } finally {
+      boss.shutdownGracefully();
+      worker.shutdownGracefully();
+    }
+  }
+
+  @Test
+  public void testChildOptions() throws Throwable {
+    NettyTransport transport = new NettyTransport()
+        .setChildOption(ChannelOption.TCP_NODELAY, false)
+        .setChildOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(1024, 4096))
+        .setAllocator(UnpooledByteBufAllocator.DEFAULT);
+    final BlockingQueue<Channel> channels = new ArrayBlockingQueue<Channel>(1);
+    NettyTelnetBootstrap bootstrap = new NettyTelnetBootstrap().setHost("localhost").setPort(4000).setTransport(transport);
+    try {
+      bootstrap.start(new Supplier<TelnetHandler>() {
+        @Override
+        public TelnetHandler get() {
+          return new TelnetHandler() {
+            @Override
+            protected void onOpen(TelnetConnection conn) {
+              channels.add(((NettyTelnetConnection) conn).channelHandlerContext().channel());
+            }
+          };
+        }
+      }).get(10, TimeUnit.SECONDS);
+      Socket socket = new Socket("localhost", 4000);
+      try {
+        Channel channel = channels.poll(10, TimeUnit.SECONDS);
+        assertNotNull(channel);
+        assertFalse(channel.config().getOption(ChannelOption.TCP_NODELAY));
+        assertEquals(1024, channel.config().getWriteBufferLowWaterMark());
+        assertEquals(4096, channel.config().getWriteBufferHighWaterMark());
+        assertSame(UnpooledByteBufAllocator.DEFAULT, channel.alloc());
+        assertTrue(inGroup(transport.workerGroup(), channel));
+      } finally {
+        socket.close();
+      }
+    } finally {
+      bootstrap.stop().get(10, TimeUnit.SECONDS);
+      transport.shutdownGracefully().sync();
+    }
+  }
+
+  private static boolean inGroup(EventLoopGroup group, Channel channel) {
+    for (EventExecutor executor : group) {
+      if (executor == channel.eventLoop()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void testSharedTransport() throws Throwable {
+    NettyTransport transport = new NettyTransport().setWorkerThreads(2);
+    Consumer<TtyConnection> handler = new Consumer<TtyConnection>() {
+      @Override
+      public void accept(TtyConnection conn) {
+        conn.write("hello");
+      }
+    };
+    NettyTelnetTtyBootstrap telnet = new NettyTelnetTtyBootstrap().setHost("localhost").setPort(4000).setTransport(transport);
+    NettyWebsocketTtyBootstrap websocket = new NettyWebsocketTtyBootstrap().setHost("localhost").setPort(8080).setTransport(transport);
+    NettySshTtyBootstrap ssh = new NettySshTtyBootstrap().setHost("localhost").setPort(5000).setTransport(transport);
+    try {
+      telnet.start(handler).get(10, TimeUnit.SECONDS);
+      websocket.start(handler).get(10, TimeUnit.SECONDS);
+      ssh.start(handler).get(10, TimeUnit.SECONDS);
+      assertEquals(200, get("http://localhost:8080/main.css"));
+      assertTrue(read("localhost", 5000, 7).startsWith("SSH-2.0"));
+      assertTrue(read("localhost", 4000, 200).contains("hello"));
+
+      // Stopping a server does not stop the shared transport
+      telnet.stop().get(10, TimeUnit.SECONDS);
+      assertFalse(transport.workerGroup().isShuttingDown());
+      assertEquals(200, get("http://localhost:8080/main.css"));
+      try {
+        new Socket("localhost", 4000).close();
+        fail("Telnet server should be stopped");
+      } catch (java.net.ConnectException ignore) {
+      }
+    } finally {
+      websocket.stop().get(10, TimeUnit.SECONDS);
+      ssh.stop().get(10, TimeUnit.SECONDS);
+      transport.shutdownGracefully().sync();
+    }
+  }
+
+  private static int get(String url) throws Exception {
+    HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+    try {
+      return conn.getResponseCode();
+    } finally {
+      conn.disconnect();
+    }
+  }
+
+  private static String read(String host, int port, int max) throws Exception {
+    Socket socket = new Socket(host, port);
+    try {
+      socket.setSoTimeout(10000);
+      InputStream in = socket.getInputStream();
+      StringBuilder sb = new StringBuilder();
+      while (sb.length() < max) {
+        int b = in.read();
+        if (b == -1) {
+          break;
+        }
+        sb.append((char) b);
+        if (sb.indexOf("hello") != -1) {
+          break;
+        }
+      }
+      return sb.toString();
+    } finally {
+      socket.close();
+    }
+  }
+}
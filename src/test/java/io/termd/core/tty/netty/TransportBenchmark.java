@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.tty.netty;
+
+import io.termd.core.function.Supplier;
+import io.termd.core.telnet.TelnetConnection;
+import io.termd.core.telnet.TelnetHandler;
+import io.termd.core.telnet.netty.NettyTelnetBootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.EOFException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of a telnet server echoing 16KB blocks to a socket client with the NIO and with the
+ * native epoll transports. The epoll transport requires {@code netty-transport-native-epoll} on the classpath and
+ * a Linux host.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportBenchmark {
+
+  @Param({"nio", "epoll"})
+  public String transport;
+
+  private NettyTransport nettyTransport;
+  private NettyTelnetBootstrap bootstrap;
+  private Socket socket;
+  private OutputStream out;
+  private InputStream in;
+  private final byte[] block = new byte[16 * 1024];
+  private final byte[] received = new byte[16 * 1024];
+
+  @Setup
+  public void setup() throws Throwable {
+    boolean epoll = transport.equals("epoll");
+    if (epoll && !NettyTransport.isEpollAvailable()) {
+      throw new IllegalStateException("The epoll transport is not available, netty-transport-native-epoll must be on the classpath");
+    }
+    nettyTransport = new NettyTransport().setPreferNative(epoll).setWorkerThreads(1);
+    bootstrap = new NettyTelnetBootstrap().setHost("localhost").setPort(4000).setTransport(nettyTransport);
+    bootstrap.start(new Supplier<TelnetHandler>() {
+      @Override
+      public TelnetHandler get() {
+        return new TelnetHandler() {
+          TelnetConnection conn;
+          @Override
+          protected void onOpen(TelnetConnection conn) {
+            this.conn = conn;
+          }
+          @Override
+          protected void onData(byte[] data, int offset, int length) {
+            conn.write(data, offset, length);
+          }
+        };
+      }
+    }).get(10, TimeUnit.SECONDS);
+    for (int i = 0;i < block.length;i++) {
+      block[i] = (byte) ('a' + i % 26);
+    }
+    socket = new Socket("localhost", 4000);
+    socket.setTcpNoDelay(true);
+    out = socket.getOutputStream();
+    in = socket.getInputStream();
+  }
+
+  @TearDown
+  public void tearDown() throws Throwable {
+    socket.close();
+    bootstrap.stop().get(10, TimeUnit.SECONDS);
+    nettyTransport.shutdownGracefully().sync();
+  }
+
+  @Benchmark
+  public void echo() throws Exception {
+    out.write(block);
+    int remaining = received.length;
+    while (remaining > 0) {
+      int count = in.read(received, received.length - remaining, remaining);
+      if (count == -1) {
+        throw new EOFException();
+      }
+      remaining -= count;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(TransportBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2014 Julien Viet
+ *
+ * Julien Viet licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package io.termd.core.tty.netty;
+
+import com.jcraft.jsch.ChannelShell;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.Session;
+import io.netty.channel.ChannelOption;
+import io.termd.core.function.Consumer;
+import io.termd.core.http.netty.NettyWebsocketTtyBootstrap;
+import io.termd.core.ssh.netty.NettySshTtyBootstrap;
+import io.termd.core.telnet.netty.NettyTelnetTtyBootstrap;
+import io.termd.core.tty.TtyConnection;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes a large output on a connection only while it is writable, the output must reach the client entirely.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class WritabilityTest {
+
+  private static final int TOTAL = 1024 * 1024;
+  private static final int CHUNK = 1024;
+
+  private final AtomicInteger paused = new AtomicInteger();
+  private final AtomicInteger resumed = new AtomicInteger();
+  private final AtomicInteger overflow = new AtomicInteger();
+
+  private NettyTransport transport() {
+    // Small socket buffers so the kernel does not absorb the output
+    return new NettyTransport()
+        .setWriteBufferWaterMark(8 * 1024, 32 * 1024)
+        .setChildOption(ChannelOption.SO_SNDBUF, 16 * 1024);
+  }
+
+  /**
+   * Write the output in chunks of {@code a} characters, the writes stop when the connection is not writable and
+   * resume when the writability handler is called.
+   */
+  private Consumer<TtyConnection> producer() {
+    return new Consumer<TtyConnection>() {
+      @Override
+      public void accept(final TtyConnection conn) {
+        final String chunk = new String(filled(CHUNK));
+        final int[] written = new int[1];
+        final Runnable pump = new Runnable() {
+          @Override
+          public void run() {
+            while (written[0] < TOTAL && conn.isWritable()) {
+              conn.write(chunk);
+              written[0] += CHUNK;
+            }
+          }
+        };
+        conn.setWritabilityHandler(new Consumer<Boolean>() {
+          @Override
+          public void accept(Boolean writable) {
+            if (writable) {
+              resumed.incrementAndGet();
+              pump.run();
+            } else if (paused.incrementAndGet() - resumed.get() > 1) {
+              overflow.incrementAndGet();
+            }
+          }
+        });
+        conn.execute(pump);
+      }
+    };
+  }
+
+  private static char[] filled(int size) {
+    char[] chars = new char[size];
+    Arrays.fill(chars, 'a');
+    return chars;
+  }
+
+  private static Socket connect(int port) throws Exception {
+    Socket socket = new Socket();
+    socket.setReceiveBufferSize(16 * 1024);
+    socket.connect(new InetSocketAddress("localhost", port));
+    return socket;
+  }
+
+  private void assertWritability() {
+    assertTrue(paused.get() > 0);
+    assertTrue(resumed.get() > 0);
+    assertEquals(0, overflow.get());
+  }
+
+  @Test
+  public void testTelnet() throws Throwable {
+    NettyTransport transport = transport();
+    NettyTelnetTtyBootstrap bootstrap = new NettyTelnetTtyBootstrap().setHost("localhost").setPort(4000).setTransport(transport);
+    bootstrap.start(producer()).get(10, TimeUnit.SECONDS);
+    try {
+      Socket socket = connect(4000);
+      try {
+        socket.setSoTimeout(10000);
+        InputStream in = socket.getInputStream();
+        // Let the server buffer fill up
+        Thread.sleep(100);
+        byte[] buffer = new byte[8192];
+        int count = 0;
+        while (count < TOTAL) {
+          int len = in.read(buffer);
+          if (len == -1) {
+            throw new EOFException();
+          }
+          for (int i = 0;i < len;i++) {
+            if (buffer[i] == 'a') {
+              count++;
+            }
+          }
+        }
+        assertEquals(TOTAL, count);
+      } finally {
+        socket.close();
+      }
+      assertWritability();
+    } finally {
+      bootstrap.stop().get(10, TimeUnit.SECONDS);
+      transport.shutdownGracefully().sync();
+    }
+  }
+
+  @Test
+  public void testWebsocket() throws Throwable {
+    NettyTransport transport = transport();
+    NettyWebsocketTtyBootstrap bootstrap = new NettyWebsocketTtyBootstrap().setHost("localhost").setPort(8080).setTransport(transport);
+    bootstrap.start(producer()).get(10, TimeUnit.SECONDS);
+    try {
+      Socket socket = connect(8080);
+      try {
+        socket.setSoTimeout(10000);
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET /ws HTTP/1.1\r\n" +
+            "Host: localhost:8080\r\n" +
+            "Upgrade: websocket\r\n" +
+            "Connection: Upgrade\r\n" +
+            "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n" +
+            "Sec-WebSocket-Version: 13\r\n\r\n").getBytes("US-ASCII"));
+        out.flush();
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        int state = 0;
+        while (state < 4) {
+          int b = in.read();
+          if (b == -1) {
+            throw new EOFException();
+          }
+          state = (b == (state % 2 == 0 ? '\r' : '\n')) ? state + 1 : (b == '\r' ? 1 : 0);
+        }
+        Thread.sleep(100);
+        int count = 0;
+        while (count < TOTAL) {
+          int opcode = in.readUnsignedByte() & 0x0F;
+          long len = in.readUnsignedByte() & 0x7F;
+          if (len == 126) {
+            len = in.readUnsignedShort();
+          } else if (len == 127) {
+            len = in.readLong();
+          }
+          byte[] payload = new byte[(int) len];
+          in.readFully(payload);
+          assertEquals(1, opcode);
+          for (byte b : payload) {
+            assertEquals('a', b);
+          }
+          count += payload.length;
+        }
+        assertEquals(TOTAL, count);
+      } finally {
+        socket.close();
+      }
+      assertWritability();
+    } finally {
+      bootstrap.stop().get(10, TimeUnit.SECONDS);
+      transport.shutdownGracefully().sync();
+    }
+  }
+
+  @Test
+  public void testSsh() throws Throwable {
+    NettyTransport transport = transport();
+    NettySshTtyBootstrap bootstrap = new NettySshTtyBootstrap().setHost("localhost").setPort(5000).setTransport(transport);
+    bootstrap.start(producer()).get(10, TimeUnit.SECONDS);
+    try {
+      Session session = new JSch().getSession("whatever", "localhost", 5000);
+      session.setPassword("whocares");
+      session.setConfig("StrictHostKeyChecking", "no");
+      session.connect();
+      try {
+        ChannelShell channel = (ChannelShell) session.openChannel("shell");
+        InputStream in = channel.getInputStream();
+        channel.connect();
+        Thread.sleep(100);
+        byte[] buffer = new byte[8192];
+        int count = 0;
+        while (count < TOTAL) {
+          int len = in.read(buffer);
+          if (len == -1) {
+            throw new EOFException();
+          }
+          for (int i = 0;i < len;i++) {
+            assertEquals('a', buffer[i]);
+          }
+          count += len;
+        }
+        assertEquals(TOTAL, count);
+      } finally {
+        session.disconnect();
+      }
+      assertWritability();
+    } finally {
+      bootstrap.stop().get(10, TimeUnit.SECONDS);
+      transport.shutdownGracefully().sync();
+    }
+  }
+}
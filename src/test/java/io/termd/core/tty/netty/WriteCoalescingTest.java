@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.tty.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class WriteCoalescingTest {
+
+  private EventLoopGroup group;
+  private Channel serverChannel;
+  private Channel clientChannel;
+  private AtomicInteger received;
+
+  @Before
+  public void before() {
+    group = new DefaultEventLoopGroup(1);
+    received = new AtomicInteger();
+  }
+
+  @After
+  public void after() throws Exception {
+    if (clientChannel != null) {
+      clientChannel.close().sync();
+    }
+    if (serverChannel != null) {
+      serverChannel.close().sync();
+    }
+    group.shutdownGracefully(0, 5, TimeUnit.SECONDS).sync();
+  }
+
+  /**
+   * Connect a client to a server using the coalescing handler and return the server side of the connection.
+   */
+  private Channel connect(final WriteCoalescing coalescing) throws Exception {
+    final AtomicReference<Channel> accepted = new AtomicReference<Channel>();
+    final CountDownLatch latch = new CountDownLatch(1);
+    LocalAddress address = new LocalAddress("termd-" + System.nanoTime());
+    serverChannel = new ServerBootstrap()
+        .group(group)
+        .channel(LocalServerChannel.class)
+        .childHandler(new ChannelInitializer<LocalChannel>() {
+          @Override
+          protected void initChannel(LocalChannel ch) throws Exception {
+            ch.pipeline().addLast(coalescing.newHandler());
+            accepted.set(ch);
+            latch.countDown();
+          }
+        })
+        .bind(address).sync().channel();
+    clientChannel = new Bootstrap()
+        .group(group)
+        .channel(LocalChannel.class)
+        .handler(new ChannelInboundHandlerAdapter() {
+          @Override
+          public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            ByteBuf buf = (ByteBuf) msg;
+            received.addAndGet(buf.readableBytes());
+            buf.release();
+          }
+        })
+        .connect(address).sync().channel();
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    return accepted.get();
+  }
+
+  /**
+   * Perform the writes in a single event loop task.
+   */
+  private void writeAndFlush(final Channel channel, final int count, final int size) throws Exception {
+    channel.eventLoop().submit(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0;i < count;i++) {
+          channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[size]));
+        }
+      }
+    }).sync();
+  }
+
+  private long flushes(Channel channel, final WriteCoalescing coalescing) throws Exception {
+    // Run after the tasks already queued
+    return channel.eventLoop().submit(new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        return coalescing.flushes();
+      }
+    }).get();
+  }
+
+  private void assertReceived(int expected) throws Exception {
+    long now = System.currentTimeMillis();
+    while (received.get() != expected) {
+      assertTrue(System.currentTimeMillis() - now < 5000);
+      Thread.sleep(1);
+    }
+  }
+
+  @Test
+  public void testCoalesceFlushes() throws Exception {
+    WriteCoalescing coalescing = new WriteCoalescing();
+    Channel channel = connect(coalescing);
+    writeAndFlush(channel, 10, 4);
+    assertEquals(1, flushes(channel, coalescing));
+    assertEquals(10, coalescing.writes());
+    assertReceived(40);
+    writeAndFlush(channel, 3, 4);
+    assertEquals(2, flushes(channel, coalescing));
+    assertEquals(13, coalescing.writes());
+    assertReceived(52);
+  }
+
+  @Test
+  public void testFlushThreshold() throws Exception {
+    WriteCoalescing coalescing = new WriteCoalescing().setFlushThreshold(10);
+    Channel channel = connect(coalescing);
+    writeAndFlush(channel, 5, 4);
+    // flushed after the 3rd write, the 2 remaining writes are flushed after the task
+    assertEquals(2, flushes(channel, coalescing));
+    assertReceived(20);
+  }
+
+  @Test
+  public void testFlushDelay() throws Exception {
+    WriteCoalescing coalescing = new WriteCoalescing().setFlushDelay(200);
+    Channel channel = connect(coalescing);
+    writeAndFlush(channel, 2, 4);
+    writeAndFlush(channel, 2, 4);
+    assertEquals(0, flushes(channel, coalescing));
+    assertReceived(16);
+    assertEquals(1, flushes(channel, coalescing));
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    WriteCoalescing coalescing = new WriteCoalescing().setEnabled(false);
+    Channel channel = connect(coalescing);
+    writeAndFlush(channel, 5, 4);
+    assertEquals(5, coalescing.writes());
+    assertEquals(5, flushes(channel, coalescing));
+    assertReceived(20);
+  }
+
+  @Test
+  public void testFlushOnClose() throws Exception {
+    WriteCoalescing coalescing = new WriteCoalescing().setFlushDelay(10000);
+    final Channel channel = connect(coalescing);
+    channel.eventLoop().submit(new Runnable() {
+      @Override
+      public void run() {
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[4]));
+        channel.close();
+      }
+    }).sync();
+    assertReceived(4);
+    assertEquals(1, coalescing.flushes());
+  }
+}